@@ -0,0 +1,136 @@
+package com.fit2cloud.fapiao.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 发票识别后校验线程池（查重、真伪验证、规则校验）
+     * 有界队列，队列满时由调用线程执行，避免无限堆积
+     */
+    @Bean(name = "invoiceValidationExecutor")
+    public ThreadPoolTaskExecutor invoiceValidationExecutor(
+            @Value("${invoice.validation.executor.pool-size:32}") int poolSize,
+            @Value("${invoice.validation.executor.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("invoice-validation-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 验证提供方对冲请求线程池，与校验线程池隔离，避免对冲任务占满校验线程
+     */
+    @Bean(name = "verificationHedgeExecutor")
+    public ThreadPoolTaskExecutor verificationHedgeExecutor(
+            @Value("${invoice.verification.provider.hedge-pool-size:16}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 4);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("verification-hedge-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 通讯录后台刷新线程池，单线程，已有任务排队时丢弃新提交
+     */
+    @Bean(name = "userDirectoryRefreshExecutor")
+    public ThreadPoolTaskExecutor userDirectoryRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("user-directory-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 部门列表、用户-部门关系等缓存的后台刷新线程池
+     * 每个缓存同时只提交一个刷新任务，队列满时拒绝（由提交方复位刷新标志，下次访问再提交）
+     */
+    @Bean(name = "cacheRefreshExecutor")
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(8);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("cache-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 通讯录批量加载线程池，按部门并发拉取成员，实际调用频率由 WeComDirectoryLoader 的自适应限流控制
+     */
+    @Bean(name = "userDirectoryLoadExecutor")
+    public ThreadPoolTaskExecutor userDirectoryLoadExecutor(
+            @Value("${qywechat.directory.load-concurrency:8}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 8);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("user-directory-load-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 审批发件箱处理线程池，每个任务处理一个提交单：认领步骤后把任务图交给 approvalSubmitExecutor 执行并等待结果
+     * 与 approvalSubmitExecutor 分开，等待中的提交单不会占用执行审批步骤的线程；
+     * 队列满时丢弃，步骤仍为待提交，由定时任务下一轮再分派
+     */
+    @Bean(name = "approvalOutboxExecutor")
+    public ThreadPoolTaskExecutor approvalOutboxExecutor(
+            @Value("${qywechat.approval.outbox.pool-size:4}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 16);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("approval-outbox-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 审批提交线程池，出差补贴与各组报销申请并发提交，实际调用频率由 WeComApiRateLimiter 控制
+     * 只执行任务图中的单个审批步骤，步骤之间不互相等待
+     */
+    @Bean(name = "approvalSubmitExecutor")
+    public ThreadPoolTaskExecutor approvalSubmitExecutor(
+            @Value("${qywechat.approval.submit-pool-size:8}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 8);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("approval-submit-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,56 @@
+package com.fit2cloud.fapiao.config;
+
+import com.fit2cloud.fapiao.service.AccessTokenService;
+import com.fit2cloud.fapiao.service.DepartmentService;
+import com.fit2cloud.fapiao.service.LocalCacheRegistry;
+import com.fit2cloud.fapiao.service.UserDepartmentRelationService;
+import com.fit2cloud.fapiao.service.UserInfoService;
+import com.fit2cloud.fapiao.service.WebSessionStore;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本地缓存监控端点：/actuator/localcaches
+ * caches 为统一注册的缓存（容量、过期配置、命中率、加载耗时、淘汰数），其余为整体加载的快照类缓存
+ */
+@Component
+@Endpoint(id = "localcaches")
+public class LocalCachesEndpoint {
+
+    private final LocalCacheRegistry cacheRegistry;
+    private final DepartmentService departmentService;
+    private final UserDepartmentRelationService userDepartmentRelationService;
+    private final UserInfoService userInfoService;
+    private final AccessTokenService accessTokenService;
+    private final WebSessionStore webSessionStore;
+
+    public LocalCachesEndpoint(LocalCacheRegistry cacheRegistry,
+                               DepartmentService departmentService,
+                               UserDepartmentRelationService userDepartmentRelationService,
+                               UserInfoService userInfoService,
+                               AccessTokenService accessTokenService,
+                               WebSessionStore webSessionStore) {
+        this.cacheRegistry = cacheRegistry;
+        this.departmentService = departmentService;
+        this.userDepartmentRelationService = userDepartmentRelationService;
+        this.userInfoService = userInfoService;
+        this.accessTokenService = accessTokenService;
+        this.webSessionStore = webSessionStore;
+    }
+
+    @ReadOperation
+    public Map<String, Object> caches() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("caches", cacheRegistry.getStatus());
+        status.put("departments", departmentService.getCacheStatus());
+        status.put("userDepartmentRelations", userDepartmentRelationService.getCacheStatus());
+        status.put("userDirectory", userInfoService.getCacheStatistics());
+        status.put("tokens", accessTokenService.getTokenCacheStatus());
+        status.put("webSessions", webSessionStore.getStatus());
+        return status;
+    }
+}
@@ -0,0 +1,32 @@
+package com.fit2cloud.fapiao.config;
+
+import com.fit2cloud.fapiao.service.ContactSyncService;
+import com.fit2cloud.fapiao.service.UserInfoService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 用户目录加载状态：/actuator/health/readiness 中的 userDirectory
+ * 目录在后台加载，加载完成前按需逐个获取用户，仍可正常处理请求，所以始终为 UP，加载进度见 details.state，
+ * 通讯录增量同步的积压和计数见 details.contactSync
+ */
+@Component
+public class UserDirectoryHealthIndicator implements HealthIndicator {
+
+    private final UserInfoService userInfoService;
+    private final ContactSyncService contactSyncService;
+
+    public UserDirectoryHealthIndicator(UserInfoService userInfoService, ContactSyncService contactSyncService) {
+        this.userInfoService = userInfoService;
+        this.contactSyncService = contactSyncService;
+    }
+
+    @Override
+    public Health health() {
+        return Health.up()
+                .withDetails(userInfoService.getLoadStatus())
+                .withDetail("contactSync", contactSyncService.getStatus())
+                .build();
+    }
+}
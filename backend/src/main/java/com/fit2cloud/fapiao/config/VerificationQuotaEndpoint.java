@@ -0,0 +1,27 @@
+package com.fit2cloud.fapiao.config;
+
+import com.fit2cloud.fapiao.service.VerificationRateLimiter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 发票验证限流与额度监控端点：/actuator/verificationquota
+ */
+@Component
+@Endpoint(id = "verificationquota")
+public class VerificationQuotaEndpoint {
+
+    private final VerificationRateLimiter rateLimiter;
+
+    public VerificationQuotaEndpoint(VerificationRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> quota() {
+        return rateLimiter.getStatus();
+    }
+}
@@ -3,6 +3,8 @@ package com.fit2cloud.fapiao.controller;
 
 import com.fit2cloud.fapiao.dto.response.ApiResponse;
 import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.response.ReimbursementSubmitResult;
+import com.fit2cloud.fapiao.exception.BusinessException;
 import com.fit2cloud.fapiao.service.ReimbursementService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -46,11 +48,12 @@ public class ReimbursementController {
 
             log.info("使用用户ID: {} 提交报销申请", effectiveUserId);
 
-            boolean success = reimbursementService.submitReimbursement(submitData, effectiveUserId);
-            if (success) {
-                return ApiResponse.success("报销申请提交成功");
+            ReimbursementSubmitResult result = reimbursementService.submitReimbursement(submitData, effectiveUserId);
+            if (result.isSuccess()) {
+                // 审批在后台提交，返回提交单ID用于查询进度
+                return ApiResponse.success("报销申请已受理，正在提交审批", result.getSubmissionId());
             } else {
-                return ApiResponse.error("报销申请提交失败");
+                return ApiResponse.error("报销申请提交失败：" + String.join("；", result.getFailures()));
             }
         } catch (Exception e) {
             log.error("提交报销申请异常", e);
@@ -58,6 +61,32 @@ public class ReimbursementController {
         }
     }
 
+    /**
+     * 查询报销提交进度，只能查询本人的提交单
+     */
+    @GetMapping("/submissions/{submissionId}")
+    public ApiResponse<ReimbursementSubmitResult> getSubmission(@PathVariable String submissionId,
+                                                                @RequestParam String userId) {
+        try {
+            return ApiResponse.success(reimbursementService.getSubmission(submissionId, userId));
+        } catch (BusinessException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 重新提交失败的审批，已创建的审批不会重复提交，只能重试本人的提交单
+     */
+    @PostMapping("/submissions/{submissionId}/retry")
+    public ApiResponse<ReimbursementSubmitResult> retrySubmission(@PathVariable String submissionId,
+                                                                  @RequestParam String userId) {
+        try {
+            return ApiResponse.success(reimbursementService.retrySubmission(submissionId, userId));
+        } catch (BusinessException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
     // 请求参数类
     public static class ReimbursementSubmit {
         private List<InvoiceInfo> invoices;
@@ -0,0 +1,35 @@
+package com.fit2cloud.fapiao.controller;
+
+import com.fit2cloud.fapiao.service.ComplianceRuleEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/rules")
+@Slf4j
+public class RuleController {
+
+    @Autowired
+    private ComplianceRuleEngine complianceRuleEngine;
+
+    /**
+     * 获取合规规则状态（每条规则的评估次数、耗时、违规次数）
+     */
+    @GetMapping("/status")
+    public Map<String, Object> getStatus() {
+        return complianceRuleEngine.getStatus();
+    }
+
+    /**
+     * 手动重新加载合规规则
+     */
+    @PostMapping("/reload")
+    public Map<String, Object> reload() {
+        log.info("手动重新加载合规规则");
+        boolean success = complianceRuleEngine.reload();
+        return Map.of("success", success, "message", success ? "规则重新加载成功" : "规则加载失败，继续使用当前规则");
+    }
+}
@@ -0,0 +1,65 @@
+package com.fit2cloud.fapiao.controller;
+
+import com.fit2cloud.fapiao.dto.response.ApiResponse;
+import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.service.CompositeVerificationProvider;
+import com.fit2cloud.fapiao.service.DeferredVerificationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/verification")
+@Slf4j
+public class VerificationController {
+
+    private final DeferredVerificationService deferredVerificationService;
+
+    private final CompositeVerificationProvider verificationProvider;
+
+    public VerificationController(DeferredVerificationService deferredVerificationService,
+                                  CompositeVerificationProvider verificationProvider) {
+        this.deferredVerificationService = deferredVerificationService;
+        this.verificationProvider = verificationProvider;
+    }
+
+    /**
+     * 订阅后台真伪验证结果（SSE），每完成一张推送一次 verification 事件，全部完成后推送 complete 事件
+     */
+    @GetMapping(value = "/{token}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@PathVariable String token) {
+        log.info("订阅后台真伪验证结果: token={}", token);
+        return deferredVerificationService.subscribe(token);
+    }
+
+    /**
+     * 轮询后台真伪验证进度
+     */
+    @GetMapping("/{token}")
+    public ApiResponse<Map<String, Object>> poll(@PathVariable String token) {
+        try {
+            return ApiResponse.success(deferredVerificationService.poll(token));
+        } catch (BusinessException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取后台验证状态
+     */
+    @GetMapping("/status")
+    public Map<String, Object> getStatus() {
+        return deferredVerificationService.getStatus();
+    }
+
+    /**
+     * 获取验证提供方调用统计
+     */
+    @GetMapping("/providers")
+    public Map<String, Object> getProviderStatus() {
+        return verificationProvider.getStatus();
+    }
+}
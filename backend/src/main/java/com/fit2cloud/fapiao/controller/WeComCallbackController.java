@@ -0,0 +1,71 @@
+package com.fit2cloud.fapiao.controller;
+
+import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.service.ContactSyncService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 企业微信回调接口（在企业微信后台"通讯录同步 - 接收事件服务器"中配置）
+ * 按回调协议直接返回纯文本，不使用 ApiResponse 包装
+ */
+@Slf4j
+@RestController
+@RequestMapping("/qywechat/callback")
+public class WeComCallbackController {
+
+    private final ContactSyncService contactSyncService;
+
+    public WeComCallbackController(ContactSyncService contactSyncService) {
+        this.contactSyncService = contactSyncService;
+    }
+
+    /**
+     * 验证回调URL，返回解密后的 echostr
+     */
+    @GetMapping(value = "/contact", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> verifyContactUrl(@RequestParam("msg_signature") String msgSignature,
+                                                   @RequestParam String timestamp,
+                                                   @RequestParam String nonce,
+                                                   @RequestParam String echostr) {
+        if (!contactSyncService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(contactSyncService.verifyUrl(msgSignature, timestamp, nonce, echostr));
+        } catch (BusinessException e) {
+            log.warn("通讯录回调URL验证失败: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (RuntimeException e) {
+            log.error("通讯录回调URL验证异常", e);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
+    /**
+     * 接收通讯录变更事件，入队后立即返回 success（企业微信要求5秒内响应，否则重试）
+     * 签名校验通过后的处理异常只记录日志并返回 success，重试同一条消息不会成功，遗漏的变更由整体对账补齐
+     */
+    @PostMapping(value = "/contact", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> receiveContactEvent(@RequestParam("msg_signature") String msgSignature,
+                                                      @RequestParam String timestamp,
+                                                      @RequestParam String nonce,
+                                                      @RequestBody String body) {
+        if (!contactSyncService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            contactSyncService.receive(msgSignature, timestamp, nonce, body);
+            return ResponseEntity.ok("success");
+        } catch (BusinessException e) {
+            log.warn("通讯录变更回调校验失败: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (RuntimeException e) {
+            log.error("处理通讯录变更回调失败，已忽略该消息", e);
+            return ResponseEntity.ok("success");
+        }
+    }
+}
@@ -11,6 +11,11 @@ public class DuplicateCheckResult {
     private String userId;
     private String checkStrategy;
 
+    // 近似重复（OCR识别误差导致发票号码不一致的重复提交）
+    private boolean nearDuplicate;
+    private Double similarityScore;
+    private String similarInvoiceNumber;
+
     public DuplicateCheckResult() {
     }
 
@@ -30,4 +35,16 @@ public class DuplicateCheckResult {
     public static DuplicateCheckResult duplicate(String duplicateReason, String invoiceNumber, String invoiceDate, String userId, String checkStrategy) {
         return new DuplicateCheckResult(true, duplicateReason, invoiceNumber, invoiceDate, userId, checkStrategy);
     }
+
+    /**
+     * 标记为疑似重复（不阻断提交，仅提示）
+     */
+    public DuplicateCheckResult markNearDuplicate(String similarInvoiceNumber, double similarityScore) {
+        this.nearDuplicate = true;
+        this.similarInvoiceNumber = similarInvoiceNumber;
+        this.similarityScore = similarityScore;
+        this.duplicateReason = String.format("疑似重复：与已提交发票%s的销售方、金额、日期一致（相似度%.2f）",
+                similarInvoiceNumber, similarityScore);
+        return this;
+    }
 }
\ No newline at end of file
@@ -19,6 +19,9 @@ public class FileUploadResponse {
     // 规则校验结果
     private BatchValidationResult validationResult;
 
+    // 后台真伪验证令牌（延迟验证模式下用于推送/轮询验证结果）
+    private String verificationToken;
+
     // 无参构造器
     public FileUploadResponse() {}
 
@@ -0,0 +1,45 @@
+package com.fit2cloud.fapiao.dto.response;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 报销提交结果
+ * 出差申请、出差补贴及各组报销申请分别提交，记录每个审批单的提交结果
+ */
+@Data
+public class ReimbursementSubmitResult {
+    /**
+     * 提交单ID，用于查询后台提交进度
+     */
+    private String submissionId;
+
+    /**
+     * 提交单状态：PROCESSING、COMPLETED、PARTIAL_FAILED、FAILED
+     */
+    private String status;
+
+    /**
+     * 报销申请是否全部提交成功（出差申请、出差补贴失败不影响该标志，记录在 failures 中）
+     */
+    private boolean success;
+
+    /**
+     * 提交成功的审批单，按 出差申请、出差补贴、第1组…第N组 的顺序
+     */
+    private List<String> approvalIds = new ArrayList<>();
+
+    /**
+     * 提交失败或被跳过的审批单及原因
+     */
+    private List<String> failures = new ArrayList<>();
+
+    public static ReimbursementSubmitResult failed(String message) {
+        ReimbursementSubmitResult result = new ReimbursementSubmitResult();
+        result.setSuccess(false);
+        result.getFailures().add(message);
+        return result;
+    }
+}
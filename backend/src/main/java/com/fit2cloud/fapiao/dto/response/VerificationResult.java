@@ -1,23 +1,29 @@
 // VerificationResult.java
 package com.fit2cloud.fapiao.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Data
 public class VerificationResult {
     private boolean verified;      // 是否已验证
     private boolean valid;         // 是否有效
-    private String status;         // 状态: SUCCESS, FAILED, ERROR, MISMATCH, SKIP
+    private String status;         // 状态: SUCCESS, FAILED, ERROR, MISMATCH, SKIP, PENDING
     private String message;        // 验证消息
     private Map<String, Object> apiData;  // API原始数据
 
+    @JsonIgnore
+    private boolean cacheable = true;     // 是否可写入验证缓存，由给出结果的提供方决定（回放等模拟结果为false）
+
     // 状态常量
     public static final String STATUS_SUCCESS = "SUCCESS";
     public static final String STATUS_FAILED = "FAILED";
     public static final String STATUS_ERROR = "ERROR";
     public static final String STATUS_MISMATCH = "MISMATCH";
     public static final String STATUS_SKIP = "SKIP";
+    public static final String STATUS_PENDING = "PENDING";
 
     // 静态工厂方法
     public static VerificationResult success(String message) {
@@ -75,4 +81,27 @@ public class VerificationResult {
         result.setMessage(message);
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * 复制一份结果（apiData 复制第一层），缓存中的实例不交给调用方修改
+     */
+    public VerificationResult copy() {
+        VerificationResult copy = new VerificationResult();
+        copy.setVerified(verified);
+        copy.setValid(valid);
+        copy.setStatus(status);
+        copy.setMessage(message);
+        copy.setApiData(apiData != null ? new LinkedHashMap<>(apiData) : null);
+        copy.setCacheable(cacheable);
+        return copy;
+    }
+
+    public static VerificationResult pending(String message) {
+        VerificationResult result = new VerificationResult();
+        result.setVerified(false);
+        result.setValid(true);  // 后台验证完成前暂不影响校验结果
+        result.setStatus(STATUS_PENDING);
+        result.setMessage(message);
+        return result;
+    }
+}
@@ -0,0 +1,13 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * oa/applyevent 响应
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComApplyEventResponse(Integer errcode,
+                                      String errmsg,
+                                      @JsonProperty("sp_no") String spNo) implements WeComResponse {
+}
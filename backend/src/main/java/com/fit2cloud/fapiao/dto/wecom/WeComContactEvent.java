@@ -0,0 +1,110 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通讯录变更回调事件（Event=change_contact）
+ * 成员事件只带有变化的字段，未变化的字段为null；部门事件使用 id、parentId、order、name
+ * 数值字段格式错误时记录日志并按未变化处理，不因单个字段让回调失败（失败会导致企业微信反复重试）
+ *
+ * @param changeType create_user、update_user、delete_user、create_party、update_party、delete_party 等
+ * @param newUserId  update_user 修改了账号时的新账号
+ * @param department 成员所属部门，逗号分隔的部门ID
+ */
+@Slf4j
+public record WeComContactEvent(String changeType,
+                                String userId,
+                                String newUserId,
+                                String name,
+                                List<Integer> department,
+                                Integer mainDepartment,
+                                String position,
+                                String mobile,
+                                String email,
+                                String avatar,
+                                Integer status,
+                                Integer id,
+                                Integer parentId,
+                                Integer order,
+                                Long createTime) {
+
+    public static final String EVENT = "change_contact";
+
+    /**
+     * 从解密后的回调XML字段构建，不是通讯录变更事件时返回null
+     */
+    public static WeComContactEvent from(Map<String, String> xml) {
+        if (!"event".equals(xml.get("MsgType")) || !EVENT.equals(xml.get("Event"))) {
+            return null;
+        }
+        return new WeComContactEvent(xml.get("ChangeType"), text(xml, "UserID"), text(xml, "NewUserID"),
+                text(xml, "Name"), integers(xml.get("Department")), integer(xml, "MainDepartment"),
+                text(xml, "Position"), text(xml, "Mobile"), text(xml, "Email"), text(xml, "Avatar"),
+                integer(xml, "Status"), integer(xml, "Id"), integer(xml, "ParentId"), integer(xml, "Order"),
+                longValue(xml, "CreateTime"));
+    }
+
+    public boolean isUserEvent() {
+        return changeType != null && changeType.endsWith("_user");
+    }
+
+    public boolean isPartyEvent() {
+        return changeType != null && changeType.endsWith("_party");
+    }
+
+    private static String text(Map<String, String> xml, String key) {
+        String value = xml.get(key);
+        return value != null && !value.isEmpty() ? value : null;
+    }
+
+    private static Integer integer(Map<String, String> xml, String key) {
+        String value = text(xml, key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("通讯录变更事件字段格式错误，已忽略: {}={}", key, value);
+            return null;
+        }
+    }
+
+    private static Long longValue(Map<String, String> xml, String key) {
+        String value = text(xml, key);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("通讯录变更事件字段格式错误，已忽略: {}={}", key, value);
+            return null;
+        }
+    }
+
+    /**
+     * 逗号分隔的部门ID，格式错误的部门ID跳过；全部无效时返回null，按部门未变化处理
+     */
+    private static List<Integer> integers(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        List<Integer> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            try {
+                values.add(Integer.valueOf(part.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("通讯录变更事件部门ID格式错误，已忽略: Department={}", value);
+            }
+        }
+        return values.isEmpty() ? null : values;
+    }
+}
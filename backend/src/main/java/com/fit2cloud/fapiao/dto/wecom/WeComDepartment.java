@@ -0,0 +1,38 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * department/list 中的部门
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComDepartment(Integer id,
+                              String name,
+                              @JsonProperty("name_en") String nameEn,
+                              @JsonProperty("department_leader") List<String> departmentLeader,
+                              Integer parentid,
+                              Integer order) {
+
+    /**
+     * 转换为部门缓存使用的Map，键名与企业微信返回的字段一致（未返回的字段不放入）
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", id);
+        map.put("name", name);
+        if (nameEn != null) {
+            map.put("name_en", nameEn);
+        }
+        if (departmentLeader != null) {
+            map.put("department_leader", departmentLeader);
+        }
+        map.put("parentid", parentid);
+        map.put("order", order);
+        return map;
+    }
+}
@@ -0,0 +1,14 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * department/list 响应
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComDepartmentListResponse(Integer errcode,
+                                          String errmsg,
+                                          List<WeComDepartment> department) implements WeComResponse {
+}
@@ -0,0 +1,14 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 网页授权 user/getuserinfo 响应（企业成员返回 UserId，非企业成员返回 OpenId）
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComOAuthUserResponse(Integer errcode,
+                                     String errmsg,
+                                     @JsonProperty("UserId") String userId,
+                                     @JsonProperty("OpenId") String openId) implements WeComResponse {
+}
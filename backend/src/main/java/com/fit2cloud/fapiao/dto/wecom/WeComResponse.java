@@ -0,0 +1,22 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+/**
+ * 企业微信接口响应的公共部分，errcode 为 0 表示调用成功
+ */
+public interface WeComResponse {
+
+    Integer errcode();
+
+    String errmsg();
+
+    default boolean isOk() {
+        return errcode() != null && errcode() == 0;
+    }
+
+    /**
+     * 凭据类字段在 toString 中的写法：只表明有没有值
+     */
+    static String mask(String secret) {
+        return secret == null ? "null" : "******";
+    }
+}
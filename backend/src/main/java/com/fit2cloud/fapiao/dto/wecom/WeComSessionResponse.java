@@ -0,0 +1,27 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 小程序 jscode2session 响应
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComSessionResponse(Integer errcode,
+                                   String errmsg,
+                                   String corpid,
+                                   String userid,
+                                   @JsonProperty("session_key") String sessionKey,
+                                   @JsonProperty("user_ticket") String userTicket,
+                                   @JsonProperty("expires_in") Integer expiresIn) implements WeComResponse {
+
+    /**
+     * 调试日志会输出响应，不输出 session_key 和 user_ticket
+     */
+    @Override
+    public String toString() {
+        return "WeComSessionResponse[errcode=" + errcode + ", errmsg=" + errmsg + ", corpid=" + corpid
+                + ", userid=" + userid + ", sessionKey=" + WeComResponse.mask(sessionKey)
+                + ", userTicket=" + WeComResponse.mask(userTicket) + ", expiresIn=" + expiresIn + "]";
+    }
+}
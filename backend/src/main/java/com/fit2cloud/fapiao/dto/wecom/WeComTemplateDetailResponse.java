@@ -0,0 +1,35 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * oa/gettemplatedetail 响应，只解析控件类型和控件ID（包含表格内的明细控件）
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComTemplateDetailResponse(Integer errcode,
+                                          String errmsg,
+                                          @JsonProperty("template_content") Content templateContent) implements WeComResponse {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Content(List<Control> controls) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Control(Property property, Config config) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Property(String control, String id) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Config(Table table) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Table(List<Control> children) {
+    }
+}
@@ -0,0 +1,23 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * get_jsapi_ticket 响应
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComTicketResponse(Integer errcode,
+                                  String errmsg,
+                                  String ticket,
+                                  @JsonProperty("expires_in") Integer expiresIn) implements WeComResponse {
+
+    /**
+     * 调试日志会输出响应，不输出 ticket
+     */
+    @Override
+    public String toString() {
+        return "WeComTicketResponse[errcode=" + errcode + ", errmsg=" + errmsg
+                + ", ticket=" + WeComResponse.mask(ticket) + ", expiresIn=" + expiresIn + "]";
+    }
+}
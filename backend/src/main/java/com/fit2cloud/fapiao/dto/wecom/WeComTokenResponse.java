@@ -0,0 +1,23 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * gettoken 响应
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComTokenResponse(Integer errcode,
+                                 String errmsg,
+                                 @JsonProperty("access_token") String accessToken,
+                                 @JsonProperty("expires_in") Integer expiresIn) implements WeComResponse {
+
+    /**
+     * 调试日志会输出响应，不输出 access_token
+     */
+    @Override
+    public String toString() {
+        return "WeComTokenResponse[errcode=" + errcode + ", errmsg=" + errmsg
+                + ", accessToken=" + WeComResponse.mask(accessToken) + ", expiresIn=" + expiresIn + "]";
+    }
+}
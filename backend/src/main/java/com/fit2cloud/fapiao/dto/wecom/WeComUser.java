@@ -0,0 +1,24 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * 成员信息，user/get 的响应以及 user/list 中的每个成员
+ * 只保留业务用到的字段，其余字段解析时直接跳过
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComUser(Integer errcode,
+                        String errmsg,
+                        String userid,
+                        String name,
+                        List<Integer> department,
+                        String position,
+                        String mobile,
+                        String email,
+                        String avatar,
+                        Integer status,
+                        @JsonProperty("main_department") Integer mainDepartment) implements WeComResponse {
+}
@@ -0,0 +1,20 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * user/list_id 响应（成员ID与所属部门，按游标分页）
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComUserIdListResponse(Integer errcode,
+                                      String errmsg,
+                                      @JsonProperty("next_cursor") String nextCursor,
+                                      @JsonProperty("dept_user") List<DeptUser> deptUser) implements WeComResponse {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DeptUser(String userid, Integer department) {
+    }
+}
@@ -0,0 +1,14 @@
+package com.fit2cloud.fapiao.dto.wecom;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * user/list 响应
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WeComUserListResponse(Integer errcode,
+                                    String errmsg,
+                                    List<WeComUser> userlist) implements WeComResponse {
+}
@@ -0,0 +1,72 @@
+package com.fit2cloud.fapiao.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 审批发件箱步骤，每个步骤对应一次企业微信审批提交（出差申请、出差补贴、第N组报销申请）
+ * (submission_id, node_id) 唯一，已完成的步骤不会再次提交
+ */
+@Entity
+@Table(name = "approval_outbox_step",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"submission_id", "node_id"}),
+        indexes = @Index(name = "idx_outbox_step_status", columnList = "status, next_attempt_time"))
+@Data
+public class ApprovalOutboxStep {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_SKIPPED = "SKIPPED";
+    // 提交中途进程退出，无法确定企业微信是否已创建审批，需人工核对，不自动重试
+    public static final String STATUS_UNCERTAIN = "UNCERTAIN";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "submission_id", nullable = false, length = 36)
+    private String submissionId;
+
+    @Column(name = "node_id", nullable = false, length = 50)
+    private String nodeId;
+
+    // 依赖的步骤，为空表示无依赖
+    @Column(name = "depends_on", length = 50)
+    private String dependsOn;
+
+    // 为true时依赖步骤未成功则跳过本步骤；为false时依赖步骤最终失败后仍提交（不关联其审批编号）
+    @Column(name = "requires_success")
+    private boolean requiresSuccess;
+
+    // 报销申请分组下标，非分组步骤为空
+    @Column(name = "group_index")
+    private Integer groupIndex;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = STATUS_PENDING;
+
+    @Column(name = "sp_no", length = 64)
+    private String spNo;
+
+    @Column(name = "attempts")
+    private int attempts;
+
+    @Column(name = "next_attempt_time")
+    private LocalDateTime nextAttemptTime = LocalDateTime.now();
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_time", updatable = false)
+    private LocalDateTime createdTime = LocalDateTime.now();
+
+    @Column(name = "updated_time")
+    private LocalDateTime updatedTime = LocalDateTime.now();
+
+    public boolean isTerminal() {
+        return !STATUS_PENDING.equals(status) && !STATUS_IN_PROGRESS.equals(status);
+    }
+}
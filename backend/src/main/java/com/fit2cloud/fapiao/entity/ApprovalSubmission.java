@@ -0,0 +1,49 @@
+package com.fit2cloud.fapiao.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 报销审批提交单（审批发件箱头）
+ * 提交时先落库再由后台提交到企业微信；idempotency_key 由提交人和发票内容计算，
+ * 同一批发票重复提交时返回同一提交单，不会重复创建审批
+ */
+@Entity
+@Table(name = "approval_submission",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"idempotency_key"}))
+@Data
+public class ApprovalSubmission {
+
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_PARTIAL_FAILED = "PARTIAL_FAILED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "idempotency_key", nullable = false, length = 64)
+    private String idempotencyKey;
+
+    @Column(name = "user_id", nullable = false, length = 64)
+    private String userId;
+
+    @Column(name = "form_type", length = 50)
+    private String formType;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = STATUS_PROCESSING;
+
+    // 提交参数（JSON），后台提交及重试时据此重建审批内容
+    @Lob
+    @Column(name = "payload", columnDefinition = "LONGTEXT")
+    private String payload;
+
+    @Column(name = "created_time", updatable = false)
+    private LocalDateTime createdTime = LocalDateTime.now();
+
+    @Column(name = "updated_time")
+    private LocalDateTime updatedTime = LocalDateTime.now();
+}
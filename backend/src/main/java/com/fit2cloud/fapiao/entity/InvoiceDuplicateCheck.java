@@ -25,6 +25,12 @@ public class InvoiceDuplicateCheck {
     @Column(name = "total_amount", precision = 10, scale = 2)
     private BigDecimal totalAmount;
 
+    @Column(name = "seller_name", length = 200)
+    private String sellerName;
+
+    @Column(name = "item_name", length = 500)
+    private String itemName;
+
     @Column(name = "user_id", nullable = false, length = 100)
     private String userId;
 
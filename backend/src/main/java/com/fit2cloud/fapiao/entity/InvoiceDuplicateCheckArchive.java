@@ -0,0 +1,54 @@
+package com.fit2cloud.fapiao.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 发票查重冷数据归档表
+ * 超出热数据窗口的记录由归档任务从 invoice_duplicate_check 迁移至此，保留原始ID
+ */
+@Entity
+@Table(name = "invoice_duplicate_check_archive",
+        indexes = @Index(name = "idx_archive_number_date", columnList = "invoice_number, invoice_date"))
+@Data
+public class InvoiceDuplicateCheckArchive {
+
+    @Id
+    private Long id;
+
+    @Column(name = "invoice_number", nullable = false, length = 50)
+    private String invoiceNumber;
+
+    @Column(name = "invoice_date", nullable = false)
+    private LocalDate invoiceDate;
+
+    @Column(name = "total_amount", precision = 10, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "seller_name", length = 200)
+    private String sellerName;
+
+    @Column(name = "item_name", length = 500)
+    private String itemName;
+
+    @Column(name = "user_id", nullable = false, length = 100)
+    private String userId;
+
+    @Column(name = "submit_time", nullable = false)
+    private LocalDateTime submitTime;
+
+    @Column(name = "status", length = 20)
+    private String status;
+
+    @Column(name = "created_time")
+    private LocalDateTime createdTime;
+
+    @Column(name = "updated_time")
+    private LocalDateTime updatedTime;
+
+    @Column(name = "archived_time")
+    private LocalDateTime archivedTime;
+}
@@ -0,0 +1,54 @@
+package com.fit2cloud.fapiao.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 发票真伪验证结果持久化缓存
+ * 以 (发票号码, 开票日期, 价税合计, 校验码) 为键，仅保存终态结果，避免重复调用付费验证接口
+ */
+@Entity
+@Table(name = "invoice_verification_cache",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"cache_key"}))
+@Data
+public class InvoiceVerificationRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cache_key", nullable = false, length = 200)
+    private String cacheKey;
+
+    @Column(name = "invoice_number", nullable = false, length = 50)
+    private String invoiceNumber;
+
+    @Column(name = "invoice_date", length = 8)
+    private String invoiceDate;
+
+    @Column(name = "total_amount", length = 20)
+    private String totalAmount;
+
+    @Column(name = "check_code", length = 20)
+    private String checkCode;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+
+    @Column(name = "verified")
+    private boolean verified;
+
+    @Column(name = "valid")
+    private boolean valid;
+
+    @Column(name = "message", length = 500)
+    private String message;
+
+    @Lob
+    @Column(name = "api_data", columnDefinition = "TEXT")
+    private String apiData;
+
+    @Column(name = "created_time", updatable = false)
+    private LocalDateTime createdTime = LocalDateTime.now();
+}
@@ -0,0 +1,25 @@
+package com.fit2cloud.fapiao.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 发票真伪验证接口额度使用量
+ * period_key 形如 D20260101（按日）或 M202601（按月），重启后据此恢复已用额度
+ */
+@Entity
+@Table(name = "verification_quota_usage")
+@Data
+public class VerificationQuotaUsage {
+
+    @Id
+    @Column(name = "period_key", length = 20)
+    private String periodKey;
+
+    @Column(name = "used_count", nullable = false)
+    private long usedCount;
+
+    @Column(name = "updated_time")
+    private LocalDateTime updatedTime = LocalDateTime.now();
+}
@@ -0,0 +1,32 @@
+package com.fit2cloud.fapiao.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Web端登录session（qywechat.web-session.store=jdbc 时使用），各实例共用
+ * 由 JdbcWebSessionStore 批量写入，过期的记录定期删除
+ */
+@Entity
+@Table(name = "web_session",
+        indexes = @Index(name = "idx_web_session_expire_time", columnList = "expire_time"))
+@Data
+public class WebSessionRecord {
+
+    @Id
+    @Column(name = "session_key", length = 64)
+    private String sessionKey;
+
+    @Column(name = "user_id", length = 64)
+    private String userId;
+
+    @Column(name = "user_name", length = 100)
+    private String userName;
+
+    @Column(name = "create_time", nullable = false)
+    private LocalDateTime createTime;
+
+    @Column(name = "expire_time", nullable = false)
+    private LocalDateTime expireTime;
+}
@@ -0,0 +1,49 @@
+package com.fit2cloud.fapiao.exception;
+
+/**
+ * 企业微信接口返回非0错误码，或请求发出后未能取得有效响应（网络异常、超时、响应为空或无法解析）
+ * 后一种情况 errcode 为 -1 且 isOutcomeUnknown() 为 true：请求可能已被企业微信处理，
+ * 对非幂等接口（如 oa/applyevent）不能直接重试。
+ */
+public class WeComApiException extends BusinessException {
+
+    private final String api;
+    private final int errcode;
+    private final String errmsg;
+    private final boolean outcomeUnknown;
+
+    public WeComApiException(String api, int errcode, String errmsg) {
+        super(String.valueOf(errcode), api + " 调用失败, errcode: " + errcode + ", errmsg: " + errmsg);
+        this.api = api;
+        this.errcode = errcode;
+        this.errmsg = errmsg;
+        this.outcomeUnknown = false;
+    }
+
+    public WeComApiException(String api, String errmsg, Throwable cause) {
+        super("-1", api + " 调用失败: " + errmsg, cause);
+        this.api = api;
+        this.errcode = -1;
+        this.errmsg = errmsg;
+        this.outcomeUnknown = true;
+    }
+
+    public String getApi() {
+        return api;
+    }
+
+    public int getErrcode() {
+        return errcode;
+    }
+
+    public String getErrmsg() {
+        return errmsg;
+    }
+
+    /**
+     * 请求已发出但没有拿到企业微信的明确结果
+     */
+    public boolean isOutcomeUnknown() {
+        return outcomeUnknown;
+    }
+}
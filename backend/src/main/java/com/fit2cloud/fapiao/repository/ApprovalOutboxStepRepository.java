@@ -0,0 +1,49 @@
+package com.fit2cloud.fapiao.repository;
+
+import com.fit2cloud.fapiao.entity.ApprovalOutboxStep;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ApprovalOutboxStepRepository extends JpaRepository<ApprovalOutboxStep, Long> {
+
+    List<ApprovalOutboxStep> findBySubmissionIdOrderByIdAsc(String submissionId);
+
+    /**
+     * 有到期待提交步骤的提交单
+     */
+    @Query("SELECT DISTINCT s.submissionId FROM ApprovalOutboxStep s " +
+            "WHERE s.status = 'PENDING' AND s.nextAttemptTime <= :now")
+    List<String> findDueSubmissionIds(@Param("now") LocalDateTime now);
+
+    /**
+     * 提交中超时的步骤（进程在提交过程中退出）
+     */
+    @Query("SELECT s FROM ApprovalOutboxStep s WHERE s.status = 'IN_PROGRESS' AND s.updatedTime < :cutoff")
+    List<ApprovalOutboxStep> findStaleInProgress(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * 认领待提交步骤，多实例部署时只有一个实例能认领成功
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ApprovalOutboxStep s SET s.status = 'IN_PROGRESS', s.updatedTime = :now " +
+            "WHERE s.id = :id AND s.status = 'PENDING'")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * 删除提交单中未提交到企业微信的步骤（待提交、失败、被跳过）
+     * 与认领在同一行上加锁，被其它实例认领的步骤不会被删除
+     */
+    @Modifying
+    @Query("DELETE FROM ApprovalOutboxStep s WHERE s.submissionId = :submissionId " +
+            "AND s.status IN ('PENDING', 'FAILED', 'SKIPPED')")
+    int deleteUnsubmitted(@Param("submissionId") String submissionId);
+}
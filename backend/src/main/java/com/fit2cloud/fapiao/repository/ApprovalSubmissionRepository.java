@@ -0,0 +1,13 @@
+package com.fit2cloud.fapiao.repository;
+
+import com.fit2cloud.fapiao.entity.ApprovalSubmission;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ApprovalSubmissionRepository extends JpaRepository<ApprovalSubmission, String> {
+
+    Optional<ApprovalSubmission> findByIdempotencyKey(String idempotencyKey);
+}
@@ -0,0 +1,36 @@
+package com.fit2cloud.fapiao.repository;
+
+import com.fit2cloud.fapiao.entity.InvoiceDuplicateCheckArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Repository
+public interface InvoiceDuplicateCheckArchiveRepository extends JpaRepository<InvoiceDuplicateCheckArchive, Long> {
+
+    /**
+     * 冷数据查重：检查归档表中是否存在相同发票号码和开票日期的记录
+     */
+    @Query("SELECT COUNT(i) > 0 FROM InvoiceDuplicateCheckArchive i WHERE i.invoiceNumber = :invoiceNumber AND i.invoiceDate = :invoiceDate AND i.status != 'REJECTED'")
+    boolean existsByInvoiceNumberAndInvoiceDate(@Param("invoiceNumber") String invoiceNumber,
+                                                @Param("invoiceDate") LocalDate invoiceDate);
+
+    /**
+     * 冷数据查重（NORMAL策略）：相同发票号码且金额相近
+     */
+    @Query("SELECT COUNT(i) > 0 FROM InvoiceDuplicateCheckArchive i WHERE i.invoiceNumber = :invoiceNumber AND ABS(i.totalAmount - :totalAmount) < 0.01 AND i.status != 'REJECTED'")
+    boolean existsByInvoiceNumberAndSimilarAmount(@Param("invoiceNumber") String invoiceNumber,
+                                                  @Param("totalAmount") BigDecimal totalAmount);
+
+    /**
+     * 冷数据查重（USER策略）：同一用户的相同发票号码和开票日期
+     */
+    @Query("SELECT COUNT(i) > 0 FROM InvoiceDuplicateCheckArchive i WHERE i.invoiceNumber = :invoiceNumber AND i.invoiceDate = :invoiceDate AND i.userId = :userId AND i.status != 'REJECTED'")
+    boolean existsByInvoiceNumberAndInvoiceDateAndUserId(@Param("invoiceNumber") String invoiceNumber,
+                                                         @Param("invoiceDate") LocalDate invoiceDate,
+                                                         @Param("userId") String userId);
+}
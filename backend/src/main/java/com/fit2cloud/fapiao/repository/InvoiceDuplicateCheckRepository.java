@@ -1,8 +1,12 @@
 package com.fit2cloud.fapiao.repository;
 
 import com.fit2cloud.fapiao.entity.InvoiceDuplicateCheck;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -10,6 +14,7 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface InvoiceDuplicateCheckRepository extends JpaRepository<InvoiceDuplicateCheck, Long> {
@@ -22,11 +27,13 @@ public interface InvoiceDuplicateCheckRepository extends JpaRepository<InvoiceDu
                                                 @Param("invoiceDate") LocalDate invoiceDate);
 
     /**
-     * 宽松查重：检查是否存在相同发票号码和近似金额的记录
+     * 宽松查重：检查热数据窗口内是否存在相同发票号码和近似金额的记录
+     * 限定开票日期下界，使分区表只扫描热分区
      */
-    @Query("SELECT COUNT(i) > 0 FROM InvoiceDuplicateCheck i WHERE i.invoiceNumber = :invoiceNumber AND ABS(i.totalAmount - :totalAmount) < 0.01 AND i.status != 'REJECTED'")
+    @Query("SELECT COUNT(i) > 0 FROM InvoiceDuplicateCheck i WHERE i.invoiceNumber = :invoiceNumber AND ABS(i.totalAmount - :totalAmount) < 0.01 AND i.invoiceDate >= :hotSince AND i.status != 'REJECTED'")
     boolean existsByInvoiceNumberAndSimilarAmount(@Param("invoiceNumber") String invoiceNumber,
-                                                  @Param("totalAmount") BigDecimal totalAmount);
+                                                  @Param("totalAmount") BigDecimal totalAmount,
+                                                  @Param("hotSince") LocalDate hotSince);
 
     /**
      * 用户维度查重：检查同一用户是否重复提交相同发票
@@ -45,4 +52,34 @@ public interface InvoiceDuplicateCheckRepository extends JpaRepository<InvoiceDu
      * 根据用户ID查找记录
      */
     List<InvoiceDuplicateCheck> findByUserIdOrderBySubmitTimeDesc(String userId);
-}
\ No newline at end of file
+
+    /**
+     * 流式扫描热数据窗口内的有效记录（用于重建近似查重索引，需在事务中调用）
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT i FROM InvoiceDuplicateCheck i WHERE i.invoiceDate >= :hotSince AND i.status != 'REJECTED'")
+    Stream<InvoiceDuplicateCheck> streamAllActive(@Param("hotSince") LocalDate hotSince);
+
+    /**
+     * 查找开票日期早于截止日期的记录ID（用于分批归档）
+     */
+    @Query("SELECT i.id FROM InvoiceDuplicateCheck i WHERE i.invoiceDate < :cutoff ORDER BY i.invoiceDate")
+    List<Long> findIdsByInvoiceDateBefore(@Param("cutoff") LocalDate cutoff, Pageable pageable);
+
+    /**
+     * 将指定记录复制到归档表
+     */
+    @Modifying
+    @Query(value = "INSERT INTO invoice_duplicate_check_archive " +
+            "(id, invoice_number, invoice_date, total_amount, seller_name, item_name, user_id, submit_time, status, created_time, updated_time, archived_time) " +
+            "SELECT id, invoice_number, invoice_date, total_amount, seller_name, item_name, user_id, submit_time, status, created_time, updated_time, NOW() " +
+            "FROM invoice_duplicate_check WHERE id IN (:ids)", nativeQuery = true)
+    int copyToArchive(@Param("ids") List<Long> ids);
+
+    /**
+     * 批量删除已归档的记录
+     */
+    @Modifying
+    @Query("DELETE FROM InvoiceDuplicateCheck i WHERE i.id IN :ids")
+    int deleteByIdIn(@Param("ids") List<Long> ids);
+}
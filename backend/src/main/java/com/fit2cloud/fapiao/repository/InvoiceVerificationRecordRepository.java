@@ -0,0 +1,16 @@
+package com.fit2cloud.fapiao.repository;
+
+import com.fit2cloud.fapiao.entity.InvoiceVerificationRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface InvoiceVerificationRecordRepository extends JpaRepository<InvoiceVerificationRecord, Long> {
+
+    /**
+     * 根据缓存键查找验证结果
+     */
+    Optional<InvoiceVerificationRecord> findByCacheKey(String cacheKey);
+}
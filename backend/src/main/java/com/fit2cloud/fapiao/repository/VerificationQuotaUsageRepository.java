@@ -0,0 +1,31 @@
+package com.fit2cloud.fapiao.repository;
+
+import com.fit2cloud.fapiao.entity.VerificationQuotaUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface VerificationQuotaUsageRepository extends JpaRepository<VerificationQuotaUsage, String> {
+
+    /**
+     * 已用额度小于 limit 时原子加1，返回1表示预留成功，0表示额度已用完或周期记录不存在
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE verification_quota_usage SET used_count = used_count + 1, updated_time = NOW() " +
+            "WHERE period_key = :periodKey AND used_count < :limit", nativeQuery = true)
+    int incrementIfBelow(@Param("periodKey") String periodKey, @Param("limit") long limit);
+
+    /**
+     * 创建周期记录（已存在时忽略），各实例并发创建也只会有一条
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO verification_quota_usage (period_key, used_count, updated_time) " +
+            "VALUES (:periodKey, 0, NOW())", nativeQuery = true)
+    int createIfAbsent(@Param("periodKey") String periodKey);
+}
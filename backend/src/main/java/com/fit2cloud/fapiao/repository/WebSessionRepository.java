@@ -0,0 +1,23 @@
+package com.fit2cloud.fapiao.repository;
+
+import com.fit2cloud.fapiao.entity.WebSessionRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface WebSessionRepository extends JpaRepository<WebSessionRecord, String> {
+
+    /**
+     * 删除已过期的session
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM WebSessionRecord s WHERE s.expireTime <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
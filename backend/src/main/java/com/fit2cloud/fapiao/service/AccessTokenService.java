@@ -1,16 +1,36 @@
 package com.fit2cloud.fapiao.service;
 
+import com.fit2cloud.fapiao.dto.wecom.WeComTicketResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComTokenResponse;
 import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import com.fit2cloud.fapiao.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * 企业微信 access_token 与 jsapi_ticket 统一管理
+ * 按 corpid + secret 缓存，不同用途使用同一个 secret 时共用一个 token；
+ * 缓存未命中时同一个 token 只有一个线程调用接口，其余线程等待共用结果；
+ * 定时任务在 token 过期前（qywechat.token.refresh-ahead-seconds）于后台重新获取，请求线程通常不会遇到过期；
+ * 企业微信在有效期内重复获取会返回同一个 token，此时保留原来的过期时间，不算作刷新成功，也不再重复获取，过期后才会拿到新 token；
+ * 接口返回 access_token 无效或已过期（40014、42001）时清除对应缓存，下次使用时重新获取；
+ * 获取到的 token 保存到本地（AccessTokenStore），重启后继续使用，不重复消耗 gettoken 的调用次数。
+ */
 @Service
 @Slf4j
 public class AccessTokenService {
@@ -27,89 +47,141 @@ public class AccessTokenService {
     @Value("${qywechat.address-book-secret:}")
     private String addressBookSecret;
 
-    private final RestTemplate restTemplate;
+    // 距过期不足该时间时由后台重新获取
+    @Value("${qywechat.token.refresh-ahead-seconds:600}")
+    private long refreshAheadSeconds;
 
-    // 使用不同的token缓存，按secret类型区分
-    private final Map<String, TokenInfo> tokenCache = new ConcurrentHashMap<>();
+    private final WeComApiClient weComApiClient;
+    private final AccessTokenStore tokenStore;
 
-    // Token信息类
-    private static class TokenInfo {
-        String token;
-        long expireTime;
+    // 缓存键 -> token，条目在 token 过期时失效
+    private final Cache<String, TokenInfo> tokenCache;
 
-        TokenInfo(String token, long expireTime) {
-            this.token = token;
-            this.expireTime = expireTime;
-        }
+    // 缓存键 -> 获取方式，首次使用或从本地读回时登记，后台刷新按登记的方式重新获取
+    private final Map<String, Credential> credentials = new ConcurrentHashMap<>();
 
-        boolean isValid() {
-            return token != null && System.currentTimeMillis() < expireTime - 5 * 60 * 1000; // 提前5分钟刷新
-        }
+    // 缓存键 -> 后台刷新时企业微信仍返回原值的 token，在它过期前不再后台刷新
+    private final Map<String, String> unchangedTokens = new ConcurrentHashMap<>();
+
+    // secret -> 缓存键，避免每次请求都计算摘要
+    private final Map<String, String> keysBySecret = new ConcurrentHashMap<>();
+
+    private final SingleFlight<String, TokenInfo> singleFlight = new SingleFlight<>();
+
+    private final AtomicLong backgroundRefreshCount = new AtomicLong();
+    private final AtomicLong unchangedRefreshCount = new AtomicLong();
+    private final AtomicLong invalidatedCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+
+    // Token信息
+    private record TokenInfo(String token, long expireTime, int expiresIn) {
+    }
+
+    /**
+     * token 的获取方式
+     *
+     * @param kind  access_token 或 jsapi_ticket
+     * @param types 使用该 token 的类型（agent、approval 等），用于状态展示和按类型清除
+     */
+    private record Credential(String kind, Supplier<TokenInfo> fetcher, Set<String> types) {
     }
 
-    public AccessTokenService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public AccessTokenService(WeComApiClient weComApiClient, LocalCacheRegistry cacheRegistry,
+                              AccessTokenStore tokenStore) {
+        this.weComApiClient = weComApiClient;
+        this.tokenStore = tokenStore;
+        this.tokenCache = cacheRegistry.cache("accessTokens", 16, new TokenExpiry(), "expires_in");
+
+        // 读回上次保存的token（只含未过期的），对应的获取方式在配置注入后登记
+        for (AccessTokenStore.Entry entry : tokenStore.load()) {
+            tokenCache.put(entry.key(), new TokenInfo(entry.token(), entry.expireTime(), entry.expiresIn()));
+        }
+        weComApiClient.addInvalidTokenListener(this::invalidateToken);
     }
 
     /**
-     * 获取指定类型的access_token
+     * 为从本地读回的token登记获取方式，使其同样在过期前由后台刷新
+     * 读回的条目只有缓存键（secret 的摘要），按当前配置的各个 secret 计算缓存键逐一对应；
+     * 对应不上的（secret 已更换）不登记，到期后自然失效
      */
-    public String getAccessToken(String tokenType, String secret) {
-        if (secret == null || secret.trim().isEmpty()) {
-            throw new BusinessException("未配置" + tokenType + "对应的secret");
+    @PostConstruct
+    public void registerRestoredTokens() {
+        if (tokenCache.estimatedSize() == 0) {
+            return;
         }
+        List<String> registered = new ArrayList<>();
+        registerIfRestored(registered, "agent", agentSecret);
+        registerIfRestored(registered, "approval", resolveApprovalSecret());
+        registerIfRestored(registered, "addressBook", addressBookSecret);
+        String ticketKey = jsapiTicketKey();
+        if (tokenCache.getIfPresent(ticketKey) != null) {
+            registerJsapiTicket(ticketKey);
+            registered.add("jsapi");
+        }
+        log.info("本地读回的token已登记后台刷新: {}", registered);
+    }
 
-        // 检查缓存中是否有有效的token
-        TokenInfo tokenInfo = tokenCache.get(tokenType);
-        if (tokenInfo != null && tokenInfo.isValid()) {
-            return tokenInfo.token;
+    private void registerIfRestored(List<String> registered, String tokenType, String secret) {
+        if (secret == null || secret.trim().isEmpty()) {
+            return;
+        }
+        String key = accessTokenKey(secret);
+        if (tokenCache.getIfPresent(key) != null) {
+            registerAccessToken(key, tokenType, secret);
+            registered.add(tokenType);
         }
+    }
 
-        try {
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/gettoken?corpid={corpid}&corpsecret={secret}";
+    /**
+     * 条目在 token 自身过期时失效，读取不延长有效期
+     * 不提前失效：有效期内重新获取只会拿到同一个 token，提前失效只会让每次请求都去调用接口
+     */
+    private static class TokenExpiry implements Expiry<String, TokenInfo> {
 
-            Map<String, String> params = new HashMap<>();
-            params.put("corpid", corpid);
-            params.put("secret", secret);
+        @Override
+        public long expireAfterCreate(String key, TokenInfo info, long currentTime) {
+            long remaining = info.expireTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+        }
 
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class, params);
+        @Override
+        public long expireAfterUpdate(String key, TokenInfo info, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, info, currentTime);
+        }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
+        @Override
+        public long expireAfterRead(String key, TokenInfo info, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 
-                if (errcode != null && errcode == 0) {
-                    String token = (String) responseBody.get("access_token");
-                    Integer expiresIn = (Integer) responseBody.get("expires_in");
-                    long expireTime = System.currentTimeMillis() + expiresIn * 1000L;
+    /**
+     * 获取指定类型的access_token
+     */
+    public String getAccessToken(String tokenType, String secret) {
+        if (secret == null || secret.trim().isEmpty()) {
+            throw new BusinessException("未配置" + tokenType + "对应的secret");
+        }
 
-                    // 更新缓存
-                    tokenCache.put(tokenType, new TokenInfo(token, expireTime));
+        String key = accessTokenKey(secret);
+        registerAccessToken(key, tokenType, secret);
+        return get(key).token();
+    }
 
-                    log.info("获取 {} access_token成功, 有效期: {}秒", tokenType, expiresIn);
-                    return token;
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("获取 {} access_token失败: {}", tokenType, errmsg);
-                    throw new BusinessException("获取access_token失败: " + errmsg);
-                }
-            } else {
-                throw new BusinessException("获取access_token请求失败");
-            }
-        } catch (Exception e) {
-            log.error("获取 {} access_token异常", tokenType, e);
-            throw new BusinessException("获取access_token异常: " + e.getMessage());
-        }
+    /**
+     * 获取jsapi_ticket（使用审批流程的access_token），与access_token一样缓存和提前刷新
+     */
+    public String getJsapiTicket() {
+        String key = jsapiTicketKey();
+        registerJsapiTicket(key);
+        return get(key).token();
     }
 
     /**
      * 专门为审批流程获取access_token（使用审批secret）
      */
     public String getAccessTokenForApproval() {
-        // 如果没有单独配置审批secret，则使用agentSecret
-        String secret = approvalSecret != null && !approvalSecret.trim().isEmpty()
-                ? approvalSecret : agentSecret;
-        return getAccessToken("approval", secret);
+        return getAccessToken("approval", resolveApprovalSecret());
     }
 
     /**
@@ -138,18 +210,68 @@ public class AccessTokenService {
     }
 
     /**
-     * 清除指定类型的token缓存
+     * 后台刷新即将过期的token
+     * 企业微信返回原 token 时不算刷新成功，该 token 过期前不再重复获取；
+     * 刷新失败时保留原token直到过期，之后由请求线程（或下一次检查）重新获取
+     */
+    @Scheduled(fixedDelayString = "${qywechat.token.check-interval-ms:60000}")
+    public void refreshExpiringTokens() {
+        long refreshBefore = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(refreshAheadSeconds);
+        for (Map.Entry<String, Credential> entry : credentials.entrySet()) {
+            String key = entry.getKey();
+            TokenInfo info = tokenCache.getIfPresent(key);
+            if (info != null && (info.expireTime() > refreshBefore || info.token().equals(unchangedTokens.get(key)))) {
+                continue;
+            }
+            try {
+                TokenInfo refreshed = singleFlight.execute(key, () -> load(key));
+                if (info != null && refreshed.token().equals(info.token())) {
+                    unchangedTokens.put(key, info.token());
+                    unchangedRefreshCount.incrementAndGet();
+                    log.info("后台刷新 {} {}: 企业微信返回了原token，{}秒后过期时再获取",
+                            entry.getValue().kind(), entry.getValue().types(),
+                            (refreshed.expireTime() - System.currentTimeMillis()) / 1000);
+                } else {
+                    unchangedTokens.remove(key);
+                    backgroundRefreshCount.incrementAndGet();
+                }
+            } catch (Exception e) {
+                refreshFailureCount.incrementAndGet();
+                log.warn("后台刷新 {} {} 失败: {}", entry.getValue().kind(), entry.getValue().types(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 清除指定类型的token缓存（与其共用同一个secret的类型一并清除）
      */
     public void clearTokenCache(String tokenType) {
-        tokenCache.remove(tokenType);
+        credentials.forEach((key, credential) -> {
+            if (credential.types().contains(tokenType)) {
+                tokenCache.invalidate(key);
+            }
+        });
+        persist();
         log.info("已清除 {} token缓存", tokenType);
     }
 
+    /**
+     * 清除值为该 token 的缓存（企业微信返回 40014、42001 时由 WeComApiClient 调用）
+     */
+    public void invalidateToken(String token) {
+        if (tokenCache.asMap().values().removeIf(info -> info.token().equals(token))) {
+            invalidatedCount.incrementAndGet();
+            persist();
+            log.warn("企业微信返回access_token无效或已过期，已清除缓存，下次使用时重新获取");
+        }
+    }
+
     /**
      * 清除所有token缓存
      */
     public void clearAllTokenCache() {
-        tokenCache.clear();
+        tokenCache.invalidateAll();
+        persist();
         log.info("已清除所有token缓存");
     }
 
@@ -157,18 +279,142 @@ public class AccessTokenService {
      * 获取token缓存状态
      */
     public Map<String, Object> getTokenCacheStatus() {
-        Map<String, Object> status = new HashMap<>();
-        for (Map.Entry<String, TokenInfo> entry : tokenCache.entrySet()) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> tokens = new HashMap<>();
+        credentials.forEach((key, credential) -> {
+            TokenInfo info = tokenCache.getIfPresent(key);
             Map<String, Object> tokenStatus = new HashMap<>();
-            tokenStatus.put("hasToken", entry.getValue() != null);
-            if (entry.getValue() != null) {
-                long age = System.currentTimeMillis() - (entry.getValue().expireTime - 7200 * 1000L);
-                tokenStatus.put("tokenAge", age / 1000 + "秒");
-                tokenStatus.put("expiresIn", (entry.getValue().expireTime - System.currentTimeMillis()) / 1000 + "秒");
-                tokenStatus.put("isValid", entry.getValue().isValid());
+            tokenStatus.put("kind", credential.kind());
+            tokenStatus.put("hasToken", info != null);
+            if (info != null) {
+                tokenStatus.put("tokenAge", (now - (info.expireTime() - info.expiresIn() * 1000L)) / 1000 + "秒");
+                tokenStatus.put("expiresIn", (info.expireTime() - now) / 1000 + "秒");
             }
-            status.put(entry.getKey(), tokenStatus);
-        }
+            tokenStatus.put("isValid", info != null && now < info.expireTime());
+            for (String type : credential.types()) {
+                tokens.put(type, tokenStatus);
+            }
+        });
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("tokens", tokens);
+        status.put("fetches", singleFlight.executions());
+        status.put("sharedWaits", singleFlight.shared());
+        status.put("backgroundRefreshes", backgroundRefreshCount.get());
+        status.put("unchangedRefreshes", unchangedRefreshCount.get());
+        status.put("refreshFailures", refreshFailureCount.get());
+        status.put("invalidated", invalidatedCount.get());
+        status.put("store", tokenStore.getStatus());
         return status;
     }
+
+    /**
+     * 读取缓存，未命中时合并并发请求只获取一次
+     */
+    private TokenInfo get(String key) {
+        TokenInfo info = tokenCache.getIfPresent(key);
+        if (info != null) {
+            return info;
+        }
+        return singleFlight.execute(key, () -> {
+            // 上一次获取可能刚刚完成
+            TokenInfo cached = tokenCache.getIfPresent(key);
+            return cached != null ? cached : load(key);
+        });
+    }
+
+    /**
+     * 重新获取并写入缓存
+     * 返回的 token 与缓存中的相同时（有效期内重复获取），expires_in 不代表剩余时间，保留原来的过期时间
+     */
+    private TokenInfo load(String key) {
+        TokenInfo previous = tokenCache.getIfPresent(key);
+        TokenInfo info = credentials.get(key).fetcher().get();
+        if (previous != null && previous.token().equals(info.token()) && previous.expireTime() < info.expireTime()) {
+            info = previous;
+        }
+        tokenCache.put(key, info);
+        persist();
+        return info;
+    }
+
+    private TokenInfo fetchAccessToken(String secret) {
+        try {
+            Map<String, Object> query = new LinkedHashMap<>();
+            query.put("corpid", corpid);
+            query.put("corpsecret", secret);
+
+            WeComTokenResponse response = weComApiClient.get("gettoken", query, WeComTokenResponse.class);
+
+            int expiresIn = response.expiresIn() != null ? response.expiresIn() : 7200;
+            log.info("获取access_token成功, 有效期: {}秒", expiresIn);
+            return new TokenInfo(response.accessToken(), System.currentTimeMillis() + expiresIn * 1000L, expiresIn);
+        } catch (WeComApiException e) {
+            log.error("获取access_token失败: {}", e.getMessage());
+            throw new BusinessException(e.getErrorCode(), "获取access_token失败: " + e.getErrmsg(), e);
+        } catch (Exception e) {
+            log.error("获取access_token异常", e);
+            throw new BusinessException("获取access_token异常: " + e.getMessage());
+        }
+    }
+
+    private TokenInfo fetchJsapiTicket() {
+        String accessToken = getAccessTokenForApproval();
+        try {
+            WeComTicketResponse response = weComApiClient.get("get_jsapi_ticket",
+                    Map.of("access_token", accessToken), WeComTicketResponse.class);
+
+            int expiresIn = response.expiresIn() != null ? response.expiresIn() : 7200;
+            log.info("获取jsapi_ticket成功, 有效期: {}秒", expiresIn);
+            return new TokenInfo(response.ticket(), System.currentTimeMillis() + expiresIn * 1000L, expiresIn);
+        } catch (WeComApiException e) {
+            log.error("获取jsapi_ticket失败, errcode: {}, errmsg: {}", e.getErrcode(), e.getErrmsg());
+            throw new BusinessException(e.getErrorCode(), "获取jsapi_ticket失败: " + e.getErrmsg(), e);
+        } catch (Exception e) {
+            log.error("获取jsapi_ticket异常", e);
+            throw new BusinessException("获取jsapi_ticket异常: " + e.getMessage());
+        }
+    }
+
+    private void persist() {
+        List<AccessTokenStore.Entry> entries = new ArrayList<>();
+        tokenCache.asMap().forEach((key, info) ->
+                entries.add(new AccessTokenStore.Entry(key, info.token(), info.expireTime(), info.expiresIn())));
+        tokenStore.save(entries);
+    }
+
+    private void registerAccessToken(String key, String tokenType, String secret) {
+        credentials.computeIfAbsent(key, k -> new Credential("access_token",
+                () -> fetchAccessToken(secret), ConcurrentHashMap.newKeySet())).types().add(tokenType);
+    }
+
+    private void registerJsapiTicket(String key) {
+        credentials.computeIfAbsent(key, k -> new Credential("jsapi_ticket",
+                this::fetchJsapiTicket, ConcurrentHashMap.newKeySet())).types().add("jsapi");
+    }
+
+    private String accessTokenKey(String secret) {
+        return keysBySecret.computeIfAbsent(secret, s -> "access_token:" + digest(corpid + ":" + s));
+    }
+
+    private String jsapiTicketKey() {
+        return "jsapi_ticket:" + digest(corpid + ":" + resolveApprovalSecret());
+    }
+
+    // 如果没有单独配置审批secret，则使用agentSecret
+    private String resolveApprovalSecret() {
+        return approvalSecret != null && !approvalSecret.trim().isEmpty() ? approvalSecret : agentSecret;
+    }
+
+    /**
+     * 缓存键和本地文件中只保存secret的摘要
+     */
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
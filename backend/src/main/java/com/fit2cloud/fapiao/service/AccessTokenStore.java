@@ -0,0 +1,155 @@
+package com.fit2cloud.fapiao.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+/**
+ * access_token / jsapi_ticket 本地保存
+ * 每次获取到新的 token 后整体写入本地文件，重启时读回仍在有效期内的条目，
+ * 不必在启动后重新调用 gettoken（该接口每天有调用次数限制）。
+ * 文件中只有缓存键（corpid 与 secret 的摘要）和 token，不含 secret；支持时文件权限设为仅所有者可读写。
+ * <p>
+ * 文件格式：魔数(4) + 格式版本(4) + 条目数(4)，每个条目为 缓存键(UTF) + token(UTF) + 过期时间(8) + 有效期秒数(4)。
+ * 魔数或版本不符、内容不完整的文件直接忽略，下次保存时覆盖。
+ */
+@Service
+@Slf4j
+public class AccessTokenStore {
+
+    private static final int MAGIC = 0x4650544B; // "FPTK"
+    private static final int FORMAT_VERSION = 1;
+
+    @Value("${qywechat.token.store.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qywechat.token.store.path:data/wecom-tokens.bin}")
+    private String path;
+
+    private volatile long lastSavedAt;
+    private volatile String lastError;
+
+    /**
+     * 保存的条目
+     *
+     * @param expireTime 过期时间（毫秒时间戳）
+     */
+    public record Entry(String key, String token, long expireTime, int expiresIn) {
+    }
+
+    /**
+     * 整体保存，先写临时文件再替换，保存失败只记录日志
+     */
+    public synchronized void save(Collection<Entry> entries) {
+        if (!enabled) {
+            return;
+        }
+
+        Path file = Paths.get(path);
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(tmp);
+            createOwnerOnly(tmp);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeUTF(entry.key());
+                    out.writeUTF(entry.token());
+                    out.writeLong(entry.expireTime());
+                    out.writeInt(entry.expiresIn());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            lastSavedAt = System.currentTimeMillis();
+            lastError = null;
+            log.debug("已保存 {} 个token到本地: {}", entries.size(), file);
+        } catch (Exception e) {
+            lastError = "保存失败: " + e.getMessage();
+            log.warn("保存token到本地失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取仍在有效期内的条目，文件不存在或无法识别时返回空列表
+     */
+    public List<Entry> load() {
+        if (!enabled) {
+            return List.of();
+        }
+
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            return List.of();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return discard(file, "格式不兼容");
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                return discard(file, "内容已损坏");
+            }
+            long now = System.currentTimeMillis();
+            List<Entry> entries = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readLong(), in.readInt());
+                if (entry.expireTime() > now) {
+                    entries.add(entry);
+                }
+            }
+            log.info("已从本地读取 {} 个未过期的token: {}", entries.size(), file);
+            return entries;
+        } catch (EOFException | UTFDataFormatException e) {
+            return discard(file, "内容不完整");
+        } catch (IOException e) {
+            lastError = "读取失败: " + e.getMessage();
+            log.warn("读取本地token失败: {}, {}", file, e.getMessage());
+            return List.of();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("path", path);
+        status.put("lastSavedAt", lastSavedAt);
+        if (lastError != null) {
+            status.put("lastError", lastError);
+        }
+        return status;
+    }
+
+    private List<Entry> discard(Path file, String reason) {
+        lastError = "已忽略: " + reason;
+        log.warn("忽略本地token文件 {}: {}", file, reason);
+        return List.of();
+    }
+
+    /**
+     * 创建仅所有者可读写的文件，不支持 POSIX 权限的文件系统按默认权限创建
+     */
+    private static void createOwnerOnly(Path file) throws IOException {
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+        }
+    }
+}
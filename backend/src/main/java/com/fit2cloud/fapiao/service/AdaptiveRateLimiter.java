@@ -0,0 +1,73 @@
+package com.fit2cloud.fapiao.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应限流：调用按当前速率平滑排队，速率在 [minQps, maxPerMinute / 60] 之间调整
+ * 调用成功时逐步加速，遇到频率限制时速率减半并暂停一段时间，
+ * 速率上限按每分钟调用上限换算，排队间隔保证任意一分钟内的调用数不超过该上限
+ */
+final class AdaptiveRateLimiter {
+
+    private final double minQps;
+    private final double maxQps;
+    private final double increaseStep;
+    private final long backoffNanos;
+
+    private double qps;
+    // 下一个可用调用时刻
+    private long nextFreeNanos = System.nanoTime();
+    private long throttledCount;
+
+    AdaptiveRateLimiter(double initialQps, int maxPerMinute, long backoffMs) {
+        this.maxQps = Math.max(maxPerMinute, 1) / 60.0;
+        this.minQps = Math.min(1, maxQps);
+        this.increaseStep = maxQps / 20;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMs);
+        this.qps = Math.max(minQps, Math.min(initialQps, maxQps));
+    }
+
+    /**
+     * 排队等待一个调用时刻
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFreeNanos);
+            nextFreeNanos = slot + (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 调用成功，逐步加速
+     */
+    synchronized void onSuccess() {
+        qps = Math.min(maxQps, qps + increaseStep);
+    }
+
+    /**
+     * 遇到频率限制，速率减半，并在退避时间内不再放行新的调用
+     */
+    synchronized void onThrottled() {
+        qps = Math.max(minQps, qps / 2);
+        nextFreeNanos = Math.max(nextFreeNanos, System.nanoTime() + backoffNanos);
+        throttledCount++;
+    }
+
+    synchronized double currentQps() {
+        return qps;
+    }
+
+    double maxQps() {
+        return maxQps;
+    }
+
+    synchronized long throttledCount() {
+        return throttledCount;
+    }
+}
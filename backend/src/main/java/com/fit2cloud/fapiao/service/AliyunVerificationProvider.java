@@ -0,0 +1,156 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.*;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * 阿里云云市场发票验真接口
+ */
+@Service
+@Slf4j
+public class AliyunVerificationProvider implements VerificationProvider {
+
+    public static final String NAME = "aliyun";
+
+    @Value("${invoice.verification.api.host:https://fapiao.market.alicloudapi.com}")
+    private String apiHost;
+
+    @Value("${invoice.verification.api.path:/v2/invoice/query}")
+    private String apiPath;
+
+    @Value("${invoice.verification.appcode:}")
+    private String appCode;
+
+    private final RestTemplate restTemplate;
+
+    private final VerificationRateLimiter rateLimiter;
+
+    public AliyunVerificationProvider(RestTemplate restTemplate, VerificationRateLimiter rateLimiter) {
+        this.restTemplate = restTemplate;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * 接口响应，不同版本分别使用 errcode / success / status 表示结果
+     */
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class AliyunResponse {
+        private Integer errcode;
+        private String message;
+        private String errmsg;
+        private String status;
+        private Boolean success;
+        private Object data;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public VerificationResult verify(Map<String, String> requestParams) {
+        // 受接口QPS和已购额度限制，拿不到许可时降级为跳过验证
+        String rejectReason = rateLimiter.acquire();
+        if (rejectReason != null) {
+            log.warn("发票验证被限流: fphm={}, reason={}", requestParams.get("fphm"), rejectReason);
+            return VerificationResult.skip(rejectReason);
+        }
+
+        return parseResponse(callApi(requestParams));
+    }
+
+    /**
+     * 调用验证API
+     */
+    private AliyunResponse callApi(Map<String, String> requestParams) {
+        // 构建请求头
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        headers.set("Authorization", "APPCODE " + appCode);
+
+        // 构建完整URL
+        String url = UriComponentsBuilder.fromHttpUrl(apiHost)
+                .path(apiPath)
+                .build()
+                .toUriString();
+
+        log.debug("调用验证API: url={}, params={}", url, requestParams);
+
+        try {
+            HttpEntity<String> requestEntity = new HttpEntity<>(buildFormUrlEncodedBody(requestParams), headers);
+            ResponseEntity<AliyunResponse> responseEntity = restTemplate.exchange(
+                    url, HttpMethod.POST, requestEntity, AliyunResponse.class);
+
+            log.debug("验证API响应: status={}, body={}",
+                    responseEntity.getStatusCode(), responseEntity.getBody());
+            return responseEntity.getBody();
+        } catch (Exception e) {
+            log.error("验证API调用失败", e);
+            throw new RuntimeException("验证API调用失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 构建表单编码的请求体
+     */
+    private String buildFormUrlEncodedBody(Map<String, String> params) {
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (body.length() > 0) {
+                body.append("&");
+            }
+            body.append(entry.getKey()).append("=").append(entry.getValue());
+        }
+        return body.toString();
+    }
+
+    /**
+     * 解析验证结果
+     */
+    @SuppressWarnings("unchecked")
+    private VerificationResult parseResponse(AliyunResponse response) {
+        if (response == null) {
+            return VerificationResult.error("验证服务返回空响应");
+        }
+
+        log.info("验证API返回: errcode={}, message={}, status={}, success={}",
+                response.getErrcode(), response.getMessage(), response.getStatus(), response.getSuccess());
+
+        Map<String, Object> data = response.getData() instanceof Map
+                ? (Map<String, Object>) response.getData()
+                : null;
+
+        Boolean passed;
+        if (response.getErrcode() != null) {
+            // 格式1: 有errcode字段
+            passed = response.getErrcode() == 0;
+        } else if (response.getSuccess() != null) {
+            // 格式2: 有success字段
+            passed = response.getSuccess();
+        } else if (response.getStatus() != null) {
+            // 格式3: 有status字段
+            passed = "success".equalsIgnoreCase(response.getStatus()) || "true".equalsIgnoreCase(response.getStatus());
+        } else {
+            // 未知格式，但有data字段时视为成功
+            passed = response.getData() != null ? Boolean.TRUE : null;
+        }
+
+        if (passed == null) {
+            return VerificationResult.error("未知的API响应格式");
+        }
+        return passed
+                ? VerificationResult.success("发票真伪验证通过", data)
+                : VerificationResult.failed("发票验证失败: " + response.getMessage(), data);
+    }
+}
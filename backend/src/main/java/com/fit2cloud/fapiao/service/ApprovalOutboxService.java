@@ -0,0 +1,440 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fit2cloud.fapiao.controller.ReimbursementController;
+import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.response.ReimbursementSubmitResult;
+import com.fit2cloud.fapiao.entity.ApprovalOutboxStep;
+import com.fit2cloud.fapiao.entity.ApprovalSubmission;
+import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import com.fit2cloud.fapiao.repository.ApprovalOutboxStepRepository;
+import com.fit2cloud.fapiao.repository.ApprovalSubmissionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 审批发件箱
+ * 报销提交时先把要创建的审批（出差申请、出差补贴、各组报销申请）作为步骤落库，再由后台逐步提交到企业微信；
+ * 每个步骤独立记录状态和审批编号，失败按指数退避重试，已完成的步骤不会重复提交。
+ */
+@Service
+@Slf4j
+public class ApprovalOutboxService {
+
+    public static final String NODE_BUSINESS_TRIP = "business-trip";
+    public static final String NODE_TRAVEL_SUBSIDY = "travel-subsidy";
+    public static final String NODE_GROUP_PREFIX = "group-";
+
+    private static final String APPLY_EVENT_API = "oa/applyevent";
+
+    @Value("${qywechat.approval.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${qywechat.approval.outbox.backoff-base-ms:5000}")
+    private long backoffBaseMs;
+
+    @Value("${qywechat.approval.outbox.backoff-max-ms:600000}")
+    private long backoffMaxMs;
+
+    @Value("${qywechat.approval.outbox.in-progress-timeout-minutes:10}")
+    private long inProgressTimeoutMinutes;
+
+    private final ApprovalSubmissionRepository submissionRepository;
+    private final ApprovalOutboxStepRepository stepRepository;
+    private final ObjectMapper objectMapper;
+
+    public ApprovalOutboxService(ApprovalSubmissionRepository submissionRepository,
+                                 ApprovalOutboxStepRepository stepRepository,
+                                 ObjectMapper objectMapper) {
+        this.submissionRepository = submissionRepository;
+        this.stepRepository = stepRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 入队结果
+     *
+     * @param existing 为true表示相同内容的提交单已存在，未新建
+     */
+    public record Enqueued(String submissionId, boolean existing) {
+    }
+
+    /**
+     * 保存提交单及其步骤；相同提交人和发票内容的提交单已存在时不新建：
+     * 参数未变时失败的步骤重新排队；参数有修改（事由、成本部门等）时，
+     * 若还没有步骤提交到企业微信则用新参数重建步骤，否则拒绝，避免修改被忽略或同一批发票重复报销
+     */
+    @Transactional
+    public Enqueued enqueue(ReimbursementController.ReimbursementSubmit submitData, String userId,
+                            boolean travelForm, boolean submitTravelSubsidy, int groupCount) {
+        String idempotencyKey = idempotencyKey(submitData, userId);
+        String payload = writePayload(submitData);
+
+        Optional<ApprovalSubmission> existing = submissionRepository.findByIdempotencyKey(idempotencyKey);
+        if (existing.isPresent()) {
+            ApprovalSubmission submission = existing.get();
+            if (payload.equals(submission.getPayload())) {
+                int reset = resetFailedSteps(submission);
+                log.info("报销申请已存在提交单，不重复创建审批: submissionId={}, 状态={}, 重新排队步骤={}",
+                        submission.getId(), submission.getStatus(), reset);
+            } else {
+                replacePayload(submission, submitData, payload, travelForm, submitTravelSubsidy, groupCount);
+            }
+            return new Enqueued(submission.getId(), true);
+        }
+
+        ApprovalSubmission submission = new ApprovalSubmission();
+        submission.setId(UUID.randomUUID().toString());
+        submission.setIdempotencyKey(idempotencyKey);
+        submission.setUserId(userId);
+        submission.setFormType(submitData.getFormType());
+        submission.setPayload(payload);
+        submissionRepository.saveAndFlush(submission);
+
+        createSteps(submission.getId(), travelForm, submitTravelSubsidy, groupCount);
+
+        log.info("报销申请已入队: submissionId={}, 出差申请={}, 出差补贴={}, 报销申请组数={}",
+                submission.getId(), travelForm, travelForm && submitTravelSubsidy, groupCount);
+        return new Enqueued(submission.getId(), false);
+    }
+
+    /**
+     * 用修改后的参数替换已有提交单；步骤只要有一个已提交或可能已提交到企业微信（已完成、提交中、待核对）就拒绝
+     */
+    private void replacePayload(ApprovalSubmission submission, ReimbursementController.ReimbursementSubmit submitData,
+                                String payload, boolean travelForm, boolean submitTravelSubsidy, int groupCount) {
+        int total = loadSteps(submission.getId()).size();
+        int deleted = stepRepository.deleteUnsubmitted(submission.getId());
+        if (deleted != total) {
+            log.warn("报销申请修改后重新提交被拒绝，已有审批提交到企业微信: submissionId={}, 状态={}",
+                    submission.getId(), submission.getStatus());
+            throw new BusinessException("该批发票已有审批提交到企业微信，不能修改后重新提交；"
+                    + "请在企业微信中撤回或处理已创建的审批，失败的步骤可在提交记录中重试");
+        }
+
+        submission.setFormType(submitData.getFormType());
+        submission.setPayload(payload);
+        submission.setStatus(ApprovalSubmission.STATUS_PROCESSING);
+        submission.setUpdatedTime(LocalDateTime.now());
+        submissionRepository.save(submission);
+
+        createSteps(submission.getId(), travelForm, submitTravelSubsidy, groupCount);
+
+        log.info("报销申请参数已修改，按新参数重新入队: submissionId={}, 原步骤数={}, 出差申请={}, 出差补贴={}, 报销申请组数={}",
+                submission.getId(), total, travelForm, travelForm && submitTravelSubsidy, groupCount);
+    }
+
+    private void createSteps(String submissionId, boolean travelForm, boolean submitTravelSubsidy, int groupCount) {
+        if (travelForm) {
+            stepRepository.save(newStep(submissionId, NODE_BUSINESS_TRIP, null, false, null));
+            if (submitTravelSubsidy) {
+                stepRepository.save(newStep(submissionId, NODE_TRAVEL_SUBSIDY, NODE_BUSINESS_TRIP, true, null));
+            }
+        }
+        for (int i = 0; i < groupCount; i++) {
+            // 出差申请最终失败时仍提交报销申请，只是不关联出差申请单
+            stepRepository.save(newStep(submissionId, groupNode(i),
+                    travelForm ? NODE_BUSINESS_TRIP : null, false, i));
+        }
+        stepRepository.flush();
+    }
+
+    public Optional<ApprovalSubmission> findSubmission(String submissionId) {
+        return submissionRepository.findById(submissionId);
+    }
+
+    public List<ApprovalOutboxStep> loadSteps(String submissionId) {
+        return stepRepository.findBySubmissionIdOrderByIdAsc(submissionId);
+    }
+
+    public List<String> findDueSubmissionIds() {
+        return stepRepository.findDueSubmissionIds(LocalDateTime.now());
+    }
+
+    public ReimbursementController.ReimbursementSubmit readPayload(ApprovalSubmission submission) {
+        try {
+            return objectMapper.readValue(submission.getPayload(), ReimbursementController.ReimbursementSubmit.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("提交单参数解析失败: " + submission.getId(), e);
+        }
+    }
+
+    /**
+     * 认领步骤，成功后状态为提交中
+     */
+    public boolean claim(ApprovalOutboxStep step) {
+        LocalDateTime now = LocalDateTime.now();
+        if (stepRepository.claim(step.getId(), now) == 0) {
+            return false;
+        }
+        step.setStatus(ApprovalOutboxStep.STATUS_IN_PROGRESS);
+        step.setUpdatedTime(now);
+        return true;
+    }
+
+    public void markDone(ApprovalOutboxStep step, String spNo) {
+        step.setStatus(ApprovalOutboxStep.STATUS_DONE);
+        step.setSpNo(spNo);
+        step.setAttempts(step.getAttempts() + 1);
+        step.setLastError(null);
+        save(step);
+    }
+
+    /**
+     * 记录一次失败，按失败类型处理：
+     * 审批申请请求已发出但结果未知（网络异常、超时、响应无法解析）时标记为待核对，企业微信可能已创建审批，重试会重复提交；
+     * 企业微信返回了明确错误码、接口排队超时或非业务异常时，未超过最大次数按指数退避重新排队；
+     * 其余业务异常（模板未配置、数据校验失败等）重试也不会成功，直接标记失败。
+     */
+    public void markFailed(ApprovalOutboxStep step, String error, Throwable cause) {
+        int attempts = step.getAttempts() + 1;
+        step.setAttempts(attempts);
+        step.setLastError(truncate(error));
+
+        WeComApiException apiException = findWeComApiException(cause);
+        if (apiException != null && apiException.isOutcomeUnknown() && APPLY_EVENT_API.equals(apiException.getApi())) {
+            step.setStatus(ApprovalOutboxStep.STATUS_UNCERTAIN);
+            step.setLastError(truncate("提交结果未知，请在企业微信中核对是否已创建审批（" + error + "）"));
+            log.error("审批申请提交结果未知，需人工核对: submissionId={}, node={}, 错误={}",
+                    step.getSubmissionId(), step.getNodeId(), error);
+        } else if (!isRetryable(cause, apiException)) {
+            step.setStatus(ApprovalOutboxStep.STATUS_FAILED);
+            log.error("审批步骤提交失败，错误不可重试: submissionId={}, node={}, 错误={}",
+                    step.getSubmissionId(), step.getNodeId(), error);
+        } else if (attempts >= maxAttempts) {
+            step.setStatus(ApprovalOutboxStep.STATUS_FAILED);
+            log.error("审批步骤提交失败且不再重试: submissionId={}, node={}, 次数={}, 错误={}",
+                    step.getSubmissionId(), step.getNodeId(), attempts, error);
+        } else {
+            long backoff = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 20));
+            step.setStatus(ApprovalOutboxStep.STATUS_PENDING);
+            step.setNextAttemptTime(LocalDateTime.now().plusNanos(backoff * 1_000_000));
+            log.warn("审批步骤提交失败，{}ms后重试: submissionId={}, node={}, 次数={}, 错误={}",
+                    backoff, step.getSubmissionId(), step.getNodeId(), attempts, error);
+        }
+        save(step);
+    }
+
+    private static WeComApiException findWeComApiException(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof WeComApiException apiException) {
+                return apiException;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRetryable(Throwable cause, WeComApiException apiException) {
+        if (apiException != null) {
+            // 企业微信明确返回的错误码，或获取 access_token 等前置接口的网络异常
+            return true;
+        }
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof BusinessException businessException
+                    && WeComApiRateLimiter.BUSY_ERROR_CODE.equals(businessException.getErrorCode())) {
+                return true;
+            }
+        }
+        return !(cause instanceof BusinessException);
+    }
+
+    public void markSkipped(ApprovalOutboxStep step, String reason) {
+        step.setStatus(ApprovalOutboxStep.STATUS_SKIPPED);
+        step.setLastError(truncate(reason));
+        save(step);
+    }
+
+    /**
+     * 放回待提交（依赖步骤本轮未成功，等待其重试结果）
+     */
+    public void release(ApprovalOutboxStep step) {
+        step.setStatus(ApprovalOutboxStep.STATUS_PENDING);
+        save(step);
+    }
+
+    /**
+     * 提交中超时的步骤标记为待核对：进程可能在企业微信已创建审批后、落库前退出，自动重试会产生重复审批
+     */
+    public void markStaleInProgressUncertain() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(inProgressTimeoutMinutes);
+        for (ApprovalOutboxStep step : stepRepository.findStaleInProgress(cutoff)) {
+            step.setStatus(ApprovalOutboxStep.STATUS_UNCERTAIN);
+            step.setLastError("提交结果未知，请在企业微信中核对是否已创建审批");
+            save(step);
+            log.error("审批步骤提交超时，需人工核对: submissionId={}, node={}", step.getSubmissionId(), step.getNodeId());
+            refreshStatus(step.getSubmissionId());
+        }
+    }
+
+    /**
+     * 根据步骤状态更新提交单状态
+     */
+    public void refreshStatus(String submissionId) {
+        submissionRepository.findById(submissionId).ifPresent(submission -> {
+            List<ApprovalOutboxStep> steps = loadSteps(submissionId);
+            String status = aggregateStatus(steps);
+            if (!status.equals(submission.getStatus())) {
+                submission.setStatus(status);
+                submission.setUpdatedTime(LocalDateTime.now());
+                submissionRepository.save(submission);
+                log.info("报销提交单状态更新: submissionId={}, 状态={}", submissionId, status);
+            }
+        });
+    }
+
+    /**
+     * 将失败和被跳过的步骤重新排队（提交中、已完成、待核对的步骤不受影响）
+     *
+     * @return 重新排队的步骤数
+     */
+    @Transactional
+    public int retry(String submissionId) {
+        ApprovalSubmission submission = submissionRepository.findById(submissionId)
+                .orElseThrow(() -> new BusinessException("提交单不存在: " + submissionId));
+        return resetFailedSteps(submission);
+    }
+
+    /**
+     * 提交单进度，审批编号按 出差申请、出差补贴、第1组…第N组 的顺序
+     */
+    public ReimbursementSubmitResult toResult(ApprovalSubmission submission) {
+        List<ApprovalOutboxStep> steps = loadSteps(submission.getId());
+        ReimbursementSubmitResult result = new ReimbursementSubmitResult();
+        result.setSubmissionId(submission.getId());
+        result.setStatus(aggregateStatus(steps));
+
+        boolean allGroupsDone = true;
+        for (ApprovalOutboxStep step : steps) {
+            String label = nodeLabel(step.getNodeId());
+            if (ApprovalOutboxStep.STATUS_DONE.equals(step.getStatus())) {
+                result.getApprovalIds().add(label + ": " + step.getSpNo());
+            } else {
+                if (step.getGroupIndex() != null) {
+                    allGroupsDone = false;
+                }
+                if (step.isTerminal()) {
+                    result.getFailures().add(label + ": " + step.getLastError());
+                }
+            }
+        }
+        result.setSuccess(allGroupsDone);
+        return result;
+    }
+
+    public static String groupNode(int groupIndex) {
+        return NODE_GROUP_PREFIX + (groupIndex + 1);
+    }
+
+    public static String nodeLabel(String nodeId) {
+        if (NODE_BUSINESS_TRIP.equals(nodeId)) {
+            return "出差申请";
+        }
+        if (NODE_TRAVEL_SUBSIDY.equals(nodeId)) {
+            return "出差补贴";
+        }
+        return "第" + nodeId.substring(NODE_GROUP_PREFIX.length()) + "组报销申请";
+    }
+
+    private int resetFailedSteps(ApprovalSubmission submission) {
+        int reset = 0;
+        for (ApprovalOutboxStep step : loadSteps(submission.getId())) {
+            if (ApprovalOutboxStep.STATUS_FAILED.equals(step.getStatus())
+                    || ApprovalOutboxStep.STATUS_SKIPPED.equals(step.getStatus())) {
+                step.setStatus(ApprovalOutboxStep.STATUS_PENDING);
+                step.setAttempts(0);
+                step.setNextAttemptTime(LocalDateTime.now());
+                save(step);
+                reset++;
+            }
+        }
+        if (reset > 0) {
+            refreshStatus(submission.getId());
+        }
+        return reset;
+    }
+
+    private String aggregateStatus(List<ApprovalOutboxStep> steps) {
+        boolean anyDone = false;
+        boolean allDone = true;
+        for (ApprovalOutboxStep step : steps) {
+            if (!step.isTerminal()) {
+                return ApprovalSubmission.STATUS_PROCESSING;
+            }
+            if (ApprovalOutboxStep.STATUS_DONE.equals(step.getStatus())) {
+                anyDone = true;
+            } else {
+                allDone = false;
+            }
+        }
+        if (allDone) {
+            return ApprovalSubmission.STATUS_COMPLETED;
+        }
+        return anyDone ? ApprovalSubmission.STATUS_PARTIAL_FAILED : ApprovalSubmission.STATUS_FAILED;
+    }
+
+    private ApprovalOutboxStep newStep(String submissionId, String nodeId, String dependsOn,
+                                       boolean requiresSuccess, Integer groupIndex) {
+        ApprovalOutboxStep step = new ApprovalOutboxStep();
+        step.setSubmissionId(submissionId);
+        step.setNodeId(nodeId);
+        step.setDependsOn(dependsOn);
+        step.setRequiresSuccess(requiresSuccess);
+        step.setGroupIndex(groupIndex);
+        return step;
+    }
+
+    private void save(ApprovalOutboxStep step) {
+        step.setUpdatedTime(LocalDateTime.now());
+        stepRepository.save(step);
+    }
+
+    /**
+     * 幂等键：提交人 + 表单类型 + 每张发票的号码、日期、金额
+     */
+    private String idempotencyKey(ReimbursementController.ReimbursementSubmit submitData, String userId) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(userId).append('|').append(submitData.getFormType()).append('|').append(submitData.getTotalAmount());
+        if (submitData.getInvoices() != null) {
+            for (InvoiceInfo invoice : submitData.getInvoices()) {
+                sb.append('|').append(invoice.getInvoiceNumber())
+                        .append(',').append(invoice.getInvoiceDate())
+                        .append(',').append(invoice.getTotalAmount());
+            }
+        }
+        sb.append('|').append(submitData.getTravelStartDate()).append(',').append(submitData.getTravelEndDate());
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("计算幂等键失败", e);
+        }
+    }
+
+    private String writePayload(ReimbursementController.ReimbursementSubmit submitData) {
+        try {
+            return objectMapper.writeValueAsString(submitData);
+        } catch (JsonProcessingException e) {
+            throw new BusinessException("报销申请参数序列化失败: " + e.getMessage());
+        }
+    }
+
+    private String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
@@ -0,0 +1,147 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.wecom.WeComTemplateDetailResponse;
+import com.fit2cloud.fapiao.util.ApprovalControl;
+import com.fit2cloud.fapiao.util.ApprovalTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 审批模板缓存
+ * 每个模板只在首次提交时从企业微信拉取一次模板结构（oa/gettemplatedetail），
+ * 校验表单声明的控件ID和控件类型是否仍在模板中，编译结果缓存后供 ApprovalJsonWriter 直接填写。
+ * 拉取失败不影响提交：按声明的控件编译，隔一段时间后再重新拉取校验。
+ * 控件ID仍然写死在各表单的 ApprovalControl 常量中，这里只做校验（不一致时记录日志），不会从模板结构中取ID或改写请求；
+ * 企业微信后台修改了模板控件后，需要同步修改代码中的常量。
+ */
+@Service
+@Slf4j
+public class ApprovalTemplateService {
+
+    @Value("${qywechat.approval.template-retry-minutes:10}")
+    private long retryMinutes;
+
+    @Autowired
+    private QyWechatService qyWechatService;
+
+    @Autowired
+    private WeComApiClient weComApiClient;
+
+    private final Map<String, ApprovalTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * 获取编译后的模板，首次调用时拉取模板结构并校验控件
+     *
+     * @param controls 表单用到的全部控件（含表格明细控件）
+     */
+    public ApprovalTemplate getTemplate(String templateId, List<ApprovalControl> controls) {
+        ApprovalTemplate template = templates.get(templateId);
+        if (template != null && !needsRecompile(template, controls)) {
+            return template;
+        }
+
+        synchronized (this) {
+            template = templates.get(templateId);
+            if (template == null || needsRecompile(template, controls)) {
+                template = compile(templateId, controls);
+                templates.put(templateId, template);
+            }
+            return template;
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        Map<String, Object> details = new LinkedHashMap<>();
+        templates.forEach((id, template) -> {
+            Map<String, Object> detail = new HashMap<>();
+            detail.put("verified", template.isVerified());
+            detail.put("controls", template.getControls().size());
+            detail.put("missingControls", template.getMissingControls());
+            detail.put("compiledAt", template.getCompiledAt());
+            details.put(id, detail);
+        });
+        status.put("templates", details);
+        status.put("retryMinutes", retryMinutes);
+        return status;
+    }
+
+    private boolean needsRecompile(ApprovalTemplate template, List<ApprovalControl> controls) {
+        if (!template.getControls().equals(controls)) {
+            return true;
+        }
+        return !template.isVerified()
+                && System.currentTimeMillis() - template.getCompiledAt() > TimeUnit.MINUTES.toMillis(retryMinutes);
+    }
+
+    private ApprovalTemplate compile(String templateId, List<ApprovalControl> controls) {
+        Map<String, String> schema;
+        try {
+            schema = fetchControlTypes(templateId);
+        } catch (Exception e) {
+            log.warn("拉取审批模板结构失败，按声明的控件提交: templateId={}, {}", templateId, e.getMessage());
+            return new ApprovalTemplate(templateId, controls, List.of(), false);
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (ApprovalControl control : controls) {
+            String type = schema.get(control.getId());
+            if (type == null) {
+                missing.add(control + " 不在模板中");
+            } else if (!type.equals(control.getControl())) {
+                missing.add(control + " 在模板中的类型为 " + type);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            log.info("审批模板校验通过: templateId={}, 控件数: {}", templateId, controls.size());
+        } else {
+            log.warn("审批模板与表单控件不一致，请检查企业微信后台是否修改过模板: templateId={}, {}", templateId, missing);
+        }
+        return new ApprovalTemplate(templateId, controls, missing, true);
+    }
+
+    /**
+     * 拉取模板结构，返回 控件ID -> 控件类型（包含表格内的明细控件）
+     */
+    private Map<String, String> fetchControlTypes(String templateId) {
+        String accessToken = qyWechatService.getAccessTokenForApproval();
+
+        // 提交审批时已在限流内，这里直接调用（每个模板只拉取一次）
+        WeComTemplateDetailResponse response = weComApiClient.post("oa/gettemplatedetail", accessToken,
+                Map.of("template_id", templateId), WeComTemplateDetailResponse.class);
+
+        Map<String, String> controlTypes = new HashMap<>();
+        if (response.templateContent() != null) {
+            collectControls(response.templateContent().controls(), controlTypes);
+        }
+        return controlTypes;
+    }
+
+    private void collectControls(List<WeComTemplateDetailResponse.Control> controls, Map<String, String> controlTypes) {
+        if (controls == null) {
+            return;
+        }
+        for (WeComTemplateDetailResponse.Control control : controls) {
+            WeComTemplateDetailResponse.Property property = control.property();
+            if (property != null && property.id() != null) {
+                controlTypes.put(property.id(), property.control());
+            }
+
+            WeComTemplateDetailResponse.Config config = control.config();
+            if (config != null && config.table() != null) {
+                collectControls(config.table().children(), controlTypes);
+            }
+        }
+    }
+}
@@ -2,18 +2,19 @@ package com.fit2cloud.fapiao.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.ApplicationArguments;
-import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-
+/**
+ * 缓存预热与定时刷新
+ * 预热在应用就绪后提交到后台线程执行，不阻塞启动，也不推迟就绪状态（ACCEPTING_TRAFFIC 在 ApplicationReadyEvent 之后发布），
+ * 首个请求的响应时间与组织规模无关；加载进度见 /actuator/health/readiness 中的 userDirectory。
+ */
 @Service
 @Slf4j
-public class CacheWarmUpService implements ApplicationRunner {
+public class CacheWarmUpService {
 
     @Autowired
     private DepartmentService departmentService;
@@ -24,65 +25,35 @@ public class CacheWarmUpService implements ApplicationRunner {
     @Autowired
     private UserDepartmentRelationService userDepartmentRelationService;
 
-    @Override
-    public void run(ApplicationArguments args) throws Exception {
-        log.info("开始预热系统缓存...");
-
-        log.info("预热部门缓存...");
-        // 部门服务会自动检查缓存有效性
-
-        log.info("预热用户-部门关系缓存...");
-        // 用户-部门关系服务会自动检查缓存有效性
-
-        log.info("预热用户信息缓存...");
-        // 修改这里，让UserInfoService自己决定是否需要重新加载
-        // 不再直接调用 loadAllUserInfo()
-
-        log.info("系统缓存预热完成");
-    }
-
     /**
-     * 应用启动时预热缓存
+     * 应用启动后在后台预热缓存
+     * 有本地快照时先同步恢复（只读本地文件），就绪后即可使用上次的数据；
+     * 用户目录加载会先获取部门列表，并用加载到的成员部门更新用户-部门关系，三类缓存由同一个后台任务预热
      */
     @EventListener(ApplicationReadyEvent.class)
     public void warmUpCacheOnStartup() {
-        log.info("开始预热系统缓存...");
-
         try {
-            // 1. 预热部门缓存
-            log.info("预热部门缓存...");
-            departmentService.getDepartmentList();
-
-            // 2. 预热用户-部门关系缓存
-            log.info("预热用户-部门关系缓存...");
-            userDepartmentRelationService.getUserDepartmentRelations();
-
-            // 3. 预热用户信息缓存（获取前100个用户）
-            log.info("预热用户信息缓存...");
-            // 这里可以调用一个专门的方法来获取并缓存用户信息
-            userInfoService.loadAllUserInfo();
-
-            log.info("系统缓存预热完成");
+            userInfoService.restoreFromSnapshot();
         } catch (Exception e) {
-            log.error("预热缓存失败", e);
+            log.warn("从本地快照恢复用户目录失败，等待后台加载", e);
         }
+
+        log.info("提交后台缓存预热任务（部门、用户-部门关系、用户信息）");
+        userInfoService.refreshInBackground();
     }
 
     /**
-     * 定时刷新缓存（每小时一次）
+     * 定时检查缓存，已过期的提交后台刷新（每分钟一次）
+     * 各缓存的过期时间带随机抖动，不会在同一周期一起刷新；刷新在后台线程执行，不占用调度线程
      */
-    @Scheduled(fixedDelay = 60 * 60 * 1000) // 1小时
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000) // 启动时的加载由预热任务完成
     public void refreshCachePeriodically() {
-        log.info("开始定时刷新缓存...");
-
         try {
             // 刷新部门缓存
-            departmentService.refreshDepartmentCache();
+            departmentService.refreshIfStale();
 
             // 刷新用户-部门关系缓存
-            userDepartmentRelationService.refreshCache();
-
-            log.info("定时刷新缓存完成");
+            userDepartmentRelationService.refreshIfStale();
         } catch (Exception e) {
             log.error("定时刷新缓存失败", e);
         }
@@ -0,0 +1,118 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fit2cloud.fapiao.dto.response.RuleViolation;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合规规则文件结构（rules/invoice-rules.yml）
+ */
+@Data
+public class ComplianceRuleDefinition {
+
+    private Company company = new Company();
+
+    private List<Rule> rules = new ArrayList<>();
+
+    // 批内查重：同一批次中发票号码相同（无号码时销售方+金额+日期相同）的发票
+    @JsonProperty("batch-duplicate-check")
+    private boolean batchDuplicateCheck = true;
+
+    // 批次汇总限额，按日期、报销类型或整批（一次出差）分组累计金额
+    @JsonProperty("batch-limits")
+    private List<BatchLimit> batchLimits = new ArrayList<>();
+
+    @Data
+    public static class Company {
+        private String name;
+
+        @JsonProperty("tax-code")
+        private String taxCode;
+    }
+
+    @Data
+    public static class Rule {
+        private String id;
+        private String description;
+        private boolean enabled = true;
+
+        // 适用的报销单类型，为空表示所有类型
+        @JsonProperty("form-types")
+        private List<String> formTypes = new ArrayList<>();
+
+        // 适用条件，为空表示总是适用
+        private Condition when;
+
+        // 适用时必须满足的条件，不满足即产生违规
+        private Condition require;
+
+        private Violation violation;
+    }
+
+    @Data
+    public static class BatchLimit {
+        private String id;
+        private String description;
+        private boolean enabled = true;
+
+        @JsonProperty("form-types")
+        private List<String> formTypes = new ArrayList<>();
+
+        // 计入汇总的发票条件，为空表示全部发票
+        private Condition when;
+
+        // 分组方式：day（开票日期）、category（报销类型）、trip（整批）
+        @JsonProperty("group-by")
+        private String groupBy = "trip";
+
+        // 分组金额上限（元），为空表示不限
+        @JsonProperty("max-amount")
+        private BigDecimal maxAmount;
+
+        // 分组张数上限，为空表示不限
+        @JsonProperty("max-count")
+        private Integer maxCount;
+
+        private Violation violation;
+    }
+
+    @Data
+    public static class Condition {
+        private String field;
+
+        @JsonProperty("contains-any")
+        private List<String> containsAny;
+
+        private String equals;
+        private String matches;
+
+        @JsonProperty("not-empty")
+        private Boolean notEmpty;
+
+        private List<Condition> all;
+        private List<Condition> any;
+        private Condition not;
+    }
+
+    @Data
+    public static class Violation {
+        @JsonProperty("rule-id")
+        private String ruleId = "compliance_check";
+
+        private String field;
+        private RuleViolation.Severity severity = RuleViolation.Severity.WARNING;
+
+        // 按顺序取第一条条件满足的消息
+        private List<Message> messages = new ArrayList<>();
+    }
+
+    @Data
+    public static class Message {
+        private Condition when;
+        private String text;
+    }
+}
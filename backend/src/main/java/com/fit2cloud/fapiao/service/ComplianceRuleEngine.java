@@ -0,0 +1,628 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.response.RuleViolation;
+import com.fit2cloud.fapiao.util.KeywordMatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 发票合规规则引擎
+ * 规则文件在加载时编译为条件树，整体原子替换；每张发票只解析一次字段，按顺序单遍评估所有规则。
+ * 配置外部规则文件后定时检查修改时间，变更后自动重新加载，新增酒店品牌、交通座席无需重新部署。
+ * 批次级规则（批内查重、按日/类型/整批的汇总限额）对整批发票单遍哈希分组，不访问数据库。
+ */
+@Service
+@Slf4j
+public class ComplianceRuleEngine {
+
+    private static final String CLASSPATH_RULES = "rules/invoice-rules.yml";
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4})\\D(\\d{1,2})\\D(\\d{1,2})");
+
+    // 规则中可引用的发票字段，评估前按下标一次性取值
+    private static final Map<String, Function<InvoiceInfo, String>> FIELDS = new LinkedHashMap<>();
+    private static final Map<String, Integer> FIELD_INDEX = new HashMap<>();
+
+    static {
+        FIELDS.put("invoiceItemName", InvoiceInfo::getInvoiceItemName);
+        FIELDS.put("complianceCheck", InvoiceInfo::getComplianceCheck);
+        FIELDS.put("buyerName", InvoiceInfo::getBuyerName);
+        FIELDS.put("buyerCode", InvoiceInfo::getBuyerCode);
+        FIELDS.put("sellerName", InvoiceInfo::getSellerName);
+        FIELDS.put("invoiceNumber", InvoiceInfo::getInvoiceNumber);
+        FIELDS.put("totalAmount", InvoiceInfo::getTotalAmount);
+        FIELDS.put("remark", InvoiceInfo::getRemark);
+        FIELDS.put("reimbursementType", InvoiceInfo::getReimbursementType);
+        FIELDS.put("subReimbursementType", InvoiceInfo::getSubReimbursementType);
+
+        int index = 0;
+        for (String name : FIELDS.keySet()) {
+            FIELD_INDEX.put(name, index++);
+        }
+    }
+
+    @Value("${invoice.rules.location:}")
+    private String rulesLocation;
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private volatile RuleSet ruleSet;
+    private volatile long lastModified;
+
+    public ComplianceRuleEngine(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 编译后的规则集，整体替换保证评估过程中看到的是同一版本
+     */
+    private record RuleSet(String companyName, String companyTaxCode, List<CompiledRule> rules,
+                           boolean batchDuplicateCheck, List<CompiledBatchLimit> batchLimits,
+                           String source, long loadedTime) {
+    }
+
+    private enum GroupBy {
+        DAY, CATEGORY, TRIP
+    }
+
+    private record CompiledBatchLimit(String id, Set<String> formTypes, Predicate<String[]> when, GroupBy groupBy,
+                                      long maxCents, int maxCount, RuleViolation.Severity severity,
+                                      String ruleId, String affectedField, String message,
+                                      Counter violationCounter) {
+
+        boolean appliesTo(String formType) {
+            return formTypes.isEmpty() || formTypes.contains(formType);
+        }
+    }
+
+    /**
+     * 汇总分组：累计金额（分）及组内发票下标
+     */
+    private static final class BatchGroup {
+        private long cents;
+        private final List<Integer> members = new ArrayList<>();
+    }
+
+    private record CompiledRule(String id, Set<String> formTypes, Predicate<String[]> when, Predicate<String[]> require,
+                                int valueField, List<String> options, RuleViolation.Severity severity,
+                                String ruleId, String affectedField, List<CompiledMessage> messages,
+                                Timer timer, Counter violationCounter) {
+
+        boolean appliesTo(String formType) {
+            return formTypes.isEmpty() || formTypes.contains(formType);
+        }
+    }
+
+    private record CompiledMessage(Predicate<String[]> when, String text) {
+    }
+
+    @PostConstruct
+    public void init() {
+        ruleSet = load();
+        log.info("合规规则加载完成: source={}, 规则数={}", ruleSet.source(), ruleSet.rules().size());
+    }
+
+    /**
+     * 评估适用于该报销类型的所有规则，违规追加到 violations
+     */
+    public void evaluate(InvoiceInfo invoice, String formType, List<RuleViolation> violations) {
+        RuleSet current = ruleSet;
+        String[] facts = resolveFacts(invoice);
+
+        for (CompiledRule rule : current.rules()) {
+            if (!rule.appliesTo(formType)) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            boolean violated = rule.when().test(facts) && !rule.require().test(facts);
+            rule.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (violated) {
+                rule.violationCounter().increment();
+                violations.add(new RuleViolation(rule.ruleId(), rule.affectedField(),
+                        formatMessage(rule, facts), rule.severity()));
+            }
+        }
+    }
+
+    /**
+     * 批次级规则：单遍扫描整批发票，按哈希键分组完成批内查重与汇总限额
+     * 每张发票只解析一次字段、金额和日期；被判为批内重复的发票不计入汇总
+     *
+     * @return 发票下标 -> 该发票的批次级违规，无违规的发票不在结果中
+     */
+    public Map<Integer, List<RuleViolation>> evaluateBatch(List<InvoiceInfo> invoices, String formType) {
+        Map<Integer, List<RuleViolation>> result = new HashMap<>();
+        if (invoices == null || invoices.isEmpty()) {
+            return result;
+        }
+
+        RuleSet current = ruleSet;
+        List<CompiledBatchLimit> limits = new ArrayList<>();
+        for (CompiledBatchLimit limit : current.batchLimits()) {
+            if (limit.appliesTo(formType)) {
+                limits.add(limit);
+            }
+        }
+        if (!current.batchDuplicateCheck() && limits.isEmpty()) {
+            return result;
+        }
+
+        Map<String, Integer> firstSeen = new HashMap<>(invoices.size() * 2);
+        List<Map<String, BatchGroup>> groups = new ArrayList<>(limits.size());
+        for (int j = 0; j < limits.size(); j++) {
+            groups.add(new HashMap<>());
+        }
+
+        for (int i = 0; i < invoices.size(); i++) {
+            InvoiceInfo invoice = invoices.get(i);
+            if (invoice == null) {
+                continue;
+            }
+
+            String[] facts = resolveFacts(invoice);
+            long cents = parseCents(invoice.getTotalAmount());
+            String day = dayKey(invoice.getInvoiceDate());
+
+            if (current.batchDuplicateCheck()) {
+                String key = duplicateKey(invoice, cents, day);
+                if (key != null) {
+                    Integer first = firstSeen.putIfAbsent(key, i);
+                    if (first != null) {
+                        result.computeIfAbsent(i, k -> new ArrayList<>()).add(new RuleViolation(
+                                "batch_duplicate",
+                                "发票号码",
+                                String.format("与本批第%d张发票重复（发票号码：%s），请勿重复上传",
+                                        first + 1, Objects.toString(invoice.getInvoiceNumber(), "空")),
+                                RuleViolation.Severity.ERROR));
+                        continue;
+                    }
+                }
+            }
+
+            for (int j = 0; j < limits.size(); j++) {
+                CompiledBatchLimit limit = limits.get(j);
+                if (cents < 0 || !limit.when().test(facts)) {
+                    continue;
+                }
+                String groupKey = switch (limit.groupBy()) {
+                    case DAY -> day;
+                    case CATEGORY -> blankToNull(invoice.getReimbursementType());
+                    case TRIP -> "整批";
+                };
+                if (groupKey == null) {
+                    continue;
+                }
+
+                BatchGroup group = groups.get(j).computeIfAbsent(groupKey, k -> new BatchGroup());
+                group.cents += cents;
+                group.members.add(i);
+            }
+        }
+
+        for (int j = 0; j < limits.size(); j++) {
+            CompiledBatchLimit limit = limits.get(j);
+            for (Map.Entry<String, BatchGroup> entry : groups.get(j).entrySet()) {
+                BatchGroup group = entry.getValue();
+                boolean overAmount = limit.maxCents() >= 0 && group.cents > limit.maxCents();
+                boolean overCount = limit.maxCount() >= 0 && group.members.size() > limit.maxCount();
+                if (!overAmount && !overCount) {
+                    continue;
+                }
+
+                limit.violationCounter().increment();
+                String message = formatBatchMessage(limit, entry.getKey(), group);
+                for (int member : group.members) {
+                    result.computeIfAbsent(member, k -> new ArrayList<>()).add(new RuleViolation(
+                            limit.ruleId(), limit.affectedField(), message, limit.severity()));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public String getCompanyName() {
+        return ruleSet.companyName();
+    }
+
+    public String getCompanyTaxCode() {
+        return ruleSet.companyTaxCode();
+    }
+
+    /**
+     * 外部规则文件变更时自动重新加载
+     */
+    @Scheduled(fixedDelayString = "${invoice.rules.reload-interval-ms:30000}")
+    public void reloadIfModified() {
+        if (rulesLocation == null || rulesLocation.isEmpty()) {
+            return;
+        }
+
+        try {
+            long modified = Files.getLastModifiedTime(Path.of(rulesLocation)).toMillis();
+            if (modified != lastModified) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("检查规则文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 重新加载规则，编译失败时保留当前规则
+     *
+     * @return 是否加载成功
+     */
+    public synchronized boolean reload() {
+        try {
+            RuleSet fresh = load();
+            ruleSet = fresh;
+            log.info("合规规则重新加载完成: source={}, 规则数={}", fresh.source(), fresh.rules().size());
+            return true;
+        } catch (Exception e) {
+            log.error("合规规则重新加载失败，继续使用当前规则: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 获取规则引擎状态，含每条规则的评估次数、平均耗时和违规次数
+     */
+    public Map<String, Object> getStatus() {
+        RuleSet current = ruleSet;
+        Map<String, Object> status = new HashMap<>();
+        status.put("source", current.source());
+        status.put("loadedTime", current.loadedTime());
+        status.put("companyName", current.companyName());
+
+        List<Map<String, Object>> rules = new ArrayList<>();
+        for (CompiledRule rule : current.rules()) {
+            Map<String, Object> ruleStatus = new LinkedHashMap<>();
+            ruleStatus.put("id", rule.id());
+            ruleStatus.put("formTypes", rule.formTypes());
+            ruleStatus.put("evaluations", rule.timer().count());
+            ruleStatus.put("meanMicros", rule.timer().mean(TimeUnit.MICROSECONDS));
+            ruleStatus.put("violations", rule.violationCounter().count());
+            rules.add(ruleStatus);
+        }
+        status.put("rules", rules);
+
+        List<Map<String, Object>> batchLimits = new ArrayList<>();
+        for (CompiledBatchLimit limit : current.batchLimits()) {
+            Map<String, Object> limitStatus = new LinkedHashMap<>();
+            limitStatus.put("id", limit.id());
+            limitStatus.put("groupBy", limit.groupBy().name().toLowerCase());
+            limitStatus.put("violations", limit.violationCounter().count());
+            batchLimits.add(limitStatus);
+        }
+        status.put("batchDuplicateCheck", current.batchDuplicateCheck());
+        status.put("batchLimits", batchLimits);
+        return status;
+    }
+
+    private RuleSet load() {
+        String source;
+        Object raw;
+        try {
+            if (rulesLocation != null && !rulesLocation.isEmpty()) {
+                Path path = Path.of(rulesLocation);
+                lastModified = Files.getLastModifiedTime(path).toMillis();
+                source = path.toAbsolutePath().toString();
+                try (InputStream in = Files.newInputStream(path)) {
+                    raw = new Yaml().load(in);
+                }
+            } else {
+                source = "classpath:" + CLASSPATH_RULES;
+                try (InputStream in = new ClassPathResource(CLASSPATH_RULES).getInputStream()) {
+                    raw = new Yaml().load(in);
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("读取规则文件失败: " + e.getMessage(), e);
+        }
+
+        ComplianceRuleDefinition definition = objectMapper.convertValue(raw, ComplianceRuleDefinition.class);
+        return compile(definition, source);
+    }
+
+    private RuleSet compile(ComplianceRuleDefinition definition, String source) {
+        if (definition.getCompany() == null || definition.getCompany().getName() == null) {
+            throw new IllegalArgumentException("规则文件缺少 company.name");
+        }
+
+        List<CompiledRule> compiled = new ArrayList<>();
+        for (ComplianceRuleDefinition.Rule rule : definition.getRules()) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+            if (rule.getId() == null || rule.getRequire() == null || rule.getViolation() == null) {
+                throw new IllegalArgumentException("规则缺少 id、require 或 violation: " + rule.getId());
+            }
+
+            try {
+                ComplianceRuleDefinition.Violation violation = rule.getViolation();
+                List<CompiledMessage> messages = new ArrayList<>();
+                for (ComplianceRuleDefinition.Message message : violation.getMessages()) {
+                    messages.add(new CompiledMessage(compileCondition(message.getWhen()), message.getText()));
+                }
+
+                ComplianceRuleDefinition.Condition valueNode = firstFieldNode(rule.getRequire());
+                compiled.add(new CompiledRule(
+                        rule.getId(),
+                        Set.copyOf(rule.getFormTypes()),
+                        compileCondition(rule.getWhen()),
+                        compileCondition(rule.getRequire()),
+                        valueNode != null ? fieldIndex(valueNode.getField()) : -1,
+                        valueNode != null && valueNode.getContainsAny() != null ? List.copyOf(valueNode.getContainsAny()) : List.of(),
+                        violation.getSeverity(),
+                        violation.getRuleId(),
+                        violation.getField(),
+                        messages,
+                        Timer.builder("invoice.rule.evaluation")
+                                .tag("rule", rule.getId())
+                                .description("合规规则评估耗时")
+                                .register(meterRegistry),
+                        Counter.builder("invoice.rule.violations")
+                                .tag("rule", rule.getId())
+                                .description("合规规则违规次数")
+                                .register(meterRegistry)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("规则 " + rule.getId() + " 编译失败: " + e.getMessage(), e);
+            }
+        }
+
+        List<CompiledBatchLimit> batchLimits = new ArrayList<>();
+        for (ComplianceRuleDefinition.BatchLimit limit : definition.getBatchLimits()) {
+            if (!limit.isEnabled()) {
+                continue;
+            }
+            if (limit.getId() == null || limit.getViolation() == null
+                    || (limit.getMaxAmount() == null && limit.getMaxCount() == null)) {
+                throw new IllegalArgumentException("批次限额缺少 id、violation 或 max-amount/max-count: " + limit.getId());
+            }
+
+            try {
+                ComplianceRuleDefinition.Violation violation = limit.getViolation();
+                batchLimits.add(new CompiledBatchLimit(
+                        limit.getId(),
+                        Set.copyOf(limit.getFormTypes()),
+                        compileCondition(limit.getWhen()),
+                        parseGroupBy(limit.getGroupBy()),
+                        limit.getMaxAmount() != null ? limit.getMaxAmount().movePointRight(2).longValue() : -1,
+                        limit.getMaxCount() != null ? limit.getMaxCount() : -1,
+                        violation.getSeverity(),
+                        violation.getRuleId(),
+                        violation.getField(),
+                        violation.getMessages().isEmpty() ? null : violation.getMessages().get(0).getText(),
+                        Counter.builder("invoice.rule.violations")
+                                .tag("rule", limit.getId())
+                                .description("合规规则违规次数")
+                                .register(meterRegistry)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("批次限额 " + limit.getId() + " 编译失败: " + e.getMessage(), e);
+            }
+        }
+
+        return new RuleSet(definition.getCompany().getName(), definition.getCompany().getTaxCode(),
+                List.copyOf(compiled), definition.isBatchDuplicateCheck(), List.copyOf(batchLimits),
+                source, System.currentTimeMillis());
+    }
+
+    private GroupBy parseGroupBy(String groupBy) {
+        try {
+            return GroupBy.valueOf(groupBy.trim().toUpperCase());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("未知分组方式: " + groupBy + "，可用: day、category、trip");
+        }
+    }
+
+    /**
+     * 将条件节点编译为谓词，空节点恒为真
+     */
+    private Predicate<String[]> compileCondition(ComplianceRuleDefinition.Condition node) {
+        if (node == null) {
+            return facts -> true;
+        }
+
+        if (node.getAll() != null) {
+            List<Predicate<String[]>> children = node.getAll().stream().map(this::compileCondition).toList();
+            return facts -> {
+                for (Predicate<String[]> child : children) {
+                    if (!child.test(facts)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+        if (node.getAny() != null) {
+            List<Predicate<String[]>> children = node.getAny().stream().map(this::compileCondition).toList();
+            return facts -> {
+                for (Predicate<String[]> child : children) {
+                    if (child.test(facts)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        if (node.getNot() != null) {
+            return compileCondition(node.getNot()).negate();
+        }
+
+        int index = fieldIndex(node.getField());
+        if (node.getContainsAny() != null) {
+            KeywordMatcher<String> matcher = KeywordMatcher.of(node.getContainsAny());
+            return facts -> matcher.containsAny(facts[index]);
+        }
+        if (node.getEquals() != null) {
+            String expected = node.getEquals();
+            return facts -> expected.equals(facts[index]);
+        }
+        if (node.getMatches() != null) {
+            Pattern pattern = Pattern.compile(node.getMatches());
+            return facts -> facts[index] != null && pattern.matcher(facts[index]).matches();
+        }
+        if (Boolean.TRUE.equals(node.getNotEmpty())) {
+            return facts -> facts[index] != null && !facts[index].trim().isEmpty();
+        }
+
+        throw new IllegalArgumentException("条件缺少运算符: field=" + node.getField());
+    }
+
+    private int fieldIndex(String field) {
+        Integer index = FIELD_INDEX.get(field);
+        if (index == null) {
+            throw new IllegalArgumentException("未知字段: " + field + "，可用字段: " + FIELDS.keySet());
+        }
+        return index;
+    }
+
+    private ComplianceRuleDefinition.Condition firstFieldNode(ComplianceRuleDefinition.Condition node) {
+        if (node == null) {
+            return null;
+        }
+        if (node.getField() != null) {
+            return node;
+        }
+        List<ComplianceRuleDefinition.Condition> children = node.getAll() != null ? node.getAll() : node.getAny();
+        if (children != null) {
+            for (ComplianceRuleDefinition.Condition child : children) {
+                ComplianceRuleDefinition.Condition found = firstFieldNode(child);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return firstFieldNode(node.getNot());
+    }
+
+    private String[] resolveFacts(InvoiceInfo invoice) {
+        String[] facts = new String[FIELDS.size()];
+        int index = 0;
+        for (Function<InvoiceInfo, String> getter : FIELDS.values()) {
+            facts[index++] = getter.apply(invoice);
+        }
+        return facts;
+    }
+
+    private String formatMessage(CompiledRule rule, String[] facts) {
+        String template = null;
+        for (CompiledMessage message : rule.messages()) {
+            if (message.when().test(facts)) {
+                template = message.text();
+                break;
+            }
+        }
+        if (template == null) {
+            template = "规则'" + rule.id() + "'校验不通过";
+        }
+
+        String value = rule.valueField() >= 0 ? Objects.toString(facts[rule.valueField()], "") : "";
+        String[] parts = value.split("-");
+        String segment = parts.length > 1 ? parts[1] : value;
+
+        return template
+                .replace("{value}", value)
+                .replace("{segment}", segment)
+                .replace("{options}", String.join("、", rule.options()));
+    }
+
+    private String formatBatchMessage(CompiledBatchLimit limit, String groupKey, BatchGroup group) {
+        String template = limit.message() != null ? limit.message() : "批次限额'" + limit.id() + "'校验不通过";
+        String groupLabel = limit.groupBy() == GroupBy.DAY && groupKey.length() == 8
+                ? groupKey.substring(0, 4) + "-" + groupKey.substring(4, 6) + "-" + groupKey.substring(6)
+                : groupKey;
+
+        return template
+                .replace("{group}", groupLabel)
+                .replace("{total}", BigDecimal.valueOf(group.cents, 2).toPlainString())
+                .replace("{limit}", limit.maxCents() >= 0 ? BigDecimal.valueOf(limit.maxCents(), 2).toPlainString() : "不限")
+                .replace("{count}", String.valueOf(group.members.size()))
+                .replace("{max-count}", limit.maxCount() >= 0 ? String.valueOf(limit.maxCount()) : "不限");
+    }
+
+    /**
+     * 批内查重键：优先发票号码；没有号码时用销售方+金额+开票日期
+     */
+    private static String duplicateKey(InvoiceInfo invoice, long cents, String day) {
+        String number = blankToNull(invoice.getInvoiceNumber());
+        if (number != null) {
+            return "N|" + number.replaceAll("\\s+", "");
+        }
+        String seller = blankToNull(invoice.getSellerName());
+        if (seller != null && cents >= 0 && day != null) {
+            return "S|" + seller.trim() + "|" + cents + "|" + day;
+        }
+        return null;
+    }
+
+    /**
+     * 金额转为分，无法解析时返回-1
+     */
+    private static long parseCents(String amount) {
+        if (amount == null) {
+            return -1;
+        }
+        String clean = amount.replaceAll("[^0-9.\\-]", "");
+        if (clean.isEmpty()) {
+            return -1;
+        }
+        try {
+            return new BigDecimal(clean).movePointRight(2).longValue();
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 开票日期归一为 yyyyMMdd，兼容 2024-01-15、2024年01月15日 等格式，无法识别时返回null
+     */
+    private static String dayKey(String date) {
+        if (date == null) {
+            return null;
+        }
+        Matcher matcher = DATE_PATTERN.matcher(date);
+        if (matcher.find()) {
+            return String.format("%s%02d%02d", matcher.group(1),
+                    Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+        }
+        String digits = date.replaceAll("[^0-9]", "");
+        return digits.length() >= 8 ? digits.substring(0, 8) : null;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
@@ -0,0 +1,233 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 组合验证提供方
+ * 按配置的调用链依次调用各提供方：failover 模式在返回错误时切换下一个；
+ * hedge 模式在主提供方超过对冲延迟仍未返回时并发调用备用提供方，取先成功的结果（会增加调用次数）。
+ * 每个提供方的耗时和错误数单独记录指标。
+ * 结果是否可缓存取决于实际给出结果的提供方；模拟提供方（回放）不能排在真实提供方之后，
+ * 否则真实提供方出错时会由模拟数据给出结论。
+ */
+@Service
+@Primary
+@Slf4j
+public class CompositeVerificationProvider implements VerificationProvider {
+
+    private static final String MODE_HEDGE = "hedge";
+
+    @Value("${invoice.verification.provider.chain:aliyun}")
+    private String chainNames;
+
+    @Value("${invoice.verification.provider.mode:failover}")
+    private String mode;
+
+    @Value("${invoice.verification.provider.hedge-delay-ms:500}")
+    private long hedgeDelayMs;
+
+    private final Map<String, VerificationProvider> providersByName = new LinkedHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Executor hedgeExecutor;
+    private final Counter hedgedCounter;
+
+    private final Map<String, Timer> latencyTimers = new HashMap<>();
+    private final Map<String, Counter> errorCounters = new HashMap<>();
+
+    private List<VerificationProvider> chain = new ArrayList<>();
+
+    // 容器注入集合时会排除自身，这里只会拿到具体的提供方
+    public CompositeVerificationProvider(List<VerificationProvider> providers,
+                                         MeterRegistry meterRegistry,
+                                         @Qualifier("verificationHedgeExecutor") Executor hedgeExecutor) {
+        this.meterRegistry = meterRegistry;
+        this.hedgeExecutor = hedgeExecutor;
+        for (VerificationProvider provider : providers) {
+            providersByName.put(provider.getName(), provider);
+        }
+        this.hedgedCounter = Counter.builder("invoice.verification.provider.hedged")
+                .description("触发对冲请求的验证次数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        List<VerificationProvider> resolved = new ArrayList<>();
+        for (String name : chainNames.split(",")) {
+            VerificationProvider provider = providersByName.get(name.trim());
+            if (provider == null) {
+                log.warn("未知的验证提供方: {}，可选: {}", name, providersByName.keySet());
+                continue;
+            }
+            resolved.add(provider);
+            latencyTimers.put(provider.getName(), Timer.builder("invoice.verification.provider.latency")
+                    .tag("provider", provider.getName())
+                    .description("验证提供方调用耗时")
+                    .register(meterRegistry));
+            errorCounters.put(provider.getName(), Counter.builder("invoice.verification.provider.errors")
+                    .tag("provider", provider.getName())
+                    .description("验证提供方返回错误的次数")
+                    .register(meterRegistry));
+        }
+
+        if (resolved.isEmpty()) {
+            throw new IllegalStateException("未配置可用的发票验证提供方: " + chainNames);
+        }
+        for (int i = 1; i < resolved.size(); i++) {
+            boolean afterRealProvider = resolved.subList(0, i).stream().anyMatch(VerificationProvider::isCacheable);
+            if (afterRealProvider && !resolved.get(i).isCacheable()) {
+                throw new IllegalStateException("模拟验证提供方 " + resolved.get(i).getName()
+                        + " 不能排在真实提供方之后: " + chainNames);
+            }
+        }
+        chain = resolved;
+        log.info("发票验证提供方调用链: {}, 模式: {}", chainNames, mode);
+    }
+
+    @Override
+    public String getName() {
+        return "composite";
+    }
+
+    @Override
+    public VerificationResult verify(Map<String, String> requestParams) {
+        if (MODE_HEDGE.equalsIgnoreCase(mode) && chain.size() > 1) {
+            return hedge(requestParams);
+        }
+        return failover(requestParams);
+    }
+
+    /**
+     * 依次调用，返回第一个非错误结果
+     */
+    private VerificationResult failover(Map<String, String> requestParams) {
+        VerificationResult last = null;
+        for (VerificationProvider provider : chain) {
+            last = invoke(provider, requestParams);
+            if (!isError(last)) {
+                return last;
+            }
+            log.warn("验证提供方 {} 返回错误，尝试下一个: {}", provider.getName(), last.getMessage());
+        }
+        return last;
+    }
+
+    /**
+     * 主提供方超过对冲延迟未返回时并发调用备用提供方
+     */
+    private VerificationResult hedge(Map<String, String> requestParams) {
+        VerificationProvider primary = chain.get(0);
+        VerificationProvider backup = chain.get(1);
+
+        CompletableFuture<VerificationResult> first =
+                CompletableFuture.supplyAsync(() -> invoke(primary, requestParams), hedgeExecutor);
+        try {
+            VerificationResult result = first.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+            if (!isError(result)) {
+                return result;
+            }
+            // 主提供方快速失败，直接切换到备用提供方
+            return invoke(backup, requestParams);
+        } catch (TimeoutException e) {
+            hedgedCounter.increment();
+            log.debug("验证提供方 {} 超过 {}ms 未返回，对冲调用 {}", primary.getName(), hedgeDelayMs, backup.getName());
+            CompletableFuture<VerificationResult> second =
+                    CompletableFuture.supplyAsync(() -> invoke(backup, requestParams), hedgeExecutor);
+            return firstSuccessful(first, second);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return VerificationResult.error("真伪验证被中断");
+        } catch (Exception e) {
+            return VerificationResult.error("真伪验证服务异常: " + e.getMessage());
+        }
+    }
+
+    private VerificationResult firstSuccessful(CompletableFuture<VerificationResult> first,
+                                               CompletableFuture<VerificationResult> second) {
+        CompletableFuture<VerificationResult> winner = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(2);
+        BiConsumer<VerificationResult, Throwable> onDone = (result, error) -> {
+            if (result != null && !isError(result)) {
+                winner.complete(result);
+            } else if (remaining.decrementAndGet() == 0) {
+                winner.complete(result != null ? result : VerificationResult.error("真伪验证服务异常"));
+            }
+        };
+        first.whenComplete(onDone);
+        second.whenComplete(onDone);
+        return winner.join();
+    }
+
+    /**
+     * 调用单个提供方并记录耗时和错误
+     */
+    private VerificationResult invoke(VerificationProvider provider, Map<String, String> requestParams) {
+        long start = System.nanoTime();
+        VerificationResult result;
+        try {
+            result = provider.verify(requestParams);
+            if (result == null) {
+                result = VerificationResult.error("验证服务返回空响应");
+            }
+        } catch (Exception e) {
+            log.error("验证提供方 {} 调用异常: {}", provider.getName(), e.getMessage());
+            result = VerificationResult.error("真伪验证服务异常: " + e.getMessage());
+        }
+
+        result.setCacheable(result.isCacheable() && provider.isCacheable());
+        latencyTimers.get(provider.getName()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (isError(result)) {
+            errorCounters.get(provider.getName()).increment();
+        }
+        return result;
+    }
+
+    private boolean isError(VerificationResult result) {
+        return result == null || VerificationResult.STATUS_ERROR.equals(result.getStatus());
+    }
+
+    /**
+     * 获取各提供方调用统计
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("chain", chain.stream().map(VerificationProvider::getName).toList());
+        status.put("mode", mode);
+        status.put("hedgeDelayMs", hedgeDelayMs);
+        status.put("hedgedCount", hedgedCounter.count());
+
+        Map<String, Object> providers = new LinkedHashMap<>();
+        for (VerificationProvider provider : chain) {
+            Timer timer = latencyTimers.get(provider.getName());
+            providers.put(provider.getName(), Map.of(
+                    "calls", timer.count(),
+                    "errors", errorCounters.get(provider.getName()).count(),
+                    "meanMs", timer.mean(TimeUnit.MILLISECONDS),
+                    "maxMs", timer.max(TimeUnit.MILLISECONDS)
+            ));
+        }
+        status.put("providers", providers);
+        return status;
+    }
+}
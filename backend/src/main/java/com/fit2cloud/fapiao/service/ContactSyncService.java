@@ -0,0 +1,175 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.wecom.WeComContactEvent;
+import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.util.WeComCallbackCrypto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通讯录增量同步
+ * 企业微信的通讯录变更回调（change_contact）校验签名、解密后放入队列立即返回，
+ * 由定时任务批量取出，作为增量应用到部门树、用户目录和用户-部门关系，每批只重建一次快照；
+ * 启用后整体加载改为按对账周期执行（qywechat.directory.reconcile-hours），只用于兜底补齐漏掉的事件。
+ * 未配置回调 Token 和 EncodingAESKey 时不启用，目录仍按原来的周期整体加载。
+ */
+@Service
+@Slf4j
+public class ContactSyncService {
+
+    private final UserInfoService userInfoService;
+    private final DepartmentService departmentService;
+
+    // 未配置回调时为null
+    private final WeComCallbackCrypto crypto;
+    private final int maxPending;
+    private final int batchSize;
+
+    private final Queue<WeComContactEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong appliedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long lastReceivedAt = 0;
+    private volatile long lastAppliedAt = 0;
+
+    public ContactSyncService(UserInfoService userInfoService,
+                              DepartmentService departmentService,
+                              @Value("${qywechat.callback.token:}") String token,
+                              @Value("${qywechat.callback.encoding-aes-key:}") String encodingAesKey,
+                              @Value("${qywechat.corpid:}") String corpId,
+                              @Value("${qywechat.callback.max-pending:10000}") int maxPending,
+                              @Value("${qywechat.callback.batch-size:500}") int batchSize,
+                              @Value("${qywechat.directory.reconcile-hours:24}") long reconcileHours) {
+        this.userInfoService = userInfoService;
+        this.departmentService = departmentService;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+
+        if (token.isEmpty() || encodingAesKey.isEmpty()) {
+            this.crypto = null;
+            log.info("未配置通讯录变更回调，用户目录按周期整体加载");
+        } else {
+            this.crypto = new WeComCallbackCrypto(token, encodingAesKey, corpId);
+            userInfoService.enableIncrementalSync(reconcileHours * 60 * 60 * 1000);
+        }
+    }
+
+    public boolean isEnabled() {
+        return crypto != null;
+    }
+
+    /**
+     * 校验回调URL（企业微信保存回调配置时发起的 GET 请求），返回解密后的 echostr
+     */
+    public String verifyUrl(String msgSignature, String timestamp, String nonce, String echostr) {
+        return requireCrypto().verifyAndDecrypt(msgSignature, timestamp, nonce, echostr);
+    }
+
+    /**
+     * 接收回调消息：校验签名、解密后放入队列，不在请求线程内更新目录
+     * 非通讯录变更事件直接忽略；队列积压超过上限时丢弃事件并整体重新加载
+     */
+    public void receive(String msgSignature, String timestamp, String nonce, String body) {
+        WeComCallbackCrypto callbackCrypto = requireCrypto();
+        WeComContactEvent event;
+        try {
+            String encrypt = WeComCallbackCrypto.parseXml(body).get("Encrypt");
+            String message = callbackCrypto.verifyAndDecrypt(msgSignature, timestamp, nonce, encrypt);
+            event = WeComContactEvent.from(WeComCallbackCrypto.parseXml(message));
+        } catch (BusinessException e) {
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+
+        if (event == null) {
+            log.debug("忽略非通讯录变更的回调消息");
+            return;
+        }
+        receivedCount.incrementAndGet();
+        lastReceivedAt = System.currentTimeMillis();
+
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            log.warn("通讯录变更事件积压超过 {} 条，丢弃事件 {}，改为整体重新加载", maxPending, event.changeType());
+            userInfoService.requestReload();
+            return;
+        }
+        pending.add(event);
+        log.debug("收到通讯录变更事件: {} {}", event.changeType(),
+                event.isPartyEvent() ? event.id() : event.userId());
+    }
+
+    /**
+     * 批量应用队列中的变更事件
+     * 整体加载进行中时暂不应用，加载完成后再应用在其之上，避免加载结果覆盖更新的事件
+     */
+    @Scheduled(fixedDelayString = "${qywechat.callback.apply-interval-ms:500}")
+    public void applyPendingEvents() {
+        if (crypto == null || pending.isEmpty() || userInfoService.isLoading()) {
+            return;
+        }
+
+        List<WeComContactEvent> partyEvents = new ArrayList<>();
+        List<WeComContactEvent> userEvents = new ArrayList<>();
+        WeComContactEvent event;
+        int count = 0;
+        while (count < batchSize && (event = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            count++;
+            if (event.isPartyEvent()) {
+                partyEvents.add(event);
+            } else if (event.isUserEvent()) {
+                userEvents.add(event);
+            }
+        }
+
+        try {
+            // 先更新部门，本批次中新建部门下的成员才能取到部门名称
+            DepartmentTree departments = partyEvents.isEmpty() ? null
+                    : departmentService.applyDepartmentEvents(partyEvents);
+            int changed = userInfoService.applyContactEvents(userEvents, departments);
+
+            appliedCount.addAndGet(count);
+            lastAppliedAt = System.currentTimeMillis();
+            log.info("已应用 {} 个通讯录变更事件（部门 {} 个，成员 {} 个），更新用户 {} 个",
+                    count, partyEvents.size(), userEvents.size(), changed);
+        } catch (Exception e) {
+            log.error("应用通讯录变更事件失败，改为整体重新加载", e);
+            userInfoService.requestReload();
+        }
+    }
+
+    /**
+     * 增量同步状态（/actuator/health 中 userDirectory 的 contactSync）
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", isEnabled());
+        status.put("pending", pendingCount.get());
+        status.put("received", receivedCount.get());
+        status.put("applied", appliedCount.get());
+        status.put("rejected", rejectedCount.get());
+        status.put("dropped", droppedCount.get());
+        status.put("lastReceivedAt", lastReceivedAt);
+        status.put("lastAppliedAt", lastAppliedAt);
+        return status;
+    }
+
+    private WeComCallbackCrypto requireCrypto() {
+        if (crypto == null) {
+            throw new BusinessException("未配置通讯录变更回调");
+        }
+        return crypto;
+    }
+}
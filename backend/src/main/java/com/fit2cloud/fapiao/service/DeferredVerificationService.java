@@ -0,0 +1,311 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.response.BatchValidationResult;
+import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.response.InvoiceValidationResult;
+import com.fit2cloud.fapiao.dto.response.ValidationResult;
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+import com.fit2cloud.fapiao.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 延迟真伪验证服务
+ * 识别后先返回查重和本地规则结果，真伪验证在后台执行，完成后通过SSE推送或轮询接口获取；
+ * 后台验证结果按发票号码登记，多次上传（含继续上传）的发票在一次提交时统一确认，只需补查仍在验证中的发票。
+ */
+@Service
+@Slf4j
+public class DeferredVerificationService {
+
+    @Value("${invoice.verification.deferred.enabled:false}")
+    private boolean deferredEnabled;
+
+    @Value("${invoice.verification.deferred.session-ttl-minutes:30}")
+    private long sessionTtlMinutes;
+
+    @Value("${invoice.verification.deferred.submit-wait-seconds:10}")
+    private long submitWaitSeconds;
+
+    private final RuleValidationService ruleValidationService;
+    private final InvoiceVerificationService verificationService;
+
+    // 验证令牌 -> 后台验证会话
+    private final Map<String, VerificationSession> sessions = new ConcurrentHashMap<>();
+
+    // 发票号码 -> 最近一次上传的后台验证，提交时据此确认，不依赖上传批次
+    private final Map<String, PendingVerification> byInvoiceNumber = new ConcurrentHashMap<>();
+
+    public DeferredVerificationService(RuleValidationService ruleValidationService,
+                                       InvoiceVerificationService verificationService) {
+        this.ruleValidationService = ruleValidationService;
+        this.verificationService = verificationService;
+    }
+
+    /**
+     * 一次上传对应的后台验证会话
+     */
+    private static class VerificationSession {
+        private final String token;
+        private final long createdTime = System.currentTimeMillis();
+        private final List<InvoiceValidationResult> entries;
+        private final List<CompletableFuture<InvoiceValidationResult>> futures = new ArrayList<>();
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        private VerificationSession(String token, List<InvoiceValidationResult> entries) {
+            this.token = token;
+            this.entries = entries;
+        }
+
+        private boolean isFinished() {
+            return futures.stream().allMatch(CompletableFuture::isDone);
+        }
+
+        private long completedCount() {
+            return futures.stream().filter(CompletableFuture::isDone).count();
+        }
+    }
+
+    /**
+     * 单张发票的后台验证，记录上传时的发票信息，提交时开票日期或金额被修改则不采用
+     */
+    private record PendingVerification(VerificationSession session, InvoiceInfo invoice,
+                                       CompletableFuture<InvoiceValidationResult> future) {
+
+        private boolean matches(InvoiceInfo submitted) {
+            return Objects.equals(invoice.getInvoiceDate(), submitted.getInvoiceDate())
+                    && Objects.equals(invoice.getTotalAmount(), submitted.getTotalAmount());
+        }
+    }
+
+    public boolean isEnabled() {
+        return deferredEnabled;
+    }
+
+    /**
+     * 为一批待验证的发票启动后台真伪验证
+     *
+     * @return 验证令牌
+     */
+    public String start(BatchValidationResult batchResult) {
+        String token = UUID.randomUUID().toString();
+        List<InvoiceValidationResult> entries = batchResult.getResults() != null
+                ? batchResult.getResults()
+                : new ArrayList<>();
+        VerificationSession session = new VerificationSession(token, entries);
+        sessions.put(token, session);
+
+        for (InvoiceValidationResult entry : entries) {
+            InvoiceInfo invoice = entry.getInvoice();
+            ValidationResult pendingResult = entry.getValidationResult();
+
+            CompletableFuture<InvoiceValidationResult> future = ruleValidationService.verifyAuthenticityAsync(invoice)
+                    .thenApply(verification -> new InvoiceValidationResult(entry.getInvoiceIndex(), invoice,
+                            ruleValidationService.applyVerificationResult(invoice, verification, pendingResult)));
+            session.futures.add(future);
+            if (invoice.getInvoiceNumber() != null) {
+                byInvoiceNumber.put(invoice.getInvoiceNumber(), new PendingVerification(session, invoice, future));
+            }
+        }
+
+        // 所有任务登记完成后再挂回调，保证推送时能正确判断整批是否完成
+        for (CompletableFuture<InvoiceValidationResult> future : session.futures) {
+            future.thenAccept(result -> publish(session, result));
+        }
+
+        log.info("启动后台真伪验证: token={}, 发票数量={}", token, entries.size());
+        return token;
+    }
+
+    /**
+     * 订阅验证结果推送，已完成的结果会先补发
+     */
+    public SseEmitter subscribe(String token) {
+        VerificationSession session = getSession(token);
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(sessionTtlMinutes));
+
+        // 先登记再补发，避免补发期间完成的结果漏推（重复推送由前端按索引覆盖）
+        session.emitters.add(emitter);
+        emitter.onCompletion(() -> session.emitters.remove(emitter));
+        emitter.onTimeout(() -> session.emitters.remove(emitter));
+        emitter.onError(e -> session.emitters.remove(emitter));
+
+        try {
+            for (CompletableFuture<InvoiceValidationResult> future : session.futures) {
+                if (future.isDone()) {
+                    emitter.send(SseEmitter.event().name("verification").data(future.join()));
+                }
+            }
+            if (session.isFinished()) {
+                emitter.send(SseEmitter.event().name("complete").data(token));
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+
+        return emitter;
+    }
+
+    /**
+     * 轮询验证进度，返回已完成的验证结果
+     */
+    public Map<String, Object> poll(String token) {
+        VerificationSession session = getSession(token);
+
+        List<InvoiceValidationResult> completed = new ArrayList<>();
+        for (CompletableFuture<InvoiceValidationResult> future : session.futures) {
+            if (future.isDone()) {
+                completed.add(future.join());
+            }
+        }
+
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("token", token);
+        progress.put("total", session.futures.size());
+        progress.put("completed", completed.size());
+        progress.put("finished", completed.size() == session.futures.size());
+        progress.put("results", completed);
+        return progress;
+    }
+
+    /**
+     * 提交前确认真伪验证结果
+     * 按发票号码查找各次上传启动的后台验证：已完成的直接使用，仍在验证中的等待一段时间，超时或没有后台验证时同步补查；
+     * 验证不通过的发票拒绝提交
+     */
+    public void confirmBeforeSubmit(List<InvoiceInfo> invoices) {
+        if (invoices == null || invoices.isEmpty()) {
+            return;
+        }
+
+        int recheckCount = 0;
+        Set<VerificationSession> touched = new HashSet<>();
+        for (InvoiceInfo invoice : invoices) {
+            PendingVerification pending = invoice.getInvoiceNumber() != null
+                    ? byInvoiceNumber.get(invoice.getInvoiceNumber())
+                    : null;
+            if (pending != null && !pending.matches(invoice)) {
+                log.info("发票信息在上传后被修改，重新验证: invoiceNumber={}", invoice.getInvoiceNumber());
+                pending = null;
+            }
+            CompletableFuture<InvoiceValidationResult> future = pending != null ? pending.future() : null;
+            VerificationResult verification;
+
+            if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+                verification = future.join().getValidationResult().getVerificationResult();
+            } else {
+                recheckCount++;
+                verification = awaitOrVerify(future, invoice);
+            }
+
+            if (verification != null && verification.isVerified() && !verification.isValid()) {
+                throw new BusinessException(String.format("发票 %s 真伪验证未通过: %s",
+                        invoice.getInvoiceNumber(), verification.getMessage()));
+            }
+            if (pending != null) {
+                touched.add(pending.session());
+            }
+        }
+
+        log.info("提交前真伪验证确认完成: 发票数量={}, 补查数量={}, 涉及上传批次={}",
+                invoices.size(), recheckCount, touched.size());
+        touched.forEach(this::closeSession);
+    }
+
+    private VerificationResult awaitOrVerify(CompletableFuture<InvoiceValidationResult> future, InvoiceInfo invoice) {
+        if (future != null) {
+            try {
+                return future.get(submitWaitSeconds, TimeUnit.SECONDS).getValidationResult().getVerificationResult();
+            } catch (TimeoutException e) {
+                log.warn("等待后台真伪验证超时，同步补查: invoiceNumber={}", invoice.getInvoiceNumber());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException("提交被中断");
+            } catch (Exception e) {
+                log.warn("后台真伪验证异常，同步补查: invoiceNumber={}, error={}",
+                        invoice.getInvoiceNumber(), e.getMessage());
+            }
+        }
+        // 已有终态结果会命中验证缓存，不会重复计费
+        return verificationService.verifyInvoice(invoice);
+    }
+
+    private void publish(VerificationSession session, InvoiceValidationResult result) {
+        boolean finished = session.isFinished();
+        for (SseEmitter emitter : session.emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("verification").data(result));
+                if (finished) {
+                    emitter.send(SseEmitter.event().name("complete").data(session.token));
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                log.debug("推送验证结果失败，移除订阅: token={}, error={}", session.token, e.getMessage());
+                session.emitters.remove(emitter);
+            }
+        }
+    }
+
+    private VerificationSession getSession(String token) {
+        VerificationSession session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            throw new BusinessException("验证会话不存在或已过期");
+        }
+        return session;
+    }
+
+    private void closeSession(VerificationSession session) {
+        sessions.remove(session.token);
+        byInvoiceNumber.values().removeIf(pending -> pending.session() == session);
+        session.emitters.forEach(SseEmitter::complete);
+    }
+
+    /**
+     * 定时清理过期的验证会话
+     */
+    @Scheduled(fixedRate = 60000)
+    public void cleanupExpiredSessions() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(sessionTtlMinutes);
+        List<VerificationSession> expired = sessions.values().stream()
+                .filter(session -> session.createdTime < expireBefore)
+                .toList();
+
+        expired.forEach(this::closeSession);
+        if (!expired.isEmpty()) {
+            log.info("清理过期验证会话 {} 个", expired.size());
+        }
+    }
+
+    /**
+     * 获取后台验证状态
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", deferredEnabled);
+        status.put("sessionCount", sessions.size());
+        status.put("trackedInvoices", byInvoiceNumber.size());
+        status.put("pendingInvoices", sessions.values().stream()
+                .mapToLong(session -> session.futures.size() - session.completedCount())
+                .sum());
+        return status;
+    }
+}
@@ -1,15 +1,24 @@
 package com.fit2cloud.fapiao.service;
 
+import com.fit2cloud.fapiao.dto.wecom.WeComContactEvent;
+import com.fit2cloud.fapiao.dto.wecom.WeComDepartment;
+import com.fit2cloud.fapiao.dto.wecom.WeComDepartmentListResponse;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import com.fit2cloud.fapiao.util.Jitter;
+import com.github.benmanes.caffeine.cache.Cache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @Slf4j
@@ -19,16 +28,33 @@ public class DepartmentService {
     private AccessTokenService accessTokenService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private WeComApiClient weComApiClient;
 
-    private List<Map<String, Object>> cachedDepartments;
-    private long cacheTimestamp;
+    @Autowired
+    @Qualifier("cacheRefreshExecutor")
+    private Executor cacheRefreshExecutor;
+
+    // 部门树索引，每次刷新部门列表时整体重建，null 表示尚未加载
+    private volatile DepartmentTree departmentTree;
+    private volatile long cacheTimestamp;
+    // 过期时间（加载时间 + 带抖动的有效期），过期后仍使用旧索引并在后台刷新
+    private volatile long expiresAt;
     private static final long CACHE_DURATION = 5 * 60 * 1000; // 5分钟缓存
+    private static final long RETRY_INTERVAL = 30 * 1000; // 刷新失败后30秒再试
+
+    // 后台刷新标志，同一时间只有一个刷新任务
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    // 串行化从企业微信获取部门列表
+    private final Object loadLock = new Object();
 
-    // 添加以下成员变量
-    private Map<String, String> userIdToNameCache = new HashMap<>();
-    private long userCacheTimestamp;
-    private static final long USER_CACHE_DURATION = 60 * 60 * 1000; // 1小时缓存
+    // 用户ID -> 姓名，每个条目写入1小时后过期
+    private final Cache<String, String> userIdToNameCache;
+
+    public DepartmentService(LocalCacheRegistry cacheRegistry) {
+        this.userIdToNameCache = cacheRegistry.cache("userNames",
+                LocalCacheRegistry.Spec.of(50_000, Duration.ofHours(1)));
+    }
 
     /**
      * 根据用户ID获取用户姓名（带缓存）
@@ -39,12 +65,10 @@ public class DepartmentService {
         }
 
         // 检查缓存
-        if (userIdToNameCache.containsKey(userId)) {
-            long currentTime = System.currentTimeMillis();
-            if (currentTime - userCacheTimestamp < USER_CACHE_DURATION) {
-                log.debug("使用缓存的用户姓名: {} -> {}", userId, userIdToNameCache.get(userId));
-                return userIdToNameCache.get(userId);
-            }
+        String userName = userIdToNameCache.getIfPresent(userId);
+        if (userName != null) {
+            log.debug("使用缓存的用户姓名: {} -> {}", userId, userName);
+            return userName;
         }
 
         log.debug("未找到用户 {} 的缓存，需要获取", userId);
@@ -57,7 +81,6 @@ public class DepartmentService {
     public void cacheUserInfo(String userId, String userName) {
         if (userId != null && userName != null) {
             userIdToNameCache.put(userId, userName);
-            userCacheTimestamp = System.currentTimeMillis();
             log.debug("缓存用户信息: {} -> {}", userId, userName);
         }
     }
@@ -68,31 +91,15 @@ public class DepartmentService {
     public void batchCacheUserInfo(Map<String, String> userInfos) {
         if (userInfos != null && !userInfos.isEmpty()) {
             userIdToNameCache.putAll(userInfos);
-            userCacheTimestamp = System.currentTimeMillis();
             log.info("批量缓存 {} 个用户信息", userInfos.size());
         }
     }
 
-    /**
-     * 获取用户缓存状态
-     */
-    public Map<String, Object> getUserCacheStatus() {
-        Map<String, Object> status = new HashMap<>();
-        status.put("cacheSize", userIdToNameCache.size());
-        status.put("cacheTimestamp", userCacheTimestamp);
-        status.put("cacheAge", userCacheTimestamp > 0 ?
-                (System.currentTimeMillis() - userCacheTimestamp) / 1000 + "秒" : "无缓存");
-        status.put("isValid", userCacheTimestamp > 0 &&
-                (System.currentTimeMillis() - userCacheTimestamp < USER_CACHE_DURATION));
-        return status;
-    }
-
     /**
      * 清空用户缓存
      */
     public void clearUserCache() {
-        userIdToNameCache.clear();
-        userCacheTimestamp = 0;
+        userIdToNameCache.invalidateAll();
         log.info("已清空用户缓存");
     }
 
@@ -100,72 +107,115 @@ public class DepartmentService {
      * 获取部门列表
      */
     public List<Map<String, Object>> getDepartmentList() {
-        // 检查缓存是否有效
-        if (cachedDepartments != null &&
-                System.currentTimeMillis() - cacheTimestamp < CACHE_DURATION) {
-            log.info("使用缓存的部门列表，数量: {}", cachedDepartments.size());
-            return new ArrayList<>(cachedDepartments); // 返回副本避免外部修改
-        }
+        return new ArrayList<>(getDepartmentTree().departments()); // 返回副本避免外部修改
+    }
 
-        try {
-            String accessToken = accessTokenService.getAccessTokenForApproval();
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/department/list?access_token=" + accessToken;
+    /**
+     * 获取部门树索引（带缓存），按ID、名称查找部门以及查询路径、区域都是常数时间
+     * 缓存过期后仍直接返回当前索引，同时在后台从企业微信重新获取（同一时间只有一个刷新任务），请求不等待刷新；
+     * 只有尚未加载过时才同步获取
+     */
+    public DepartmentTree getDepartmentTree() {
+        DepartmentTree cached = departmentTree;
+        if (cached != null) {
+            if (System.currentTimeMillis() >= expiresAt) {
+                refreshInBackground();
+            }
+            return cached;
+        }
 
-            log.info("调用企业微信部门列表接口, accessToken: {}", accessToken.substring(0, 10) + "...");
+        // 首次加载，并发的请求只向企业微信获取一次
+        synchronized (loadLock) {
+            cached = departmentTree;
+            return cached != null ? cached : loadDepartmentTree();
+        }
+    }
 
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
+    /**
+     * 缓存已过期时提交后台刷新（定时任务调用，使无请求时缓存也保持较新）
+     */
+    public void refreshIfStale() {
+        if (departmentTree != null && System.currentTimeMillis() >= expiresAt) {
+            refreshInBackground();
+        }
+    }
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
+    /**
+     * 后台刷新部门列表，已有刷新任务时忽略
+     */
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
 
-                if (errcode != null && errcode == 0) {
-                    List<Map<String, Object>> departments = (List<Map<String, Object>>) responseBody.get("department");
-                    log.info("从企业微信获取到 {} 个部门", departments != null ? departments.size() : 0);
+        try {
+            cacheRefreshExecutor.execute(() -> {
+                try {
+                    synchronized (loadLock) {
+                        loadDepartmentTree();
+                    }
+                } catch (Exception e) {
+                    log.warn("后台刷新部门列表失败: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (Exception e) {
+            refreshing.set(false);
+            log.warn("提交部门列表后台刷新失败: {}", e.getMessage());
+        }
+    }
 
-                    if (departments != null && !departments.isEmpty()) {
-                        List<Map<String, Object>> result = buildDepartmentTree(departments);
+    /**
+     * 从企业微信获取部门列表并整体重建索引，调用方需持有 loadLock
+     * 获取失败时继续使用旧的索引（稍后重试），没有旧索引时抛出异常
+     */
+    private DepartmentTree loadDepartmentTree() {
+        DepartmentTree cached = departmentTree;
+        try {
+            String accessToken = accessTokenService.getAccessTokenForApproval();
+            List<WeComDepartment> departments = weComApiClient.get("department/list",
+                    Map.of("access_token", accessToken), WeComDepartmentListResponse.class).department();
+            log.info("从企业微信获取到 {} 个部门", departments != null ? departments.size() : 0);
+
+            if (departments != null && !departments.isEmpty()) {
+                List<Map<String, Object>> departmentInfos = new ArrayList<>(departments.size());
+                for (WeComDepartment department : departments) {
+                    departmentInfos.add(department.toMap());
+                }
+                DepartmentTree tree = DepartmentTree.build(departmentInfos);
 
-                        // 更新缓存
-                        cachedDepartments = new ArrayList<>(result);
-                        cacheTimestamp = System.currentTimeMillis();
+                // 更新缓存
+                departmentTree = tree;
+                markLoaded(System.currentTimeMillis());
 
-                        // 记录部门结构用于调试
-                        logDepartmentStructure(result);
+                // 记录部门结构用于调试
+                logDepartmentStructure(tree.departments());
 
-                        log.info("部门列表缓存已更新，数量: {}", result.size());
-                        return result;
-                    } else {
-                        log.warn("企业微信返回的部门列表为空");
-                        // 清空缓存
-                        cachedDepartments = new ArrayList<>();
-                        cacheTimestamp = System.currentTimeMillis();
-                        return new ArrayList<>();
-                    }
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("获取部门列表失败, errcode: {}, errmsg: {}", errcode, errmsg);
-                    // 如果缓存存在且未过期，继续使用缓存
-                    if (cachedDepartments != null && !cachedDepartments.isEmpty()) {
-                        log.warn("企业微信接口失败，使用缓存的部门数据");
-                        return new ArrayList<>(cachedDepartments);
-                    }
-                    throw new RuntimeException("获取部门列表失败: " + errmsg);
-                }
+                log.info("部门列表缓存已更新，数量: {}", tree.size());
+                return tree;
             } else {
-                // 如果缓存存在且未过期，继续使用缓存
-                if (cachedDepartments != null && !cachedDepartments.isEmpty()) {
-                    log.warn("企业微信请求失败，使用缓存的部门数据");
-                    return new ArrayList<>(cachedDepartments);
-                }
-                log.error("获取部门列表请求失败, 状态码: {}", response.getStatusCode());
-                throw new RuntimeException("获取部门列表请求失败");
+                log.warn("企业微信返回的部门列表为空");
+                // 清空缓存
+                departmentTree = DepartmentTree.EMPTY;
+                markLoaded(System.currentTimeMillis());
+                return DepartmentTree.EMPTY;
             }
+        } catch (WeComApiException e) {
+            log.error("获取部门列表失败, errcode: {}, errmsg: {}", e.getErrcode(), e.getErrmsg());
+            // 如果缓存存在，继续使用缓存
+            if (cached != null && !cached.isEmpty()) {
+                log.warn("企业微信接口失败，使用缓存的部门数据");
+                expiresAt = System.currentTimeMillis() + Jitter.apply(RETRY_INTERVAL);
+                return cached;
+            }
+            throw new RuntimeException("获取部门列表失败: " + e.getErrmsg());
         } catch (Exception e) {
-            // 如果缓存存在且未过期，继续使用缓存
-            if (cachedDepartments != null && !cachedDepartments.isEmpty()) {
+            // 如果缓存存在，继续使用缓存
+            if (cached != null && !cached.isEmpty()) {
                 log.warn("获取部门列表异常，使用缓存的部门数据", e);
-                return new ArrayList<>(cachedDepartments);
+                expiresAt = System.currentTimeMillis() + Jitter.apply(RETRY_INTERVAL);
+                return cached;
             }
             log.error("获取部门列表异常", e);
             throw new RuntimeException("获取部门列表异常: " + e.getMessage());
@@ -173,27 +223,108 @@ public class DepartmentService {
     }
 
     /**
-     * 强制刷新部门缓存
+     * 记录加载时间，有效期带随机抖动，避免与其他缓存在同一时刻过期
+     */
+    private void markLoaded(long loadedAt) {
+        cacheTimestamp = loadedAt;
+        expiresAt = loadedAt + Jitter.apply(CACHE_DURATION);
+    }
+
+    /**
+     * 用本地快照中的部门列表填充缓存（启动时缓存为空才生效）
+     * 缓存时间记为快照保存时间，过期后照常从企业微信重新获取，获取失败时继续使用快照数据
+     */
+    public void restoreDepartments(List<Map<String, Object>> departments, long savedAt) {
+        if (departmentTree != null || departments.isEmpty()) {
+            return;
+        }
+        departmentTree = DepartmentTree.build(departments);
+        markLoaded(savedAt);
+        log.info("已从快照恢复部门列表，数量: {}", departments.size());
+    }
+
+    /**
+     * 按通讯录变更事件（create_party、update_party、delete_party）更新部门列表，基于当前索引整体重建一次，缓存时间不变
+     * 部门列表尚未加载时不处理，等下次从企业微信整体获取；与整体加载共用 loadLock，避免互相覆盖
+     *
+     * @return 更新后的部门树索引，没有变化时返回null
+     */
+    public DepartmentTree applyDepartmentEvents(List<WeComContactEvent> events) {
+        if (events.isEmpty()) {
+            return null;
+        }
+        synchronized (loadLock) {
+            return applyDepartmentEventsLocked(events);
+        }
+    }
+
+    private DepartmentTree applyDepartmentEventsLocked(List<WeComContactEvent> events) {
+        DepartmentTree current = departmentTree;
+        if (current == null) {
+            return null;
+        }
+
+        Map<Integer, Map<String, Object>> departments = new LinkedHashMap<>();
+        for (Map<String, Object> dept : current.departments()) {
+            departments.put((Integer) dept.get("id"), dept);
+        }
+
+        for (WeComContactEvent event : events) {
+            Integer id = event.id();
+            if (id == null) {
+                continue;
+            }
+            switch (event.changeType()) {
+                case "create_party", "update_party" -> {
+                    Map<String, Object> dept = departments.containsKey(id)
+                            ? new HashMap<>(departments.get(id)) : new HashMap<>(Map.of("id", id));
+                    // 事件只带有变化的字段
+                    if (event.name() != null) {
+                        dept.put("name", event.name());
+                    }
+                    if (event.parentId() != null) {
+                        dept.put("parentid", event.parentId());
+                    }
+                    if (event.order() != null) {
+                        dept.put("order", event.order());
+                    }
+                    departments.put(id, dept);
+                }
+                case "delete_party" -> departments.remove(id);
+                default -> log.debug("忽略部门变更事件: {}", event.changeType());
+            }
+        }
+
+        DepartmentTree tree = DepartmentTree.build(new ArrayList<>(departments.values()));
+        departmentTree = tree;
+        log.info("部门列表已按 {} 个变更事件更新，数量: {}", events.size(), tree.size());
+        return tree;
+    }
+
+    /**
+     * 强制刷新部门缓存（同步重新获取，失败时保留旧数据）
      */
     public void refreshDepartmentCache() {
         log.info("强制刷新部门缓存");
-        cachedDepartments = null;
-        cacheTimestamp = 0;
-        getDepartmentList(); // 重新加载
+        synchronized (loadLock) {
+            loadDepartmentTree();
+        }
     }
 
     /**
      * 获取缓存状态
      */
     public Map<String, Object> getCacheStatus() {
+        DepartmentTree tree = departmentTree;
         Map<String, Object> status = new HashMap<>();
-        status.put("hasCache", cachedDepartments != null);
-        status.put("cacheSize", cachedDepartments != null ? cachedDepartments.size() : 0);
+        status.put("hasCache", tree != null);
+        status.put("cacheSize", tree != null ? tree.size() : 0);
         status.put("cacheTimestamp", cacheTimestamp);
-        status.put("cacheAge", cachedDepartments != null ?
+        status.put("cacheAge", tree != null ?
                 (System.currentTimeMillis() - cacheTimestamp) / 1000 + "秒" : "无缓存");
-        status.put("isValid", cachedDepartments != null &&
-                (System.currentTimeMillis() - cacheTimestamp < CACHE_DURATION));
+        status.put("isValid", tree != null && System.currentTimeMillis() < expiresAt);
+        status.put("expiresAt", expiresAt);
+        status.put("refreshing", refreshing.get());
         return status;
     }
 
@@ -213,63 +344,6 @@ public class DepartmentService {
         log.info("=== 部门结构分析结束 ===");
     }
 
-    /**
-     * 构建部门树形结构并计算完整路径
-     */
-    private List<Map<String, Object>> buildDepartmentTree(List<Map<String, Object>> departments) {
-        // 构建部门ID到部门的映射
-        Map<Integer, Map<String, Object>> departmentMap = new HashMap<>();
-        for (Map<String, Object> dept : departments) {
-            Integer id = (Integer) dept.get("id");
-            departmentMap.put(id, dept);
-        }
-
-        // 计算每个部门的完整路径
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Map<String, Object> dept : departments) {
-            Map<String, Object> departmentInfo = new HashMap<>(dept);
-            String fullPath = buildDepartmentPath(dept, departmentMap);
-            departmentInfo.put("fullPath", fullPath);
-            result.add(departmentInfo);
-        }
-
-        log.info("构建部门树完成，共 {} 个部门", result.size());
-        return result;
-    }
-
-    /**
-     * 构建部门完整路径
-     */
-    private String buildDepartmentPath(Map<String, Object> department, Map<Integer, Map<String, Object>> departmentMap) {
-        List<String> pathParts = new ArrayList<>();
-        Map<String, Object> currentDept = department;
-
-        while (currentDept != null) {
-            String name = (String) currentDept.get("name");
-            if (name != null && !name.isEmpty()) {
-                pathParts.add(0, name);
-            } else {
-                // 如果name为空，使用ID作为备选
-                Integer id = (Integer) currentDept.get("id");
-                pathParts.add(0, "部门" + id);
-            }
-
-            Integer parentId = (Integer) currentDept.get("parentid");
-            if (parentId == null || parentId == 0 || parentId == 1) {
-                break; // 到达根部门
-            }
-
-            currentDept = departmentMap.get(parentId);
-            if (currentDept == null) {
-                break; // 父部门不存在
-            }
-        }
-
-        String path = String.join(" - ", pathParts);
-        log.debug("部门路径: {}", path);
-        return path;
-    }
-
     /**
      * 根据部门ID获取区域信息
      */
@@ -288,33 +362,14 @@ public class DepartmentService {
                 return "";
             }
 
-            List<Map<String, Object>> departments = getDepartmentList();
-            Map<Integer, Map<String, Object>> departmentMap = new HashMap<>();
-
-            // 构建映射
-            for (Map<String, Object> dept : departments) {
-                Integer id = (Integer) dept.get("id");
-                departmentMap.put(id, dept);
-            }
-
-            // 查找指定部门
-            Integer targetId;
-            try {
-                targetId = Integer.parseInt(departmentId);
-            } catch (NumberFormatException e) {
-                log.error("部门ID格式错误: {}", departmentId);
-                return "";
-            }
-
-            Map<String, Object> targetDept = departmentMap.get(targetId);
-
+            DepartmentTree.Node targetDept = getDepartmentTree().get(departmentId);
             if (targetDept == null) {
                 log.warn("未找到部门: {}", departmentId);
                 return "";
             }
 
-            // 获取区域：根目录后一级
-            String region = extractRegionFromPath(targetDept, departmentMap);
+            // 区域在构建部门树时已算好：路径中含区域关键词的部门，没有时取根目录后一级
+            String region = targetDept.region();
             log.info("部门 {} 对应的区域: {}", departmentId, region);
             return region;
 
@@ -323,83 +378,4 @@ public class DepartmentService {
             return "";
         }
     }
-
-    /**
-     * 从部门路径中提取区域信息
-     */
-    private String extractRegionFromPath(Map<String, Object> department, Map<Integer, Map<String, Object>> departmentMap) {
-        List<String> pathParts = new ArrayList<>();
-        Map<String, Object> currentDept = department;
-
-        // 构建路径
-        while (currentDept != null) {
-            String name = (String) currentDept.get("name");
-            if (name != null && !name.isEmpty()) {
-                pathParts.add(0, name);
-            } else {
-                Integer id = (Integer) currentDept.get("id");
-                pathParts.add(0, "部门" + id);
-            }
-
-            Integer parentId = (Integer) currentDept.get("parentid");
-            if (parentId == null || parentId == 0 || parentId == 1) {
-                break; // 到达根部门
-            }
-
-            currentDept = departmentMap.get(parentId);
-            if (currentDept == null) {
-                break; // 父部门不存在
-            }
-        }
-
-        log.debug("部门完整路径: {}", String.join(" - ", pathParts));
-
-        // 通用区域提取策略：
-        // 1. 首先查找包含"区域"、"区"、"大区"等关键词的部门
-        // 2. 如果没有找到，使用第二级部门作为区域（假设第一级是公司，第二级是区域）
-        // 3. 如果只有一级，使用该部门名称
-
-        // 策略1：查找区域关键词
-        for (String part : pathParts) {
-            if (containsRegionKeywords(part)) {
-                log.info("通过关键词识别区域: {}", part);
-                return part;
-            }
-        }
-
-        // 策略2：使用第二级部门
-        if (pathParts.size() >= 2) {
-            String secondLevel = pathParts.get(1);
-            log.info("使用第二级部门作为区域: {}", secondLevel);
-            return secondLevel;
-        }
-
-        // 策略3：使用第一级部门
-        if (pathParts.size() >= 1) {
-            String firstLevel = pathParts.get(0);
-            log.info("使用第一级部门作为区域: {}", firstLevel);
-            return firstLevel;
-        }
-
-        // 如果没有找到区域部门，返回空
-        log.warn("无法提取区域信息，路径为空");
-        return "";
-    }
-
-    /**
-     * 判断部门名称是否包含区域关键词
-     */
-    private boolean containsRegionKeywords(String departmentName) {
-        if (departmentName == null) {
-            return false;
-        }
-
-        String lowerName = departmentName.toLowerCase();
-        return lowerName.contains("区域") ||
-                lowerName.contains("区") ||
-                lowerName.contains("大区") ||
-                lowerName.contains("片区") ||
-                lowerName.contains("地区") ||
-                lowerName.contains("地域");
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,261 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.util.KeywordMatcher;
+
+import java.util.*;
+
+/**
+ * 部门树索引（只读）
+ * 每次刷新部门列表时由 DepartmentService 整体构建一次，之后的查询都是常数时间：
+ * 部门ID -> 节点、部门名称 -> 部门ID、完整路径、层级、所属区域都在构建时算好，
+ * 子树判断用欧拉序区间（enter/exit），不再向上逐级查找父部门。
+ */
+public final class DepartmentTree {
+
+    public static final DepartmentTree EMPTY = build(List.of());
+
+    // 提取区域时识别的关键词（含单字"区"）
+    private static final KeywordMatcher<String> REGION_KEYWORDS =
+            KeywordMatcher.of("区域", "区", "大区", "片区", "地区", "地域");
+
+    // 区域部门名称关键词（判断区域部门时不含单字"区"）
+    private static final KeywordMatcher<String> REGION_DEPARTMENT_KEYWORDS =
+            KeywordMatcher.of("区域", "大区", "片区", "地区");
+
+    /**
+     * 部门节点
+     *
+     * @param info             部门缓存信息（企业微信返回的字段 + fullPath），即 getDepartmentList 返回的元素
+     * @param hierarchy        从一级部门到本部门的名称（不含根部门），fullPath 即用" - "连接
+     * @param region           区域名称：路径中第一个含区域关键词的部门，没有时取第二级、再取第一级
+     * @param regionDepartment 路径中第一个区域部门（名称含"区域"、"大区"等）的名称，没有时为空串
+     * @param enter            欧拉序进入序号
+     * @param exit             欧拉序离开序号，子树内节点的 enter 都在 [enter, exit] 内
+     */
+    public record Node(int id, String name, Integer parentId, Map<String, Object> info,
+                       List<String> hierarchy, String fullPath, String region, String regionDepartment,
+                       int enter, int exit) {
+    }
+
+    private final List<Map<String, Object>> departments;
+    private final Map<Integer, Node> nodes;
+    private final Map<String, List<Integer>> idsByName;
+    private final Map<Integer, List<Integer>> children;
+
+    private DepartmentTree(List<Map<String, Object>> departments, Map<Integer, Node> nodes,
+                           Map<String, List<Integer>> idsByName, Map<Integer, List<Integer>> children) {
+        this.departments = departments;
+        this.nodes = nodes;
+        this.idsByName = idsByName;
+        this.children = children;
+    }
+
+    /**
+     * 判断部门名称是否为区域部门（含"区域"、"大区"、"片区"、"地区"）
+     */
+    public static boolean isRegionDepartment(String departmentName) {
+        return departmentName != null && REGION_DEPARTMENT_KEYWORDS.containsAny(departmentName);
+    }
+
+    /**
+     * 按部门列表构建索引，部门信息需包含 id、name、parentid，返回的部门信息补充 fullPath
+     */
+    public static DepartmentTree build(List<Map<String, Object>> source) {
+        // 部门ID -> 部门信息，保持原顺序
+        Map<Integer, Map<String, Object>> infos = new LinkedHashMap<>();
+        for (Map<String, Object> dept : source) {
+            Object id = dept.get("id");
+            if (id instanceof Integer) {
+                infos.put((Integer) id, new HashMap<>(dept));
+            }
+        }
+
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        List<Integer> roots = new ArrayList<>();
+        for (Map.Entry<Integer, Map<String, Object>> entry : infos.entrySet()) {
+            Integer parentId = (Integer) entry.getValue().get("parentid");
+            if (parentId == null || parentId.equals(entry.getKey()) || !infos.containsKey(parentId)) {
+                roots.add(entry.getKey());
+            } else {
+                children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        // 层级：父部门为根（0或1）时从本部门开始，与企业微信后台展示的路径一致
+        Map<Integer, List<String>> hierarchies = new HashMap<>();
+        for (Integer id : infos.keySet()) {
+            hierarchy(id, infos, hierarchies, new HashSet<>());
+        }
+
+        // 欧拉序，环中的部门（数据异常时）没有根可达，单独编号
+        Map<Integer, int[]> intervals = new HashMap<>();
+        int[] counter = {0};
+        for (Integer root : roots) {
+            tour(root, children, intervals, counter);
+        }
+        for (Integer id : infos.keySet()) {
+            if (!intervals.containsKey(id)) {
+                tour(id, children, intervals, counter);
+            }
+        }
+
+        Map<Integer, Node> nodes = new LinkedHashMap<>(infos.size() * 2);
+        Map<String, List<Integer>> idsByName = new HashMap<>();
+        List<Map<String, Object>> departments = new ArrayList<>(infos.size());
+        for (Map.Entry<Integer, Map<String, Object>> entry : infos.entrySet()) {
+            Integer id = entry.getKey();
+            Map<String, Object> info = entry.getValue();
+            String name = (String) info.get("name");
+            List<String> hierarchy = hierarchies.get(id);
+            String fullPath = String.join(" - ", hierarchy);
+            info.put("fullPath", fullPath);
+
+            int[] interval = intervals.get(id);
+            nodes.put(id, new Node(id, name, (Integer) info.get("parentid"), info, hierarchy, fullPath,
+                    region(hierarchy), regionDepartment(hierarchy), interval[0], interval[1]));
+            if (name != null) {
+                idsByName.computeIfAbsent(name, k -> new ArrayList<>(1)).add(id);
+            }
+            departments.add(info);
+        }
+
+        children.replaceAll((id, ids) -> List.copyOf(ids));
+        idsByName.replaceAll((name, ids) -> List.copyOf(ids));
+        return new DepartmentTree(Collections.unmodifiableList(departments), nodes, idsByName, children);
+    }
+
+    /**
+     * 部门列表（构建时的顺序），元素即部门缓存信息
+     */
+    public List<Map<String, Object>> departments() {
+        return departments;
+    }
+
+    public Node get(Integer id) {
+        return id != null ? nodes.get(id) : null;
+    }
+
+    /**
+     * 按字符串形式的部门ID查找，格式不对时返回null
+     */
+    public Node get(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return nodes.get(Integer.parseInt(id.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 名称完全一致的第一个部门（按部门列表顺序）
+     */
+    public Node findByName(String name) {
+        List<Integer> ids = name != null ? idsByName.get(name) : null;
+        return ids != null ? nodes.get(ids.get(0)) : null;
+    }
+
+    /**
+     * 直属子部门（按部门列表顺序）
+     */
+    public List<Node> children(int id) {
+        List<Integer> ids = children.getOrDefault(id, List.of());
+        List<Node> result = new ArrayList<>(ids.size());
+        for (Integer childId : ids) {
+            result.add(nodes.get(childId));
+        }
+        return result;
+    }
+
+    /**
+     * descendant 是否为 ancestor 本身或其下级部门
+     */
+    public boolean isInSubtree(int ancestor, int descendant) {
+        Node a = nodes.get(ancestor);
+        Node d = nodes.get(descendant);
+        return a != null && d != null && a.enter() <= d.enter() && d.exit() <= a.exit();
+    }
+
+    public Set<Integer> ids() {
+        return nodes.keySet();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    private static List<String> hierarchy(Integer id, Map<Integer, Map<String, Object>> infos,
+                                          Map<Integer, List<String>> hierarchies, Set<Integer> visiting) {
+        List<String> cached = hierarchies.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        Map<String, Object> info = infos.get(id);
+        String name = (String) info.get("name");
+        String part = name != null && !name.isEmpty() ? name : "部门" + id;
+
+        Integer parentId = (Integer) info.get("parentid");
+        List<String> hierarchy;
+        if (parentId == null || parentId == 0 || parentId == 1 || !infos.containsKey(parentId)
+                || !visiting.add(id)) {
+            hierarchy = List.of(part);
+        } else {
+            List<String> parent = hierarchy(parentId, infos, hierarchies, visiting);
+            List<String> path = new ArrayList<>(parent.size() + 1);
+            path.addAll(parent);
+            path.add(part);
+            hierarchy = List.copyOf(path);
+        }
+        hierarchies.put(id, hierarchy);
+        return hierarchy;
+    }
+
+    private static void tour(Integer root, Map<Integer, List<Integer>> children,
+                             Map<Integer, int[]> intervals, int[] counter) {
+        Deque<Iterator<Integer>> stack = new ArrayDeque<>();
+        Deque<Integer> path = new ArrayDeque<>();
+        intervals.put(root, new int[]{counter[0]++, 0});
+        stack.push(children.getOrDefault(root, List.of()).iterator());
+        path.push(root);
+        while (!stack.isEmpty()) {
+            Iterator<Integer> it = stack.peek();
+            if (it.hasNext()) {
+                Integer child = it.next();
+                if (intervals.containsKey(child)) {
+                    continue;
+                }
+                intervals.put(child, new int[]{counter[0]++, 0});
+                stack.push(children.getOrDefault(child, List.of()).iterator());
+                path.push(child);
+            } else {
+                stack.pop();
+                intervals.get(path.pop())[1] = counter[0] - 1;
+            }
+        }
+    }
+
+    private static String region(List<String> hierarchy) {
+        for (String part : hierarchy) {
+            if (REGION_KEYWORDS.containsAny(part)) {
+                return part;
+            }
+        }
+        return hierarchy.size() >= 2 ? hierarchy.get(1) : hierarchy.get(0);
+    }
+
+    private static String regionDepartment(List<String> hierarchy) {
+        for (String part : hierarchy) {
+            if (isRegionDepartment(part)) {
+                return part;
+            }
+        }
+        return "";
+    }
+}
@@ -38,6 +38,9 @@ public class FileUploadService {
     @Autowired
     private TravelSubsidyService travelSubsidyService;
 
+    @Autowired
+    private DeferredVerificationService deferredVerificationService;
+
     /**
      * 处理单个文件上传和智能体识别的完整流程
      */
@@ -214,39 +217,21 @@ public class FileUploadService {
             // 7. 解析发票信息和mediaIds
             InvoiceParserService.InvoiceParseResult parseResult = invoiceParserService.parseInvoicesFromContent(chatResponse.getData().getContent());
 
-            // 发票查重结果（针对所有发票）
-            DuplicateCheckResult overallDuplicateCheckResult = null;
-
-            // 在发票识别后立即进行查重检查（使用临时用户ID）
-            if (parseResult.getInvoices() != null && !parseResult.getInvoices().isEmpty()) {
-                log.info("开始进行发票识别后的查重检查...");
-                String tempUserId = "TEMP_" + System.currentTimeMillis(); // 临时用户ID用于识别阶段
-
-                // 对每张发票进行查重，并为每张发票设置查重结果
-                int duplicateCount = 0;
-                for (int i = 0; i < parseResult.getInvoices().size(); i++) {
-                    InvoiceInfo invoice = parseResult.getInvoices().get(i);
-
-                    // 直接调用查重服务，不再需要try-catch
-                    DuplicateCheckResult result = duplicateCheckService.checkDuplicate(invoice, tempUserId);
-
-                    // 为每张发票设置查重结果
-                    invoice.setDuplicateCheckResult(result);
-
-                    // 统计重复发票数量
-                    if (result.isDuplicate()) {
-                        duplicateCount++;
-                    }
-
-                        log.info("发票{}查重结果: 是否重复={}, 原因={}", i+1, result.isDuplicate(), result.getDuplicateReason());
-                }
-
-                log.info("发票识别后查重检查完成，共检查{}张发票，发现{}张重复",
-                        parseResult.getInvoices().size(), duplicateCount);
-            }
-
-            // 新增：规则校验
-            BatchValidationResult validationResult = ruleValidationService.validateInvoices(parseResult.getInvoices(), formType);
+            // 查重、真伪验证、规则校验按发票并发执行，结果按输入顺序合并（查重使用临时用户ID）
+            // 延迟验证模式下不等待真伪验证，先返回查重和规则结果
+            String tempUserId = "TEMP_" + System.currentTimeMillis(); // 临时用户ID用于识别阶段
+            boolean deferVerification = deferredVerificationService.isEnabled();
+            BatchValidationResult validationResult = ruleValidationService.validateInvoices(
+                    parseResult.getInvoices(), formType,
+                    invoice -> duplicateCheckService.checkDuplicate(invoice, tempUserId),
+                    deferVerification);
+
+            long duplicateCount = parseResult.getInvoices().stream()
+                    .filter(invoice -> invoice.getDuplicateCheckResult() != null
+                            && invoice.getDuplicateCheckResult().isDuplicate())
+                    .count();
+            log.info("发票识别后查重检查完成，共检查{}张发票，发现{}张重复",
+                    parseResult.getInvoices().size(), duplicateCount);
 
             // 8. 构建响应
             FileUploadResponse response = new FileUploadResponse(
@@ -255,6 +240,9 @@ public class FileUploadService {
             response.setInvoiceInfos(parseResult.getInvoices());
             response.setMediaIds(parseResult.getMediaIds());
             response.setValidationResult(validationResult); // 设置校验结果
+            if (deferVerification) {
+                response.setVerificationToken(deferredVerificationService.start(validationResult));
+            }
             // 设置每日补贴金额
             response.setDailySubsidyAmount(travelSubsidyService.getDailySubsidyAmount());
 
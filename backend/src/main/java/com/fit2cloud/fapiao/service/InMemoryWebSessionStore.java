@@ -0,0 +1,85 @@
+package com.fit2cloud.fapiao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本机内存中的Web端session（默认实现）
+ * 每个session按自身的过期时间过期，由缓存内部的分层时间轮在读写时顺带清除到期的条目，
+ * 每次只处理已到期的时间槽，不需要遍历所有session。
+ */
+@Service
+@ConditionalOnProperty(name = "qywechat.web-session.store", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class InMemoryWebSessionStore implements WebSessionStore {
+
+    private final Cache<String, Session> sessions;
+
+    public InMemoryWebSessionStore(LocalCacheRegistry cacheRegistry) {
+        this.sessions = cacheRegistry.cache("webSessions", 100_000, new SessionExpiry(), "expireTime");
+    }
+
+    /**
+     * 条目在 session 的过期时间失效，读取不延长有效期
+     */
+    private static class SessionExpiry implements Expiry<String, Session> {
+
+        @Override
+        public long expireAfterCreate(String key, Session session, long currentTime) {
+            long remaining = session.expireTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Session session, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, session, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Session session, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public void save(Session session) {
+        sessions.put(session.sessionKey(), session);
+    }
+
+    @Override
+    public Session get(String sessionKey) {
+        return sessions.getIfPresent(sessionKey);
+    }
+
+    @Override
+    public void remove(String sessionKey) {
+        sessions.invalidate(sessionKey);
+    }
+
+    @Override
+    public int cleanupExpired() {
+        long before = sessions.estimatedSize();
+        sessions.cleanUp();
+        return (int) Math.max(0, before - sessions.estimatedSize());
+    }
+
+    @Override
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("store", getName());
+        status.put("sessions", sessions.estimatedSize());
+        return status;
+    }
+}
@@ -0,0 +1,119 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.repository.InvoiceDuplicateCheckRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 发票查重冷数据归档服务
+ * 定时将开票日期超出热数据窗口的记录分批迁移到归档表，保持查重表规模稳定；
+ * 归档后同时从近似查重索引中移除这些记录
+ */
+@Service
+@Slf4j
+public class InvoiceArchiveService {
+
+    @Value("${invoice.duplicate.archive.enabled:true}")
+    private boolean archiveEnabled;
+
+    @Value("${invoice.duplicate.archive.hot-window-years:3}")
+    private int hotWindowYears;
+
+    @Value("${invoice.duplicate.archive.batch-size:1000}")
+    private int batchSize;
+
+    private final InvoiceDuplicateCheckRepository duplicateCheckRepository;
+    private final InvoiceNearDuplicateIndex nearDuplicateIndex;
+    private final TransactionTemplate transactionTemplate;
+
+    // 最近一次归档统计
+    private volatile long lastArchiveTime;
+    private volatile long lastArchivedCount;
+
+    public InvoiceArchiveService(InvoiceDuplicateCheckRepository duplicateCheckRepository,
+                                 InvoiceNearDuplicateIndex nearDuplicateIndex,
+                                 TransactionTemplate transactionTemplate) {
+        this.duplicateCheckRepository = duplicateCheckRepository;
+        this.nearDuplicateIndex = nearDuplicateIndex;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * 定时归档（默认每天凌晨2:30）
+     */
+    @Scheduled(cron = "${invoice.duplicate.archive.cron:0 30 2 * * ?}")
+    public void archiveColdRecords() {
+        if (!archiveEnabled) {
+            log.debug("发票归档未启用，跳过");
+            return;
+        }
+
+        LocalDate cutoff = LocalDate.now().minusYears(hotWindowYears);
+        log.info("开始归档开票日期早于 {} 的发票查重记录，批大小: {}", cutoff, batchSize);
+
+        long start = System.currentTimeMillis();
+        long total = 0;
+
+        try {
+            while (true) {
+                // 每批一个独立事务，避免长事务锁住热表
+                Integer moved = transactionTemplate.execute(status -> archiveBatch(cutoff));
+                if (moved == null || moved == 0) {
+                    break;
+                }
+                total += moved;
+                log.info("已归档 {} 条记录", total);
+            }
+        } catch (Exception e) {
+            log.error("发票归档异常，已归档 {} 条", total, e);
+        }
+
+        long pruned = nearDuplicateIndex.pruneBefore(cutoff);
+        if (pruned > 0) {
+            log.info("从近似查重索引移除 {} 条已过热数据窗口的条目", pruned);
+        }
+
+        lastArchiveTime = System.currentTimeMillis();
+        lastArchivedCount = total;
+        log.info("发票归档完成，共归档 {} 条，耗时: {}ms", total, lastArchiveTime - start);
+    }
+
+    /**
+     * 归档一批记录：先复制到归档表，再从热表删除
+     */
+    private int archiveBatch(LocalDate cutoff) {
+        List<Long> ids = duplicateCheckRepository.findIdsByInvoiceDateBefore(cutoff, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        int copied = duplicateCheckRepository.copyToArchive(ids);
+        if (copied != ids.size()) {
+            throw new IllegalStateException(String.format("归档复制条数不一致: 预期%d, 实际%d", ids.size(), copied));
+        }
+        return duplicateCheckRepository.deleteByIdIn(ids);
+    }
+
+    /**
+     * 获取归档状态
+     */
+    public Map<String, Object> getArchiveStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", archiveEnabled);
+        status.put("hotWindowYears", hotWindowYears);
+        status.put("hotWindowStart", LocalDate.now().minusYears(hotWindowYears).toString());
+        status.put("batchSize", batchSize);
+        status.put("lastArchiveTime", lastArchiveTime);
+        status.put("lastArchivedCount", lastArchivedCount);
+        return status;
+    }
+}
@@ -4,11 +4,14 @@ import com.fit2cloud.fapiao.dto.response.DuplicateCheckResult;
 import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
 import com.fit2cloud.fapiao.entity.InvoiceDuplicateCheck;
 import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.repository.InvoiceDuplicateCheckArchiveRepository;
 import com.fit2cloud.fapiao.repository.InvoiceDuplicateCheckRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -27,10 +30,28 @@ public class InvoiceDuplicateCheckService {
     @Value("${invoice.duplicate.check.strategy:STRICT}")
     private String duplicateCheckStrategy;
 
+    @Value("${invoice.duplicate.archive.hot-window-years:3}")
+    private int hotWindowYears;
+
     private final InvoiceDuplicateCheckRepository duplicateCheckRepository;
 
-    public InvoiceDuplicateCheckService(InvoiceDuplicateCheckRepository duplicateCheckRepository) {
+    private final InvoiceDuplicateCheckArchiveRepository archiveRepository;
+
+    private final InvoiceNearDuplicateIndex nearDuplicateIndex;
+
+    public InvoiceDuplicateCheckService(InvoiceDuplicateCheckRepository duplicateCheckRepository,
+                                        InvoiceDuplicateCheckArchiveRepository archiveRepository,
+                                        InvoiceNearDuplicateIndex nearDuplicateIndex) {
         this.duplicateCheckRepository = duplicateCheckRepository;
+        this.archiveRepository = archiveRepository;
+        this.nearDuplicateIndex = nearDuplicateIndex;
+    }
+
+    /**
+     * 热数据窗口起始日期，早于该日期的记录会被归档
+     */
+    public LocalDate hotWindowStart() {
+        return LocalDate.now().minusYears(hotWindowYears);
     }
 
     /**
@@ -58,6 +79,12 @@ public class InvoiceDuplicateCheckService {
 
         boolean isDuplicate = false;
         String duplicateReason = "";
+        LocalDate hotSince = hotWindowStart();
+
+        // 开票日期早于热数据窗口的发票，记录可能已归档，按同样的策略同时查询归档表
+        if (invoiceDate.isBefore(hotSince)) {
+            return checkColdDuplicate(invoiceNumber, invoiceDate, totalAmount, userId);
+        }
 
         // 根据策略进行查重
         switch (duplicateCheckStrategy.toUpperCase()) {
@@ -68,7 +95,7 @@ public class InvoiceDuplicateCheckService {
 
             case "NORMAL":
                 if (totalAmount != null) {
-                    isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndSimilarAmount(invoiceNumber, totalAmount);
+                    isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndSimilarAmount(invoiceNumber, totalAmount, hotSince);
                     duplicateReason = "存在相同发票号码和近似金额的记录";
                 } else {
                     isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndInvoiceDate(invoiceNumber, invoiceDate);
@@ -93,7 +120,58 @@ public class InvoiceDuplicateCheckService {
             return DuplicateCheckResult.duplicate(duplicateReason, invoiceNumber, invoiceDate.toString(), userId, duplicateCheckStrategy);
         }
 
+        DuplicateCheckResult result = DuplicateCheckResult.notDuplicate(invoiceNumber, invoiceDate.toString(), userId, duplicateCheckStrategy);
+
+        // 精确查重通过后，再用内存索引检查OCR误差导致的近似重复
+        InvoiceNearDuplicateIndex.NearDuplicateMatch match = nearDuplicateIndex.findBestMatch(
+                invoiceNumber, invoice.getSellerName(), totalAmount, invoiceDate, invoice.getInvoiceItemName());
+        if (match != null) {
+            log.warn("发票疑似重复: 发票号码={}, 相似发票号码={}, 相似度={}",
+                    invoiceNumber, match.invoiceNumber(), match.score());
+            return result.markNearDuplicate(match.invoiceNumber(), match.score());
+        }
+
         log.info("发票查重通过: 发票号码={}, 开票日期={}, 用户ID={}", invoiceNumber, invoiceDate, userId);
+        return result;
+    }
+
+    /**
+     * 冷数据查重：热表中尚未归档的记录和归档表使用与热数据相同的查重策略
+     */
+    private DuplicateCheckResult checkColdDuplicate(String invoiceNumber, LocalDate invoiceDate,
+                                                    BigDecimal totalAmount, String userId) {
+        boolean isDuplicate;
+        String duplicateReason;
+        switch (duplicateCheckStrategy.toUpperCase()) {
+            case "NORMAL":
+                if (totalAmount != null) {
+                    isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndSimilarAmount(invoiceNumber, totalAmount, LocalDate.EPOCH)
+                            || archiveRepository.existsByInvoiceNumberAndSimilarAmount(invoiceNumber, totalAmount);
+                    duplicateReason = "存在相同发票号码和近似金额的历史记录";
+                } else {
+                    isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndInvoiceDate(invoiceNumber, invoiceDate)
+                            || archiveRepository.existsByInvoiceNumberAndInvoiceDate(invoiceNumber, invoiceDate);
+                    duplicateReason = "存在相同发票号码和开票日期的历史记录";
+                }
+                break;
+
+            case "USER":
+                isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndInvoiceDateAndUserId(invoiceNumber, invoiceDate, userId)
+                        || archiveRepository.existsByInvoiceNumberAndInvoiceDateAndUserId(invoiceNumber, invoiceDate, userId);
+                duplicateReason = "同一用户已提交过相同发票";
+                break;
+
+            default:
+                isDuplicate = duplicateCheckRepository.existsByInvoiceNumberAndInvoiceDate(invoiceNumber, invoiceDate)
+                        || archiveRepository.existsByInvoiceNumberAndInvoiceDate(invoiceNumber, invoiceDate);
+                duplicateReason = "存在相同发票号码和开票日期的历史记录";
+        }
+
+        if (isDuplicate) {
+            log.warn("发票查重失败（归档数据）: 发票号码={}, 开票日期={}, 用户ID={}, 原因={}",
+                    invoiceNumber, invoiceDate, userId, duplicateReason);
+            return DuplicateCheckResult.duplicate(duplicateReason, invoiceNumber, invoiceDate.toString(), userId, duplicateCheckStrategy);
+        }
         return DuplicateCheckResult.notDuplicate(invoiceNumber, invoiceDate.toString(), userId, duplicateCheckStrategy);
     }
 
@@ -127,11 +205,14 @@ public class InvoiceDuplicateCheckService {
         if (existingRecord.isPresent()) {
             // 更新现有记录
             InvoiceDuplicateCheck record = existingRecord.get();
+            record.setSellerName(invoice.getSellerName());
+            record.setItemName(invoice.getInvoiceItemName());
             record.setUserId(userId);
             record.setSubmitTime(LocalDateTime.now());
             record.setStatus("SUBMITTED");
             record.setUpdatedTime(LocalDateTime.now());
             duplicateCheckRepository.save(record);
+            afterCommit(() -> nearDuplicateIndex.add(record));
             log.info("更新发票记录: 发票号码={}, 开票日期={}, 用户ID={}", invoiceNumber, invoiceDate, userId);
         } else {
             // 创建新记录
@@ -139,10 +220,13 @@ public class InvoiceDuplicateCheckService {
             record.setInvoiceNumber(invoiceNumber);
             record.setInvoiceDate(invoiceDate);
             record.setTotalAmount(totalAmount);
+            record.setSellerName(invoice.getSellerName());
+            record.setItemName(invoice.getInvoiceItemName());
             record.setUserId(userId);
             record.setSubmitTime(LocalDateTime.now());
             record.setStatus("SUBMITTED");
             duplicateCheckRepository.save(record);
+            afterCommit(() -> nearDuplicateIndex.add(record));
             log.info("创建发票记录: 发票号码={}, 开票日期={}, 用户ID={}", invoiceNumber, invoiceDate, userId);
         }
     }
@@ -226,7 +310,28 @@ public class InvoiceDuplicateCheckService {
             invoiceRecord.setStatus(status);
             invoiceRecord.setUpdatedTime(LocalDateTime.now());
             duplicateCheckRepository.save(invoiceRecord);
+            if ("REJECTED".equals(status)) {
+                afterCommit(() -> nearDuplicateIndex.remove(invoiceRecord));
+            } else {
+                afterCommit(() -> nearDuplicateIndex.add(invoiceRecord));
+            }
             log.info("更新发票状态: 发票号码={}, 状态={}", invoiceNumber, status);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 事务提交后再更新近似查重索引，事务回滚时索引不变；不在事务中时立即执行
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
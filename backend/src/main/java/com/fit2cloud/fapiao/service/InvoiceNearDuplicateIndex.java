@@ -0,0 +1,362 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.entity.InvoiceDuplicateCheck;
+import com.fit2cloud.fapiao.repository.InvoiceDuplicateCheckRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 发票近似查重索引
+ * 按 (销售方名称, 金额分, 开票日期) 分桶，桶内用商品名称的SimHash与发票号码编辑距离打分，
+ * 用于发现大模型把发票号码识别错一两位后的重复提交。
+ * 只有发票号码编辑距离在 1 到 max-edit-distance 之间的条目才参与打分：号码完全相同的由精确查重处理，
+ * 号码差得更多的视为不同发票，分数只用于在候选中排序和过滤商品名称不相近的条目。
+ */
+@Service
+@Slf4j
+public class InvoiceNearDuplicateIndex {
+
+    @Value("${invoice.duplicate.near.enabled:true}")
+    private boolean nearDuplicateEnabled;
+
+    @Value("${invoice.duplicate.near.threshold:0.75}")
+    private double similarityThreshold;
+
+    @Value("${invoice.duplicate.near.max-edit-distance:2}")
+    private int maxEditDistance;
+
+    @Value("${invoice.duplicate.archive.hot-window-years:3}")
+    private int hotWindowYears;
+
+    private final InvoiceDuplicateCheckRepository duplicateCheckRepository;
+    private final EntityManager entityManager;
+
+    private volatile Map<BucketKey, List<IndexEntry>> buckets = new ConcurrentHashMap<>();
+
+    // 重建期间的新索引，新增记录需要同时写入，避免重建完成后丢失
+    private volatile Map<BucketKey, List<IndexEntry>> rebuilding;
+
+    private final AtomicLong entryCount = new AtomicLong();
+
+    public InvoiceNearDuplicateIndex(InvoiceDuplicateCheckRepository duplicateCheckRepository,
+                                     EntityManager entityManager) {
+        this.duplicateCheckRepository = duplicateCheckRepository;
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * 桶键：规范化后的销售方 + 金额（分） + 开票日期
+     */
+    private record BucketKey(String seller, long amountCents, long epochDay) {
+    }
+
+    /**
+     * 桶内条目
+     */
+    private record IndexEntry(String invoiceNumber, long itemSimHash, String userId) {
+    }
+
+    /**
+     * 近似查重命中结果
+     */
+    public record NearDuplicateMatch(String invoiceNumber, String userId, double score) {
+    }
+
+    /**
+     * 应用启动后流式扫描热数据窗口重建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!nearDuplicateEnabled) {
+            log.info("近似查重未启用，跳过索引构建");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<BucketKey, List<IndexEntry>> fresh = new ConcurrentHashMap<>();
+        rebuilding = fresh;
+        long count = 0;
+
+        try (Stream<InvoiceDuplicateCheck> stream = duplicateCheckRepository.streamAllActive(
+                LocalDate.now().minusYears(hotWindowYears))) {
+            for (InvoiceDuplicateCheck record : (Iterable<InvoiceDuplicateCheck>) stream::iterator) {
+                if (put(fresh, record)) {
+                    count++;
+                }
+                // 流式扫描时及时释放持久化上下文，避免大表占满内存
+                entityManager.detach(record);
+            }
+
+            buckets = fresh;
+            // 按替换后的索引计数，包含重建期间通过 add() 写入新索引的条目
+            entryCount.set(fresh.values().stream().mapToLong(List::size).sum());
+            log.info("近似查重索引重建完成，扫描条目数: {}，索引条目数: {}，桶数: {}，耗时: {}ms",
+                    count, entryCount.get(), fresh.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("近似查重索引重建失败，继续使用旧索引", e);
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    /**
+     * 增量加入一条已提交记录
+     */
+    public void add(InvoiceDuplicateCheck record) {
+        if (!nearDuplicateEnabled || record == null) {
+            return;
+        }
+
+        if (put(buckets, record)) {
+            entryCount.incrementAndGet();
+        }
+
+        Map<BucketKey, List<IndexEntry>> pending = rebuilding;
+        if (pending != null) {
+            put(pending, record);
+        }
+    }
+
+    /**
+     * 移除一条记录（如发票被驳回、被归档），重建期间同时从新索引中移除
+     */
+    public void remove(InvoiceDuplicateCheck record) {
+        if (record == null || record.getInvoiceNumber() == null) {
+            return;
+        }
+
+        BucketKey key = toKey(record.getSellerName(), record.getTotalAmount(), record.getInvoiceDate());
+        if (key == null) {
+            return;
+        }
+
+        String number = record.getInvoiceNumber().trim();
+        List<IndexEntry> entries = buckets.get(key);
+        if (entries != null && entries.removeIf(entry -> entry.invoiceNumber().equals(number))) {
+            entryCount.decrementAndGet();
+        }
+
+        Map<BucketKey, List<IndexEntry>> pending = rebuilding;
+        if (pending != null) {
+            List<IndexEntry> pendingEntries = pending.get(key);
+            if (pendingEntries != null) {
+                pendingEntries.removeIf(entry -> entry.invoiceNumber().equals(number));
+            }
+        }
+    }
+
+    /**
+     * 移除开票日期早于 cutoff 的所有条目（对应记录已归档），返回移除的条目数
+     */
+    public long pruneBefore(LocalDate cutoff) {
+        long cutoffDay = cutoff.toEpochDay();
+        long removed = prune(buckets, cutoffDay);
+        entryCount.addAndGet(-removed);
+
+        Map<BucketKey, List<IndexEntry>> pending = rebuilding;
+        if (pending != null) {
+            prune(pending, cutoffDay);
+        }
+        return removed;
+    }
+
+    private long prune(Map<BucketKey, List<IndexEntry>> target, long cutoffDay) {
+        long removed = 0;
+        Iterator<Map.Entry<BucketKey, List<IndexEntry>>> iterator = target.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<BucketKey, List<IndexEntry>> bucket = iterator.next();
+            if (bucket.getKey().epochDay() < cutoffDay) {
+                removed += bucket.getValue().size();
+                iterator.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 查找最相似的已提交发票（不含号码完全相同的发票），低于阈值时返回null
+     */
+    public NearDuplicateMatch findBestMatch(String invoiceNumber, String sellerName, BigDecimal totalAmount,
+                                            LocalDate invoiceDate, String itemName) {
+        if (!nearDuplicateEnabled) {
+            return null;
+        }
+
+        BucketKey key = toKey(sellerName, totalAmount, invoiceDate);
+        if (key == null) {
+            return null;
+        }
+
+        List<IndexEntry> entries = buckets.get(key);
+        if (entries == null || entries.isEmpty()) {
+            return null;
+        }
+
+        long simHash = simHash(itemName);
+        String number = invoiceNumber != null ? invoiceNumber.trim() : "";
+        NearDuplicateMatch best = null;
+
+        if (number.isEmpty()) {
+            return null;
+        }
+
+        for (IndexEntry entry : entries) {
+            int distance = editDistance(number, entry.invoiceNumber());
+            if (distance < 1 || distance > maxEditDistance) {
+                continue;
+            }
+
+            double itemSimilarity = 1.0 - Long.bitCount(simHash ^ entry.itemSimHash()) / 64.0;
+            double numberSimilarity = 1.0 - (double) distance / Math.max(number.length(), entry.invoiceNumber().length());
+            double score = 0.6 * itemSimilarity + 0.4 * numberSimilarity;
+
+            if (score >= similarityThreshold && (best == null || score > best.score())) {
+                best = new NearDuplicateMatch(entry.invoiceNumber(), entry.userId(), score);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * 获取索引状态
+     */
+    public Map<String, Object> getIndexStatus() {
+        return Map.of(
+                "enabled", nearDuplicateEnabled,
+                "entryCount", entryCount.get(),
+                "bucketCount", buckets.size(),
+                "rebuilding", rebuilding != null,
+                "threshold", similarityThreshold,
+                "maxEditDistance", maxEditDistance
+        );
+    }
+
+    private boolean put(Map<BucketKey, List<IndexEntry>> target, InvoiceDuplicateCheck record) {
+        BucketKey key = toKey(record.getSellerName(), record.getTotalAmount(), record.getInvoiceDate());
+        if (key == null || record.getInvoiceNumber() == null) {
+            return false;
+        }
+
+        String number = record.getInvoiceNumber().trim();
+        List<IndexEntry> entries = target.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>());
+        // 同一张发票重复提交时只保留最新一条
+        boolean replaced = entries.removeIf(entry -> entry.invoiceNumber().equals(number));
+        entries.add(new IndexEntry(number, simHash(record.getItemName()), record.getUserId()));
+        return !replaced;
+    }
+
+    private BucketKey toKey(String sellerName, BigDecimal totalAmount, LocalDate invoiceDate) {
+        String seller = normalizeSeller(sellerName);
+        if (seller.isEmpty() || totalAmount == null || invoiceDate == null) {
+            return null;
+        }
+
+        long cents = totalAmount.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValue();
+        return new BucketKey(seller, cents, invoiceDate.toEpochDay());
+    }
+
+    /**
+     * 规范化销售方名称：去掉空白和标点，统一大小写
+     */
+    private String normalizeSeller(String sellerName) {
+        if (sellerName == null) {
+            return "";
+        }
+        return sellerName.replaceAll("[\\s\\pP\\pS]", "").toLowerCase();
+    }
+
+    /**
+     * 商品名称的64位SimHash（按字符二元组取特征）
+     */
+    private long simHash(String text) {
+        if (text == null) {
+            return 0L;
+        }
+
+        String normalized = text.replaceAll("[\\s\\pP\\pS]", "").toLowerCase();
+        if (normalized.isEmpty()) {
+            return 0L;
+        }
+
+        int[] weights = new int[64];
+        List<String> features = new ArrayList<>();
+        if (normalized.length() == 1) {
+            features.add(normalized);
+        } else {
+            for (int i = 0; i < normalized.length() - 1; i++) {
+                features.add(normalized.substring(i, i + 2));
+            }
+        }
+
+        for (String feature : features) {
+            long hash = fnv1a64(feature);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+
+        long result = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                result |= 1L << bit;
+            }
+        }
+        return result;
+    }
+
+    private long fnv1a64(String feature) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < feature.length(); i++) {
+            hash ^= feature.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 发票号码编辑距离，长度差已超过允许距离时不再计算
+     */
+    private int editDistance(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > maxEditDistance) {
+            return Integer.MAX_VALUE;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[b.length()];
+    }
+}
@@ -1,11 +1,14 @@
 package com.fit2cloud.fapiao.service;
 
 import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.util.KeywordMatcher;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,6 +16,50 @@ import java.util.regex.Pattern;
 @Slf4j
 public class InvoiceParserService {
 
+    /**
+     * 合规推断用到的费用类别
+     */
+    private enum TravelCategory {
+        TRAIN, FLIGHT, HOTEL
+    }
+
+    // 合规检查值标准化：类别关键词（按交通、飞机、住宿的优先级）
+    private static final KeywordMatcher<TravelCategory> CLEAN_CATEGORY_KEYWORDS = KeywordMatcher.of(keywordMap(
+            "高铁", TravelCategory.TRAIN, "动车", TravelCategory.TRAIN, "火车", TravelCategory.TRAIN,
+            "飞机", TravelCategory.FLIGHT, "航班", TravelCategory.FLIGHT,
+            "酒店", TravelCategory.HOTEL, "住宿", TravelCategory.HOTEL));
+
+    // 从发票项目名称推断合规信息：类别关键词
+    private static final KeywordMatcher<TravelCategory> INFER_CATEGORY_KEYWORDS = KeywordMatcher.of(keywordMap(
+            "高铁", TravelCategory.TRAIN, "动车", TravelCategory.TRAIN, "火车", TravelCategory.TRAIN, "车票", TravelCategory.TRAIN,
+            "飞机", TravelCategory.FLIGHT, "机票", TravelCategory.FLIGHT, "航空", TravelCategory.FLIGHT,
+            "住宿", TravelCategory.HOTEL, "酒店", TravelCategory.HOTEL, "宾馆", TravelCategory.HOTEL));
+
+    private static final KeywordMatcher<String> CLEAN_TRAIN_SEATS = KeywordMatcher.of(keywordMap(
+            "一等座", "高铁-一等座", "二等座", "高铁-二等座", "动卧", "火车-动卧", "卧铺", "火车-卧铺"));
+
+    private static final KeywordMatcher<String> INFER_TRAIN_SEATS = KeywordMatcher.of(keywordMap(
+            "一等座", "高铁-一等座", "二等座", "高铁-二等座", "动卧", "火车-动卧"));
+
+    private static final KeywordMatcher<String> FLIGHT_CABINS = KeywordMatcher.of(keywordMap(
+            "经济舱", "飞机-经济舱", "商务舱", "飞机-商务舱", "头等舱", "飞机-商务舱"));
+
+    private static final KeywordMatcher<String> CLEAN_HOTEL_BRANDS = KeywordMatcher.of(keywordMap(
+            "汉庭", "华住-汉庭", "宜必思", "华住-宜必思", "你好酒店", "华住-你好酒店", "怡莱", "华住-怡莱酒店",
+            "华住", "华住-其他"));
+
+    private static final KeywordMatcher<String> INFER_HOTEL_BRANDS = KeywordMatcher.of(keywordMap(
+            "汉庭", "华住-汉庭", "宜必思", "华住-宜必思", "你好", "华住-你好酒店", "怡莱", "华住-怡莱酒店"));
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> keywordMap(Object... keywordValuePairs) {
+        Map<String, V> map = new LinkedHashMap<>();
+        for (int i = 0; i < keywordValuePairs.length; i += 2) {
+            map.put((String) keywordValuePairs[i], (V) keywordValuePairs[i + 1]);
+        }
+        return map;
+    }
+
     /**
      * 从智能体返回的内容中解析发票信息和media_ids
      * @param content 智能体返回的文本内容
@@ -236,40 +283,20 @@ public class InvoiceParserService {
         value = value.replaceAll("\\s*标准?$", ""); // 移除结尾的"标准"
         value = value.replaceAll("^标准[：:]\\s*", ""); // 移除开头的"标准:"
 
-        // 常见合规检查值的标准化
-        if (value.contains("高铁") || value.contains("动车") || value.contains("火车")) {
+        // 常见合规检查值的标准化（关键词优先级与原 if-else 顺序一致）
+        TravelCategory category = CLEAN_CATEGORY_KEYWORDS.findFirst(value);
+        if (category == TravelCategory.TRAIN) {
             // 提取座位类型
-            if (value.contains("一等座")) {
-                return "高铁-一等座";
-            } else if (value.contains("二等座")) {
-                return "高铁-二等座";
-            } else if (value.contains("动卧")) {
-                return "火车-动卧";
-            } else if (value.contains("卧铺")) {
-                return "火车-卧铺";
-            } else {
-                return "高铁-二等座"; // 默认
-            }
-        } else if (value.contains("飞机") || value.contains("航班")) {
-            if (value.contains("经济舱")) {
-                return "飞机-经济舱";
-            } else if (value.contains("商务舱") || value.contains("头等舱")) {
-                return "飞机-商务舱";
-            } else {
-                return "飞机-经济舱"; // 默认
-            }
-        } else if (value.contains("酒店") || value.contains("住宿")) {
+            String seat = CLEAN_TRAIN_SEATS.findFirst(value);
+            return seat != null ? seat : "高铁-二等座"; // 默认
+        } else if (category == TravelCategory.FLIGHT) {
+            String cabin = FLIGHT_CABINS.findFirst(value);
+            return cabin != null ? cabin : "飞机-经济舱"; // 默认
+        } else if (category == TravelCategory.HOTEL) {
             // 常见酒店品牌匹配
-            if (value.contains("汉庭")) {
-                return "华住-汉庭";
-            } else if (value.contains("宜必思")) {
-                return "华住-宜必思";
-            } else if (value.contains("你好酒店")) {
-                return "华住-你好酒店";
-            } else if (value.contains("怡莱")) {
-                return "华住-怡莱酒店";
-            } else if (value.contains("华住")) {
-                return "华住-其他";
+            String brand = CLEAN_HOTEL_BRANDS.findFirst(value);
+            if (brand != null) {
+                return brand;
             }
         }
 
@@ -285,53 +312,30 @@ public class InvoiceParserService {
         String invoiceItemName = extractValue(text, "发票项目名称");
         String remark = extractValue(text, "备注");
 
-        // 检查是否为交通相关发票
-        if (invoiceItemName != null) {
-            String lowerItemName = invoiceItemName.toLowerCase();
-
-            // 交通相关
-            if (lowerItemName.contains("高铁") || lowerItemName.contains("动车") ||
-                    lowerItemName.contains("火车") || lowerItemName.contains("车票")) {
-
-                // 从备注中提取座位信息
-                if (remark != null) {
-                    if (remark.contains("一等座")) return "高铁-一等座";
-                    if (remark.contains("二等座")) return "高铁-二等座";
-                    if (remark.contains("动卧")) return "火车-动卧";
-                }
-
-                // 默认返回二等座
-                return "高铁-二等座";
-            }
-
-            // 飞机相关
-            else if (lowerItemName.contains("飞机") || lowerItemName.contains("机票") ||
-                    lowerItemName.contains("航空")) {
-
-                if (remark != null) {
-                    if (remark.contains("经济舱")) return "飞机-经济舱";
-                    if (remark.contains("商务舱") || remark.contains("头等舱")) return "飞机-商务舱";
-                }
-
-                return "飞机-经济舱";
-            }
-
-            // 住宿相关
-            else if (lowerItemName.contains("住宿") || lowerItemName.contains("酒店") ||
-                    lowerItemName.contains("宾馆")) {
+        if (invoiceItemName == null) {
+            return null;
+        }
 
-                if (remark != null) {
-                    if (remark.contains("汉庭")) return "华住-汉庭";
-                    if (remark.contains("宜必思")) return "华住-宜必思";
-                    if (remark.contains("你好")) return "华住-你好酒店";
-                    if (remark.contains("怡莱")) return "华住-怡莱酒店";
-                }
+        TravelCategory category = INFER_CATEGORY_KEYWORDS.findFirst(invoiceItemName.toLowerCase());
+        if (category == null) {
+            return null;
+        }
 
-                return "华住-其他";
-            }
+        // 从备注中提取座位、舱位或酒店品牌，未命中时使用默认值
+        String fromRemark = switch (category) {
+            case TRAIN -> INFER_TRAIN_SEATS.findFirst(remark);
+            case FLIGHT -> FLIGHT_CABINS.findFirst(remark);
+            case HOTEL -> INFER_HOTEL_BRANDS.findFirst(remark);
+        };
+        if (fromRemark != null) {
+            return fromRemark;
         }
 
-        return null;
+        return switch (category) {
+            case TRAIN -> "高铁-二等座";
+            case FLIGHT -> "飞机-经济舱";
+            case HOTEL -> "华住-其他";
+        };
     }
 
     /**
@@ -5,10 +5,7 @@ import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
 import com.fit2cloud.fapiao.dto.response.VerificationResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.util.UriComponentsBuilder;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -16,28 +13,24 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 @Service
 @Slf4j
 public class InvoiceVerificationService {
 
-    @Value("${invoice.verification.api.host:https://fapiao.market.alicloudapi.com}")
-    private String apiHost;
-
-    @Value("${invoice.verification.api.path:/v2/invoice/query}")
-    private String apiPath;
-
-    @Value("${invoice.verification.appcode:}")
-    private String appCode;
-
     @Value("${invoice.verification.enabled:true}")
     private boolean verificationEnabled;
 
-    private final RestTemplate restTemplate;
+    private final VerificationProvider verificationProvider;
 
-    public InvoiceVerificationService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    private final VerificationResultCacheService verificationCache;
+
+    public InvoiceVerificationService(VerificationProvider verificationProvider,
+                                      VerificationResultCacheService verificationCache) {
+        this.verificationProvider = verificationProvider;
+        this.verificationCache = verificationCache;
     }
 
     /**
@@ -69,15 +62,25 @@ public class InvoiceVerificationService {
                 return VerificationResult.skip("构建的参数不足");
             }
 
-            log.info("调用验证API，参数: {}", requestParams);
+            // 已验证过的发票直接返回缓存结果，避免重复付费调用
+            String cacheKey = verificationCache.buildCacheKey(requestParams);
+            Optional<VerificationResult> cachedResult = verificationCache.get(cacheKey);
+            if (cachedResult.isPresent()) {
+                log.info("使用缓存的验证结果: identifier={}, status={}", identifier, cachedResult.get().getStatus());
+                return cachedResult.get();
+            }
 
-            // 发送验证请求
-            Map<String, Object> response = callVerificationApi(requestParams);
+            log.info("调用验证服务，参数: {}", requestParams);
 
-            // 解析响应结果
-            VerificationResult result = parseVerificationResult(response, invoice);
+            // 发送验证请求并解析结果（由配置的提供方调用链处理）
+            VerificationResult result = verificationProvider.verify(requestParams);
             log.info("验证结果: status={}, message={}", result.getStatus(), result.getMessage());
 
+            // 仅终态结果会被缓存，回放等模拟结果不写缓存（以实际给出结果的提供方为准）
+            if (result.isCacheable()) {
+                verificationCache.put(cacheKey, requestParams, result);
+            }
+
             return result;
 
         } catch (Exception e) {
@@ -373,128 +376,6 @@ public class InvoiceVerificationService {
         return null;
     }
 
-    /**
-     * 调用验证API
-     */
-    private Map<String, Object> callVerificationApi(Map<String, String> requestParams) {
-        // 构建请求头
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-        headers.set("Authorization", "APPCODE " + appCode);
-
-        // 构建请求体
-        String requestBody = buildFormUrlEncodedBody(requestParams);
-
-        // 构建完整URL
-        String url = UriComponentsBuilder.fromHttpUrl(apiHost)
-                .path(apiPath)
-                .build()
-                .toUriString();
-
-        log.debug("调用验证API: url={}, params={}", url, requestParams);
-
-        try {
-            // 发送请求
-            HttpEntity<String> requestEntity = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> responseEntity = restTemplate.exchange(
-                    url, HttpMethod.POST, requestEntity, Map.class);
-
-            log.debug("验证API响应: status={}, body={}",
-                    responseEntity.getStatusCode(), responseEntity.getBody());
-
-            log.debug("验证API响应: status={}", responseEntity.getStatusCode());
-            return responseEntity.getBody();
-        } catch (Exception e) {
-            log.error("验证API调用失败", e);
-            throw new RuntimeException("验证API调用失败: " + e.getMessage(), e);
-        }
-    }
-
-    /**
-     * 构建表单编码的请求体
-     */
-    private String buildFormUrlEncodedBody(Map<String, String> params) {
-        StringBuilder body = new StringBuilder();
-        for (Map.Entry<String, String> entry : params.entrySet()) {
-            if (body.length() > 0) {
-                body.append("&");
-            }
-            body.append(entry.getKey()).append("=").append(entry.getValue());
-        }
-        return body.toString();
-    }
-
-    /**
-     * 解析验证结果
-     */
-    private VerificationResult parseVerificationResult(Map<String, Object> response, InvoiceInfo invoice) {
-        if (response == null) {
-            return VerificationResult.error("验证服务返回空响应");
-        }
-
-        try {
-            log.info("验证API返回: {}", response);
-
-            // 检查常见的响应字段
-            Integer errcode = (Integer) response.get("errcode");
-            String message = (String) response.get("message");
-            String errmsg = (String) response.get("errmsg");
-            String status = (String) response.get("status");
-            Boolean success = (Boolean) response.get("success");
-            Object data = response.get("data");
-
-            log.debug("验证API返回: errcode={}, message={}, status={}, success={}",
-                    errcode, message, status, success);
-
-            // 根据不同的API响应格式处理
-            if (errcode != null) {
-                // 格式1: 有errcode字段
-                if (errcode == 0) {
-                    // 验证成功
-                    return VerificationResult.success("发票真伪验证通过",
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                } else {
-                    // 验证失败
-                    return VerificationResult.failed("发票验证失败: " + message,
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                }
-            } else if (success != null) {
-                // 格式2: 有success字段
-                if (Boolean.TRUE.equals(success)) {
-                    // 验证成功
-                    return VerificationResult.success("发票真伪验证通过",
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                } else {
-                    // 验证失败
-                    return VerificationResult.failed("发票验证失败: " + message,
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                }
-            } else if (status != null) {
-                // 格式3: 有status字段
-                if ("success".equalsIgnoreCase(status) || "true".equalsIgnoreCase(status)) {
-                    return VerificationResult.success("发票真伪验证通过",
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                } else {
-                    return VerificationResult.failed("发票验证失败: " + message,
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                }
-            } else {
-                // 未知格式，但可能有data字段
-                if (data != null) {
-                    // 假设有data就是成功
-                    return VerificationResult.success("发票真伪验证通过",
-                            data instanceof Map ? (Map<String, Object>) data : null);
-                } else {
-                    return VerificationResult.error("未知的API响应格式");
-                }
-            }
-
-        } catch (Exception e) {
-            log.error("解析验证响应失败", e);
-            return VerificationResult.error("解析验证响应失败: " + e.getMessage());
-        }
-    }
-
     /**
      * 验证发票详细信息是否匹配
      */
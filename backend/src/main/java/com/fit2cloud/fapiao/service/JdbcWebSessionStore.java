@@ -0,0 +1,238 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.entity.WebSessionRecord;
+import com.fit2cloud.fapiao.repository.WebSessionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据库中的Web端session（qywechat.web-session.store=jdbc），各实例共用
+ * 新建和删除session直接写入数据库，返回后其他实例即可读到；写入失败时进入本机待写队列（同一个session只保留最后一次），
+ * 由定时任务按批合并重试（INSERT ... ON DUPLICATE KEY UPDATE），期间本机仍可使用该session。
+ * 读取先查本机近端缓存，未命中再查待写队列和数据库；删除的session在其他实例的近端缓存中最多保留 near-cache-seconds。
+ */
+@Service
+@ConditionalOnProperty(name = "qywechat.web-session.store", havingValue = "jdbc")
+@Slf4j
+public class JdbcWebSessionStore implements WebSessionStore {
+
+    private static final String UPSERT_SQL = "INSERT INTO web_session (session_key, user_id, user_name, create_time, expire_time) " +
+            "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE user_id = VALUES(user_id), user_name = VALUES(user_name), " +
+            "create_time = VALUES(create_time), expire_time = VALUES(expire_time)";
+    private static final String DELETE_SQL = "DELETE FROM web_session WHERE session_key = ?";
+
+    private final WebSessionRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    // 近端缓存，只缓存存在的session，不缓存未命中
+    private final Cache<String, Session> nearCache;
+
+    // 写入失败待重试的保存和删除，保存与删除互相覆盖
+    private final Map<String, Session> pendingWrites = new ConcurrentHashMap<>();
+    private final Set<String> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong deletedCount = new AtomicLong();
+    private final AtomicLong databaseReadCount = new AtomicLong();
+    private final AtomicLong flushFailureCount = new AtomicLong();
+    private volatile long lastFlushAt = 0;
+    private volatile String lastError;
+
+    public JdbcWebSessionStore(WebSessionRepository repository,
+                               JdbcTemplate jdbcTemplate,
+                               LocalCacheRegistry cacheRegistry,
+                               @Value("${qywechat.web-session.jdbc.batch-size:500}") int batchSize,
+                               @Value("${qywechat.web-session.jdbc.near-cache-seconds:5}") long nearCacheSeconds) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.nearCache = cacheRegistry.cache("webSessionsNear",
+                LocalCacheRegistry.Spec.of(100_000, Duration.ofSeconds(nearCacheSeconds)));
+    }
+
+    @Override
+    public String getName() {
+        return "jdbc";
+    }
+
+    @Override
+    public void save(Session session) {
+        nearCache.put(session.sessionKey(), session);
+        pendingDeletes.remove(session.sessionKey());
+        try {
+            jdbcTemplate.update(UPSERT_SQL, toRow(session));
+            pendingWrites.remove(session.sessionKey());
+            writtenCount.incrementAndGet();
+        } catch (Exception e) {
+            pendingWrites.put(session.sessionKey(), session);
+            failed("写入session失败，稍后重试", e);
+        }
+    }
+
+    @Override
+    public Session get(String sessionKey) {
+        long now = System.currentTimeMillis();
+        Session session = nearCache.getIfPresent(sessionKey);
+        if (session == null) {
+            session = pendingWrites.get(sessionKey);
+        }
+        if (session == null && !pendingDeletes.contains(sessionKey)) {
+            databaseReadCount.incrementAndGet();
+            session = repository.findById(sessionKey).map(JdbcWebSessionStore::toSession).orElse(null);
+            if (session != null && !session.isExpired(now)) {
+                nearCache.put(sessionKey, session);
+            }
+        }
+        return session != null && !session.isExpired(now) ? session : null;
+    }
+
+    @Override
+    public void remove(String sessionKey) {
+        nearCache.invalidate(sessionKey);
+        pendingWrites.remove(sessionKey);
+        try {
+            jdbcTemplate.update(DELETE_SQL, sessionKey);
+            pendingDeletes.remove(sessionKey);
+            deletedCount.incrementAndGet();
+        } catch (Exception e) {
+            pendingDeletes.add(sessionKey);
+            failed("删除session失败，稍后重试", e);
+        }
+    }
+
+    /**
+     * 批量重试写入失败的保存和删除，仍失败的条目放回队列（期间被再次保存或删除的以新的为准）
+     */
+    @Scheduled(fixedDelayString = "${qywechat.web-session.jdbc.flush-interval-ms:1000}")
+    public void flush() {
+        if (pendingWrites.isEmpty() && pendingDeletes.isEmpty()) {
+            return;
+        }
+
+        List<Session> writes = new ArrayList<>();
+        for (String key : pendingWrites.keySet()) {
+            Session session = pendingWrites.remove(key);
+            if (session != null) {
+                writes.add(session);
+            }
+        }
+        for (int from = 0; from < writes.size(); from += batchSize) {
+            List<Session> batch = writes.subList(from, Math.min(from + batchSize, writes.size()));
+            try {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, batch.stream().map(JdbcWebSessionStore::toRow).toList());
+                writtenCount.addAndGet(batch.size());
+            } catch (Exception e) {
+                for (Session session : batch) {
+                    if (!pendingDeletes.contains(session.sessionKey())) {
+                        pendingWrites.putIfAbsent(session.sessionKey(), session);
+                    }
+                }
+                failed("批量写入session失败", e);
+            }
+        }
+
+        List<String> deletes = new ArrayList<>();
+        for (String key : pendingDeletes) {
+            if (pendingDeletes.remove(key)) {
+                deletes.add(key);
+            }
+        }
+        for (int from = 0; from < deletes.size(); from += batchSize) {
+            List<String> batch = deletes.subList(from, Math.min(from + batchSize, deletes.size()));
+            try {
+                repository.deleteAllByIdInBatch(batch);
+                deletedCount.addAndGet(batch.size());
+            } catch (Exception e) {
+                for (String key : batch) {
+                    if (!pendingWrites.containsKey(key)) {
+                        pendingDeletes.add(key);
+                    }
+                }
+                failed("批量删除session失败", e);
+            }
+        }
+        lastFlushAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 定期删除过期的session，多个实例同时执行也只是重复删除
+     */
+    @Scheduled(fixedDelayString = "${qywechat.web-session.jdbc.cleanup-interval-ms:600000}")
+    public void scheduledCleanup() {
+        int deleted = cleanupExpired();
+        if (deleted > 0) {
+            log.info("删除了 {} 个过期的Web端session", deleted);
+        }
+    }
+
+    @Override
+    public int cleanupExpired() {
+        try {
+            int deleted = repository.deleteExpired(LocalDateTime.now());
+            nearCache.cleanUp();
+            return deleted;
+        } catch (Exception e) {
+            failed("清理过期session失败", e);
+            return 0;
+        }
+    }
+
+    /**
+     * 停止前写入队列中剩余的session
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    @Override
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("store", getName());
+        status.put("nearCacheSize", nearCache.estimatedSize());
+        status.put("pendingWrites", pendingWrites.size());
+        status.put("pendingDeletes", pendingDeletes.size());
+        status.put("written", writtenCount.get());
+        status.put("deleted", deletedCount.get());
+        status.put("databaseReads", databaseReadCount.get());
+        status.put("flushFailures", flushFailureCount.get());
+        status.put("lastFlushAt", lastFlushAt);
+        if (lastError != null) {
+            status.put("lastError", lastError);
+        }
+        return status;
+    }
+
+    private void failed(String message, Exception e) {
+        flushFailureCount.incrementAndGet();
+        lastError = message + ": " + e.getMessage();
+        log.warn("{}: {}", message, e.getMessage());
+    }
+
+    private static Object[] toRow(Session session) {
+        return new Object[]{session.sessionKey(), session.userId(), session.userName(),
+                new Timestamp(session.createTime()), new Timestamp(session.expireTime())};
+    }
+
+    private static Session toSession(WebSessionRecord record) {
+        ZoneId zone = ZoneId.systemDefault();
+        return new Session(record.getSessionKey(), record.getUserId(), record.getUserName(),
+                record.getCreateTime().atZone(zone).toInstant().toEpochMilli(),
+                record.getExpireTime().atZone(zone).toInstant().toEpochMilli());
+    }
+}
@@ -0,0 +1,151 @@
+package com.fit2cloud.fapiao.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地缓存统一注册（Caffeine）
+ * 各服务按名称创建缓存，统一设置容量上限和过期，并记录统计：
+ * 命中率、加载耗时、淘汰数通过 Micrometer 发布（cache.gets、cache.load.duration、cache.evictions，标签 cache=名称），
+ * 汇总状态见 /actuator/localcaches。
+ * 代码中给出默认配置，可按名称覆盖：cache.{名称}.maximum-size、expire-after-write、expire-after-access
+ */
+@Service
+@Slf4j
+public class LocalCacheRegistry {
+
+    /**
+     * 缓存配置，为null的项不启用
+     *
+     * @param maximumSize       最大条数，超过后按 W-TinyLFU 淘汰
+     * @param expireAfterWrite  写入后过期
+     * @param expireAfterAccess 最后一次访问后过期
+     */
+    public record Spec(long maximumSize, Duration expireAfterWrite, Duration expireAfterAccess) {
+
+        public static Spec of(long maximumSize, Duration expireAfterWrite) {
+            return new Spec(maximumSize, expireAfterWrite, null);
+        }
+    }
+
+    private record Registered(Cache<?, ?> cache, Spec spec, String expiry) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+    private final Map<String, Registered> caches = new ConcurrentHashMap<>();
+
+    public LocalCacheRegistry(MeterRegistry meterRegistry, Environment environment) {
+        this.meterRegistry = meterRegistry;
+        this.environment = environment;
+    }
+
+    /**
+     * 创建缓存
+     */
+    public <K, V> Cache<K, V> cache(String name, Spec defaults) {
+        Spec spec = resolve(name, defaults);
+        Cache<K, V> cache = builder(spec).build();
+        return register(name, cache, spec, null);
+    }
+
+    /**
+     * 创建按条目过期的缓存（如有效期由接口返回的 access_token）
+     *
+     * @param expiryDescription 过期规则说明，用于状态展示
+     */
+    public <K, V> Cache<K, V> cache(String name, long maximumSize, Expiry<K, V> expiry, String expiryDescription) {
+        Spec spec = resolve(name, new Spec(maximumSize, null, null));
+        Cache<K, V> cache = Caffeine.newBuilder()
+                .maximumSize(spec.maximumSize())
+                .expireAfter(expiry)
+                .recordStats()
+                .build();
+        return register(name, cache, spec, expiryDescription);
+    }
+
+    /**
+     * 所有缓存的配置与统计，按名称排序
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new TreeMap<>();
+        caches.forEach((name, registered) -> status.put(name, describe(registered)));
+        return status;
+    }
+
+    private Map<String, Object> describe(Registered registered) {
+        Cache<?, ?> cache = registered.cache();
+        Spec spec = registered.spec();
+        CacheStats stats = cache.stats();
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("size", cache.estimatedSize());
+        status.put("maximumSize", spec.maximumSize());
+        if (spec.expireAfterWrite() != null) {
+            status.put("expireAfterWrite", spec.expireAfterWrite().toString());
+        }
+        if (spec.expireAfterAccess() != null) {
+            status.put("expireAfterAccess", spec.expireAfterAccess().toString());
+        }
+        if (registered.expiry() != null) {
+            status.put("expiry", registered.expiry());
+        }
+        status.put("requests", stats.requestCount());
+        status.put("hitRate", stats.hitRate());
+        status.put("hits", stats.hitCount());
+        status.put("misses", stats.missCount());
+        status.put("loads", stats.loadCount());
+        status.put("loadFailures", stats.loadFailureCount());
+        status.put("averageLoadPenaltyMs", stats.averageLoadPenalty() / 1_000_000.0);
+        status.put("evictions", stats.evictionCount());
+        return status;
+    }
+
+    private Caffeine<Object, Object> builder(Spec spec) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(spec.maximumSize())
+                .recordStats();
+        if (spec.expireAfterWrite() != null) {
+            builder.expireAfterWrite(spec.expireAfterWrite());
+        }
+        if (spec.expireAfterAccess() != null) {
+            builder.expireAfterAccess(spec.expireAfterAccess());
+        }
+        return builder;
+    }
+
+    private <K, V, C extends Cache<K, V>> C register(String name, C cache, Spec spec, String expiry) {
+        if (caches.putIfAbsent(name, new Registered(cache, spec, expiry)) != null) {
+            throw new IllegalStateException("缓存名称重复: " + name);
+        }
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        log.info("注册本地缓存 {}: maximumSize={}, expireAfterWrite={}, expireAfterAccess={}{}",
+                name, spec.maximumSize(), spec.expireAfterWrite(), spec.expireAfterAccess(),
+                expiry != null ? ", expiry=" + expiry : "");
+        return cache;
+    }
+
+    /**
+     * 配置文件中的同名配置覆盖代码中的默认值
+     */
+    private Spec resolve(String name, Spec defaults) {
+        String prefix = "cache." + name + ".";
+        return new Spec(
+                environment.getProperty(prefix + "maximum-size", Long.class, defaults.maximumSize()),
+                environment.getProperty(prefix + "expire-after-write", Duration.class, defaults.expireAfterWrite()),
+                environment.getProperty(prefix + "expire-after-access", Duration.class, defaults.expireAfterAccess()));
+    }
+}
@@ -1,18 +1,18 @@
 package com.fit2cloud.fapiao.service;
 
 import com.fit2cloud.fapiao.dto.response.QyLoginResult;
+import com.fit2cloud.fapiao.dto.wecom.WeComOAuthUserResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComUser;
 import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.exception.WeComApiException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 企业微信Web端登录服务
@@ -28,37 +28,24 @@ public class QyWechatWebService {
     @Value("${qywechat.agentSecret}")
     private String agentSecret;
 
-    private final RestTemplate restTemplate;
+    private final WeComApiClient weComApiClient;
     private final QyWechatService qyWechatService;
     private final UserDepartmentRelationService userDepartmentRelationService; // 复用现有的access_token逻辑
 
-    // Web端session缓存
-    private final Map<String, WebSessionInfo> webSessionCache = new ConcurrentHashMap<>();
-
-    // Web端session信息
-    private static class WebSessionInfo {
-        String userId;
-        String userName;
-        long createTime;
-        long expireTime;
-
-        WebSessionInfo(String userId, String userName, long expireSeconds) {
-            this.userId = userId;
-            this.userName = userName;
-            this.createTime = System.currentTimeMillis();
-            this.expireTime = this.createTime + expireSeconds * 1000;
-        }
+    // Web端session有效期
+    @Value("${qywechat.web-session.ttl-seconds:7200}")
+    private long webSessionTtlSeconds;
 
-        boolean isValid() {
-            return System.currentTimeMillis() < expireTime;
-        }
-    }
+    // Web端session存储（本机内存或数据库，见 qywechat.web-session.store）
+    private final WebSessionStore webSessionStore;
 
-    public QyWechatWebService(RestTemplate restTemplate, QyWechatService qyWechatService,
-                              UserDepartmentRelationService userDepartmentRelationService) {
-        this.restTemplate = restTemplate;
+    public QyWechatWebService(WeComApiClient weComApiClient, QyWechatService qyWechatService,
+                              UserDepartmentRelationService userDepartmentRelationService,
+                              WebSessionStore webSessionStore) {
+        this.weComApiClient = weComApiClient;
         this.qyWechatService = qyWechatService;
         this.userDepartmentRelationService = userDepartmentRelationService; // 新增
+        this.webSessionStore = webSessionStore;
     }
 
     /**
@@ -133,32 +120,17 @@ public class QyWechatWebService {
     private Map<String, Object> getWebUserInfo(String accessToken, String code) {
         try {
             // 使用正确的企业微信网页授权API
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/getuserinfo?access_token={accessToken}&code={code}";
-
-            Map<String, String> params = new HashMap<>();
-            params.put("accessToken", accessToken);
-            params.put("code", code);
+            WeComOAuthUserResponse response = weComApiClient.get("user/getuserinfo", accessToken,
+                    "code", code, WeComOAuthUserResponse.class);
 
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class, params);
+            String userId = response.userId();
+            log.info("企业微信网页授权成功, userid: {}", userId);
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    String userId = (String) responseBody.get("UserId");
-                    log.info("企业微信网页授权成功, userid: {}", userId);
-
-                    // 获取用户详细信息
-                    return getUserDetail(accessToken, userId);
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.warn("企业微信网页授权失败, errcode: {}, errmsg: {}", errcode, errmsg);
-                    throw new BusinessException("网页授权失败: " + errmsg);
-                }
-            } else {
-                throw new BusinessException("企业微信API请求失败");
-            }
+            // 获取用户详细信息
+            return getUserDetail(accessToken, userId);
+        } catch (WeComApiException e) {
+            log.warn("企业微信网页授权失败, errcode: {}, errmsg: {}", e.getErrcode(), e.getErrmsg());
+            throw new BusinessException("网页授权失败: " + e.getErrmsg());
         } catch (Exception e) {
             log.error("企业微信网页授权异常", e);
             throw new BusinessException("网页授权异常: " + e.getMessage());
@@ -170,35 +142,17 @@ public class QyWechatWebService {
      */
     private Map<String, Object> getUserDetail(String accessToken, String userId) {
         try {
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/get?access_token={accessToken}&userid={userId}";
-
-            Map<String, String> params = new HashMap<>();
-            params.put("accessToken", accessToken);
-            params.put("userId", userId);
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class, params);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    Map<String, Object> userDetail = new HashMap<>();
-                    userDetail.put("userid", userId);
-                    userDetail.put("name", responseBody.get("name"));
-                    userDetail.put("avatar", responseBody.get("avatar"));
-                    userDetail.put("department", responseBody.get("department"));
-                    return userDetail;
-                }
-            }
+            WeComUser user = weComApiClient.get("user/get", accessToken, "userid", userId, WeComUser.class);
 
-            // 如果获取详细信息失败，返回基本信息
-            Map<String, Object> basicInfo = new HashMap<>();
-            basicInfo.put("userid", userId);
-            basicInfo.put("name", userId);
-            return basicInfo;
+            Map<String, Object> userDetail = new HashMap<>();
+            userDetail.put("userid", userId);
+            userDetail.put("name", user.name());
+            userDetail.put("avatar", user.avatar());
+            userDetail.put("department", user.department());
+            return userDetail;
 
         } catch (Exception e) {
+            // 如果获取详细信息失败，返回基本信息
             log.warn("获取用户详细信息失败: {}", e.getMessage());
             Map<String, Object> basicInfo = new HashMap<>();
             basicInfo.put("userid", userId);
@@ -221,8 +175,9 @@ public class QyWechatWebService {
         String userId = (String) userInfo.get("userid");
         String userName = (String) userInfo.get("name");
 
-        WebSessionInfo sessionInfo = new WebSessionInfo(userId, userName, 7200);
-        webSessionCache.put(sessionKey, sessionInfo);
+        long now = System.currentTimeMillis();
+        webSessionStore.save(new WebSessionStore.Session(sessionKey, userId, userName,
+                now, now + webSessionTtlSeconds * 1000));
 
         log.debug("缓存Web端session, sessionKey: {}, userid: {}", sessionKey, userId);
     }
@@ -231,14 +186,8 @@ public class QyWechatWebService {
      * 清理过期的Web端session
      */
     public void cleanupExpiredWebSessions() {
-        int expiredCount = 0;
-        for (String sessionKey : webSessionCache.keySet()) {
-            WebSessionInfo sessionInfo = webSessionCache.get(sessionKey);
-            if (sessionInfo != null && !sessionInfo.isValid()) {
-                webSessionCache.remove(sessionKey);
-                expiredCount++;
-            }
-        }
+        // 过期的session由存储自行清理，这里只是立即执行一次
+        int expiredCount = webSessionStore.cleanupExpired();
 
         if (expiredCount > 0) {
             log.info("清理了 {} 个过期的Web端session", expiredCount);
@@ -253,19 +202,14 @@ public class QyWechatWebService {
             return false;
         }
 
-        WebSessionInfo sessionInfo = webSessionCache.get(sessionKey);
+        // 过期的session不会返回
+        WebSessionStore.Session sessionInfo = webSessionStore.get(sessionKey);
         if (sessionInfo == null) {
-            log.warn("sessionKey不存在: {}", sessionKey);
+            log.warn("sessionKey不存在或已过期: {}", sessionKey);
             return false;
         }
 
-        boolean isValid = sessionInfo.isValid();
-        if (!isValid) {
-            webSessionCache.remove(sessionKey);
-            log.info("sessionKey已过期: {}", sessionKey);
-        }
-
-        return isValid;
+        return true;
     }
 
     /**
@@ -308,40 +252,10 @@ public class QyWechatWebService {
     }
 
     /**
-     * 获取jsapi_ticket
+     * 获取jsapi_ticket，由 AccessTokenService 缓存并在过期前刷新
      */
     private String getJsapiTicket() {
-        try {
-            // 复用现有的access_token获取逻辑
-            String accessToken = qyWechatService.getAccessTokenForApproval();
-
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/get_jsapi_ticket?access_token={accessToken}";
-
-            Map<String, String> params = new HashMap<>();
-            params.put("accessToken", accessToken);
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class, params);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    String ticket = (String) responseBody.get("ticket");
-                    log.info("获取jsapi_ticket成功");
-                    return ticket;
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("获取jsapi_ticket失败, errcode: {}, errmsg: {}", errcode, errmsg);
-                    throw new BusinessException("获取jsapi_ticket失败: " + errmsg);
-                }
-            } else {
-                throw new BusinessException("jsapi_ticket API请求失败");
-            }
-        } catch (Exception e) {
-            log.error("获取jsapi_ticket异常", e);
-            throw new BusinessException("获取jsapi_ticket异常: " + e.getMessage());
-        }
+        return qyWechatService.getJsapiTicket();
     }
 
     /**
@@ -3,13 +3,29 @@ package com.fit2cloud.fapiao.service;
 
 import com.fit2cloud.fapiao.controller.ReimbursementController;
 import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.response.ReimbursementSubmitResult;
+import com.fit2cloud.fapiao.entity.ApprovalOutboxStep;
+import com.fit2cloud.fapiao.entity.ApprovalSubmission;
+import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.util.TaskGraph;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 @Slf4j
@@ -27,11 +43,35 @@ public class ReimbursementService {
     @Autowired
     private InvoiceDuplicateCheckService duplicateCheckService;
 
+    @Autowired
+    private DeferredVerificationService deferredVerificationService;
+
+    @Autowired
+    private WeComApiRateLimiter weComApiRateLimiter;
+
+    @Autowired
+    private ApprovalOutboxService approvalOutboxService;
+
+    @Autowired
+    @Qualifier("approvalSubmitExecutor")
+    private Executor approvalSubmitExecutor;
+
+    @Autowired
+    @Qualifier("approvalOutboxExecutor")
+    private Executor approvalOutboxExecutor;
+
+    private static final String TRAVEL_FORM_TYPE = "客成差旅报销单";
+    private static final int GROUP_SIZE = 6;
+
+    // 正在处理或已排队的提交单，避免定时任务与提交后立即触发的处理重叠
+    private final Set<String> processingSubmissions = ConcurrentHashMap.newKeySet();
+
     /**
      * 提交报销申请
+     * 查重通过后把要创建的审批作为发件箱步骤落库并立即返回提交单ID，由后台提交到企业微信；
+     * 同一批发票重复提交返回同一提交单，失败的步骤重新排队，已创建的审批不会重复创建
      */
-    public boolean submitReimbursement(ReimbursementController.ReimbursementSubmit submitData, String userId) {
-        List<String> approvalIds = new ArrayList<>();
+    public ReimbursementSubmitResult submitReimbursement(ReimbursementController.ReimbursementSubmit submitData, String userId) {
         try {
             // 这里实现报销申请提交逻辑
             List<InvoiceInfo> invoices = submitData.getInvoices();
@@ -43,15 +83,6 @@ public class ReimbursementService {
             String region = submitData.getRegion(); // 获取区域
             String costDepartment = submitData.getCostDepartment(); // 获取成本部门
 
-            // 客成差旅特有参数
-            String customerName = submitData.getCustomerName();
-            String unsignedCustomer = submitData.getUnsignedCustomer();
-            String travelDays = submitData.getTravelDays();
-            String travelStartDate = submitData.getTravelStartDate();
-            String travelEndDate = submitData.getTravelEndDate();
-            String travelStartPeriod = submitData.getTravelStartPeriod();
-            String travelEndPeriod = submitData.getTravelEndPeriod();
-
             log.info("报销申请提交信息:");
             log.info("总金额: {}", totalAmount);
             log.info("发票数量: {}", invoices != null ? invoices.size() : 0);
@@ -74,6 +105,11 @@ public class ReimbursementService {
                     }
                 }
                 log.info("所有发票查重检查通过");
+
+                // 延迟验证模式下补查仍在验证中的发票
+                if (deferredVerificationService.isEnabled()) {
+                    deferredVerificationService.confirmBeforeSubmit(invoices);
+                }
             }
 
             if (invoices != null) {
@@ -87,96 +123,260 @@ public class ReimbursementService {
                 }
             }
 
-            // 如果是客成差旅报销，先提交出差申请单
-            String businessTripApprovalId = null;
-            String travelSubsidyApprovalId = null;
-            if ("客成差旅报销单".equals(formType)) {
-                try {
-                    log.info("开始提交出差申请单...");
-
-                    // 使用报销日期作为申请日期
-                    String applyDate = submitData.getReimbursementDate();
-                    if (applyDate == null) {
-                        applyDate = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-                    }log.warn("报销日期为空，使用当前日期作为申请日期: {}", applyDate);
-
-                    // 第一阶段：提交出差申请单
-                    log.info("=== 第一阶段：提交出差申请单 ===");
-                    businessTripApprovalId = businessTripService.submitBusinessTripApproval(
-                            userId, formReimbursementReason, customerName, applyDate, costDepartment,
-                            travelStartDate, travelEndDate, travelStartPeriod, travelEndPeriod, travelDays);
-
-                    log.info("出差申请单提交成功，审批编号: {}", businessTripApprovalId);
-                    approvalIds.add("出差申请: " + businessTripApprovalId);
-
-                    // 第二阶段：根据前端选择决定是否提交出差补贴申请单
-                    Boolean submitTravelSubsidy = submitData.getSubmitTravelSubsidy();
-                    if (submitTravelSubsidy == null || submitTravelSubsidy) {
-                        log.info("=== 第二阶段：提交出差补贴申请单 ===");
-                        travelSubsidyApprovalId = travelSubsidyService.submitTravelSubsidyApproval(
-                                userId, submitData.getUserName(), formReimbursementReason, applyDate, costDepartment,
-                                travelStartDate, travelEndDate, travelStartPeriod, travelEndPeriod, travelDays, businessTripApprovalId);
-
-                        log.info("出差补贴申请单提交成功，审批编号: {}", travelSubsidyApprovalId);
-                        approvalIds.add("出差补贴: " + travelSubsidyApprovalId);
-                    } else {
-                        log.info("用户选择不提交出差补贴申请单，跳过此步骤");
-                    }
+            boolean travelForm = TRAVEL_FORM_TYPE.equals(formType);
+            Boolean submitTravelSubsidy = submitData.getSubmitTravelSubsidy();
+            boolean withSubsidy = travelForm && (submitTravelSubsidy == null || submitTravelSubsidy);
+            if (travelForm && !withSubsidy) {
+                log.info("用户选择不提交出差补贴申请单，跳过此步骤");
+            }
+
+            int groupCount = splitInvoicesBySequence(invoices, GROUP_SIZE).size();
+            ReimbursementSubmitResult result = new ReimbursementSubmitResult();
+            if (!travelForm && groupCount == 0) {
+                result.setSuccess(true);
+                return result;
+            }
+
+            ApprovalOutboxService.Enqueued enqueued;
+            try {
+                enqueued = approvalOutboxService.enqueue(submitData, userId, travelForm, withSubsidy, groupCount);
+            } catch (DataIntegrityViolationException e) {
+                // 相同内容并发提交，另一请求已入队
+                enqueued = approvalOutboxService.enqueue(submitData, userId, travelForm, withSubsidy, groupCount);
+            }
+
+            String submissionId = enqueued.submissionId();
+            dispatch(submissionId);
 
-                } catch (Exception e) {
-                    log.error("提交出差申请单失败，但继续提交报销申请", e);
-                    // 这里选择记录错误但继续提交报销申请
+            result.setSubmissionId(submissionId);
+            result.setStatus(ApprovalSubmission.STATUS_PROCESSING);
+            result.setSuccess(true);
+            return result;
+        } catch (Exception e) {
+            log.error("报销申请提交失败", e);
+            return ReimbursementSubmitResult.failed(e.getMessage() != null ? e.getMessage() : "报销申请提交失败");
+        }
+    }
+
+    /**
+     * 查询提交进度
+     */
+    public ReimbursementSubmitResult getSubmission(String submissionId, String userId) {
+        return approvalOutboxService.toResult(findOwnSubmission(submissionId, userId));
+    }
+
+    /**
+     * 重新提交失败的审批步骤
+     */
+    public ReimbursementSubmitResult retrySubmission(String submissionId, String userId) {
+        findOwnSubmission(submissionId, userId);
+        int reset = approvalOutboxService.retry(submissionId);
+        log.info("重新提交报销申请失败步骤: submissionId={}, userId={}, 步骤数={}", submissionId, userId, reset);
+        if (reset > 0) {
+            dispatch(submissionId);
+        }
+        return getSubmission(submissionId, userId);
+    }
+
+    /**
+     * 查询提交单，不是本人提交的按不存在处理
+     */
+    private ApprovalSubmission findOwnSubmission(String submissionId, String userId) {
+        return approvalOutboxService.findSubmission(submissionId)
+                .filter(submission -> submission.getUserId() != null && submission.getUserId().equals(userId))
+                .orElseThrow(() -> new BusinessException("提交单不存在: " + submissionId));
+    }
+
+    /**
+     * 定时处理发件箱中到期的步骤（重试、重启后未完成的提交）
+     * 只查询到期的提交单并分派到 approvalOutboxExecutor，不在调度线程上调用企业微信
+     */
+    @Scheduled(fixedDelayString = "${qywechat.approval.outbox.poll-interval-ms:5000}")
+    public void processOutbox() {
+        try {
+            approvalOutboxService.markStaleInProgressUncertain();
+            for (String submissionId : approvalOutboxService.findDueSubmissionIds()) {
+                dispatch(submissionId);
+            }
+        } catch (Exception e) {
+            log.error("处理审批发件箱异常", e);
+        }
+    }
+
+    /**
+     * 把提交单交给发件箱线程池处理，同一提交单正在处理或排队时不重复分派
+     */
+    private void dispatch(String submissionId) {
+        if (!processingSubmissions.add(submissionId)) {
+            return;
+        }
+        try {
+            approvalOutboxExecutor.execute(() -> {
+                try {
+                    processSubmission(submissionId);
+                } finally {
+                    processingSubmissions.remove(submissionId);
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            processingSubmissions.remove(submissionId);
+            log.warn("审批发件箱繁忙，提交单等待下一轮处理: submissionId={}", submissionId);
+        }
+    }
+
+    /**
+     * 处理一个提交单中可以提交的步骤
+     * 依赖已完成（或最终失败且为弱依赖）的步骤直接提交；依赖同轮提交的步骤在其后执行，
+     * 互不依赖的步骤在 approvalSubmitExecutor 上并发提交。依赖未成功的步骤放回队列等待依赖重试的结果
+     */
+    private void processSubmission(String submissionId) {
+        try {
+            ApprovalSubmission submission = approvalOutboxService.findSubmission(submissionId).orElse(null);
+            if (submission == null) {
+                return;
             }
 
-            // 第三阶段：分组提交报销申请
-            log.info("=== 第三阶段：提交报销申请 ===");
-            if (invoices != null && !invoices.isEmpty()) {
-                List<List<InvoiceInfo>> invoiceGroups = splitInvoicesBySequence(invoices, 6);
-                log.info("将 {} 张发票按顺序分成 {} 组进行提交", invoices.size(), invoiceGroups.size());
-
-                for (int i = 0; i < invoiceGroups.size(); i++) {
-                    List<InvoiceInfo> currentGroup = invoiceGroups.get(i);
-                  //String groupMediaIds = extractMediaIdsBySequence(mediaIds, invoices, currentGroup);
-                    String groupMediaIds = extractMediaIdsByIndex(mediaIds, i, 6, currentGroup.size());
-                    log.info("提交第 {} 组报销申请，包含 {} 张发票", i + 1, currentGroup.size());
-
-                    // 计算当前组的金额
-                    String groupTotalAmount = calculateGroupTotalAmount(currentGroup);
-
-                    // 提交当前组的报销申请
-                    String approvalId = weComApprovalService.submitApproval(
-                            userId, currentGroup, groupTotalAmount, groupMediaIds, formType,
-                            buildGroupReason(formReimbursementReason, invoiceGroups.size(), i + 1),
-                            legalEntity, region, costDepartment, customerName, unsignedCustomer,
-                            travelDays, travelStartDate, travelEndDate, travelStartPeriod, travelEndPeriod,
-                            businessTripApprovalId);
-
-                    approvalIds.add(approvalId);
-                    log.info("第 {} 组报销申请提交成功，审批编号: {}", i + 1, approvalId);
+            ReimbursementController.ReimbursementSubmit submitData = approvalOutboxService.readPayload(submission);
+            String userId = submission.getUserId();
+            List<List<InvoiceInfo>> invoiceGroups = splitInvoicesBySequence(submitData.getInvoices(), GROUP_SIZE);
+            List<ApprovalOutboxStep> steps = approvalOutboxService.loadSteps(submissionId);
+            Map<String, ApprovalOutboxStep> stepsByNode = new HashMap<>();
+            for (ApprovalOutboxStep step : steps) {
+                stepsByNode.put(step.getNodeId(), step);
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            TaskGraph<String> graph = new TaskGraph<>();
+            Map<String, ApprovalOutboxStep> claimed = new LinkedHashMap<>();
+
+            for (ApprovalOutboxStep step : steps) {
+                if (!ApprovalOutboxStep.STATUS_PENDING.equals(step.getStatus()) || step.getNextAttemptTime().isAfter(now)) {
+                    continue;
                 }
-                // 新增：记录所有发票提交
-                log.info("开始记录发票提交信息...");
-                for (InvoiceInfo invoice : invoices) {
-                    try {
-                        duplicateCheckService.recordInvoiceSubmission(invoice, userId);
-                    } catch (Exception e) {
-                        log.error("记录发票提交信息失败: {}", e.getMessage());
-                        // 记录失败不影响主要业务流程，但需要记录日志
+
+                String dependsOn = step.getDependsOn();
+                ApprovalOutboxStep dependency = dependsOn != null ? stepsByNode.get(dependsOn) : null;
+                List<String> graphDependencies = List.of();
+                String dependencySpNo = null;
+
+                if (dependency != null) {
+                    if (ApprovalOutboxStep.STATUS_DONE.equals(dependency.getStatus())) {
+                        dependencySpNo = dependency.getSpNo();
+                    } else if (claimed.containsKey(dependsOn)) {
+                        graphDependencies = List.of(dependsOn);
+                    } else if (dependency.isTerminal()) {
+                        if (step.isRequiresSuccess()) {
+                            approvalOutboxService.markSkipped(step,
+                                    ApprovalOutboxService.nodeLabel(dependsOn) + "未提交成功");
+                            continue;
+                        }
+                    } else {
+                        // 依赖步骤等待重试
+                        continue;
                     }
                 }
-                log.info("所有发票提交信息记录完成");
+
+                if (!approvalOutboxService.claim(step)) {
+                    continue;
+                }
+                claimed.put(step.getNodeId(), step);
+
+                String fixedDependencySpNo = dependencySpNo;
+                boolean inGraphDependency = !graphDependencies.isEmpty();
+                graph.add(step.getNodeId(), graphDependencies, List.of(), dependencies -> submitStep(step, submitData,
+                        userId, invoiceGroups, inGraphDependency ? dependencies.apply(dependsOn) : fixedDependencySpNo));
             }
 
-            // 记录出差申请单和报销申请单的关联关系
-            if (businessTripApprovalId != null && !approvalIds.isEmpty()) {
-                log.info("出差申请单 {} 与报销申请单 {} 关联成功", businessTripApprovalId, approvalIds);
+            if (graph.size() > 0) {
+                long start = System.currentTimeMillis();
+                Map<String, TaskGraph.NodeResult<String>> results = graph.execute(approvalSubmitExecutor);
+                log.info("审批发件箱处理完成: submissionId={}, 提交步骤数={}, 耗时: {}ms",
+                        submissionId, graph.size(), System.currentTimeMillis() - start);
+
+                for (TaskGraph.NodeResult<String> nodeResult : results.values()) {
+                    ApprovalOutboxStep step = claimed.get(nodeResult.id());
+                    String label = ApprovalOutboxService.nodeLabel(step.getNodeId());
+
+                    switch (nodeResult.status()) {
+                        case SUCCESS -> {
+                            log.info("{}提交成功，审批编号: {}，耗时: {}ms", label, nodeResult.value(), nodeResult.elapsedMs());
+                            approvalOutboxService.markDone(step, nodeResult.value());
+                            if (step.getGroupIndex() != null) {
+                                recordInvoiceSubmissions(invoiceGroups.get(step.getGroupIndex()), userId);
+                            }
+                        }
+                        case FAILED -> approvalOutboxService.markFailed(step, nodeResult.error(), nodeResult.cause());
+                        case SKIPPED -> approvalOutboxService.release(step);
+                    }
+                }
             }
 
-            return true;
+            approvalOutboxService.refreshStatus(submissionId);
         } catch (Exception e) {
-            log.error("报销申请提交失败", e);
-            return false;
+            log.error("处理报销提交单异常: submissionId={}", submissionId, e);
+        }
+    }
+
+    /**
+     * 提交单个审批步骤
+     *
+     * @param businessTripApprovalId 出差申请审批编号，出差申请未成功或非差旅报销时为null
+     */
+    private String submitStep(ApprovalOutboxStep step, ReimbursementController.ReimbursementSubmit submitData,
+                              String userId, List<List<InvoiceInfo>> invoiceGroups,
+                              String businessTripApprovalId) throws Exception {
+        String formReimbursementReason = submitData.getFormReimbursementReason();
+        String costDepartment = submitData.getCostDepartment();
+
+        // 使用报销日期作为申请日期
+        String applyDate = submitData.getReimbursementDate();
+        if (applyDate == null) {
+            applyDate = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        }
+        String tripApplyDate = applyDate;
+
+        if (ApprovalOutboxService.NODE_BUSINESS_TRIP.equals(step.getNodeId())) {
+            return weComApiRateLimiter.execute("出差申请", () -> businessTripService.submitBusinessTripApproval(
+                    userId, formReimbursementReason, submitData.getCustomerName(), tripApplyDate, costDepartment,
+                    submitData.getTravelStartDate(), submitData.getTravelEndDate(),
+                    submitData.getTravelStartPeriod(), submitData.getTravelEndPeriod(), submitData.getTravelDays()));
+        }
+
+        if (ApprovalOutboxService.NODE_TRAVEL_SUBSIDY.equals(step.getNodeId())) {
+            return weComApiRateLimiter.execute("出差补贴", () -> travelSubsidyService.submitTravelSubsidyApproval(
+                    userId, submitData.getUserName(), formReimbursementReason, tripApplyDate, costDepartment,
+                    submitData.getTravelStartDate(), submitData.getTravelEndDate(),
+                    submitData.getTravelStartPeriod(), submitData.getTravelEndPeriod(), submitData.getTravelDays(),
+                    businessTripApprovalId));
+        }
+
+        int groupIndex = step.getGroupIndex();
+        List<InvoiceInfo> currentGroup = invoiceGroups.get(groupIndex);
+        String groupMediaIds = extractMediaIdsByIndex(submitData.getMediaIds(), groupIndex, GROUP_SIZE, currentGroup.size());
+        String groupTotalAmount = calculateGroupTotalAmount(currentGroup);
+        String groupReason = buildGroupReason(formReimbursementReason, invoiceGroups.size(), groupIndex + 1);
+
+        log.info("提交第 {} 组报销申请，包含 {} 张发票", groupIndex + 1, currentGroup.size());
+        return weComApiRateLimiter.execute("报销申请", () -> weComApprovalService.submitApproval(
+                userId, currentGroup, groupTotalAmount, groupMediaIds, submitData.getFormType(), groupReason,
+                submitData.getLegalEntity(), submitData.getRegion(), costDepartment,
+                submitData.getCustomerName(), submitData.getUnsignedCustomer(), submitData.getTravelDays(),
+                submitData.getTravelStartDate(), submitData.getTravelEndDate(),
+                submitData.getTravelStartPeriod(), submitData.getTravelEndPeriod(),
+                businessTripApprovalId));
+    }
+
+    /**
+     * 记录已提交的发票，用于后续查重
+     */
+    private void recordInvoiceSubmissions(List<InvoiceInfo> invoices, String userId) {
+        for (InvoiceInfo invoice : invoices) {
+            try {
+                duplicateCheckService.recordInvoiceSubmission(invoice, userId);
+            } catch (Exception e) {
+                log.error("记录发票提交信息失败: {}", e.getMessage());
+                // 记录失败不影响主要业务流程，但需要记录日志
+            }
         }
     }
 
@@ -0,0 +1,141 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地回放验证提供方，用于离线压测校验吞吐，不消耗接口额度
+ * 回放文件每行一条JSON记录：{"fphm":"...","status":"SUCCESS","message":"...","apiData":{...},"latencyMs":150}，
+ * 可由 invoice_verification_cache 表导出；未命中的发票按默认状态返回
+ */
+@Service
+@Slf4j
+public class ReplayVerificationProvider implements VerificationProvider {
+
+    public static final String NAME = "replay";
+
+    @Value("${invoice.verification.provider.replay.file:}")
+    private String replayFile;
+
+    @Value("${invoice.verification.provider.replay.latency-ms:200}")
+    private long defaultLatencyMs;
+
+    @Value("${invoice.verification.provider.replay.default-status:SUCCESS}")
+    private String defaultStatus;
+
+    private final ObjectMapper objectMapper;
+
+    // 发票号码 -> 回放记录
+    private final Map<String, ReplayRecord> records = new ConcurrentHashMap<>();
+
+    public ReplayVerificationProvider(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ReplayRecord {
+        private String fphm;
+        private String status;
+        private String message;
+        private Map<String, Object> apiData;
+        private Long latencyMs;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (replayFile == null || replayFile.isEmpty()) {
+            return;
+        }
+
+        Path path = Path.of(replayFile);
+        if (!Files.exists(path)) {
+            log.warn("回放文件不存在: {}", replayFile);
+            return;
+        }
+
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    ReplayRecord record = objectMapper.readValue(line, ReplayRecord.class);
+                    if (record.getFphm() != null) {
+                        records.put(record.getFphm().trim(), record);
+                    }
+                } catch (Exception e) {
+                    log.warn("回放文件第 {} 行解析失败: {}", lineNumber, e.getMessage());
+                }
+            }
+            log.info("回放验证数据加载完成: file={}, 记录数={}", replayFile, records.size());
+        } catch (Exception e) {
+            log.error("加载回放文件失败: {}", replayFile, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public VerificationResult verify(Map<String, String> requestParams) {
+        String number = requestParams.get("fphm");
+        ReplayRecord record = number != null ? records.get(number.trim()) : null;
+
+        long latencyMs = record != null && record.getLatencyMs() != null ? record.getLatencyMs() : defaultLatencyMs;
+        simulateLatency(latencyMs);
+
+        if (record == null) {
+            return toResult(defaultStatus, "回放验证（未命中记录）", null);
+        }
+        return toResult(record.getStatus(), record.getMessage(), record.getApiData());
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    private VerificationResult toResult(String status, String message, Map<String, Object> apiData) {
+        String effectiveStatus = status != null ? status.toUpperCase() : VerificationResult.STATUS_SUCCESS;
+        VerificationResult result = switch (effectiveStatus) {
+            case VerificationResult.STATUS_SUCCESS -> VerificationResult.success(message, apiData);
+            case VerificationResult.STATUS_FAILED -> VerificationResult.failed(message, apiData);
+            case VerificationResult.STATUS_MISMATCH -> VerificationResult.mismatch(message, apiData);
+            case VerificationResult.STATUS_SKIP -> VerificationResult.skip(message);
+            default -> VerificationResult.error(message);
+        };
+        result.setCacheable(false);
+        return result;
+    }
+
+    private void simulateLatency(long latencyMs) {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
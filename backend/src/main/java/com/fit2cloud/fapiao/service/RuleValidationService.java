@@ -4,6 +4,7 @@ package com.fit2cloud.fapiao.service;
 import com.fit2cloud.fapiao.dto.response.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
@@ -14,6 +15,10 @@ import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 @Service
 @Slf4j
@@ -27,6 +32,13 @@ public class RuleValidationService {
     @Autowired
     private RestTemplate restTemplate;  // 需要在配置类中注入
 
+    @Autowired
+    private ComplianceRuleEngine complianceRuleEngine;
+
+    @Autowired
+    @Qualifier("invoiceValidationExecutor")
+    private Executor validationExecutor;
+
     // 发票验证API配置（从配置文件读取）
     @Value("${invoice.verification.api.host:https://fapiao.market.alicloudapi.com}")
     private String verificationApiHost;
@@ -40,50 +52,67 @@ public class RuleValidationService {
     @Value("${invoice.verification.enabled:true}")
     private boolean verificationEnabled;
 
-    // 公司标准信息
-    private static final String COMPANY_NAME = "杭州飞致云信息科技有限公司";
-    private static final String COMPANY_TAX_CODE = "91330106311245339J";
-
-    // 合规标准
-    private static final String[] VALID_ACCOMMODATION = {"华住-汉庭", "华住-宜必思", "华住-你好酒店", "华住-怡莱酒店"};
-    private static final String[] VALID_TRANSPORTATION = {"高铁-二等座", "飞机-经济舱", "火车-动卧"};
 
     /**
      * 单张发票规则校验
      */
     public ValidationResult validateInvoice(InvoiceInfo invoice, String formType) {
-        List<RuleViolation> violations = new ArrayList<>();
-        VerificationResult verificationResult = null;
-
         // 生成发票标识（用于日志）
         String identifier = generateInvoiceIdentifier(invoice);
         log.info("开始整体验证: {}", identifier);
 
         // 第一步：真伪验证（如果启用）
+        VerificationResult verificationResult = verifyAuthenticity(invoice);
+
+        // 第二步：规则校验（只有在真伪验证通过或跳过时才进行）
+        List<RuleViolation> ruleViolations = shouldProceedRuleValidation(verificationResult)
+                ? validateLocalRules(invoice, formType)
+                : new ArrayList<>();
+
+        return mergeResults(invoice, verificationResult, ruleViolations);
+    }
+
+    /**
+     * 真伪验证阶段（网络调用）
+     */
+    private VerificationResult verifyAuthenticity(InvoiceInfo invoice) {
         if (verificationEnabled) {
-            verificationResult = verificationService.verifyInvoice(invoice);
-            handleVerificationResult(verificationResult, invoice, violations);
-        } else {
-            log.debug("发票真伪验证未启用");
-            verificationResult = VerificationResult.skip("真伪验证未启用");
+            return verificationService.verifyInvoice(invoice);
         }
+        log.debug("发票真伪验证未启用");
+        return VerificationResult.skip("真伪验证未启用");
+    }
 
-        // 第二步：规则校验（只有在真伪验证通过或跳过时才进行）
-        boolean shouldProceedRuleValidation = verificationResult == null ||
-                !verificationResult.isVerified() ||
-                verificationResult.isValid();
+    /**
+     * 本地规则校验阶段（购买方、开票日期、合规检查）
+     */
+    private List<RuleViolation> validateLocalRules(InvoiceInfo invoice, String formType) {
+        List<RuleViolation> violations = new ArrayList<>();
 
-        if (shouldProceedRuleValidation) {
-            // 1. 购买方信息校验
-            validateBuyerInfo(invoice, violations);
+        // 1. 购买方信息校验
+        validateBuyerInfo(invoice, violations);
 
-            // 2. 开票日期校验
-            validateInvoiceDate(invoice, violations);
+        // 2. 开票日期校验
+        validateInvoiceDate(invoice, violations);
 
-            // 3. 合规检查校验（仅对客成差旅报销）
-            if ("客成差旅报销单".equals(formType)) {
-                validateCompliance(invoice, violations);
-            }
+        // 3. 合规检查校验（规则及适用的报销类型见 rules/invoice-rules.yml）
+        complianceRuleEngine.evaluate(invoice, formType, violations);
+
+        return violations;
+    }
+
+    /**
+     * 合并真伪验证与规则校验结果
+     * 真伪验证失败时丢弃规则校验结果，与先验证后校验的顺序语义保持一致
+     */
+    private ValidationResult mergeResults(InvoiceInfo invoice, VerificationResult verificationResult,
+                                          List<RuleViolation> ruleViolations) {
+        String identifier = generateInvoiceIdentifier(invoice);
+        List<RuleViolation> violations = new ArrayList<>();
+        handleVerificationResult(verificationResult, invoice, violations);
+
+        if (shouldProceedRuleValidation(verificationResult)) {
+            violations.addAll(ruleViolations);
         } else {
             log.warn("由于真伪验证失败，跳过规则校验: identifier={}", identifier);
         }
@@ -100,6 +129,39 @@ public class RuleValidationService {
         return result;
     }
 
+    /**
+     * 异步真伪验证，在校验线程池上执行，异常时返回错误结果
+     */
+    public CompletableFuture<VerificationResult> verifyAuthenticityAsync(InvoiceInfo invoice) {
+        return CompletableFuture.supplyAsync(() -> verifyAuthenticity(invoice), validationExecutor)
+                .exceptionally(e -> {
+                    log.error("发票真伪验证阶段异常: identifier={}", generateInvoiceIdentifier(invoice), e);
+                    return VerificationResult.error("真伪验证服务异常: " + e.getMessage());
+                });
+    }
+
+    /**
+     * 用后台完成的真伪验证结果替换待验证结果
+     * 待验证结果中已有的违规（本地规则、查重异常、批内重复等批次级规则）全部保留，真伪验证的违规追加在后
+     */
+    public ValidationResult applyVerificationResult(InvoiceInfo invoice, VerificationResult verificationResult,
+                                                    ValidationResult pendingResult) {
+        List<RuleViolation> violations = new ArrayList<>();
+        if (pendingResult != null && pendingResult.getViolations() != null) {
+            violations.addAll(pendingResult.getViolations());
+        }
+        handleVerificationResult(verificationResult, invoice, violations);
+
+        ValidationResult result = new ValidationResult(violations.isEmpty(), violations);
+        result.setVerificationResult(verificationResult);
+
+        log.info("后台真伪验证完成: identifier={}, 真伪验证状态={}, 违规数={}",
+                generateInvoiceIdentifier(invoice),
+                verificationResult != null ? verificationResult.getStatus() : "null",
+                violations.size());
+        return result;
+    }
+
     /**
      * 生成发票标识符（用于日志记录）
      */
@@ -301,7 +363,7 @@ public class RuleValidationService {
      */
     private boolean shouldProceedRuleValidation(VerificationResult verificationResult) {
         // 如果真伪验证失败，停止后续规则校验
-        if (verificationResult.isVerified() && !verificationResult.isValid()) {
+        if (verificationResult != null && verificationResult.isVerified() && !verificationResult.isValid()) {
             return false;
         }
         return true;
@@ -311,232 +373,108 @@ public class RuleValidationService {
      * 批量发票规则校验
      */
     public BatchValidationResult validateInvoices(List<InvoiceInfo> invoices, String formType) {
-        List<InvoiceValidationResult> results = new ArrayList<>();
-        boolean allValid = true;
-        boolean hasHardErrors = false;
-
-        for (int i = 0; i < invoices.size(); i++) {
-            InvoiceInfo invoice = invoices.get(i);
-            ValidationResult result = validateInvoice(invoice, formType);
-            results.add(new InvoiceValidationResult(i, invoice, result));
-
-            if (!result.isValid()) {
-                allValid = false;
-                // 检查是否有硬性错误
-                if (hasHardError(result.getViolations())) {
-                    hasHardErrors = true;
-                }
-            }
-        }
-
-        return new BatchValidationResult(allValid, hasHardErrors, results);
-    }
-
-    /**
-     * 合规检查校验
-     */
-    private void validateCompliance(InvoiceInfo invoice, List<RuleViolation> violations) {
-        // 从合规检查字段获取信息（需要InvoiceInfo中添加complianceCheck字段）
-        String complianceCheck = invoice.getComplianceCheck();
-        if (complianceCheck == null || complianceCheck.trim().isEmpty()) {
-            return;
-        }
-
-        String invoiceItemName = invoice.getInvoiceItemName();
-        boolean isValid = false;
-
-        // 住宿费合规检查
-        if (invoiceItemName != null && invoiceItemName.contains("住宿")) {
-            validateAccommodationCompliance(complianceCheck, violations);
-        }
-        // 交通费合规检查
-        else if (invoiceItemName != null && invoiceItemName.contains("交通")) {
-            validateTransportationCompliance(complianceCheck, violations);
-        }
-        // 差旅成本合规检查（新增）
-        else if (invoiceItemName != null && invoiceItemName.contains("差旅")) {
-            validateTravelCompliance(complianceCheck, violations);
-        }
-    }
-
-
-    /**
-     * 住宿合规检查
-     */
-    private void validateAccommodationCompliance(String complianceCheck, List<RuleViolation> violations) {
-        boolean isValid = false;
-        String matchedHotel = null;
-
-        for (String validAccommodation : VALID_ACCOMMODATION) {
-            if (complianceCheck.contains(validAccommodation)) {
-                isValid = true;
-                matchedHotel = validAccommodation;
-                break;
-            }
-        }
-
-        if (!isValid) {
-            // 提取实际的酒店名称
-            String actualHotel = extractHotelName(complianceCheck);
-            String message = String.format("住宿酒店'%s'不符合优选标准（可选酒店：%s）",
-                    actualHotel != null ? actualHotel : complianceCheck,
-                    String.join("、", VALID_ACCOMMODATION));
-
-            violations.add(new RuleViolation(
-                    "compliance_check",
-                    "消费事由",  // 影响字段 - 新增
-                    message,
-                    RuleViolation.Severity.WARNING
-            ));
-        }
+        return validateInvoices(invoices, formType, null);
     }
 
     /**
-     * 交通合规检查
+     * 批量发票校验（并发阶段图）
+     * 每张发票的查重、真伪验证、本地规则三个阶段在有界线程池上并发执行，
+     * 结果按输入顺序合并，整批耗时取决于最慢的一张发票；
+     * 批次级规则（批内查重、汇总限额）在各阶段执行期间由调用线程单遍计算后合并
+     *
+     * @param duplicateCheck 查重阶段，为null时跳过查重
      */
-    private void validateTransportationCompliance(String complianceCheck, List<RuleViolation> violations) {
-        boolean isValid = false;
-        String matchedTransport = null;
-
-        for (String validTransport : VALID_TRANSPORTATION) {
-            if (complianceCheck.contains(validTransport)) {
-                isValid = true;
-                matchedTransport = validTransport;
-                break;
-            }
-        }
-
-        if (!isValid) {
-            // 分析具体问题
-            String detailMessage = analyzeTransportationIssue(complianceCheck);
-
-            violations.add(new RuleViolation(
-                    "compliance_check",
-                    "消费事由",  // 影响字段 - 新增
-                    detailMessage,
-                    RuleViolation.Severity.WARNING
-            ));
-        }
+    public BatchValidationResult validateInvoices(List<InvoiceInfo> invoices, String formType,
+                                                  Function<InvoiceInfo, DuplicateCheckResult> duplicateCheck) {
+        return validateInvoices(invoices, formType, duplicateCheck, false);
     }
 
     /**
-     * 差旅成本合规检查
+     * 批量发票校验
+     *
+     * @param deferVerification 为true时不等待真伪验证，先以待验证状态返回查重和本地规则结果，
+     *                          真伪验证由 {@link DeferredVerificationService} 在后台完成
      */
-    private void validateTravelCompliance(String complianceCheck, List<RuleViolation> violations) {
-        // 差旅成本可能包含交通和住宿信息
-        boolean hasTransportIssue = false;
-        boolean hasAccommodationIssue = false;
-
-        // 检查是否包含交通信息
-        if (complianceCheck.contains("高铁") || complianceCheck.contains("飞机") ||
-                complianceCheck.contains("火车") || complianceCheck.contains("动车")) {
-            hasTransportIssue = validateTransportationComplianceInternal(complianceCheck, violations);
+    public BatchValidationResult validateInvoices(List<InvoiceInfo> invoices, String formType,
+                                                  Function<InvoiceInfo, DuplicateCheckResult> duplicateCheck,
+                                                  boolean deferVerification) {
+        if (invoices == null || invoices.isEmpty()) {
+            return new BatchValidationResult(true, false, new ArrayList<>());
         }
 
-        // 检查是否包含住宿信息
-        if (complianceCheck.contains("酒店") || complianceCheck.contains("宾馆") ||
-                complianceCheck.contains("住宿")) {
-            hasAccommodationIssue = validateAccommodationComplianceInternal(complianceCheck, violations);
-        }
-    }
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<InvoiceValidationResult>> futures = new ArrayList<>(invoices.size());
 
-    /**
-     * 分析交通问题详情
-     */
-    private String analyzeTransportationIssue(String complianceCheck) {
-        // 检查座位类型
-        if (complianceCheck.contains("一等座")) {
-            return String.format("交通标准'高铁-一等座'不符合要求，仅限二等座（可选：%s）",
-                    String.join("、", VALID_TRANSPORTATION));
-        } else if (complianceCheck.contains("商务舱") || complianceCheck.contains("头等舱")) {
-            return String.format("交通标准'%s'不符合要求，仅限经济舱（可选：%s）",
-                    extractTransportType(complianceCheck),
-                    String.join("、", VALID_TRANSPORTATION));
-        } else if (complianceCheck.contains("动车") && !complianceCheck.contains("动卧")) {
-            return String.format("交通标准'%s'不符合要求（可选：%s）",
-                    complianceCheck,
-                    String.join("、", VALID_TRANSPORTATION));
-        } else {
-            return String.format("交通标准'%s'不符合要求（可选：%s）",
-                    complianceCheck,
-                    String.join("、", VALID_TRANSPORTATION));
-        }
-    }
+        for (int i = 0; i < invoices.size(); i++) {
+            final int index = i;
+            InvoiceInfo invoice = invoices.get(i);
 
-    /**
-     * 提取酒店名称
-     */
-    private String extractHotelName(String complianceCheck) {
-        // 简单的提取逻辑
-        if (complianceCheck.contains("-")) {
-            return complianceCheck.split("-")[1];
-        }
-        return complianceCheck;
-    }
+            CompletableFuture<VerificationResult> verificationStage = deferVerification && verificationEnabled
+                    ? CompletableFuture.completedFuture(VerificationResult.pending("真伪验证进行中"))
+                    : verifyAuthenticityAsync(invoice);
+
+            CompletableFuture<List<RuleViolation>> rulesStage = CompletableFuture
+                    .supplyAsync(() -> validateLocalRules(invoice, formType), validationExecutor)
+                    .exceptionally(e -> {
+                        log.error("发票本地规则校验阶段异常: identifier={}", generateInvoiceIdentifier(invoice), e);
+                        return List.of(new RuleViolation("rule_validation", "规则校验",
+                                "规则校验异常，请稍后重试: " + e.getMessage(), RuleViolation.Severity.ERROR));
+                    });
+
+            // 查重异常时不写入查重结果，改为在该发票上记录一条违规
+            CompletableFuture<RuleViolation> duplicateStage = duplicateCheck == null
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.supplyAsync(() -> {
+                        DuplicateCheckResult duplicate = duplicateCheck.apply(invoice);
+                        if (duplicate != null) {
+                            invoice.setDuplicateCheckResult(duplicate);
+                        }
+                        return (RuleViolation) null;
+                    }, validationExecutor).exceptionally(e -> {
+                        log.error("发票查重阶段异常: identifier={}", generateInvoiceIdentifier(invoice), e);
+                        return new RuleViolation("duplicate_check", "发票查重",
+                                "发票查重异常，请稍后重试: " + e.getMessage(), RuleViolation.Severity.ERROR);
+                    });
+
+            futures.add(verificationStage
+                    .thenCombine(rulesStage, (verification, rules) -> mergeResults(invoice, verification, rules))
+                    .thenCombine(duplicateStage, (result, duplicateFailure) -> {
+                        if (duplicateFailure != null) {
+                            result.getViolations().add(duplicateFailure);
+                            result.setValid(false);
+                        }
+                        return new InvoiceValidationResult(index, invoice, result);
+                    }));
+        }
+
+        Map<Integer, List<RuleViolation>> batchViolations = complianceRuleEngine.evaluateBatch(invoices, formType);
+
+        List<InvoiceValidationResult> results = new ArrayList<>(invoices.size());
+        boolean allValid = true;
+        boolean hasHardErrors = false;
 
-    /**
-     * 提取交通类型
-     */
-    private String extractTransportType(String complianceCheck) {
-        // 简单的提取逻辑
-        if (complianceCheck.contains("-")) {
-            return complianceCheck;
-        }
-        return complianceCheck;
-    }
+        for (int i = 0; i < futures.size(); i++) {
+            InvoiceValidationResult invoiceResult = futures.get(i).join();
+            results.add(invoiceResult);
 
-    /**
-     * 内部交通合规检查
-     */
-    private boolean validateTransportationComplianceInternal(String complianceCheck, List<RuleViolation> violations) {
-        boolean isValid = false;
-        for (String validTransport : VALID_TRANSPORTATION) {
-            if (complianceCheck.contains(validTransport)) {
-                isValid = true;
-                break;
+            ValidationResult result = invoiceResult.getValidationResult();
+            List<RuleViolation> batchRuleViolations = batchViolations.get(i);
+            if (batchRuleViolations != null) {
+                result.getViolations().addAll(batchRuleViolations);
+                result.setValid(false);
             }
-        }
 
-        if (!isValid) {
-            String detailMessage = analyzeTransportationIssue(complianceCheck);
-            violations.add(new RuleViolation(
-                    "compliance_check",
-                    "消费事由",
-                    detailMessage,
-                    RuleViolation.Severity.WARNING
-            ));
-            return true; // 表示有问题
-        }
-        return false; // 表示没问题
-    }
-
-    /**
-     * 内部住宿合规检查
-     */
-    private boolean validateAccommodationComplianceInternal(String complianceCheck, List<RuleViolation> violations) {
-        boolean isValid = false;
-        for (String validAccommodation : VALID_ACCOMMODATION) {
-            if (complianceCheck.contains(validAccommodation)) {
-                isValid = true;
-                break;
+            if (!result.isValid()) {
+                allValid = false;
+                // 检查是否有硬性错误
+                if (hasHardError(result.getViolations())) {
+                    hasHardErrors = true;
+                }
             }
         }
 
-        if (!isValid) {
-            String actualHotel = extractHotelName(complianceCheck);
-            String message = String.format("住宿酒店'%s'不符合优选标准（可选酒店：%s）",
-                    actualHotel != null ? actualHotel : complianceCheck,
-                    String.join("、", VALID_ACCOMMODATION));
-
-            violations.add(new RuleViolation(
-                    "compliance_check",
-                    "消费事由",
-                    message,
-                    RuleViolation.Severity.WARNING
-            ));
-            return true; // 表示有问题
-        }
-        return false; // 表示没问题
+        log.info("批量校验完成，共 {} 张发票，耗时: {}ms", invoices.size(), System.currentTimeMillis() - start);
+        return new BatchValidationResult(allValid, hasHardErrors, results);
     }
 
     /**
@@ -545,10 +483,12 @@ public class RuleValidationService {
     private void validateBuyerInfo(InvoiceInfo invoice, List<RuleViolation> violations) {
         String buyerName = invoice.getBuyerName();
         String buyerCode = invoice.getBuyerCode();
+        String companyName = complianceRuleEngine.getCompanyName();
+        String companyTaxCode = complianceRuleEngine.getCompanyTaxCode();
 
-        boolean isCompanyName = COMPANY_NAME.equals(buyerName);
+        boolean isCompanyName = companyName.equals(buyerName);
         boolean isPersonal = isPersonalName(buyerName);
-        boolean isTaxCodeCorrect = COMPANY_TAX_CODE.equals(buyerCode);
+        boolean isTaxCodeCorrect = Objects.equals(companyTaxCode, buyerCode);
 
         // 情况1：名称是公司
         if (isCompanyName) {
@@ -559,7 +499,7 @@ public class RuleValidationService {
                         "购买方代码",
                         String.format("购买方代码'%s'与公司税号'%s'不匹配",
                                 buyerCode != null ? buyerCode : "空",
-                                COMPANY_TAX_CODE),
+                                companyTaxCode),
                         RuleViolation.Severity.ERROR
                 ));
             }
@@ -574,7 +514,16 @@ public class RuleValidationService {
 
                     boolean isEnterpriseMember = Boolean.TRUE.equals(verificationResult.get("isEnterpriseMember"));
 
-                    if (isEnterpriseMember) {
+                    if ("UNAVAILABLE".equals(verificationResult.get("cacheStatus"))) {
+                        // 通讯录尚未加载完成，不判定为非企业员工
+                        violations.add(new RuleViolation(
+                                "buyer_info",
+                                "购买方名称",
+                                String.format("企业成员信息正在加载，暂时无法验证'%s'是否为企业员工",
+                                        buyerName),
+                                RuleViolation.Severity.WARNING
+                        ));
+                    } else if (isEnterpriseMember) {
                         // 是企业成员，添加信息提示（非错误）
                         List<Map<String, Object>> matchedUsers = (List<Map<String, Object>>) verificationResult.get("matchedUsers");
                         String memberInfo = buildMemberInfoMessage(matchedUsers);
@@ -623,7 +572,7 @@ public class RuleValidationService {
                     "购买方名称", // 影响字段：名称
                     String.format("购买方名称'%s'不符合要求，应为'%s'或个人姓名",
                             buyerName != null ? buyerName : "空",
-                            COMPANY_NAME),
+                            companyName),
                     RuleViolation.Severity.ERROR
             ));
             // 即使名称错了，如果代码也不对，也额外标记一下代码错误，提供更完整信息。
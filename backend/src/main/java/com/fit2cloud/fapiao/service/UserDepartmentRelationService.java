@@ -1,17 +1,18 @@
 // #file src/main/java/com/fit2cloud/fapiao/service/UserDepartmentRelationService.java
 package com.fit2cloud.fapiao.service;
 
+import com.fit2cloud.fapiao.dto.wecom.WeComUserIdListResponse;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import com.fit2cloud.fapiao.util.Jitter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @Slf4j
@@ -24,28 +25,92 @@ public class UserDepartmentRelationService {
     private AccessTokenService accessTokenService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private WeComApiClient weComApiClient;
 
     @Autowired
     private DepartmentService departmentService;
 
-    // 缓存用户-部门关系映射
-    private Map<String, List<String>> userToDepartmentsMap = new HashMap<>();
-    private Map<String, String> userToMainDepartmentMap = new HashMap<>();
-    private long cacheTimestamp;
+    @Autowired
+    @Qualifier("cacheRefreshExecutor")
+    private Executor cacheRefreshExecutor;
+
+    // 缓存用户-部门关系映射，刷新时整体替换，不在原对象上修改
+    private volatile Map<String, List<String>> userToDepartmentsMap = new HashMap<>();
+    private volatile Map<String, String> userToMainDepartmentMap = new HashMap<>();
+    private volatile long cacheTimestamp;
+    // 过期时间（加载时间 + 带抖动的有效期），过期后仍使用旧数据并在后台刷新
+    private volatile long expiresAt;
     private static final long CACHE_DURATION = 30 * 60 * 1000; // 30分钟缓存
+    private static final long RETRY_INTERVAL = 60 * 1000; // 刷新失败后1分钟再试
+
+    // 后台刷新标志，同一时间只有一个刷新任务
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    // 串行化从企业微信获取成员ID列表
+    private final Object loadLock = new Object();
 
     /**
      * 获取用户与部门的对应关系（带缓存）
+     * 缓存过期后仍直接返回当前数据，同时在后台重新获取（同一时间只有一个刷新任务），请求不等待刷新；
+     * 只有尚未加载过时才同步获取
      */
     public Map<String, List<String>> getUserDepartmentRelations() {
-        // 检查缓存是否有效
-        if (!userToDepartmentsMap.isEmpty() &&
-                System.currentTimeMillis() - cacheTimestamp < CACHE_DURATION) {
-            log.info("使用缓存的用户-部门关系数据，用户数量: {}", userToDepartmentsMap.size());
+        Map<String, List<String>> cached = userToDepartmentsMap;
+        if (!cached.isEmpty()) {
+            if (System.currentTimeMillis() >= expiresAt) {
+                refreshInBackground();
+            }
+            log.debug("使用缓存的用户-部门关系数据，用户数量: {}", cached.size());
+            return new HashMap<>(cached);
+        }
+
+        // 首次加载，并发的请求只向企业微信获取一次
+        synchronized (loadLock) {
+            if (userToDepartmentsMap.isEmpty()) {
+                loadRelations();
+            }
             return new HashMap<>(userToDepartmentsMap);
         }
+    }
 
+    /**
+     * 缓存已过期时提交后台刷新（定时任务调用，使无请求时缓存也保持较新）
+     */
+    public void refreshIfStale() {
+        if (!userToDepartmentsMap.isEmpty() && System.currentTimeMillis() >= expiresAt) {
+            refreshInBackground();
+        }
+    }
+
+    /**
+     * 后台刷新用户-部门关系，已有刷新任务时忽略
+     */
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            cacheRefreshExecutor.execute(() -> {
+                try {
+                    synchronized (loadLock) {
+                        loadRelations();
+                    }
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (Exception e) {
+            refreshing.set(false);
+            log.warn("提交用户-部门关系后台刷新失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 通过 user/list_id 逐页获取成员ID列表，在旁边构建新的映射后整体替换，调用方需持有 loadLock
+     * 获取失败时保留旧数据，稍后重试
+     */
+    private void loadRelations() {
         log.info("开始获取成员ID列表，使用通讯录同步secret");
 
         try {
@@ -53,116 +118,163 @@ public class UserDepartmentRelationService {
             String accessToken = accessTokenService.getAccessTokenForAddressBook();
             if (accessToken == null || accessToken.isEmpty()) {
                 log.error("无法获取通讯录同步access_token，请检查配置");
-                return Collections.emptyMap();
+                markFailed();
+                return;
             }
 
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/list_id?access_token=" + accessToken;
-
             // 构建请求体
             Map<String, Object> requestBody = new HashMap<>();
             requestBody.put("limit", 10000); // 最大限制
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
+            WeComUserIdListResponse response;
+            try {
+                response = weComApiClient.post("user/list_id", accessToken, requestBody, WeComUserIdListResponse.class);
+            } catch (WeComApiException e) {
+                log.error("获取成员ID列表失败, errcode: {}, errmsg: {}", e.getErrcode(), e.getErrmsg());
+                markFailed();
+                return;
+            }
 
-            HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestBody, headers);
+            List<WeComUserIdListResponse.DeptUser> deptUserList = response.deptUser();
+            log.info("成功获取到 {} 条用户-部门关系记录", deptUserList != null ? deptUserList.size() : 0);
 
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
+            // 新数据在旁边构建，完成后整体替换，期间读取的仍是旧数据
+            Map<String, List<String>> userToDepartments = new HashMap<>();
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
+            // 处理分页数据（如果存在next_cursor）
+            String nextCursor = response.nextCursor();
+            int totalCount = deptUserList != null ? deptUserList.size() : 0;
 
-                if (errcode != null && errcode == 0) {
-                    List<Map<String, Object>> deptUserList = (List<Map<String, Object>>) responseBody.get("dept_user");
-                    log.info("成功获取到 {} 条用户-部门关系记录", deptUserList != null ? deptUserList.size() : 0);
+            // 处理当前页数据
+            processDeptUserList(deptUserList, userToDepartments);
 
-                    // 清空旧数据
-                    userToDepartmentsMap.clear();
-                    userToMainDepartmentMap.clear();
+            // 如果还有下一页数据，继续获取
+            while (nextCursor != null && !nextCursor.isEmpty()) {
+                log.info("还有下一页数据，游标: {}", nextCursor);
+                Map<String, Object> nextRequestBody = new HashMap<>();
+                nextRequestBody.put("cursor", nextCursor);
+                nextRequestBody.put("limit", 10000);
 
-                    // 处理分页数据（如果存在next_cursor）
-                    String nextCursor = (String) responseBody.get("next_cursor");
-                    int totalCount = deptUserList != null ? deptUserList.size() : 0;
+                try {
+                    WeComUserIdListResponse nextResponse = weComApiClient.post("user/list_id", accessToken,
+                            nextRequestBody, WeComUserIdListResponse.class);
+                    List<WeComUserIdListResponse.DeptUser> nextDeptUserList = nextResponse.deptUser();
+                    processDeptUserList(nextDeptUserList, userToDepartments);
+                    totalCount += nextDeptUserList != null ? nextDeptUserList.size() : 0;
 
-                    // 处理当前页数据
-                    processDeptUserList(deptUserList);
+                    nextCursor = nextResponse.nextCursor();
+                } catch (WeComApiException e) {
+                    log.error("获取下一页数据失败, errcode: {}", e.getErrcode());
+                    break;
+                }
+            }
 
-                    // 如果还有下一页数据，继续获取
-                    while (nextCursor != null && !nextCursor.isEmpty()) {
-                        log.info("还有下一页数据，游标: {}", nextCursor);
-                        Map<String, Object> nextRequestBody = new HashMap<>();
-                        nextRequestBody.put("cursor", nextCursor);
-                        nextRequestBody.put("limit", 10000);
+            // 确定每个用户的主部门（通常是第一个部门或指定规则）
+            Map<String, String> userToMainDepartment = determineMainDepartments(userToDepartments);
 
-                        HttpEntity<Map<String, Object>> nextRequestEntity = new HttpEntity<>(nextRequestBody, headers);
-                        ResponseEntity<Map> nextResponse = restTemplate.postForEntity(url, nextRequestEntity, Map.class);
+            userToDepartmentsMap = userToDepartments;
+            userToMainDepartmentMap = userToMainDepartment;
+            markLoaded();
 
-                        if (nextResponse.getStatusCode().is2xxSuccessful() && nextResponse.getBody() != null) {
-                            Map<String, Object> nextResponseBody = nextResponse.getBody();
-                            Integer nextErrcode = (Integer) nextResponseBody.get("errcode");
+            log.info("用户-部门关系数据缓存已更新，共 {} 个用户，{} 条关系记录",
+                    userToDepartments.size(), totalCount);
 
-                            if (nextErrcode != null && nextErrcode == 0) {
-                                List<Map<String, Object>> nextDeptUserList = (List<Map<String, Object>>) nextResponseBody.get("dept_user");
-                                processDeptUserList(nextDeptUserList);
-                                totalCount += nextDeptUserList != null ? nextDeptUserList.size() : 0;
+            // 记录调试信息
+            logUserDepartmentRelations();
+        } catch (Exception e) {
+            log.error("获取成员ID列表异常", e);
+            markFailed();
+        }
+    }
 
-                                nextCursor = (String) nextResponseBody.get("next_cursor");
-                            } else {
-                                log.error("获取下一页数据失败, errcode: {}", nextErrcode);
-                                break;
-                            }
-                        } else {
-                            log.error("获取下一页数据请求失败");
-                            break;
-                        }
-                    }
+    /**
+     * 记录加载时间，有效期带随机抖动，避免与部门列表、用户目录在同一时刻过期
+     */
+    private void markLoaded() {
+        cacheTimestamp = System.currentTimeMillis();
+        expiresAt = cacheTimestamp + Jitter.apply(CACHE_DURATION);
+    }
 
-                    // 确定每个用户的主部门（通常是第一个部门或指定规则）
-                    determineMainDepartments();
+    private void markFailed() {
+        expiresAt = System.currentTimeMillis() + Jitter.apply(RETRY_INTERVAL);
+    }
 
-                    // 更新缓存时间
-                    cacheTimestamp = System.currentTimeMillis();
+    /**
+     * 用通讯录批量加载得到的成员部门更新缓存，省去 user/list_id 逐页拉取
+     *
+     * @param relations 用户ID -> 部门ID列表
+     */
+    public void updateRelations(Map<String, List<String>> relations) {
+        Map<String, List<String>> userToDepartments = new HashMap<>();
+        relations.forEach((userId, departments) -> {
+            if (userId != null && departments != null && !departments.isEmpty()) {
+                userToDepartments.put(userId, new ArrayList<>(departments));
+            }
+        });
+        if (userToDepartments.isEmpty()) {
+            return;
+        }
 
-                    log.info("用户-部门关系数据缓存已更新，共 {} 个用户，{} 条关系记录",
-                            userToDepartmentsMap.size(), totalCount);
+        Map<String, String> userToMainDepartment = determineMainDepartments(userToDepartments);
+        userToDepartmentsMap = userToDepartments;
+        userToMainDepartmentMap = userToMainDepartment;
+        markLoaded();
+        log.info("用户-部门关系缓存已由通讯录加载更新，共 {} 个用户", userToDepartments.size());
+    }
 
-                    // 记录调试信息
-                    logUserDepartmentRelations();
+    /**
+     * 按通讯录变更事件更新部分用户的部门关系，基于当前缓存复制后整体替换，缓存时间不变
+     *
+     * @param updated 用户ID -> 新的部门ID列表
+     * @param removed 已删除（或改了账号）的用户ID
+     */
+    public void applyUserChanges(Map<String, List<String>> updated, Collection<String> removed) {
+        if (userToDepartmentsMap.isEmpty() || (updated.isEmpty() && removed.isEmpty())) {
+            // 尚未加载时不单独建立，等整体加载
+            return;
+        }
 
-                    return new HashMap<>(userToDepartmentsMap);
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("获取成员ID列表失败, errcode: {}, errmsg: {}", errcode, errmsg);
-                    return Collections.emptyMap();
-                }
-            } else {
-                log.error("获取成员ID列表请求失败, 状态码: {}", response.getStatusCode());
-                return Collections.emptyMap();
-            }
-        } catch (Exception e) {
-            log.error("获取成员ID列表异常", e);
-            return Collections.emptyMap();
+        Map<String, List<String>> userToDepartments = new HashMap<>(userToDepartmentsMap);
+        Map<String, String> userToMainDepartment = new HashMap<>(userToMainDepartmentMap);
+        for (String userId : removed) {
+            userToDepartments.remove(userId);
+            userToMainDepartment.remove(userId);
         }
+        updated.forEach((userId, departments) -> {
+            if (departments == null || departments.isEmpty()) {
+                userToDepartments.remove(userId);
+                userToMainDepartment.remove(userId);
+                return;
+            }
+            userToDepartments.put(userId, new ArrayList<>(departments));
+            userToMainDepartment.put(userId, departments.stream()
+                    .min(Comparator.comparingInt(Integer::parseInt))
+                    .orElse(null));
+        });
+
+        userToDepartmentsMap = userToDepartments;
+        userToMainDepartmentMap = userToMainDepartment;
+        log.debug("用户-部门关系已按变更事件更新，更新 {} 个，移除 {} 个用户", updated.size(), removed.size());
     }
 
     /**
      * 处理用户-部门关系列表
      */
-    private void processDeptUserList(List<Map<String, Object>> deptUserList) {
+    private void processDeptUserList(List<WeComUserIdListResponse.DeptUser> deptUserList,
+                                     Map<String, List<String>> userToDepartments) {
         if (deptUserList == null || deptUserList.isEmpty()) {
             return;
         }
 
-        for (Map<String, Object> deptUser : deptUserList) {
-            String userId = (String) deptUser.get("userid");
-            Object deptObj = deptUser.get("department");
+        for (WeComUserIdListResponse.DeptUser deptUser : deptUserList) {
+            String userId = deptUser.userid();
+            Integer deptId = deptUser.department();
 
-            if (userId != null && !userId.isEmpty() && deptObj != null) {
-                String departmentId = deptObj.toString();
+            if (userId != null && !userId.isEmpty() && deptId != null) {
+                String departmentId = deptId.toString();
 
                 // 添加到用户-部门映射
-                userToDepartmentsMap.computeIfAbsent(userId, k -> new ArrayList<>()).add(departmentId);
+                userToDepartments.computeIfAbsent(userId, k -> new ArrayList<>()).add(departmentId);
 
                 log.debug("用户 {} 属于部门 {}", userId, departmentId);
             }
@@ -173,8 +285,9 @@ public class UserDepartmentRelationService {
      * 确定每个用户的主部门
      * 规则：部门ID最小的作为主部门（通常是最上级部门）
      */
-    private void determineMainDepartments() {
-        for (Map.Entry<String, List<String>> entry : userToDepartmentsMap.entrySet()) {
+    private Map<String, String> determineMainDepartments(Map<String, List<String>> userToDepartments) {
+        Map<String, String> userToMainDepartment = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : userToDepartments.entrySet()) {
             String userId = entry.getKey();
             List<String> departments = entry.getValue();
 
@@ -184,11 +297,12 @@ public class UserDepartmentRelationService {
                 sortedDepartments.sort(Comparator.comparingInt(Integer::parseInt));
                 String mainDepartment = sortedDepartments.get(0);
 
-                userToMainDepartmentMap.put(userId, mainDepartment);
+                userToMainDepartment.put(userId, mainDepartment);
 
                 log.debug("用户 {} 的主部门确定为: {}", userId, mainDepartment);
             }
         }
+        return userToMainDepartment;
     }
 
     /**
@@ -240,49 +354,30 @@ public class UserDepartmentRelationService {
                 return getDefaultDepartmentInfo();
             }
 
-            // 获取完整的部门列表
-            List<Map<String, Object>> allDepartments = departmentService.getDepartmentList();
+            DepartmentTree tree = departmentService.getDepartmentTree();
 
             // 查找用户的部门，优先选择具体的业务部门
-            String targetDepartmentId = findBestDepartmentForUser(departmentIds, allDepartments);
-
-            if (targetDepartmentId == null) {
-                log.warn("未能为用户 {} 找到合适的部门", userId);
-                return getDefaultDepartmentInfo();
-            }
-
-            // 找到目标部门信息
-            Map<String, Object> targetDepartment = null;
-            for (Map<String, Object> dept : allDepartments) {
-                Integer id = (Integer) dept.get("id");
-                if (id != null && targetDepartmentId.equals(id.toString())) {
-                    targetDepartment = dept;
-                    break;
-                }
-            }
-
+            String targetDepartmentId = findBestDepartmentForUser(departmentIds, tree);
+            DepartmentTree.Node targetDepartment = tree.get(targetDepartmentId);
             if (targetDepartment == null) {
+                log.warn("未能为用户 {} 找到合适的部门", userId);
                 return getDefaultDepartmentInfo();
             }
 
-            // 构建返回结构
+            // 构建返回结构（层级、区域在构建部门树时已算好）
             Map<String, Object> result = new HashMap<>();
             result.put("departmentId", targetDepartmentId);
-            result.put("departmentName", targetDepartment.get("name"));
-            result.put("fullPath", targetDepartment.get("fullPath"));
+            result.put("departmentName", targetDepartment.name());
+            result.put("fullPath", targetDepartment.fullPath());
+            result.put("departmentHierarchy", targetDepartment.hierarchy());
 
-            // 获取部门层级信息
-            List<String> departmentHierarchy = getDepartmentHierarchy(targetDepartmentId, allDepartments);
-            result.put("departmentHierarchy", departmentHierarchy);
-
-            // 获取区域信息
-            String region = extractRegionFromDepartment((String) targetDepartment.get("fullPath"), allDepartments);
+            String region = targetDepartment.regionDepartment();
             result.put("region", region);
-            result.put("regionDepartmentId", findRegionDepartmentId(region));
+            result.put("regionDepartmentId", findRegionDepartmentId(region, tree));
 
             log.info("用户 {} 的部门结构: ID={}, 名称={}, 路径={}, 区域={}",
-                    userId, targetDepartmentId, targetDepartment.get("name"),
-                    targetDepartment.get("fullPath"), region);
+                    userId, targetDepartmentId, targetDepartment.name(),
+                    targetDepartment.fullPath(), region);
 
             return result;
         } catch (Exception e) {
@@ -297,29 +392,23 @@ public class UserDepartmentRelationService {
      */
     private Map<String, Object> getDefaultDepartmentInfo() {
         try {
-            List<Map<String, Object>> allDepartments = departmentService.getDepartmentList();
+            DepartmentTree tree = departmentService.getDepartmentTree();
 
             // 查找智能体开发部门（ID=7）
-            for (Map<String, Object> dept : allDepartments) {
-                Integer id = (Integer) dept.get("id");
-                if (id != null && id == 7) {
-                    Map<String, Object> defaultInfo = new HashMap<>();
-                    defaultInfo.put("departmentId", "7");
-                    defaultInfo.put("departmentName", "智能体开发");
-                    defaultInfo.put("fullPath", dept.get("fullPath"));
-
-                    // 获取层级信息
-                    List<String> hierarchy = getDepartmentHierarchy("7", allDepartments);
-                    defaultInfo.put("departmentHierarchy", hierarchy);
-
-                    // 提取区域信息
-                    String region = extractRegionFromDepartment((String) dept.get("fullPath"), allDepartments);
-                    defaultInfo.put("region", region);
-                    defaultInfo.put("regionDepartmentId", findRegionDepartmentId(region));
-
-                    log.info("使用默认部门: 智能体开发 (ID=7), 区域: {}", region);
-                    return defaultInfo;
-                }
+            DepartmentTree.Node dept = tree.get(7);
+            if (dept != null) {
+                Map<String, Object> defaultInfo = new HashMap<>();
+                defaultInfo.put("departmentId", "7");
+                defaultInfo.put("departmentName", "智能体开发");
+                defaultInfo.put("fullPath", dept.fullPath());
+                defaultInfo.put("departmentHierarchy", dept.hierarchy());
+
+                String region = dept.regionDepartment();
+                defaultInfo.put("region", region);
+                defaultInfo.put("regionDepartmentId", findRegionDepartmentId(region, tree));
+
+                log.info("使用默认部门: 智能体开发 (ID=7), 区域: {}", region);
+                return defaultInfo;
             }
         } catch (Exception e) {
             log.error("获取默认部门信息失败", e);
@@ -343,62 +432,28 @@ public class UserDepartmentRelationService {
      * 2. 如果只有区域部门，选择该区域下的第一个子部门
      * 3. 如果区域部门也没有子部门，则使用区域部门本身
      */
-    private String findBestDepartmentForUser(List<String> userDepartmentIds,
-                                             List<Map<String, Object>> allDepartments) {
-        // 构建部门映射
-        Map<Integer, Map<String, Object>> departmentMap = new HashMap<>();
-        Map<Integer, List<Map<String, Object>>> parentToChildrenMap = new HashMap<>();
-
-        for (Map<String, Object> dept : allDepartments) {
-            Integer id = (Integer) dept.get("id");
-            Integer parentId = (Integer) dept.get("parentid");
-
-            departmentMap.put(id, dept);
-
-            if (parentId != null) {
-                parentToChildrenMap.computeIfAbsent(parentId, k -> new ArrayList<>()).add(dept);
-            }
-        }
-
+    private String findBestDepartmentForUser(List<String> userDepartmentIds, DepartmentTree tree) {
         // 首先检查用户是否有具体的业务部门（非区域部门）
         for (String deptIdStr : userDepartmentIds) {
-            try {
-                Integer deptId = Integer.parseInt(deptIdStr);
-                Map<String, Object> dept = departmentMap.get(deptId);
-                if (dept != null) {
-                    String deptName = (String) dept.get("name");
-                    // 如果部门名称不包含"区域"关键词，认为是业务部门
-                    if (!isRegionDepartment(deptName)) {
-                        log.info("用户有具体的业务部门: {} (ID={})", deptName, deptId);
-                        return deptIdStr;
-                    }
-                }
-            } catch (NumberFormatException e) {
-                // 忽略格式错误的部门ID
+            DepartmentTree.Node dept = tree.get(deptIdStr);
+            if (dept != null && !DepartmentTree.isRegionDepartment(dept.name())) {
+                log.info("用户有具体的业务部门: {} (ID={})", dept.name(), dept.id());
+                return deptIdStr;
             }
         }
 
         // 如果用户只有区域部门，选择区域下的第一个子部门
         for (String deptIdStr : userDepartmentIds) {
-            try {
-                Integer deptId = Integer.parseInt(deptIdStr);
-                Map<String, Object> dept = departmentMap.get(deptId);
-                if (dept != null) {
-                    String deptName = (String) dept.get("name");
-                    // 如果是区域部门，查找其子部门
-                    if (isRegionDepartment(deptName)) {
-                        List<Map<String, Object>> children = parentToChildrenMap.get(deptId);
-                        if (children != null && !children.isEmpty()) {
-                            // 返回第一个子部门
-                            Integer childId = (Integer) children.get(0).get("id");
-                            log.info("用户只有区域部门 {}，选择其子部门: {} (ID={})",
-                                    deptName, children.get(0).get("name"), childId);
-                            return childId.toString();
-                        }
-                    }
+            DepartmentTree.Node dept = tree.get(deptIdStr);
+            if (dept != null && DepartmentTree.isRegionDepartment(dept.name())) {
+                List<DepartmentTree.Node> children = tree.children(dept.id());
+                if (!children.isEmpty()) {
+                    // 返回第一个子部门
+                    DepartmentTree.Node child = children.get(0);
+                    log.info("用户只有区域部门 {}，选择其子部门: {} (ID={})",
+                            dept.name(), child.name(), child.id());
+                    return String.valueOf(child.id());
                 }
-            } catch (NumberFormatException e) {
-                // 忽略格式错误的部门ID
             }
         }
 
@@ -406,145 +461,26 @@ public class UserDepartmentRelationService {
         return userDepartmentIds.get(0);
     }
 
-    /**
-     * 判断是否是区域部门
-     */
-    private boolean isRegionDepartment(String departmentName) {
-        if (departmentName == null) {
-            return false;
-        }
-
-        String lowerName = departmentName.toLowerCase();
-        return lowerName.contains("区域") ||
-                lowerName.contains("大区") ||
-                lowerName.contains("片区") ||
-                lowerName.contains("地区") ||
-                departmentName.endsWith("区域");
-    }
-
-    /**
-     * 获取部门层级信息
-     */
-    private List<String> getDepartmentHierarchy(String departmentId, List<Map<String, Object>> allDepartments) {
-        List<String> hierarchy = new ArrayList<>();
-        String currentId = departmentId;
-
-        Map<Integer, Map<String, Object>> departmentMap = new HashMap<>();
-        for (Map<String, Object> dept : allDepartments) {
-            Integer id = (Integer) dept.get("id");
-            departmentMap.put(id, dept);
-        }
-
-        try {
-            Integer currentDeptId = Integer.parseInt(currentId);
-            while (currentDeptId != null) {
-                Map<String, Object> currentDept = departmentMap.get(currentDeptId);
-                if (currentDept == null) {
-                    break;
-                }
-
-                hierarchy.add(0, (String) currentDept.get("name"));
-
-                Object parentIdObj = currentDept.get("parentid");
-                if (parentIdObj == null || parentIdObj.toString().equals("0") ||
-                        parentIdObj.toString().equals("1")) {
-                    break;
-                }
-
-                currentDeptId = (Integer) parentIdObj;
-            }
-        } catch (NumberFormatException e) {
-            log.error("部门ID格式错误: {}", departmentId);
-        }
-
-        return hierarchy;
-    }
-
-    /**
-     * 从部门路径中提取区域信息（改进版）
-     */
-    private String extractRegionFromDepartment(String fullPath, List<Map<String, Object>> allDepartments) {
-        if (fullPath == null || fullPath.isEmpty()) {
-            return "";
-        }
-
-        // 按分隔符分割
-        String[] parts = fullPath.split(" - ");
-
-        // 查找包含区域关键词的部分
-        for (String part : parts) {
-            if (isRegionDepartment(part)) {
-                return part;
-            }
-        }
-
-        // 如果没有找到区域关键词，检查部门层级
-        // 假设第二级部门是区域（第一级是公司/根部门）
-        if (parts.length >= 2) {
-            // 检查第二级是否是已知的区域
-            String secondLevel = parts[1];
-            for (Map<String, Object> dept : allDepartments) {
-                String name = (String) dept.get("name");
-                if (secondLevel.equals(name) && isRegionDepartment(name)) {
-                    return secondLevel;
-                }
-            }
-        }
-
-        // 如果都没有找到，返回空
-        return "";
-    }
-
-    /**
-     * 判断是否包含区域关键词
-     */
-    private boolean containsRegionKeywords(String text) {
-        if (text == null) {
-            return false;
-        }
-
-        String lowerText = text.toLowerCase();
-        return lowerText.contains("区域") ||
-                lowerText.contains("区") ||
-                lowerText.contains("大区") ||
-                lowerText.contains("片区") ||
-                lowerText.contains("地区");
-    }
-
     /**
      * 根据区域名称找到对应的区域部门ID
      */
-    private String findRegionDepartmentId(String region) {
+    private String findRegionDepartmentId(String region, DepartmentTree tree) {
         if (region == null || region.isEmpty()) {
             return null;
         }
 
-        // 这里可以调用DepartmentService的方法，或者实现自己的逻辑
-        try {
-            List<Map<String, Object>> departments = departmentService.getDepartmentList();
-            for (Map<String, Object> dept : departments) {
-                String name = (String) dept.get("name");
-                Integer id = (Integer) dept.get("id");
-                if (region.equals(name)) {
-                    return id.toString();
-                }
-            }
-        } catch (Exception e) {
-            log.error("查找区域部门ID失败", e);
-        }
-
-        return null;
+        DepartmentTree.Node dept = tree.findByName(region);
+        return dept != null ? String.valueOf(dept.id()) : null;
     }
 
     /**
-     * 强制刷新缓存
+     * 强制刷新缓存（同步重新获取，失败时保留旧数据）
      */
     public void refreshCache() {
         log.info("强制刷新用户-部门关系缓存");
-        userToDepartmentsMap.clear();
-        userToMainDepartmentMap.clear();
-        cacheTimestamp = 0;
-        getUserDepartmentRelations();
+        synchronized (loadLock) {
+            loadRelations();
+        }
     }
 
     /**
@@ -560,8 +496,9 @@ public class UserDepartmentRelationService {
         status.put("cacheTimestamp", cacheTimestamp);
         status.put("cacheAge", cacheTimestamp > 0 ?
                 (System.currentTimeMillis() - cacheTimestamp) / 1000 + "秒" : "无缓存");
-        status.put("isValid", cacheTimestamp > 0 &&
-                (System.currentTimeMillis() - cacheTimestamp < CACHE_DURATION));
+        status.put("isValid", cacheTimestamp > 0 && System.currentTimeMillis() < expiresAt);
+        status.put("expiresAt", expiresAt);
+        status.put("refreshing", refreshing.get());
         return status;
     }
 
@@ -0,0 +1,208 @@
+package com.fit2cloud.fapiao.service;
+
+import java.util.*;
+
+/**
+ * 用户目录快照（只读）
+ * 由加载线程在旁边整体构建，构建完成后由 UserInfoService 通过一次 volatile 赋值发布，
+ * 请求线程读取时无需加锁，也不需要复制。单个用户的更新同样是基于旧快照构建新快照再替换。
+ * 构建时对部门ID、部门名称、部门路径、职位等大量重复的字符串以及相同的部门列表去重，多个用户共用同一个实例。
+ */
+public final class UserDirectory {
+
+    public static final UserDirectory EMPTY = new Builder().build(0L);
+
+    /**
+     * 目录中的用户，loadedAt 为该用户信息从企业微信加载的时间
+     */
+    public record User(String userId, String name, String position, String mobile, String email,
+                       String avatar, Integer status, Integer mainDepartment,
+                       List<String> departmentIds, List<String> departmentNames,
+                       List<String> departmentFullPaths, long loadedAt) {
+
+        /**
+         * 转换为接口返回的用户信息（每次返回新的Map，部门列表为只读）
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("userId", userId);
+            map.put("name", name);
+            map.put("position", position);
+            map.put("mobile", mobile);
+            map.put("email", email);
+            map.put("avatar", avatar);
+            map.put("status", status);
+            map.put("mainDepartment", mainDepartment);
+            map.put("departmentIds", departmentIds);
+            if (!departmentIds.isEmpty()) {
+                map.put("departmentNames", departmentNames);
+                map.put("departmentFullPaths", departmentFullPaths);
+            }
+            return map;
+        }
+    }
+
+    private final Map<String, User> users;
+    private final Map<String, List<String>> nameToUserIds;
+    private final UserSearchIndex searchIndex;
+    private final long loadedAt;
+
+    private UserDirectory(Map<String, User> users, Map<String, List<String>> nameToUserIds, long loadedAt) {
+        this.users = users;
+        this.nameToUserIds = nameToUserIds;
+        this.searchIndex = UserSearchIndex.build(users.values());
+        this.loadedAt = loadedAt;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public User get(String userId) {
+        return userId != null ? users.get(userId) : null;
+    }
+
+    public Collection<User> users() {
+        return users.values();
+    }
+
+    /**
+     * 姓名（去首尾空格） -> 用户ID列表，重名时有多个
+     */
+    public Map<String, List<String>> nameToUserIds() {
+        return nameToUserIds;
+    }
+
+    public UserSearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * 整体加载完成的时间，只加载过单个用户时为0
+     */
+    public long loadedAt() {
+        return loadedAt;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public boolean isEmpty() {
+        return users.isEmpty();
+    }
+
+    /**
+     * 返回加入（或替换）指定用户后的新快照，整体加载时间不变
+     */
+    public UserDirectory with(Collection<User> updated) {
+        Builder builder = new Builder();
+        for (User user : users.values()) {
+            builder.add(user);
+        }
+        for (User user : updated) {
+            builder.add(user);
+        }
+        return builder.build(loadedAt);
+    }
+
+    /**
+     * 返回移除指定用户后的新快照，整体加载时间不变
+     */
+    public UserDirectory without(Collection<String> userIds) {
+        Builder builder = new Builder();
+        for (User user : users.values()) {
+            if (!userIds.contains(user.userId())) {
+                builder.add(user);
+            }
+        }
+        return builder.build(loadedAt);
+    }
+
+    /**
+     * 返回先移除、再加入（或替换）指定用户后的新快照，只重建一次，整体加载时间不变
+     * 用于按通讯录变更事件批量更新，改了账号的用户旧ID在 removed 中、新ID在 updated 中
+     */
+    public UserDirectory apply(Collection<User> updated, Collection<String> removed) {
+        Builder builder = new Builder();
+        for (User user : users.values()) {
+            if (!removed.contains(user.userId())) {
+                builder.add(user);
+            }
+        }
+        for (User user : updated) {
+            builder.add(user);
+        }
+        return builder.build(loadedAt);
+    }
+
+    /**
+     * 快照构建器，非线程安全，只在加载线程内使用
+     */
+    public static final class Builder {
+
+        private final Map<String, User> users = new LinkedHashMap<>();
+        private final Map<String, String> strings = new HashMap<>();
+        private final Map<List<String>, List<String>> lists = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 加入用户，userId 相同的后加入者覆盖先加入者
+         */
+        public Builder add(User user) {
+            if (user == null || user.userId() == null) {
+                return this;
+            }
+            users.put(user.userId(), new User(user.userId(), user.name(), intern(user.position()),
+                    user.mobile(), user.email(), user.avatar(), user.status(), user.mainDepartment(),
+                    intern(user.departmentIds()), intern(user.departmentNames()),
+                    intern(user.departmentFullPaths()), user.loadedAt()));
+            return this;
+        }
+
+        public int size() {
+            return users.size();
+        }
+
+        public UserDirectory build(long loadedAt) {
+            Map<String, List<String>> names = new HashMap<>();
+            for (User user : users.values()) {
+                if (user.name() != null && !user.name().trim().isEmpty()) {
+                    names.computeIfAbsent(user.name().trim(), k -> new ArrayList<>(1)).add(user.userId());
+                }
+            }
+            Map<String, List<String>> nameToUserIds = new HashMap<>(names.size() * 2);
+            names.forEach((name, ids) -> nameToUserIds.put(name, List.copyOf(ids)));
+
+            return new UserDirectory(Collections.unmodifiableMap(new HashMap<>(users)),
+                    Collections.unmodifiableMap(nameToUserIds), loadedAt);
+        }
+
+        private String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+            String existing = strings.putIfAbsent(value, value);
+            return existing != null ? existing : value;
+        }
+
+        private List<String> intern(List<String> values) {
+            if (values == null || values.isEmpty()) {
+                return List.of();
+            }
+            List<String> interned = new ArrayList<>(values.size());
+            for (String value : values) {
+                interned.add(intern(value));
+            }
+            List<String> existing = lists.get(interned);
+            if (existing != null) {
+                return existing;
+            }
+            List<String> list = Collections.unmodifiableList(interned);
+            lists.put(list, list);
+            return list;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.fit2cloud.fapiao.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 用户目录本地快照
+ * 每次完整加载成功后把部门列表和用户目录写入本地文件，重启时映射（mmap）读回，
+ * 应用不必等企业微信加载完成即可使用上次的数据，随后仍在后台重新加载。
+ * <p>
+ * 文件格式（大端）：头部 魔数(4) + 格式版本(4) + 保存时间(8) + 数据长度(4) + CRC32(4)，
+ * 数据部分先是去重后的字符串表，部门和用户中的字符串都以字符串表下标引用。
+ * 魔数、版本、长度或校验和不符的文件直接忽略，下次保存时覆盖。
+ */
+@Service
+@Slf4j
+public class UserDirectorySnapshotStore {
+
+    private static final int MAGIC = 0x46505544; // "FPUD"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    @Value("${qywechat.directory.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qywechat.directory.snapshot.path:data/user-directory.snapshot}")
+    private String path;
+
+    @Value("${qywechat.directory.snapshot.max-age-hours:72}")
+    private long maxAgeHours;
+
+    private volatile long lastSavedAt;
+    private volatile long lastRestoredAt;
+    private volatile String lastError;
+
+    /**
+     * 读回的快照
+     *
+     * @param departments 部门缓存（与 DepartmentService.getDepartmentList 返回的结构一致）
+     */
+    public record Snapshot(long savedAt, List<Map<String, Object>> departments, UserDirectory directory) {
+    }
+
+    /**
+     * 保存快照，先写临时文件再替换，保存失败只记录日志
+     * 快照包含员工手机号、邮箱，文件只允许属主读写；多个加载任务共用同一个临时文件，保存串行执行
+     */
+    public synchronized void save(Collection<Map<String, Object>> departments, UserDirectory directory) {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Path file = Paths.get(path);
+        try {
+            byte[] payload = encode(departments, directory);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(tmp);
+            createOwnerOnly(tmp);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(start);
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            lastSavedAt = start;
+            lastError = null;
+            log.info("用户目录快照已保存: {}，部门 {} 个，用户 {} 个，{} 字节，耗时 {}ms", file,
+                    departments.size(), directory.size(), HEADER_SIZE + payload.length,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            lastError = "保存失败: " + e.getMessage();
+            log.warn("保存用户目录快照失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取快照，文件不存在、已过期、版本不兼容或已损坏时返回null
+     */
+    public Snapshot load() {
+        if (!enabled) {
+            return null;
+        }
+
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            log.info("没有用户目录快照: {}", file);
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return discard(file, "文件不完整");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC) {
+                return discard(file, "不是用户目录快照文件");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                return discard(file, "格式版本 " + version + " 与当前版本 " + FORMAT_VERSION + " 不兼容");
+            }
+            long savedAt = buffer.getLong();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length != buffer.remaining()) {
+                return discard(file, "数据长度不符");
+            }
+
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return discard(file, "校验和不符");
+            }
+
+            if (System.currentTimeMillis() - savedAt > TimeUnit.HOURS.toMillis(maxAgeHours)) {
+                return discard(file, "快照已超过 " + maxAgeHours + " 小时");
+            }
+
+            Snapshot snapshot = decode(payload, savedAt);
+            lastRestoredAt = System.currentTimeMillis();
+            lastError = null;
+            log.info("已读取用户目录快照: {}，保存于 {} 秒前，部门 {} 个，用户 {} 个，耗时 {}ms", file,
+                    (lastRestoredAt - savedAt) / 1000, snapshot.departments().size(),
+                    snapshot.directory().size(), lastRestoredAt - start);
+            return snapshot;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            return discard(file, "内容已损坏");
+        } catch (IOException e) {
+            lastError = "读取失败: " + e.getMessage();
+            log.warn("读取用户目录快照失败: {}, {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("path", path);
+        status.put("lastSavedAt", lastSavedAt);
+        status.put("lastRestoredAt", lastRestoredAt);
+        if (lastError != null) {
+            status.put("lastError", lastError);
+        }
+        return status;
+    }
+
+    private static void createOwnerOnly(Path file) throws IOException {
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+        }
+    }
+
+    private Snapshot discard(Path file, String reason) {
+        lastError = "已忽略: " + reason;
+        log.warn("忽略用户目录快照 {}: {}", file, reason);
+        return null;
+    }
+
+    private static byte[] encode(Collection<Map<String, Object>> departments, UserDirectory directory) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        out.writeInt(departments.size());
+        for (Map<String, Object> dept : departments) {
+            writeInteger(out, (Integer) dept.get("id"));
+            out.writeInt(strings.ref((String) dept.get("name")));
+            out.writeInt(strings.ref((String) dept.get("name_en")));
+            @SuppressWarnings("unchecked")
+            List<String> leaders = (List<String>) dept.get("department_leader");
+            writeList(out, strings, leaders);
+            writeInteger(out, (Integer) dept.get("parentid"));
+            writeInteger(out, (Integer) dept.get("order"));
+            out.writeInt(strings.ref((String) dept.get("fullPath")));
+        }
+
+        out.writeInt(directory.size());
+        for (UserDirectory.User user : directory.users()) {
+            out.writeInt(strings.ref(user.userId()));
+            out.writeInt(strings.ref(user.name()));
+            out.writeInt(strings.ref(user.position()));
+            out.writeInt(strings.ref(user.mobile()));
+            out.writeInt(strings.ref(user.email()));
+            out.writeInt(strings.ref(user.avatar()));
+            writeInteger(out, user.status());
+            writeInteger(out, user.mainDepartment());
+            writeList(out, strings, user.departmentIds());
+            writeList(out, strings, user.departmentNames());
+            writeList(out, strings, user.departmentFullPaths());
+            out.writeLong(user.loadedAt());
+        }
+        out.flush();
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(body.size() + strings.size() * 16);
+        DataOutputStream header = new DataOutputStream(payload);
+        header.writeInt(strings.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            header.writeInt(bytes.length);
+            header.write(bytes);
+        }
+        header.flush();
+        body.writeTo(payload);
+        return payload.toByteArray();
+    }
+
+    private static Snapshot decode(ByteBuffer in, long savedAt) {
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int departmentCount = in.getInt();
+        List<Map<String, Object>> departments = new ArrayList<>(departmentCount);
+        for (int i = 0; i < departmentCount; i++) {
+            Map<String, Object> dept = new HashMap<>();
+            dept.put("id", readInteger(in));
+            dept.put("name", readString(in, strings));
+            String nameEn = readString(in, strings);
+            if (nameEn != null) {
+                dept.put("name_en", nameEn);
+            }
+            List<String> leaders = readList(in, strings);
+            if (leaders != null) {
+                dept.put("department_leader", leaders);
+            }
+            dept.put("parentid", readInteger(in));
+            dept.put("order", readInteger(in));
+            dept.put("fullPath", readString(in, strings));
+            departments.add(dept);
+        }
+
+        int userCount = in.getInt();
+        UserDirectory.Builder builder = UserDirectory.builder();
+        for (int i = 0; i < userCount; i++) {
+            builder.add(new UserDirectory.User(readString(in, strings), readString(in, strings),
+                    readString(in, strings), readString(in, strings), readString(in, strings),
+                    readString(in, strings), readInteger(in), readInteger(in),
+                    readList(in, strings), readList(in, strings), readList(in, strings), in.getLong()));
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("快照末尾有多余数据");
+        }
+        return new Snapshot(savedAt, departments, builder.build(savedAt));
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(ByteBuffer in) {
+        return in.get() != 0 ? in.getInt() : null;
+    }
+
+    /**
+     * 列表写为 长度 + 字符串下标，null 列表长度为 -1
+     */
+    private static void writeList(DataOutputStream out, StringTable strings, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(strings.ref(value));
+        }
+    }
+
+    private static List<String> readList(ByteBuffer in, String[] strings) {
+        int size = in.getInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(Math.min(size, in.remaining() / 4));
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in, strings));
+        }
+        return values;
+    }
+
+    /**
+     * 字符串下标从1开始，0 表示 null
+     */
+    private static String readString(ByteBuffer in, String[] strings) {
+        int ref = in.getInt();
+        return ref == 0 ? null : strings[ref - 1];
+    }
+
+    private static final class StringTable {
+
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int ref(String value) {
+            if (value == null) {
+                return 0;
+            }
+            return refs.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size();
+            });
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
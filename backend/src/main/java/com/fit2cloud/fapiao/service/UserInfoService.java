@@ -1,16 +1,24 @@
 // #file src/main/java/com/fit2cloud/fapiao/service/UserInfoService.java
 package com.fit2cloud.fapiao.service;
 
+import com.fit2cloud.fapiao.dto.wecom.WeComContactEvent;
+import com.fit2cloud.fapiao.dto.wecom.WeComUser;
+import com.fit2cloud.fapiao.dto.wecom.WeComUserListResponse;
 import com.fit2cloud.fapiao.exception.BusinessException;
-import jakarta.annotation.PostConstruct;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import com.fit2cloud.fapiao.util.Jitter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 @Service
 @Slf4j
@@ -20,7 +28,7 @@ public class UserInfoService {
     private AccessTokenService accessTokenService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private WeComApiClient weComApiClient;
 
     @Autowired
     private DepartmentService departmentService;
@@ -28,147 +36,407 @@ public class UserInfoService {
     @Autowired
     private UserDepartmentRelationService userDepartmentRelationService;
 
-    // 用户信息缓存
-    private Map<String, Map<String, Object>> userInfoCache = new HashMap<>();
-    private long userInfoCacheTimestamp;
+    @Autowired
+    private WeComDirectoryLoader weComDirectoryLoader;
+
+    @Autowired
+    private UserDirectorySnapshotStore snapshotStore;
+
+    @Autowired
+    @Qualifier("userDirectoryRefreshExecutor")
+    private Executor userDirectoryRefreshExecutor;
+
+    @Value("${qywechat.user-search.max-results:50}")
+    private int searchMaxResults;
+
     private static final long USER_INFO_CACHE_DURATION = 60 * 60 * 1000; // 1小时缓存
 
-    // 姓名到用户ID列表的缓存（支持重名）
-    private Map<String, List<String>> nameToUserIdCache = new HashMap<>();
+    // 缓存有效期，启用通讯录变更回调后延长为对账周期（由 ContactSyncService 设置）
+    private volatile long cacheDuration = USER_INFO_CACHE_DURATION;
+
+    // 用户目录快照（用户信息、姓名映射、搜索索引），构建完成后整体替换，重新加载期间仍使用旧快照
+    private volatile UserDirectory directory = UserDirectory.EMPTY;
+
+    // 串行化快照替换，避免单个用户的更新与整体加载互相覆盖
+    private final Object directoryLock = new Object();
 
-    // 新增：每个用户的缓存时间戳
-    private Map<String, Long> userCacheTimestamps = new HashMap<>();
+    // 后台刷新标志，避免重复提交
+    private final AtomicBoolean backgroundRefreshing = new AtomicBoolean(false);
 
-    // 添加一个标志，避免重复加载
-    private volatile boolean isInitialized = false;
+    // 串行化整体加载
     private final Object initLock = new Object();
 
-    // 在构造函数或初始化方法中加载所有用户信息
-    @PostConstruct
-    public void init() {
-        synchronized (initLock) {
-            if (isInitialized) {
-                log.info("用户信息缓存已初始化，跳过重复初始化");
-                return;
-            }
+    // 目录加载状态，供就绪探针和缓存统计查看
+    private volatile LoadState loadState = LoadState.PENDING;
+    private volatile long lastLoadStartedAt = 0;
+    private volatile long lastLoadDurationMs = 0;
+    private volatile String lastLoadError;
 
-            log.info("初始化用户信息缓存...");
-            loadAllUserInfo();
-            isInitialized = true;
-        }
+    // 下次整体加载的时间（整体加载完成时间 + 带抖动的有效期）
+    private volatile long reloadDueAt = 0;
+
+    // 整体加载进行中，期间不应用通讯录变更事件（加载结果已包含这些变更）
+    private volatile boolean loading = false;
+
+    // 当前目录需要整体重新加载（来自本地快照，或丢弃过变更事件），加载成功前不跳过整体加载
+    private volatile boolean reloadRequired = false;
+
+    /**
+     * 用户目录加载状态
+     */
+    public enum LoadState {
+        /** 应用刚启动，尚未开始加载 */
+        PENDING,
+        /** 首次加载进行中，期间按需逐个从企业微信获取用户 */
+        LOADING,
+        /** 已从本地快照恢复，后台从企业微信重新加载中 */
+        RESTORED,
+        /** 已完成过整体加载（之后的定时刷新期间仍为此状态） */
+        READY,
+        /** 首次加载失败，下次触发刷新时重试 */
+        FAILED
     }
 
-    // 添加定时刷新任务
-    @Scheduled(fixedDelay = 60 * 60 * 1000) // 每小时刷新一次
+    // 定时刷新任务，启动后的首次加载由 CacheWarmUpService 在后台触发
+    // 启用通讯录变更回调后缓存有效期延长，整体加载只在过期时执行，作为低频对账
+    // 每分钟检查一次，过期时间带随机抖动，不与部门列表、用户-部门关系在同一周期刷新
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
     public void scheduledRefresh() {
+        if (!reloadRequired && isOverallCacheValid()) {
+            log.debug("用户信息缓存有效，跳过定时刷新");
+            return;
+        }
         log.info("定时刷新用户信息缓存...");
-        refreshUserInfoCache(null); // 刷新所有用户
+        refreshInBackground();
+    }
+
+    /**
+     * 启用增量同步：用户目录由通讯录变更回调实时更新，整体加载改为按对账周期执行
+     */
+    public void enableIncrementalSync(long reconcileIntervalMs) {
+        cacheDuration = Math.max(reconcileIntervalMs, USER_INFO_CACHE_DURATION);
+        log.info("已启用通讯录增量同步，用户目录整体对账周期: {} 小时", cacheDuration / 3600_000);
     }
 
     /**
      * 加载所有用户信息到缓存
+     * 按部门并发批量拉取成员详情（WeComDirectoryLoader），同时更新用户-部门关系缓存；
+     * 新快照在旁边构建，全部加载完成后一次性替换，加载期间请求仍读取旧快照
      */
     public void loadAllUserInfo() {
 
         synchronized (initLock) {
-            // 如果缓存已经有数据，且未过期，跳过加载
-            if (!userInfoCache.isEmpty() && isOverallCacheValid()) {
+            // 如果缓存已经有数据，且未过期，跳过加载（从快照恢复的数据仍要重新加载）
+            if (!reloadRequired && isOverallCacheValid()) {
                 log.info("用户信息缓存有效，跳过加载");
                 return;
             }
 
+            long startedAt = System.currentTimeMillis();
+            lastLoadStartedAt = startedAt;
+            if (loadState == LoadState.PENDING || loadState == LoadState.FAILED) {
+                loadState = LoadState.LOADING;
+            }
+            loading = true;
+
             try {
-                // 清空旧缓存
-                userInfoCache.clear();
-                nameToUserIdCache.clear();
-                userCacheTimestamps.clear();
-
-                // 获取所有用户ID
-                Map<String, List<String>> userRelations = userDepartmentRelationService.getUserDepartmentRelations();
-                List<String> allUserIds = new ArrayList<>(userRelations.keySet());
-
-                log.info("开始加载 {} 个用户的详细信息", allUserIds.size());
-
-                int successCount = 0;
-                int failureCount = 0;
-
-                for (String userId : allUserIds) {
-                    try {
-                        // 获取用户详细信息
-                        String accessToken = accessTokenService.getAccessTokenForUserInfo();
-                        String url = "https://qyapi.weixin.qq.com/cgi-bin/user/get?access_token=" +
-                                accessToken + "&userid=" + userId;
-
-                        ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-                        if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                            Map<String, Object> responseBody = response.getBody();
-                            Integer errcode = (Integer) responseBody.get("errcode");
-
-                            if (errcode != null && errcode == 0) {
-                                Map<String, Object> userInfo = processUserInfo(responseBody);
-
-                                // 缓存用户信息和时间戳
-                                userInfoCache.put(userId, userInfo);
-                                userCacheTimestamps.put(userId, System.currentTimeMillis());
-                                successCount++;
-
-                                // 每加载10个用户打印一次进度
-                                if (successCount % 10 == 0) {
-                                    log.info("已加载 {} 个用户信息", successCount);
-                                }
-                            } else {
-                                String errmsg = (String) responseBody.get("errmsg");
-                                log.warn("加载用户 {} 信息失败, errcode: {}, errmsg: {}",
-                                        userId, errcode, errmsg);
-                                failureCount++;
-                            }
-                        } else {
-                            log.warn("加载用户 {} 信息请求失败, 状态码: {}",
-                                    userId, response.getStatusCode());
-                            failureCount++;
-                        }
-                    } catch (Exception e) {
-                        log.warn("加载用户 {} 信息异常: {}", userId, e.getMessage());
-                        failureCount++;
-                    }
+                DepartmentTree departments = getDepartmentTree();
+                if (departments.isEmpty()) {
+                    log.error("部门列表为空，无法加载用户信息，继续使用旧的用户信息缓存");
+                    recordLoadFailure(startedAt, "部门列表为空");
+                    return;
+                }
 
-                    // 避免请求太快，添加短暂延迟
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
+                log.info("开始按部门批量加载用户信息，部门数: {}", departments.size());
+
+                // 按部门并发拉取成员详情，已去重
+                String accessToken = accessTokenService.getAccessTokenForAddressBook();
+                List<String> departmentIds = new ArrayList<>(departments.size());
+                for (Integer deptId : departments.ids()) {
+                    departmentIds.add(deptId.toString());
+                }
+                WeComDirectoryLoader.Result result = weComDirectoryLoader.load(accessToken, departmentIds);
+
+                if (result.users().isEmpty()) {
+                    log.error("用户信息全部加载失败（失败部门 {} 个），继续使用旧的用户信息缓存",
+                            result.failedDepartments().size());
+                    recordLoadFailure(startedAt, "用户信息全部加载失败（失败部门 " + result.failedDepartments().size() + " 个）");
+                    return;
+                }
+
+                UserDirectory.Builder builder = UserDirectory.builder();
+                Map<String, List<String>> relations = new HashMap<>();
+                for (WeComUser user : result.users()) {
+                    UserDirectory.User processed = processUserInfo(user, departments);
+                    builder.add(processed);
+                    relations.put(processed.userId(), processed.departmentIds());
+                }
+
+                // 部分部门拉取失败时，保留旧快照中本次没有加载到的用户，避免这些用户暂时查不到
+                int keptCount = 0;
+                if (!result.failedDepartments().isEmpty()) {
+                    Set<String> loadedIds = relations.keySet();
+                    for (UserDirectory.User user : directory.users()) {
+                        if (!loadedIds.contains(user.userId())) {
+                            builder.add(user);
+                            keptCount++;
+                        }
                     }
+                    log.warn("{} 个部门成员拉取失败，保留旧缓存中的 {} 个用户", result.failedDepartments().size(), keptCount);
+                } else {
+                    // 全部部门加载成功时，成员的部门即为完整的用户-部门关系
+                    userDepartmentRelationService.updateRelations(relations);
                 }
 
-                // 更新整体缓存时间戳
-                userInfoCacheTimestamp = System.currentTimeMillis();
+                UserDirectory loaded = builder.build(System.currentTimeMillis());
+                updateDirectory(current -> loaded);
+                reloadDueAt = loaded.loadedAt() + Jitter.apply(cacheDuration);
+                lastLoadDurationMs = System.currentTimeMillis() - startedAt;
+                lastLoadError = null;
+                loadState = LoadState.READY;
+                reloadRequired = false;
+
+                // 只保存完整加载的结果，供下次启动时直接使用
+                if (result.failedDepartments().isEmpty()) {
+                    snapshotStore.save(departments.departments(), loaded);
+                }
 
-                log.info("用户信息缓存加载完成，成功: {} 个，失败: {} 个，姓名映射: {} 条",
-                        successCount, failureCount, nameToUserIdCache.size());
+                log.info("用户信息缓存加载完成，用户: {} 个（保留旧数据 {} 个），姓名映射: {} 条，耗时 {}ms",
+                        loaded.size(), keptCount, loaded.nameToUserIds().size(), lastLoadDurationMs);
 
                 // 记录一些统计信息
-                logNameCacheStatistics();
+                logNameCacheStatistics(loaded);
 
             } catch (Exception e) {
                 log.error("加载用户信息缓存异常", e);
+                recordLoadFailure(startedAt, e.getMessage());
+            } finally {
+                loading = false;
             }
         }
     }
 
+    /**
+     * 整体加载是否进行中
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * 标记需要整体重新加载（如变更事件积压被丢弃），并提交后台加载
+     */
+    public void requestReload() {
+        reloadRequired = true;
+        refreshInBackground();
+    }
+
+    /**
+     * 按通讯录成员变更事件（create_user、update_user、delete_user）更新用户目录，整批只重建一次快照
+     * 事件只带有变化的字段，与目录中已有的用户合并；目录中没有的用户改为通过 user/get 获取
+     *
+     * @param events      按接收顺序排列的成员变更事件
+     * @param departments 本批次部门有变化时为更新后的部门树，所有用户的部门名称、路径随之更新；没有变化时为null
+     * @return 实际更新和移除的用户数
+     */
+    public int applyContactEvents(List<WeComContactEvent> events, DepartmentTree departments) {
+        if (events.isEmpty() && departments == null) {
+            return 0;
+        }
+
+        DepartmentTree tree = departments != null ? departments : getDepartmentTree();
+        Map<String, UserDirectory.User> updated = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>();
+        Set<String> unknown = new LinkedHashSet<>();
+
+        updateDirectory(current -> {
+            for (WeComContactEvent event : events) {
+                String userId = event.userId();
+                if (userId == null) {
+                    continue;
+                }
+                UserDirectory.User existing = updated.containsKey(userId) ? updated.get(userId)
+                        : removed.contains(userId) ? null : current.get(userId);
+
+                switch (event.changeType()) {
+                    case "create_user", "update_user" -> {
+                        if (existing == null && "update_user".equals(event.changeType())) {
+                            unknown.add(event.newUserId() != null ? event.newUserId() : userId);
+                            continue;
+                        }
+                        UserDirectory.User user = merge(existing, event, tree);
+                        if (!user.userId().equals(userId)) {
+                            // 修改了账号
+                            updated.remove(userId);
+                            removed.add(userId);
+                        }
+                        removed.remove(user.userId());
+                        updated.put(user.userId(), user);
+                    }
+                    case "delete_user" -> {
+                        updated.remove(userId);
+                        unknown.remove(userId);
+                        removed.add(userId);
+                    }
+                    default -> log.debug("忽略成员变更事件: {}", event.changeType());
+                }
+            }
+
+            // 部门改名、调整层级后，其余用户的部门名称和路径也要更新（保留原加载时间）
+            if (departments != null) {
+                for (UserDirectory.User user : current.users()) {
+                    if (!updated.containsKey(user.userId()) && !removed.contains(user.userId())) {
+                        updated.put(user.userId(), relabel(user, tree));
+                    }
+                }
+            }
+            return updated.isEmpty() && removed.isEmpty() ? current : current.apply(updated.values(), removed);
+        });
+
+        if (!events.isEmpty()) {
+            Map<String, List<String>> relations = new HashMap<>();
+            for (WeComContactEvent event : events) {
+                String userId = event.newUserId() != null ? event.newUserId() : event.userId();
+                UserDirectory.User user = updated.get(userId);
+                if (user != null) {
+                    relations.put(user.userId(), user.departmentIds());
+                    departmentService.cacheUserInfo(user.userId(), user.name());
+                }
+            }
+            userDepartmentRelationService.applyUserChanges(relations, removed);
+        }
+
+        // 目录中没有的用户（如启动后尚未加载完成），单独获取
+        for (String userId : unknown) {
+            loadUserInfo(userId);
+        }
+
+        // 更新本地快照，重启后直接使用最新数据
+        if (loadState == LoadState.READY && !reloadRequired && !loading) {
+            snapshotStore.save(tree.departments(), directory);
+        }
+        return updated.size() + removed.size() + unknown.size();
+    }
+
+    /**
+     * 将成员变更事件合并到已有用户（create_user 时 existing 为null），事件中为null的字段保持不变
+     */
+    private UserDirectory.User merge(UserDirectory.User existing, WeComContactEvent event, DepartmentTree tree) {
+        List<Integer> department = event.department();
+        if (department == null && existing != null) {
+            department = new ArrayList<>(existing.departmentIds().size());
+            for (String deptId : existing.departmentIds()) {
+                department.add(Integer.valueOf(deptId));
+            }
+        }
+        String userId = event.newUserId() != null ? event.newUserId() : event.userId();
+        return processUserInfo(new WeComUser(null, null, userId,
+                pick(event.name(), existing, UserDirectory.User::name), department,
+                pick(event.position(), existing, UserDirectory.User::position),
+                pick(event.mobile(), existing, UserDirectory.User::mobile),
+                pick(event.email(), existing, UserDirectory.User::email),
+                pick(event.avatar(), existing, UserDirectory.User::avatar),
+                pick(event.status(), existing, UserDirectory.User::status),
+                pick(event.mainDepartment(), existing, UserDirectory.User::mainDepartment)), tree);
+    }
+
+    private static <T> T pick(T value, UserDirectory.User existing, Function<UserDirectory.User, T> field) {
+        return value != null || existing == null ? value : field.apply(existing);
+    }
+
+    /**
+     * 按新的部门树更新用户的部门名称和路径，其余字段和加载时间不变
+     */
+    private UserDirectory.User relabel(UserDirectory.User user, DepartmentTree tree) {
+        List<String> departmentNames = new ArrayList<>();
+        List<String> departmentFullPaths = new ArrayList<>();
+        for (String deptId : user.departmentIds()) {
+            DepartmentTree.Node dept = tree.get(deptId);
+            if (dept != null) {
+                departmentNames.add(dept.name());
+                departmentFullPaths.add(dept.fullPath());
+            }
+        }
+        return new UserDirectory.User(user.userId(), user.name(), user.position(), user.mobile(), user.email(),
+                user.avatar(), user.status(), user.mainDepartment(), user.departmentIds(), departmentNames,
+                departmentFullPaths, user.loadedAt());
+    }
+
+    /**
+     * 从本地快照恢复部门列表、用户-部门关系和用户目录（启动时调用，只在目录为空时生效）
+     * 恢复后仍需调用 refreshInBackground 从企业微信重新加载
+     *
+     * @return 是否已恢复
+     */
+    public boolean restoreFromSnapshot() {
+        UserDirectorySnapshotStore.Snapshot snapshot = snapshotStore.load();
+        if (snapshot == null || snapshot.directory().isEmpty()) {
+            return false;
+        }
+
+        synchronized (directoryLock) {
+            if (!directory.isEmpty()) {
+                return false;
+            }
+            directory = snapshot.directory();
+        }
+
+        departmentService.restoreDepartments(snapshot.departments(), snapshot.savedAt());
+        Map<String, List<String>> relations = new HashMap<>();
+        for (UserDirectory.User user : snapshot.directory().users()) {
+            relations.put(user.userId(), user.departmentIds());
+        }
+        userDepartmentRelationService.updateRelations(relations);
+
+        reloadRequired = true;
+        if (loadState == LoadState.PENDING) {
+            loadState = LoadState.RESTORED;
+        }
+        log.info("已从本地快照恢复用户目录，用户: {} 个，后台重新加载后替换", snapshot.directory().size());
+        return true;
+    }
+
+    private void recordLoadFailure(long startedAt, String error) {
+        lastLoadDurationMs = System.currentTimeMillis() - startedAt;
+        lastLoadError = error;
+        if (loadState == LoadState.LOADING) {
+            loadState = LoadState.FAILED;
+        }
+    }
+
+    /**
+     * 用户目录加载状态（/actuator/health/readiness 中的 userDirectory）
+     */
+    public Map<String, Object> getLoadStatus() {
+        UserDirectory snapshot = directory;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", loadState.name());
+        status.put("refreshing", backgroundRefreshing.get());
+        status.put("users", snapshot.size());
+        status.put("loadedAt", snapshot.loadedAt());
+        status.put("lastLoadStartedAt", lastLoadStartedAt);
+        status.put("lastLoadDurationMs", lastLoadDurationMs);
+        if (lastLoadError != null) {
+            status.put("lastLoadError", lastLoadError);
+        }
+        status.put("loader", weComDirectoryLoader.getStatus());
+        status.put("snapshot", snapshotStore.getStatus());
+        return status;
+    }
+
     /**
      * 记录姓名缓存的统计信息
      */
-    private void logNameCacheStatistics() {
-        if (nameToUserIdCache.isEmpty()) {
+    private void logNameCacheStatistics(UserDirectory snapshot) {
+        Map<String, List<String>> nameToUserIds = snapshot.nameToUserIds();
+        if (nameToUserIds.isEmpty()) {
             log.warn("姓名缓存为空，可能是用户信息加载失败");
             return;
         }
 
         // 统计重名情况
         int duplicateNameCount = 0;
-        for (Map.Entry<String, List<String>> entry : nameToUserIdCache.entrySet()) {
+        for (Map.Entry<String, List<String>> entry : nameToUserIds.entrySet()) {
             if (entry.getValue().size() > 1) {
                 duplicateNameCount++;
                 log.info("发现重名: {} 对应 {} 个用户: {}",
@@ -177,26 +445,30 @@ public class UserInfoService {
         }
 
         log.info("姓名缓存统计：总姓名数: {}，重名数: {}，总用户数: {}",
-                nameToUserIdCache.size(), duplicateNameCount, userInfoCache.size());
+                nameToUserIds.size(), duplicateNameCount, snapshot.size());
     }
 
     /**
      * 获取缓存统计信息
      */
     public Map<String, Object> getCacheStatistics() {
+        UserDirectory snapshot = directory;
+        Map<String, List<String>> nameToUserIds = snapshot.nameToUserIds();
         Map<String, Object> stats = new HashMap<>();
 
-        stats.put("userInfoCacheSize", userInfoCache.size());
-        stats.put("nameMappingCacheSize", nameToUserIdCache.size());
-        stats.put("userCacheTimestampsSize", userCacheTimestamps.size());
+        stats.put("userInfoCacheSize", snapshot.size());
+        stats.put("nameMappingCacheSize", nameToUserIds.size());
+        stats.put("userCacheTimestampsSize", snapshot.size());
+        stats.put("searchIndexSize", snapshot.searchIndex().size());
 
         // 计算缓存有效性统计
         int validCacheCount = 0;
         long oldestCacheTime = Long.MAX_VALUE;
         long newestCacheTime = 0;
 
-        for (Long cacheTime : userCacheTimestamps.values()) {
-            if (isCacheValid(cacheTime, USER_INFO_CACHE_DURATION)) {
+        for (UserDirectory.User user : snapshot.users()) {
+            long cacheTime = user.loadedAt();
+            if (isCacheValid(cacheTime, cacheDuration)) {
                 validCacheCount++;
             }
 
@@ -210,15 +482,15 @@ public class UserInfoService {
         }
 
         stats.put("validCacheCount", validCacheCount);
-        stats.put("invalidCacheCount", userCacheTimestamps.size() - validCacheCount);
-        stats.put("cacheValidityRate", userCacheTimestamps.size() > 0 ?
-                (double) validCacheCount / userCacheTimestamps.size() : 0);
+        stats.put("invalidCacheCount", snapshot.size() - validCacheCount);
+        stats.put("cacheValidityRate", snapshot.size() > 0 ?
+                (double) validCacheCount / snapshot.size() : 0);
 
         // 计算重名统计
         int duplicateNameCount = 0;
         int totalMappings = 0;
 
-        for (List<String> userIds : nameToUserIdCache.values()) {
+        for (List<String> userIds : nameToUserIds.values()) {
             totalMappings += userIds.size();
             if (userIds.size() > 1) {
                 duplicateNameCount++;
@@ -227,14 +499,15 @@ public class UserInfoService {
 
         stats.put("totalNameMappings", totalMappings);
         stats.put("duplicateNameCount", duplicateNameCount);
-        stats.put("averageMappingsPerName", nameToUserIdCache.size() > 0 ?
-                (double) totalMappings / nameToUserIdCache.size() : 0);
+        stats.put("averageMappingsPerName", nameToUserIds.size() > 0 ?
+                (double) totalMappings / nameToUserIds.size() : 0);
 
         // 缓存时间信息
-        stats.put("userInfoCacheTimestamp", userInfoCacheTimestamp);
-        stats.put("cacheAgeSeconds", userInfoCacheTimestamp > 0 ?
-                (System.currentTimeMillis() - userInfoCacheTimestamp) / 1000 : 0);
+        stats.put("userInfoCacheTimestamp", snapshot.loadedAt());
+        stats.put("cacheAgeSeconds", snapshot.loadedAt() > 0 ?
+                (System.currentTimeMillis() - snapshot.loadedAt()) / 1000 : 0);
         stats.put("isOverallCacheValid", isOverallCacheValid());
+        stats.put("loadState", loadState.name());
 
         // 最旧和最新缓存时间
         if (oldestCacheTime != Long.MAX_VALUE) {
@@ -254,40 +527,30 @@ public class UserInfoService {
     public void cleanupExpiredCache() {
         log.info("开始清理过期用户缓存...");
 
-        int expiredCount = 0;
         List<String> expiredUserIds = new ArrayList<>();
-
-        for (Map.Entry<String, Long> entry : userCacheTimestamps.entrySet()) {
-            String userId = entry.getKey();
-            Long cacheTime = entry.getValue();
-
-            if (cacheTime != null && !isCacheValid(cacheTime, USER_INFO_CACHE_DURATION * 2)) {
+        for (UserDirectory.User user : directory.users()) {
+            if (!isCacheValid(user.loadedAt(), cacheDuration * 2)) {
                 // 超过2倍缓存时间的认为是过期（宽松策略）
-                expiredUserIds.add(userId);
-                expiredCount++;
+                expiredUserIds.add(user.userId());
             }
         }
 
         // 清理过期缓存
-        for (String userId : expiredUserIds) {
-            userInfoCache.remove(userId);
-            userCacheTimestamps.remove(userId);
+        if (!expiredUserIds.isEmpty()) {
+            Set<String> expired = new HashSet<>(expiredUserIds);
+            updateDirectory(current -> current.without(expired));
         }
 
-        log.info("清理完成，移除了 {} 个过期用户缓存", expiredCount);
+        log.info("清理完成，移除了 {} 个过期用户缓存", expiredUserIds.size());
     }
 
     /**
-     * 缓存姓名到用户ID的映射
+     * 基于当前快照构建新快照并替换
      */
-    private void cacheNameToUserId(String name, String userId) {
-        if (name == null || name.isEmpty() || userId == null || userId.isEmpty()) {
-            return;
+    private void updateDirectory(UnaryOperator<UserDirectory> change) {
+        synchronized (directoryLock) {
+            directory = change.apply(directory);
         }
-
-        nameToUserIdCache.computeIfAbsent(name, k -> new ArrayList<>()).add(userId);
-
-        log.debug("缓存姓名映射: {} -> {}", name, userId);
     }
 
     /**
@@ -299,65 +562,43 @@ public class UserInfoService {
         }
 
         // 检查缓存
-        if (userInfoCache.containsKey(userId)) {
-            Map<String, Object> cachedInfo = userInfoCache.get(userId);
-
-            // 检查该用户的缓存时间（需要记录每个用户的缓存时间）
-            Long userCacheTime = userCacheTimestamps.get(userId);
-            if (userCacheTime != null && isCacheValid(userCacheTime, USER_INFO_CACHE_DURATION)) {
-                log.debug("使用缓存的用户信息: {}", userId);
-                return new HashMap<>(cachedInfo);
-            }
+        UserDirectory.User cached = directory.get(userId);
+        if (cached != null && isCacheValid(cached.loadedAt(), cacheDuration)) {
+            log.debug("使用缓存的用户信息: {}", userId);
+            return cached.toMap();
         }
 
         // 缓存无效，重新获取
-        return loadAndCacheUserInfo(userId);
+        return loadAndCacheUserInfo(userId).toMap();
 
     }
 
     /**
      * 加载并缓存用户信息
      */
-    private Map<String, Object> loadAndCacheUserInfo(String userId) {
+    private UserDirectory.User loadAndCacheUserInfo(String userId) {
         log.info("加载用户信息: {}", userId);
 
         try {
-            String accessToken = accessTokenService.getAccessTokenForUserInfo();
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/get?access_token=" +
-                    accessToken + "&userid=" + userId;
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    Map<String, Object> userInfo = processUserInfo(responseBody);
-
-                    // 缓存用户信息
-                    userInfoCache.put(userId, userInfo);
-                    userCacheTimestamps.put(userId, System.currentTimeMillis());
-
-                    log.info("成功加载并缓存用户 {} 的信息", userId);
-                    return new HashMap<>(userInfo);
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("加载用户 {} 信息失败, errcode: {}, errmsg: {}",
-                            userId, errcode, errmsg);
-
-                    // 如果失败，尝试返回缓存中的旧数据（如果有）
-                    Map<String, Object> cachedInfo = userInfoCache.get(userId);
-                    if (cachedInfo != null) {
-                        log.warn("使用旧的缓存数据返回用户 {} 信息", userId);
-                        return new HashMap<>(cachedInfo);
-                    }
-
-                    throw new BusinessException("获取用户信息失败: " + errmsg);
-                }
-            } else {
-                throw new BusinessException("获取用户信息请求失败");
+            UserDirectory.User userInfo = processUserInfo(fetchUser(userId), getDepartmentTree());
+
+            // 缓存用户信息
+            updateDirectory(current -> current.with(List.of(userInfo)));
+
+            log.info("成功加载并缓存用户 {} 的信息", userId);
+            return userInfo;
+        } catch (WeComApiException e) {
+            log.error("加载用户 {} 信息失败, errcode: {}, errmsg: {}",
+                    userId, e.getErrcode(), e.getErrmsg());
+
+            // 如果失败，尝试返回缓存中的旧数据（如果有）
+            UserDirectory.User cachedInfo = directory.get(userId);
+            if (cachedInfo != null) {
+                log.warn("使用旧的缓存数据返回用户 {} 信息", userId);
+                return cachedInfo;
             }
+
+            throw new BusinessException("获取用户信息失败: " + e.getErrmsg());
         } catch (BusinessException e) {
             throw e;
         } catch (Exception e) {
@@ -378,12 +619,11 @@ public class UserInfoService {
         List<String> needToLoadUserIds = new ArrayList<>();
 
         // 先检查缓存
+        UserDirectory snapshot = directory;
         for (String userId : userIds) {
-            if (isUserCacheValid(userId)) {
-                Map<String, Object> cachedInfo = userInfoCache.get(userId);
-                if (cachedInfo != null) {
-                    result.add(new HashMap<>(cachedInfo));
-                }
+            UserDirectory.User cachedInfo = snapshot.get(userId);
+            if (cachedInfo != null && isCacheValid(cachedInfo.loadedAt(), cacheDuration)) {
+                result.add(cachedInfo.toMap());
             } else {
                 needToLoadUserIds.add(userId);
             }
@@ -392,8 +632,7 @@ public class UserInfoService {
         // 加载需要更新的用户信息
         for (String userId : needToLoadUserIds) {
             try {
-                Map<String, Object> userInfo = loadAndCacheUserInfo(userId);
-                result.add(userInfo);
+                result.add(loadAndCacheUserInfo(userId).toMap());
             } catch (Exception e) {
                 log.warn("批量获取用户 {} 信息失败: {}", userId, e.getMessage());
                 // 继续处理其他用户
@@ -407,35 +646,33 @@ public class UserInfoService {
      * 根据部门ID获取部门下所有成员
      */
     public List<Map<String, Object>> getUsersByDepartment(String departmentId) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (UserDirectory.User user : loadUsersByDepartment(departmentId, getDepartmentTree())) {
+            result.add(user.toMap());
+        }
+        return result;
+    }
+
+    /**
+     * 从企业微信获取部门下所有成员
+     */
+    private List<UserDirectory.User> loadUsersByDepartment(String departmentId,
+                                                           DepartmentTree departments) {
         try {
             String accessToken = accessTokenService.getAccessTokenForUserInfo();
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/list?access_token=" + accessToken +
-                    "&department_id=" + departmentId + "&fetch_child=1";
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
+            List<WeComUser> userList = fetchDepartmentUsers(accessToken, departmentId);
+            List<UserDirectory.User> result = new ArrayList<>();
 
-                if (errcode != null && errcode == 0) {
-                    List<Map<String, Object>> userList = (List<Map<String, Object>>) responseBody.get("userlist");
-                    List<Map<String, Object>> result = new ArrayList<>();
-
-                    if (userList != null) {
-                        for (Map<String, Object> user : userList) {
-                            result.add(processUserInfo(user));
-                        }
-                    }
-
-                    log.info("获取部门 {} 下成员成功，共 {} 人", departmentId, result.size());
-                    return result;
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("获取部门成员失败, errcode: {}, errmsg: {}", errcode, errmsg);
-                    return Collections.emptyList();
+            if (userList != null) {
+                for (WeComUser user : userList) {
+                    result.add(processUserInfo(user, departments));
                 }
             }
+
+            log.info("获取部门 {} 下成员成功，共 {} 人", departmentId, result.size());
+            return result;
+        } catch (WeComApiException e) {
+            log.error("获取部门成员失败, errcode: {}, errmsg: {}", e.getErrcode(), e.getErrmsg());
         } catch (Exception e) {
             log.error("获取部门成员异常", e);
         }
@@ -444,74 +681,63 @@ public class UserInfoService {
     }
 
     /**
-     * 处理用户信息，提取需要的字段
+     * 获取单个成员详情（user/get）
      */
-    private Map<String, Object> processUserInfo(Map<String, Object> rawUserInfo) {
-        Map<String, Object> processedInfo = new HashMap<>();
-
-        String userId = (String) rawUserInfo.get("userid");
-        String name = (String) rawUserInfo.get("name");
+    private WeComUser fetchUser(String userId) {
+        String accessToken = accessTokenService.getAccessTokenForUserInfo();
+        return weComApiClient.get("user/get", accessToken, "userid", userId, WeComUser.class);
+    }
 
-        // 基本信息
-        processedInfo.put("userId", userId);
-        processedInfo.put("name", name);
-        processedInfo.put("departmentIds", rawUserInfo.get("department"));
-        processedInfo.put("position", rawUserInfo.get("position"));
-        processedInfo.put("mobile", rawUserInfo.get("mobile"));
-        processedInfo.put("email", rawUserInfo.get("email"));
-        processedInfo.put("avatar", rawUserInfo.get("avatar"));
-        processedInfo.put("status", rawUserInfo.get("status"));
-        processedInfo.put("mainDepartment", rawUserInfo.get("main_department"));
+    /**
+     * 获取部门及其子部门下的成员详情（user/list）
+     */
+    private List<WeComUser> fetchDepartmentUsers(String accessToken, String departmentId) {
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("access_token", accessToken);
+        query.put("department_id", departmentId);
+        query.put("fetch_child", 1);
+        return weComApiClient.get("user/list", query, WeComUserListResponse.class).userlist();
+    }
 
-        // 缓存姓名到用户ID的映射
-        if (name != null && !name.trim().isEmpty()) {
-            cacheNameToUserId(name.trim(), userId);
+    /**
+     * 部门树索引，批量处理用户时只取一次，获取失败时返回空树（用户的部门名称、路径为空）
+     */
+    private DepartmentTree getDepartmentTree() {
+        try {
+            return departmentService.getDepartmentTree();
+        } catch (Exception e) {
+            log.warn("获取部门名称失败", e);
+            return DepartmentTree.EMPTY;
         }
+    }
 
+    /**
+     * 处理用户信息，提取需要的字段
+     */
+    private UserDirectory.User processUserInfo(WeComUser rawUserInfo, DepartmentTree departments) {
         // 部门信息
-        Object deptObj = rawUserInfo.get("department");
         List<String> departmentIds = new ArrayList<>();
-
-        if (deptObj instanceof List) {
-            List<?> deptList = (List<?>) deptObj;
-            for (Object item : deptList) {
-                if (item != null) {
-                    departmentIds.add(item.toString());
+        List<String> departmentNames = new ArrayList<>();
+        List<String> departmentFullPaths = new ArrayList<>();
+        if (rawUserInfo.department() != null) {
+            for (Integer deptId : rawUserInfo.department()) {
+                if (deptId == null) {
+                    continue;
                 }
-            }
-        } else if (deptObj != null) {
-            departmentIds.add(deptObj.toString());
-        }
-
-        processedInfo.put("departmentIds", departmentIds);
-
+                departmentIds.add(deptId.toString());
 
-        if (departmentIds != null && !departmentIds.isEmpty()) {
-            List<String> departmentNames = new ArrayList<>();
-            List<String> departmentFullPaths = new ArrayList<>();
-
-            try {
-                List<Map<String, Object>> allDepartments = departmentService.getDepartmentList();
-
-                for (String deptIdStr : departmentIds) {
-                    for (Map<String, Object> dept : allDepartments) {
-                        Integer id = (Integer) dept.get("id");
-                        if (id != null && deptIdStr.equals(id.toString())) {
-                            departmentNames.add((String) dept.get("name"));
-                            departmentFullPaths.add((String) dept.get("fullPath"));
-                            break;
-                        }
-                    }
+                DepartmentTree.Node dept = departments.get(deptId);
+                if (dept != null) {
+                    departmentNames.add(dept.name());
+                    departmentFullPaths.add(dept.fullPath());
                 }
-            } catch (Exception e) {
-                log.warn("获取部门名称失败", e);
             }
-
-            processedInfo.put("departmentNames", departmentNames);
-            processedInfo.put("departmentFullPaths", departmentFullPaths);
         }
 
-        return processedInfo;
+        return new UserDirectory.User(rawUserInfo.userid(), rawUserInfo.name(), rawUserInfo.position(),
+                rawUserInfo.mobile(), rawUserInfo.email(), rawUserInfo.avatar(), rawUserInfo.status(),
+                rawUserInfo.mainDepartment(), departmentIds, departmentNames, departmentFullPaths,
+                System.currentTimeMillis());
     }
 
     /**
@@ -525,16 +751,15 @@ public class UserInfoService {
      * 检查用户缓存是否有效
      */
     public boolean isUserCacheValid(String userId) {
-        Long cacheTime = userCacheTimestamps.get(userId);
-        return cacheTime != null && isCacheValid(cacheTime, USER_INFO_CACHE_DURATION);
+        UserDirectory.User user = directory.get(userId);
+        return user != null && isCacheValid(user.loadedAt(), cacheDuration);
     }
 
     /**
-     * 检查整体缓存是否有效
+     * 检查整体缓存是否有效（未到下次整体加载的时间）
      */
     public boolean isOverallCacheValid() {
-        return !userInfoCache.isEmpty() &&
-                isCacheValid(userInfoCacheTimestamp, USER_INFO_CACHE_DURATION);
+        return !directory.isEmpty() && System.currentTimeMillis() < reloadDueAt;
     }
 
     /**
@@ -542,23 +767,6 @@ public class UserInfoService {
      */
     public void refreshUserInfoCache(String userId) {
         if (userId != null) {
-            // 清除指定用户的缓存
-            Map<String, Object> oldUserInfo = userInfoCache.remove(userId);
-
-            // 从姓名缓存中移除该用户
-            if (oldUserInfo != null) {
-                String name = (String) oldUserInfo.get("name");
-                if (name != null) {
-                    List<String> userIds = nameToUserIdCache.get(name);
-                    if (userIds != null) {
-                        userIds.remove(userId);
-                        if (userIds.isEmpty()) {
-                            nameToUserIdCache.remove(name);
-                        }
-                    }
-                }
-            }
-
             log.info("清除用户 {} 缓存，重新加载...", userId);
 
             // 重新加载该用户信息
@@ -575,29 +783,18 @@ public class UserInfoService {
      */
     private void loadUserInfo(String userId) {
         try {
-            String accessToken = accessTokenService.getAccessTokenForUserInfo();
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/get?access_token=" +
-                    accessToken + "&userid=" + userId;
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    Map<String, Object> userInfo = processUserInfo(responseBody);
-                    userInfoCache.put(userId, userInfo);
-                    log.info("重新加载用户 {} 信息成功", userId);
-                }
-            }
+            UserDirectory.User userInfo = processUserInfo(fetchUser(userId), getDepartmentTree());
+            updateDirectory(current -> current.with(List.of(userInfo)));
+            log.info("重新加载用户 {} 信息成功", userId);
         } catch (Exception e) {
+            // 加载失败时移除旧数据，与强制刷新的语义一致
+            updateDirectory(current -> current.without(Set.of(userId)));
             log.error("加载用户 {} 信息失败", userId, e);
         }
     }
 
     /**
-     * 搜索用户（根据姓名或拼音）
+     * 搜索用户（根据姓名、用户ID、职位或拼音首字母），按相关度排序
      */
     public List<Map<String, Object>> searchUsers(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) {
@@ -606,102 +803,89 @@ public class UserInfoService {
 
         log.info("搜索用户，关键词: {}", keyword);
 
-        // 尝试从缓存中搜索
-        List<Map<String, Object>> cachedUsers = searchUsersFromCache(keyword);
-        if (!cachedUsers.isEmpty()) {
-            log.info("从缓存中找到 {} 个匹配的用户", cachedUsers.size());
-            return cachedUsers;
-        }
-
-        // 如果没有缓存，获取所有用户（这里可以优化为只获取一次）
-        try {
-            // 使用统一的用户信息获取方法
-            List<Map<String, Object>> allUsers = getAllUsersFromEnterpriseWechat();
-            List<Map<String, Object>> matchedUsers = new ArrayList<>();
-
-            // 搜索匹配的用户
-            String lowerKeyword = keyword.toLowerCase();
-            for (Map<String, Object> user : allUsers) {
-                String name = (String) user.get("name");
-                String userId = (String) user.get("userId");
-                String position = (String) user.get("position");
-
-                if (name != null && name.toLowerCase().contains(lowerKeyword) ||
-                        userId != null && userId.toLowerCase().contains(lowerKeyword) ||
-                        position != null && position.toLowerCase().contains(lowerKeyword)) {
-                    matchedUsers.add(user);
-
-                    // 缓存用户信息到DepartmentService
-                    if (userId != null && name != null) {
-                        departmentService.cacheUserInfo(userId, name);
-                    }
+        // 索引尚未建立（启动后首次加载未完成）时，拉取一次用户列表建立索引
+        if (directory.isEmpty()) {
+            try {
+                List<UserDirectory.User> allUsers = getAllUsersFromEnterpriseWechat();
+                if (!allUsers.isEmpty()) {
+                    // 只补充快照中还没有的用户，已有的保留
+                    updateDirectory(current -> {
+                        List<UserDirectory.User> missing = new ArrayList<>();
+                        for (UserDirectory.User user : allUsers) {
+                            if (current.get(user.userId()) == null) {
+                                missing.add(user);
+                            }
+                        }
+                        return missing.isEmpty() ? current : current.with(missing);
+                    });
                 }
+            } catch (Exception e) {
+                log.error("搜索用户异常", e);
+                return Collections.emptyList();
             }
+        }
 
-            log.info("用户搜索完成，关键词: {}, 匹配结果: {} 条", keyword, matchedUsers.size());
-            return matchedUsers;
-
-        } catch (Exception e) {
-            log.error("搜索用户异常", e);
-            return Collections.emptyList();
+        List<Map<String, Object>> matchedUsers = new ArrayList<>();
+        for (UserSearchIndex.Hit hit : directory.searchIndex().search(keyword, searchMaxResults)) {
+            matchedUsers.add(hit.user().toMap());
         }
+
+        log.info("用户搜索完成，关键词: {}, 匹配结果: {} 条", keyword, matchedUsers.size());
+        return matchedUsers;
     }
 
     /**
-     * 从缓存中搜索用户
+     * 后台刷新全部用户信息，已有刷新任务时忽略，不阻塞调用方
+     * 加载完成前 getUserInfo 按需逐个从企业微信获取用户，searchUsers 拉取一次用户列表建立索引
      */
-    private List<Map<String, Object>> searchUsersFromCache(String keyword) {
-        List<Map<String, Object>> matchedUsers = new ArrayList<>();
-        String lowerKeyword = keyword.toLowerCase();
-
-        // 这里可以实现更复杂的缓存搜索逻辑
-        // 当前简单实现返回空，后续可以优化
+    public void refreshInBackground() {
+        if (!backgroundRefreshing.compareAndSet(false, true)) {
+            return;
+        }
 
-        return matchedUsers;
+        try {
+            userDirectoryRefreshExecutor.execute(() -> {
+                try {
+                    loadAllUserInfo();
+                } finally {
+                    backgroundRefreshing.set(false);
+                }
+            });
+        } catch (Exception e) {
+            backgroundRefreshing.set(false);
+            log.warn("提交用户信息后台刷新失败: {}", e.getMessage());
+        }
     }
 
     /**
      * 从企业微信获取所有用户信息（优化版，减少重复调用）
      */
-    private List<Map<String, Object>> getAllUsersFromEnterpriseWechat() {
-        List<Map<String, Object>> allUsers = new ArrayList<>();
+    private List<UserDirectory.User> getAllUsersFromEnterpriseWechat() {
+        List<UserDirectory.User> allUsers = new ArrayList<>();
+        DepartmentTree departments = getDepartmentTree();
 
         try {
             // 获取通讯录同步的access_token
             String accessToken = accessTokenService.getAccessTokenForAddressBook();
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/list?access_token=" + accessToken +
-                    "&department_id=1&fetch_child=1"; // 从根部门开始获取所有用户
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
+            List<WeComUser> userList = fetchDepartmentUsers(accessToken, "1"); // 从根部门开始获取所有用户
 
-                if (errcode != null && errcode == 0) {
-                    List<Map<String, Object>> userList = (List<Map<String, Object>>) responseBody.get("userlist");
+            if (userList != null) {
+                for (WeComUser user : userList) {
+                    UserDirectory.User processedUser = processUserInfo(user, departments);
+                    allUsers.add(processedUser);
 
-                    if (userList != null) {
-                        for (Map<String, Object> user : userList) {
-                            Map<String, Object> processedUser = processUserInfo(user);
-                            allUsers.add(processedUser);
-
-                            // 缓存用户信息
-                            String userId = (String) processedUser.get("userId");
-                            String userName = (String) processedUser.get("name");
-                            if (userId != null && userName != null) {
-                                departmentService.cacheUserInfo(userId, userName);
-                            }
-                        }
+                    // 缓存用户信息
+                    if (processedUser.userId() != null && processedUser.name() != null) {
+                        departmentService.cacheUserInfo(processedUser.userId(), processedUser.name());
                     }
-
-                    log.info("从企业微信获取到 {} 个用户", allUsers.size());
                 }
             }
+
+            log.info("从企业微信获取到 {} 个用户", allUsers.size());
         } catch (Exception e) {
             log.error("获取企业微信用户列表失败，使用备用方法", e);
             // 备用方法：遍历部门获取用户
-            allUsers = getAllUsersByDepartments();
+            allUsers = getAllUsersByDepartments(departments);
         }
 
         return allUsers;
@@ -710,30 +894,21 @@ public class UserInfoService {
     /**
      * 备用方法：通过遍历部门获取所有用户
      */
-    private List<Map<String, Object>> getAllUsersByDepartments() {
-        List<Map<String, Object>> allUsers = new ArrayList<>();
+    private List<UserDirectory.User> getAllUsersByDepartments(DepartmentTree departments) {
+        List<UserDirectory.User> allUsers = new ArrayList<>();
         Set<String> userIds = new HashSet<>(); // 用于去重
 
         try {
-            List<Map<String, Object>> allDepartments = departmentService.getDepartmentList();
-
             // 遍历每个部门获取成员
-            for (Map<String, Object> dept : allDepartments) {
-                Integer deptId = (Integer) dept.get("id");
-                if (deptId != null) {
-                    List<Map<String, Object>> deptUsers = getUsersByDepartment(deptId.toString());
-
-                    for (Map<String, Object> user : deptUsers) {
-                        String userId = (String) user.get("userId");
-                        if (!userIds.contains(userId)) {
-                            userIds.add(userId);
-                            allUsers.add(user);
-
-                            // 缓存用户信息
-                            String userName = (String) user.get("name");
-                            if (userId != null && userName != null) {
-                                departmentService.cacheUserInfo(userId, userName);
-                            }
+            for (Integer deptId : departments.ids()) {
+                for (UserDirectory.User user : loadUsersByDepartment(deptId.toString(), departments)) {
+                    String userId = user.userId();
+                    if (userIds.add(userId)) {
+                        allUsers.add(user);
+
+                        // 缓存用户信息
+                        if (userId != null && user.name() != null) {
+                            departmentService.cacheUserInfo(userId, user.name());
                         }
                     }
                 }
@@ -749,6 +924,7 @@ public class UserInfoService {
 
     /**
      * 验证人名是否为企业成员
+     * 只查询本地索引，不发起网络请求；缓存过期时提交后台刷新，本次仍使用旧数据
      */
     public Map<String, Object> verifyEnterpriseMember(String name) {
         Map<String, Object> result = new HashMap<>();
@@ -764,74 +940,60 @@ public class UserInfoService {
         log.info("验证人名是否为企业成员: {}", trimmedName);
 
         try {
+            UserSearchIndex index = directory.searchIndex();
+
+            if (index.isEmpty()) {
+                log.warn("用户信息尚未加载完成，无法验证企业成员: {}", trimmedName);
+                result.put("cacheStatus", "UNAVAILABLE");
+                refreshInBackground();
+                return result;
+            }
+
             // 检查整体缓存是否有效
             if (!isOverallCacheValid()) {
-                log.warn("用户信息缓存已过期，尝试重新加载...");
+                log.warn("用户信息缓存已过期，后台重新加载，本次使用旧数据");
                 result.put("cacheStatus", "EXPIRED");
-
-                // 如果缓存过期，尝试重新加载
-                try {
-                    loadAllUserInfo();
-                } catch (Exception e) {
-                    log.error("重新加载用户缓存失败", e);
-                    result.put("cacheStatus", "LOAD_FAILED");
-                }
+                refreshInBackground();
             }
 
-            // 方案1：先检查姓名缓存（最快速）
-            List<String> userIds = nameToUserIdCache.get(trimmedName);
-
-            if (userIds != null && !userIds.isEmpty()) {
-                result.put("isEnterpriseMember", true);
-                result.put("hasMultipleMatches", userIds.size() > 1);
-
-                // 获取匹配的用户详细信息
-                List<Map<String, Object>> matchedUsers = new ArrayList<>();
-                for (String userId : userIds) {
-                    // 检查用户缓存是否有效
-                    boolean userCacheValid = isUserCacheValid(userId);
-                    Map<String, Object> userInfo = getUserInfo(userId); // 会自动刷新过期缓存
-                    if (userInfo != null) {
-                        // 只返回必要的字段，避免返回敏感信息
-                        Map<String, Object> safeUserInfo = new HashMap<>();
-                        safeUserInfo.put("userId", userInfo.get("userId"));
-                        safeUserInfo.put("name", userInfo.get("name"));
-                        safeUserInfo.put("position", userInfo.get("position"));
-                        safeUserInfo.put("departmentNames", userInfo.get("departmentNames"));
-                        safeUserInfo.put("departmentFullPaths", userInfo.get("departmentFullPaths"));
-                        safeUserInfo.put("cacheValid", userCacheValid);
-                        matchedUsers.add(safeUserInfo);
-                    }
-                }
-
-                result.put("matchedUsers", matchedUsers);
-                result.put("matchCount", matchedUsers.size());
-
-                // 记录日志
-                log.info("通过缓存验证：人名 {} 是企业成员，匹配到 {} 个用户",
-                        trimmedName, matchedUsers.size());
-
+            List<UserSearchIndex.Hit> hits = index.matchName(trimmedName, searchMaxResults);
+            if (hits.isEmpty()) {
+                log.info("人名 {} 不是企业成员", trimmedName);
                 return result;
             }
 
-            // 方案2：如果没有在缓存中找到，尝试模糊搜索（支持部分匹配）
-            log.info("姓名 {} 未在缓存中找到，开始模糊搜索", trimmedName);
-            List<Map<String, Object>> matchedUsers = fuzzySearchUsersByName(trimmedName);
+            // 得分100为姓名完全一致，其余为模糊匹配
+            boolean isFuzzyMatch = hits.get(0).score() < 100;
 
-            if (!matchedUsers.isEmpty()) {
-                result.put("isEnterpriseMember", true);
-                result.put("hasMultipleMatches", matchedUsers.size() > 1);
-                result.put("matchedUsers", matchedUsers);
-                result.put("matchCount", matchedUsers.size());
-                result.put("isFuzzyMatch", true); // 标记是模糊匹配
+            List<Map<String, Object>> matchedUsers = new ArrayList<>();
+            for (UserSearchIndex.Hit hit : hits) {
+                UserDirectory.User userInfo = hit.user();
+                boolean hasDepartments = !userInfo.departmentIds().isEmpty();
+
+                // 只返回必要的字段，避免返回敏感信息
+                Map<String, Object> safeUserInfo = new HashMap<>();
+                safeUserInfo.put("userId", userInfo.userId());
+                safeUserInfo.put("name", userInfo.name());
+                safeUserInfo.put("position", userInfo.position());
+                safeUserInfo.put("departmentNames", hasDepartments ? userInfo.departmentNames() : null);
+                if (!isFuzzyMatch) {
+                    safeUserInfo.put("departmentFullPaths", hasDepartments ? userInfo.departmentFullPaths() : null);
+                    safeUserInfo.put("cacheValid", isCacheValid(userInfo.loadedAt(), cacheDuration));
+                }
+                matchedUsers.add(safeUserInfo);
+            }
 
-                log.info("通过模糊搜索验证：人名 {} 是企业成员，匹配到 {} 个用户",
-                        trimmedName, matchedUsers.size());
-            } else {
-                log.info("人名 {} 不是企业成员", trimmedName);
-                result.put("isEnterpriseMember", false);
+            result.put("isEnterpriseMember", true);
+            result.put("hasMultipleMatches", matchedUsers.size() > 1);
+            result.put("matchedUsers", matchedUsers);
+            result.put("matchCount", matchedUsers.size());
+            if (isFuzzyMatch) {
+                result.put("isFuzzyMatch", true); // 标记是模糊匹配
             }
 
+            log.info("通过{}验证：人名 {} 是企业成员，匹配到 {} 个用户",
+                    isFuzzyMatch ? "模糊搜索" : "缓存", trimmedName, matchedUsers.size());
+
         } catch (Exception e) {
             log.error("验证企业成员异常", e);
             result.put("error", e.getMessage());
@@ -840,67 +1002,4 @@ public class UserInfoService {
         return result;
     }
 
-    /**
-     * 模糊搜索用户（支持部分姓名匹配）
-     */
-    private List<Map<String, Object>> fuzzySearchUsersByName(String name) {
-        List<Map<String, Object>> matchedUsers = new ArrayList<>();
-
-        if (name == null || name.trim().isEmpty()) {
-            return matchedUsers;
-        }
-
-        String lowerName = name.toLowerCase();
-
-        // 遍历姓名缓存
-        for (Map.Entry<String, List<String>> entry : nameToUserIdCache.entrySet()) {
-            String cachedName = entry.getKey();
-
-            // 完全匹配或包含关系
-            if (cachedName.toLowerCase().contains(lowerName) ||
-                    lowerName.contains(cachedName.toLowerCase())) {
-
-                // 获取对应的所有用户信息
-                for (String userId : entry.getValue()) {
-                    Map<String, Object> userInfo = userInfoCache.get(userId);
-                    if (userInfo != null) {
-                        Map<String, Object> safeUserInfo = new HashMap<>();
-                        safeUserInfo.put("userId", userInfo.get("userId"));
-                        safeUserInfo.put("name", userInfo.get("name"));
-                        safeUserInfo.put("position", userInfo.get("position"));
-                        safeUserInfo.put("departmentNames", userInfo.get("departmentNames"));
-                        matchedUsers.add(safeUserInfo);
-                    }
-                }
-            }
-        }
-
-        return matchedUsers;
-    }
-
-    /**
-     * 在所有用户中搜索姓名
-     */
-    private List<Map<String, Object>> searchAllUsersByName(String name) {
-        List<Map<String, Object>> matchedUsers = new ArrayList<>();
-
-        if (name == null || name.trim().isEmpty()) {
-            return matchedUsers;
-        }
-
-        String lowerName = name.toLowerCase();
-
-        // 遍历所有用户缓存
-        for (Map.Entry<String, Map<String, Object>> entry : userInfoCache.entrySet()) {
-            Map<String, Object> user = entry.getValue();
-            String userName = (String) user.get("name");
-
-            if (userName != null && userName.toLowerCase().contains(lowerName)) {
-                matchedUsers.add(user);
-            }
-        }
-
-        return matchedUsers;
-    }
-
-}
\ No newline at end of file
+}
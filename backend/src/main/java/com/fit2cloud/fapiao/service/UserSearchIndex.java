@@ -0,0 +1,293 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.util.KeywordMatcher;
+import com.fit2cloud.fapiao.util.PinyinUtil;
+
+import java.util.*;
+
+/**
+ * 用户搜索倒排索引（只读快照）
+ * 对姓名、用户ID、职位及姓名拼音首字母建立一元/二元字符倒排表，查询时按关键词的二元组求交集得到候选，
+ * 再按字段命中情况打分取前K个；另用关键词自动机支持"查询串包含某个姓名"的反向匹配（如"张三（个人）"）。
+ * 构建后不再修改，随 UserDirectory 快照一起整体替换。
+ */
+public final class UserSearchIndex {
+
+    public static final UserSearchIndex EMPTY = build(Collections.emptyList());
+
+    private static final int[] NO_DOCS = new int[0];
+
+    private final List<UserDirectory.User> users;
+    private final String[] names;
+    private final String[] userIds;
+    private final String[] positions;
+    private final String[] initials;
+
+    // 一元/二元字符 -> 有序用户下标
+    private final Map<String, int[]> postings;
+
+    // 完整姓名（去空格、小写） -> 用户下标，支持重名
+    private final Map<String, int[]> exactNames;
+
+    private final KeywordMatcher<int[]> nameMatcher;
+
+    /**
+     * 搜索命中，score 越大越相关
+     */
+    public record Hit(UserDirectory.User user, int score) {
+    }
+
+    private UserSearchIndex(List<UserDirectory.User> users) {
+        int size = users.size();
+        this.users = users;
+        this.names = new String[size];
+        this.userIds = new String[size];
+        this.positions = new String[size];
+        this.initials = new String[size];
+
+        Map<String, List<Integer>> gramLists = new HashMap<>();
+        Map<String, List<Integer>> nameLists = new LinkedHashMap<>();
+
+        for (int doc = 0; doc < size; doc++) {
+            UserDirectory.User user = users.get(doc);
+            names[doc] = normalize(user.name());
+            userIds[doc] = normalize(user.userId());
+            positions[doc] = normalize(user.position());
+            initials[doc] = PinyinUtil.initials(names[doc]);
+
+            Set<String> grams = new HashSet<>();
+            addGrams(grams, names[doc]);
+            addGrams(grams, userIds[doc]);
+            addGrams(grams, positions[doc]);
+            addGrams(grams, initials[doc]);
+            for (String gram : grams) {
+                gramLists.computeIfAbsent(gram, k -> new ArrayList<>()).add(doc);
+            }
+
+            if (!names[doc].isEmpty()) {
+                nameLists.computeIfAbsent(names[doc], k -> new ArrayList<>()).add(doc);
+            }
+        }
+
+        this.postings = new HashMap<>(gramLists.size() * 2);
+        gramLists.forEach((gram, docs) -> postings.put(gram, toArray(docs)));
+
+        Map<String, int[]> exact = new LinkedHashMap<>(nameLists.size() * 2);
+        nameLists.forEach((name, docs) -> exact.put(name, toArray(docs)));
+        this.exactNames = exact;
+        this.nameMatcher = KeywordMatcher.of(exact);
+    }
+
+    /**
+     * 由用户列表构建索引（用户记录不可变，直接引用不再复制）
+     */
+    public static UserSearchIndex build(Collection<UserDirectory.User> users) {
+        List<UserDirectory.User> snapshot = new ArrayList<>(users.size());
+        for (UserDirectory.User user : users) {
+            if (user != null) {
+                snapshot.add(user);
+            }
+        }
+        return new UserSearchIndex(Collections.unmodifiableList(snapshot));
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public boolean isEmpty() {
+        return users.isEmpty();
+    }
+
+    /**
+     * 按姓名、用户ID、职位、拼音首字母搜索，返回得分最高的前 limit 个
+     */
+    public List<Hit> search(String keyword, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        boolean asciiQuery = isAscii(query);
+        TopK topK = new TopK(limit);
+        for (int doc : candidates(query)) {
+            int score = Math.max(fieldScore(names[doc], query, 100, 80, 60),
+                    Math.max(fieldScore(userIds[doc], query, 90, 50, 40),
+                            fieldScore(positions[doc], query, 20, 20, 20)));
+            if (asciiQuery) {
+                score = Math.max(score, fieldScore(initials[doc], query, 70, 45, 30));
+            }
+            topK.offer(doc, score);
+        }
+        return topK.toHits();
+    }
+
+    /**
+     * 按姓名匹配：先精确匹配；没有精确命中时，匹配"姓名包含查询串"或"查询串包含姓名"的用户
+     */
+    public List<Hit> matchName(String name, int limit) {
+        String query = normalize(name);
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        TopK topK = new TopK(limit);
+        int[] exact = exactNames.get(query);
+        if (exact != null) {
+            for (int doc : exact) {
+                topK.offer(doc, 100);
+            }
+            return topK.toHits();
+        }
+
+        for (int doc : candidates(query)) {
+            topK.offer(doc, fieldScore(names[doc], query, 100, 80, 60));
+        }
+        for (KeywordMatcher.Match<int[]> match : nameMatcher.findAll(query)) {
+            for (int doc : match.value()) {
+                topK.offer(doc, 50);
+            }
+        }
+        return topK.toHits();
+    }
+
+    /**
+     * 查询串的所有二元组（单字查询用一元组）都出现过的用户，按下标升序
+     */
+    private int[] candidates(String query) {
+        List<int[]> lists = new ArrayList<>();
+        if (query.length() == 1) {
+            lists.add(postings.getOrDefault(query, NO_DOCS));
+        } else {
+            for (int i = 0; i + 2 <= query.length(); i++) {
+                int[] docs = postings.get(query.substring(i, i + 2));
+                if (docs == null) {
+                    return NO_DOCS;
+                }
+                lists.add(docs);
+            }
+        }
+
+        lists.sort(Comparator.comparingInt(docs -> docs.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private static int fieldScore(String field, String query, int exact, int prefix, int contains) {
+        if (field.isEmpty()) {
+            return 0;
+        }
+        if (field.equals(query)) {
+            return exact;
+        }
+        if (field.startsWith(query)) {
+            return prefix;
+        }
+        return field.contains(query) ? contains : 0;
+    }
+
+    private static void addGrams(Set<String> grams, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            grams.add(value.substring(i, i + 1));
+            if (i + 2 <= value.length()) {
+                grams.add(value.substring(i, i + 2));
+            }
+        }
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                result[n++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] toArray(List<Integer> docs) {
+        int[] array = new int[docs.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = docs.get(i);
+        }
+        return array;
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replaceAll("\\s+", "").toLowerCase();
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 有界小顶堆，保留得分最高的K个用户；同分时姓名较短的优先
+     */
+    private final class TopK {
+        private final int limit;
+        private final Map<Integer, Integer> scores = new HashMap<>();
+        private final PriorityQueue<Integer> heap;
+
+        TopK(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(this::compare);
+        }
+
+        void offer(int doc, int score) {
+            if (score <= 0) {
+                return;
+            }
+            Integer existing = scores.get(doc);
+            if (existing != null) {
+                if (existing >= score) {
+                    return;
+                }
+                heap.remove(doc);
+            }
+            scores.put(doc, score);
+            heap.add(doc);
+            if (heap.size() > limit) {
+                scores.remove(heap.poll());
+            }
+        }
+
+        List<Hit> toHits() {
+            List<Integer> docs = new ArrayList<>(heap);
+            docs.sort((a, b) -> compare(b, a));
+            List<Hit> hits = new ArrayList<>(docs.size());
+            for (int doc : docs) {
+                hits.add(new Hit(users.get(doc), scores.get(doc)));
+            }
+            return hits;
+        }
+
+        // 升序：越"差"越靠前
+        private int compare(int a, int b) {
+            int byScore = Integer.compare(scores.get(a), scores.get(b));
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byLength = Integer.compare(names[b].length(), names[a].length());
+            return byLength != 0 ? byLength : Integer.compare(b, a);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+
+import java.util.Map;
+
+/**
+ * 发票真伪验证服务提供方
+ * 请求参数沿用阿里云接口的字段名：fphm(发票号码)、kprq(开票日期)、jshj(价税合计)、checkCode(校验码)、fpdm(发票代码)
+ */
+public interface VerificationProvider {
+
+    /**
+     * 提供方名称，用于配置调用链和指标标签
+     */
+    String getName();
+
+    /**
+     * 验证发票，调用失败时返回 {@link VerificationResult#error(String)} 或抛出异常
+     */
+    VerificationResult verify(Map<String, String> requestParams);
+
+    /**
+     * 结果是否可以写入验证缓存（模拟数据不应污染缓存）
+     * 组合提供方会把给出结果的提供方的这个属性记录到 {@link VerificationResult#isCacheable()}
+     */
+    default boolean isCacheable() {
+        return true;
+    }
+}
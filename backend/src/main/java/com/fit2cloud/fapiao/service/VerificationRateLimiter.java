@@ -0,0 +1,286 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.entity.VerificationQuotaUsage;
+import com.fit2cloud.fapiao.repository.VerificationQuotaUsageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发票真伪验证接口限流与额度控制
+ * 令牌桶限制QPS（等待队列有界），并按日、按月控制已购买的调用额度，额度用完后降级为跳过验证。
+ * 额度在数据库中用条件更新原子预留（各实例共用同一计数，不会超出额度），不持有本机锁；
+ * 本机的已用量只用于监控展示，切换周期和查询状态时从数据库同步。
+ */
+@Service
+@Slf4j
+public class VerificationRateLimiter {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Value("${invoice.verification.rate-limit.qps:10}")
+    private double permitsPerSecond;
+
+    @Value("${invoice.verification.rate-limit.burst:10}")
+    private int burstCapacity;
+
+    @Value("${invoice.verification.rate-limit.max-wait-ms:5000}")
+    private long maxWaitMillis;
+
+    @Value("${invoice.verification.quota.daily:0}")
+    private long dailyQuota;
+
+    @Value("${invoice.verification.quota.monthly:0}")
+    private long monthlyQuota;
+
+    private final VerificationQuotaUsageRepository quotaUsageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxWaiters;
+    private final Semaphore waitQueue;
+    private final Timer waitTimer;
+    private final Counter queueFullCounter;
+    private final Counter timeoutCounter;
+    private final Counter quotaExhaustedCounter;
+
+    // 令牌桶状态
+    private double storedPermits = -1;
+    private long lastRefillNanos = System.nanoTime();
+
+    // 额度使用量（按周期键区分，切换周期和查询状态时从数据库同步）
+    private volatile String currentDayKey;
+    private volatile String currentMonthKey;
+    private final AtomicLong dailyUsed = new AtomicLong();
+    private final AtomicLong monthlyUsed = new AtomicLong();
+
+    public VerificationRateLimiter(VerificationQuotaUsageRepository quotaUsageRepository,
+                                   TransactionTemplate transactionTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${invoice.verification.rate-limit.max-waiters:50}") int maxWaiters) {
+        this.quotaUsageRepository = quotaUsageRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.maxWaiters = maxWaiters;
+        this.waitQueue = new Semaphore(maxWaiters);
+
+        this.waitTimer = Timer.builder("invoice.verification.ratelimit.wait")
+                .description("发票验证请求等待令牌的时间")
+                .register(meterRegistry);
+        this.queueFullCounter = throttledCounter(meterRegistry, "queue_full");
+        this.timeoutCounter = throttledCounter(meterRegistry, "timeout");
+        this.quotaExhaustedCounter = throttledCounter(meterRegistry, "quota_exhausted");
+
+        Gauge.builder("invoice.verification.quota.remaining", this, limiter -> limiter.remaining(limiter.dailyQuota, limiter.dailyUsed))
+                .tag("period", "daily")
+                .description("当日剩余验证额度，未配置额度时为-1")
+                .register(meterRegistry);
+        Gauge.builder("invoice.verification.quota.remaining", this, limiter -> limiter.remaining(limiter.monthlyQuota, limiter.monthlyUsed))
+                .tag("period", "monthly")
+                .description("当月剩余验证额度，未配置额度时为-1")
+                .register(meterRegistry);
+        Gauge.builder("invoice.verification.ratelimit.waiting", this, VerificationRateLimiter::waitingCount)
+                .description("正在等待令牌的验证请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 申请一次验证调用
+     *
+     * @return null 表示允许调用；否则为被拒绝的原因
+     */
+    public String acquire() {
+        if (!waitQueue.tryAcquire()) {
+            queueFullCounter.increment();
+            log.warn("发票验证等待队列已满，跳过验证");
+            return "验证请求过多，已跳过真伪验证";
+        }
+
+        try {
+            long waitNanos = reserveToken();
+            if (waitNanos < 0) {
+                timeoutCounter.increment();
+                log.warn("发票验证等待令牌超过 {}ms，跳过验证", maxWaitMillis);
+                return "验证请求过多，已跳过真伪验证";
+            }
+
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "验证请求被中断";
+        } finally {
+            waitQueue.release();
+        }
+
+        if (!reserveQuota()) {
+            quotaExhaustedCounter.increment();
+            log.warn("发票验证额度已用完: 当日已用={}, 当月已用={}", dailyUsed.get(), monthlyUsed.get());
+            return "发票验证额度已用完，已跳过真伪验证";
+        }
+
+        return null;
+    }
+
+    /**
+     * 预留一个令牌，返回需要等待的纳秒数；超过最大等待时间时返回-1且不消耗令牌
+     */
+    private synchronized long reserveToken() {
+        long now = System.nanoTime();
+        if (storedPermits < 0) {
+            storedPermits = burstCapacity;
+        }
+
+        double refill = (now - lastRefillNanos) / 1_000_000_000.0 * permitsPerSecond;
+        storedPermits = Math.min(burstCapacity, storedPermits + refill);
+        lastRefillNanos = now;
+
+        if (storedPermits >= 1) {
+            storedPermits -= 1;
+            return 0;
+        }
+
+        long waitNanos = (long) ((1 - storedPermits) / permitsPerSecond * 1_000_000_000L);
+        if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMillis)) {
+            return -1;
+        }
+
+        // 允许令牌数为负，表示已被后续等待者预支
+        storedPermits -= 1;
+        return waitNanos;
+    }
+
+    /**
+     * 预留一次额度（未配置额度时不限制）
+     * 日额度和月额度在同一事务中预留，月额度不足时回滚已预留的日额度
+     */
+    private boolean reserveQuota() {
+        rollPeriodIfNeeded();
+        String dayKey = currentDayKey;
+        String monthKey = currentMonthKey;
+
+        try {
+            Boolean reserved = transactionTemplate.execute(status -> {
+                if (!tryIncrement(dayKey, dailyQuota)) {
+                    dailyUsed.set(Math.max(dailyUsed.get(), dailyQuota));
+                    return false;
+                }
+                if (!tryIncrement(monthKey, monthlyQuota)) {
+                    monthlyUsed.set(Math.max(monthlyUsed.get(), monthlyQuota));
+                    status.setRollbackOnly();
+                    return false;
+                }
+                return true;
+            });
+            if (!Boolean.TRUE.equals(reserved)) {
+                return false;
+            }
+        } catch (Exception e) {
+            // 数据库不可用时按本机已知的使用量判断
+            log.warn("预留验证额度失败，按本机使用量判断: {}", e.getMessage());
+            if ((dailyQuota > 0 && dailyUsed.get() >= dailyQuota) || (monthlyQuota > 0 && monthlyUsed.get() >= monthlyQuota)) {
+                return false;
+            }
+        }
+
+        dailyUsed.incrementAndGet();
+        monthlyUsed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 在数据库中条件加1，未成功时确保周期记录存在（可能由其他实例刚刚创建）后再试一次
+     */
+    private boolean tryIncrement(String periodKey, long quota) {
+        long limit = quota > 0 ? quota : Long.MAX_VALUE;
+        if (quotaUsageRepository.incrementIfBelow(periodKey, limit) == 1) {
+            return true;
+        }
+        quotaUsageRepository.createIfAbsent(periodKey);
+        return quotaUsageRepository.incrementIfBelow(periodKey, limit) == 1;
+    }
+
+    /**
+     * 日期变化时切换周期，并从数据库恢复该周期已用额度
+     */
+    private synchronized void rollPeriodIfNeeded() {
+        LocalDate today = LocalDate.now();
+        String dayKey = "D" + today.format(DAY_FORMAT);
+        String monthKey = "M" + today.format(MONTH_FORMAT);
+
+        if (!dayKey.equals(currentDayKey)) {
+            dailyUsed.set(loadUsage(dayKey));
+            currentDayKey = dayKey;
+        }
+        if (!monthKey.equals(currentMonthKey)) {
+            monthlyUsed.set(loadUsage(monthKey));
+            currentMonthKey = monthKey;
+        }
+    }
+
+    private long loadUsage(String periodKey) {
+        try {
+            return quotaUsageRepository.findById(periodKey)
+                    .map(VerificationQuotaUsage::getUsedCount)
+                    .orElse(0L);
+        } catch (Exception e) {
+            log.warn("读取验证额度使用量失败: {}", e.getMessage());
+            return 0L;
+        }
+    }
+
+    private int waitingCount() {
+        return maxWaiters - waitQueue.availablePermits();
+    }
+
+    private double remaining(long quota, AtomicLong used) {
+        return quota > 0 ? Math.max(0, quota - used.get()) : -1;
+    }
+
+    private Counter throttledCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("invoice.verification.ratelimit.throttled")
+                .tag("reason", reason)
+                .description("被限流或额度控制拒绝的验证请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取限流与额度状态
+     */
+    public Map<String, Object> getStatus() {
+        rollPeriodIfNeeded();
+        // 同步其他实例的使用量
+        dailyUsed.set(loadUsage(currentDayKey));
+        monthlyUsed.set(loadUsage(currentMonthKey));
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("permitsPerSecond", permitsPerSecond);
+        status.put("burstCapacity", burstCapacity);
+        status.put("maxWaiters", maxWaiters);
+        status.put("waiting", waitingCount());
+        status.put("dailyQuota", dailyQuota);
+        status.put("dailyUsed", dailyUsed.get());
+        status.put("dailyRemaining", remaining(dailyQuota, dailyUsed));
+        status.put("monthlyQuota", monthlyQuota);
+        status.put("monthlyUsed", monthlyUsed.get());
+        status.put("monthlyRemaining", remaining(monthlyQuota, monthlyUsed));
+        status.put("throttledQueueFull", queueFullCounter.count());
+        status.put("throttledTimeout", timeoutCounter.count());
+        status.put("throttledQuotaExhausted", quotaExhaustedCounter.count());
+        status.put("averageWaitMs", waitTimer.mean(TimeUnit.MILLISECONDS));
+        return status;
+    }
+}
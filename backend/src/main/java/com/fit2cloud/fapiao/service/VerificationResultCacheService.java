@@ -0,0 +1,181 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+import com.fit2cloud.fapiao.entity.InvoiceVerificationRecord;
+import com.fit2cloud.fapiao.repository.InvoiceVerificationRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 发票真伪验证结果缓存
+ * 两级缓存：Caffeine 本地缓存 + 数据库持久化，只缓存确定的结论（验证通过、信息不匹配）
+ * 验证失败不缓存：验证接口对额度不足、appcode错误、系统繁忙、查无此票等都返回失败，其中多数过后重试会得到不同结果
+ * 缓存中的结果只以副本返回，调用方修改返回值不影响缓存
+ */
+@Service
+@Slf4j
+public class VerificationResultCacheService {
+
+    // 只有这些状态是验证接口给出的确定结论，失败、错误和跳过需要下次重试
+    private static final Set<String> TERMINAL_STATUSES = Set.of(
+            VerificationResult.STATUS_SUCCESS,
+            VerificationResult.STATUS_MISMATCH
+    );
+
+    @Value("${invoice.verification.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    private final InvoiceVerificationRecordRepository recordRepository;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, VerificationResult> localCache;
+
+    public VerificationResultCacheService(InvoiceVerificationRecordRepository recordRepository,
+                                          ObjectMapper objectMapper,
+                                          @Value("${invoice.verification.cache.max-size:10000}") long maxSize,
+                                          @Value("${invoice.verification.cache.local-ttl-hours:24}") long localTtlHours,
+                                          LocalCacheRegistry cacheRegistry) {
+        this.recordRepository = recordRepository;
+        this.objectMapper = objectMapper;
+        this.localCache = cacheRegistry.cache("verificationResults",
+                LocalCacheRegistry.Spec.of(maxSize, Duration.ofHours(localTtlHours)));
+    }
+
+    /**
+     * 根据验证请求参数生成缓存键：发票号码|开票日期|价税合计|校验码
+     */
+    public String buildCacheKey(Map<String, String> requestParams) {
+        return String.join("|",
+                nullToEmpty(requestParams.get("fphm")),
+                nullToEmpty(requestParams.get("kprq")),
+                normalizeAmount(requestParams.get("jshj")),
+                nullToEmpty(requestParams.get("checkCode")));
+    }
+
+    /**
+     * 查询缓存的验证结果，先查本地缓存再查数据库
+     */
+    public Optional<VerificationResult> get(String cacheKey) {
+        if (!cacheEnabled) {
+            return Optional.empty();
+        }
+
+        VerificationResult cached = localCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            log.debug("命中本地验证缓存: {}", cacheKey);
+            return Optional.of(cached.copy());
+        }
+
+        try {
+            Optional<InvoiceVerificationRecord> record = recordRepository.findByCacheKey(cacheKey);
+            // 早期版本持久化过的验证失败记录不再作为结论使用
+            if (record.isPresent() && TERMINAL_STATUSES.contains(record.get().getStatus())) {
+                VerificationResult result = toResult(record.get());
+                localCache.put(cacheKey, result);
+                log.debug("命中数据库验证缓存: {}", cacheKey);
+                return Optional.of(result.copy());
+            }
+        } catch (Exception e) {
+            log.warn("查询验证缓存失败: key={}, error={}", cacheKey, e.getMessage());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * 保存验证结果，非终态结果不缓存
+     */
+    public void put(String cacheKey, Map<String, String> requestParams, VerificationResult result) {
+        if (!cacheEnabled || result == null || !TERMINAL_STATUSES.contains(result.getStatus())) {
+            return;
+        }
+
+        localCache.put(cacheKey, result.copy());
+
+        try {
+            // 早期版本写入的验证失败记录在这里被覆盖
+            InvoiceVerificationRecord record = recordRepository.findByCacheKey(cacheKey)
+                    .orElseGet(InvoiceVerificationRecord::new);
+            record.setCacheKey(cacheKey);
+            record.setInvoiceNumber(requestParams.get("fphm"));
+            record.setInvoiceDate(requestParams.get("kprq"));
+            record.setTotalAmount(normalizeAmount(requestParams.get("jshj")));
+            record.setCheckCode(requestParams.get("checkCode"));
+            record.setStatus(result.getStatus());
+            record.setVerified(result.isVerified());
+            record.setValid(result.isValid());
+            record.setMessage(truncate(result.getMessage(), 500));
+            if (result.getApiData() != null) {
+                record.setApiData(objectMapper.writeValueAsString(result.getApiData()));
+            }
+            recordRepository.save(record);
+        } catch (DataIntegrityViolationException e) {
+            // 并发验证同一张发票时可能重复写入，保留先写入的结果即可
+            log.debug("验证结果已存在: {}", cacheKey);
+        } catch (Exception e) {
+            log.warn("保存验证缓存失败: key={}, error={}", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取缓存状态
+     */
+    public Map<String, Object> getCacheStatus() {
+        CacheStats stats = localCache.stats();
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", cacheEnabled);
+        status.put("localSize", localCache.estimatedSize());
+        status.put("localHitRate", stats.hitRate());
+        status.put("localHitCount", stats.hitCount());
+        status.put("localMissCount", stats.missCount());
+        return status;
+    }
+
+    private VerificationResult toResult(InvoiceVerificationRecord record) throws Exception {
+        VerificationResult result = new VerificationResult();
+        result.setStatus(record.getStatus());
+        result.setVerified(record.isVerified());
+        result.setValid(record.isValid());
+        result.setMessage(record.getMessage());
+        if (record.getApiData() != null) {
+            result.setApiData(objectMapper.readValue(record.getApiData(), new TypeReference<Map<String, Object>>() {
+            }));
+        }
+        return result;
+    }
+
+    private String normalizeAmount(String amount) {
+        if (amount == null || amount.isEmpty()) {
+            return "";
+        }
+        try {
+            return new BigDecimal(amount).setScale(2, RoundingMode.HALF_UP).toPlainString();
+        } catch (NumberFormatException e) {
+            return amount;
+        }
+    }
+
+    private String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
+    }
+}
@@ -0,0 +1,159 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fit2cloud.fapiao.dto.wecom.WeComResponse;
+import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 企业微信接口调用
+ * 所有接口共用一个 ObjectMapper，响应体直接从输入流解析为对应的响应类型（不先转成 Map 或字符串）。
+ * 响应类型都标注了 ignoreUnknown，未声明的字段在解析流中直接跳过（否则 record 构造前会先缓存这些字段）。
+ * errcode 在这里统一检查，非0时抛出 WeComApiException；
+ * access_token 无效或已过期（40014、42001）时先通知登记的监听方（AccessTokenService 据此清除缓存）。
+ * 请求和响应内容只在 debug 级别输出，access_token、jsapi_ticket、session_key 等凭据在响应类型的 toString 中已屏蔽。
+ */
+@Service
+@Slf4j
+public class WeComApiClient {
+
+    private static final String BASE_URL = "https://qyapi.weixin.qq.com/cgi-bin/";
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    // access_token 无效（40014）、access_token 已过期（42001）
+    private static final Set<Integer> INVALID_TOKEN_ERRCODES = Set.of(40014, 42001);
+
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final List<Consumer<String>> invalidTokenListeners = new CopyOnWriteArrayList<>();
+
+    private final RestTemplate restTemplate;
+
+    public WeComApiClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * 登记 access_token 失效的监听，参数为本次调用使用的 access_token
+     * （AccessTokenService 依赖本类，不能反过来注入，由它在构造时登记）
+     */
+    public void addInvalidTokenListener(Consumer<String> listener) {
+        invalidTokenListeners.add(listener);
+    }
+
+    /**
+     * GET 调用
+     *
+     * @param api   接口路径，如 user/get
+     * @param query 查询参数（按顺序拼接，值会做URL编码）
+     */
+    public <T extends WeComResponse> T get(String api, Map<String, ?> query, Class<T> type) {
+        StringBuilder url = new StringBuilder(BASE_URL).append(api);
+        char separator = '?';
+        for (String name : query.keySet()) {
+            url.append(separator).append(name).append("={").append(name).append('}');
+            separator = '&';
+        }
+        return execute(api, HttpMethod.GET, url.toString(), query, null, type);
+    }
+
+    /**
+     * GET 调用，只带 access_token 和一个查询参数
+     */
+    public <T extends WeComResponse> T get(String api, String accessToken, String name, Object value, Class<T> type) {
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("access_token", accessToken);
+        query.put(name, value);
+        return get(api, query, type);
+    }
+
+    /**
+     * POST 调用
+     *
+     * @param body 请求体，byte[] 视为已编码好的JSON直接发送，其他对象用共享的 ObjectMapper 序列化
+     */
+    public <T extends WeComResponse> T post(String api, String accessToken, Object body, Class<T> type) {
+        byte[] payload;
+        try {
+            payload = body instanceof byte[] bytes ? bytes : MAPPER.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new BusinessException("-1", api + " 请求体序列化失败: " + e.getMessage(), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("企业微信 {} 请求: {}", api, new String(payload, StandardCharsets.UTF_8));
+        }
+        return execute(api, HttpMethod.POST, BASE_URL + api + "?access_token={access_token}",
+                Map.of("access_token", accessToken), payload, type);
+    }
+
+    private <T extends WeComResponse> T execute(String api, HttpMethod method, String url, Map<String, ?> uriVariables,
+                                                byte[] payload, Class<T> type) {
+        long start = System.nanoTime();
+        RequestCallback callback = request -> {
+            request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
+            if (payload != null) {
+                request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                request.getHeaders().setContentLength(payload.length);
+                request.getBody().write(payload);
+            }
+        };
+        ResponseExtractor<T> extractor = response -> {
+            try (InputStream body = response.getBody()) {
+                return readerFor(type).readValue(body);
+            }
+        };
+
+        T result;
+        try {
+            result = restTemplate.execute(url, method, callback, extractor, uriVariables);
+        } catch (RestClientException e) {
+            throw new WeComApiException(api, e.getMessage(), e);
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        if (result == null) {
+            throw new WeComApiException(api, "响应为空", null);
+        }
+        if (!result.isOk()) {
+            log.warn("企业微信 {} 返回错误, errcode: {}, errmsg: {}, 耗时: {}ms",
+                    api, result.errcode(), result.errmsg(), elapsedMs);
+            if (INVALID_TOKEN_ERRCODES.contains(result.errcode()) && uriVariables.get("access_token") instanceof String token) {
+                invalidTokenListeners.forEach(listener -> listener.accept(token));
+            }
+            throw new WeComApiException(api, result.errcode() != null ? result.errcode() : -1, result.errmsg());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("企业微信 {} 调用成功, 耗时: {}ms, 响应: {}", api, elapsedMs, result);
+        }
+        return result;
+    }
+
+    private ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, MAPPER::readerFor);
+    }
+}
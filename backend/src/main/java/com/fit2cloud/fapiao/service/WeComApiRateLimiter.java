@@ -0,0 +1,104 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 企业微信接口调用限流
+ * 并发数用信号量限制，调用间隔按QPS平滑排队，避免并发提交审批时触发企业微信频率限制（errcode 45009 等）
+ */
+@Service
+@Slf4j
+public class WeComApiRateLimiter {
+
+    /**
+     * 排队超时的错误码，调用方可据此判断为可重试
+     */
+    public static final String BUSY_ERROR_CODE = "WECOM_API_BUSY";
+
+    private final Semaphore concurrency;
+    private final long intervalNanos;
+    private final long maxWaitMs;
+    private final int maxConcurrency;
+
+    // 下一个可用调用时刻
+    private long nextFreeNanos = System.nanoTime();
+
+    private final AtomicLong totalCalls = new AtomicLong();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+
+    public WeComApiRateLimiter(@Value("${qywechat.rate-limit.qps:5}") double qps,
+                               @Value("${qywechat.rate-limit.max-concurrency:4}") int maxConcurrency,
+                               @Value("${qywechat.rate-limit.max-wait-ms:30000}") long maxWaitMs) {
+        this.maxConcurrency = Math.max(maxConcurrency, 1);
+        this.concurrency = new Semaphore(this.maxConcurrency, true);
+        this.intervalNanos = qps > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / qps) : 0;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * 在限流下执行一次企业微信接口调用
+     *
+     * @param api 接口名称，用于日志
+     */
+    public <T> T execute(String api, Callable<T> call) throws Exception {
+        long start = System.currentTimeMillis();
+        if (!concurrency.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+            rejectedCalls.incrementAndGet();
+            log.warn("企业微信接口调用排队超时: api={}, 等待{}ms", api, maxWaitMs);
+            throw new BusinessException(BUSY_ERROR_CODE, "企业微信接口调用繁忙，请稍后重试");
+        }
+
+        try {
+            reserveSlot();
+            long waited = System.currentTimeMillis() - start;
+            totalWaitMs.addAndGet(waited);
+            totalCalls.incrementAndGet();
+            if (waited > 1000) {
+                log.info("企业微信接口调用限流等待: api={}, 等待{}ms", api, waited);
+            }
+            return call.call();
+        } finally {
+            concurrency.release();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        long calls = totalCalls.get();
+        status.put("maxConcurrency", maxConcurrency);
+        status.put("inFlight", maxConcurrency - concurrency.availablePermits());
+        status.put("qps", intervalNanos > 0 ? TimeUnit.SECONDS.toNanos(1) / (double) intervalNanos : 0);
+        status.put("totalCalls", calls);
+        status.put("rejectedCalls", rejectedCalls.get());
+        status.put("averageWaitMs", calls > 0 ? (double) totalWaitMs.get() / calls : 0);
+        return status;
+    }
+
+    private void reserveSlot() throws InterruptedException {
+        if (intervalNanos <= 0) {
+            return;
+        }
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextFreeNanos);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
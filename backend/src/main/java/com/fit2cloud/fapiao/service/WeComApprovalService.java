@@ -1,20 +1,20 @@
 // #file src/main/java/com/fit2cloud/fapiao/service/WeComApprovalService.java
 package com.fit2cloud.fapiao.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fit2cloud.fapiao.dto.request.WeComApprovalRequest;
 import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.wecom.WeComApplyEventResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComUser;
 import com.fit2cloud.fapiao.exception.BusinessException;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import com.fit2cloud.fapiao.util.ApprovalControl;
+import com.fit2cloud.fapiao.util.ApprovalJsonWriter;
+import com.fit2cloud.fapiao.util.ApprovalTemplate;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -27,6 +27,58 @@ import java.util.stream.Collectors;
 @Slf4j
 public class WeComApprovalService {
 
+    // 日常报销单模板控件
+    private static final ApprovalControl DAILY_CATEGORY = ApprovalControl.of("Selector", "item-1503317593875");
+    private static final ApprovalControl DAILY_COMPANY = ApprovalControl.of("Selector", "Selector-1761551540216");
+    private static final ApprovalControl DAILY_APPLICANT = ApprovalControl.of("Contact", "Contact-1761551660569");
+    private static final ApprovalControl DAILY_DATE = ApprovalControl.of("Date", "Date-1761551710747");
+    private static final ApprovalControl DAILY_REGION = ApprovalControl.of("Contact", "Contact-1763103056039");
+    private static final ApprovalControl DAILY_COST_DEPARTMENT = ApprovalControl.of("Contact", "Contact-1763102909388");
+    private static final ApprovalControl DAILY_REASON = ApprovalControl.of("Textarea", "Textarea-1761552419959");
+    private static final ApprovalControl DAILY_DETAILS = ApprovalControl.of("Table", "item-1503317853434");
+    // 日常报销单发票明细表格内的控件
+    private static final ApprovalControl DAILY_DETAIL_EXPENSE_TYPE = ApprovalControl.of("Selector", "item-1503317870534");
+    private static final ApprovalControl DAILY_DETAIL_AMOUNT = ApprovalControl.of("Money", "item-1503317989302");
+    private static final ApprovalControl DAILY_DETAIL_DATE = ApprovalControl.of("Date", "item-1503317973968");
+    private static final ApprovalControl DAILY_DETAIL_INVOICE = ApprovalControl.of("File", "File-1761553598530");
+    private static final ApprovalControl DAILY_DETAIL_REMARK = ApprovalControl.of("Textarea", "item-1503318001306");
+    private static final ApprovalControl DAILY_DETAIL_PURPOSE = ApprovalControl.of("Textarea", "Textarea-1761553740099");
+    private static final ApprovalControl DAILY_DETAIL_ATTACHMENT = ApprovalControl.of("File", "File-1761553796412");
+    private static final List<ApprovalControl> DAILY_CONTROLS = List.of(
+            DAILY_CATEGORY, DAILY_COMPANY, DAILY_APPLICANT, DAILY_DATE, DAILY_REGION, DAILY_COST_DEPARTMENT,
+            DAILY_REASON, DAILY_DETAILS, DAILY_DETAIL_EXPENSE_TYPE, DAILY_DETAIL_AMOUNT, DAILY_DETAIL_DATE,
+            DAILY_DETAIL_INVOICE, DAILY_DETAIL_REMARK, DAILY_DETAIL_PURPOSE, DAILY_DETAIL_ATTACHMENT);
+
+    // 客成差旅报销单模板控件
+    private static final ApprovalControl TRAVEL_CATEGORY = ApprovalControl.of("Selector", "item-1503317593875");
+    private static final ApprovalControl TRAVEL_COMPANY = ApprovalControl.of("Selector", "Selector-1763545496437");
+    private static final ApprovalControl TRAVEL_APPLICANT = ApprovalControl.of("Contact", "Contact-1761701492179");
+    private static final ApprovalControl TRAVEL_DATE = ApprovalControl.of("Date", "Date-1761701514091");
+    private static final ApprovalControl TRAVEL_REGION = ApprovalControl.of("Contact", "Contact-1763364650385");
+    private static final ApprovalControl TRAVEL_COST_DEPARTMENT = ApprovalControl.of("Contact", "Contact-1761701600060");
+    private static final ApprovalControl TRAVEL_CUSTOMER = ApprovalControl.of("Text", "Text-1763536985625");
+    private static final ApprovalControl TRAVEL_UNSIGNED_CUSTOMER = ApprovalControl.of("Text", "Text-1761702925585");
+    private static final ApprovalControl TRAVEL_RELATED_APPROVAL = ApprovalControl.of("RelatedApproval", "RelatedApproval-1763534776945");
+    private static final ApprovalControl TRAVEL_RANGE = ApprovalControl.of("DateRange", "DateRange-1761702971122");
+    private static final ApprovalControl TRAVEL_REASON = ApprovalControl.of("Textarea", "Textarea-1763710203925");
+    private static final ApprovalControl TRAVEL_DETAILS = ApprovalControl.of("Table", "item-1503317853434");
+    // 客成差旅报销单明细表格内的控件
+    private static final ApprovalControl TRAVEL_DETAIL_EXPENSE_TYPE = ApprovalControl.of("Selector", "Selector-1761703042707");
+    private static final ApprovalControl TRAVEL_DETAIL_AMOUNT = ApprovalControl.of("Money", "item-1503317989302");
+    private static final ApprovalControl TRAVEL_DETAIL_DATE = ApprovalControl.of("Date", "Date-1761703096139");
+    private static final ApprovalControl TRAVEL_DETAIL_INVOICE = ApprovalControl.of("File", "File-1761703116355");
+    private static final ApprovalControl TRAVEL_DETAIL_REMARK = ApprovalControl.of("Textarea", "item-1503318001306");
+    private static final ApprovalControl TRAVEL_DETAIL_PURPOSE = ApprovalControl.of("Textarea", "Textarea-1761703185541");
+    private static final ApprovalControl TRAVEL_DETAIL_ATTACHMENT = ApprovalControl.of("File", "item-1503385054053");
+    private static final List<ApprovalControl> TRAVEL_CONTROLS = List.of(
+            TRAVEL_CATEGORY, TRAVEL_COMPANY, TRAVEL_APPLICANT, TRAVEL_DATE, TRAVEL_REGION, TRAVEL_COST_DEPARTMENT,
+            TRAVEL_CUSTOMER, TRAVEL_UNSIGNED_CUSTOMER, TRAVEL_RELATED_APPROVAL, TRAVEL_RANGE, TRAVEL_REASON,
+            TRAVEL_DETAILS, TRAVEL_DETAIL_EXPENSE_TYPE, TRAVEL_DETAIL_AMOUNT, TRAVEL_DETAIL_DATE,
+            TRAVEL_DETAIL_INVOICE, TRAVEL_DETAIL_REMARK, TRAVEL_DETAIL_PURPOSE, TRAVEL_DETAIL_ATTACHMENT);
+
+    // 固定审批人ID
+    private static final String FIXED_APPROVER = "XueQi";
+
     @Value("${qywechat.approval.template-id.daily:}")
     private String dailyTemplateId;
 
@@ -40,7 +92,7 @@ public class WeComApprovalService {
     private QyWechatService qyWechatService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private WeComApiClient weComApiClient;
 
     @Autowired
     private DepartmentService departmentService;
@@ -48,6 +100,9 @@ public class WeComApprovalService {
     @Autowired
     private UserDepartmentRelationService userDepartmentRelationService;
 
+    @Autowired
+    private ApprovalTemplateService approvalTemplateService;
+
     /**
      * 在提交审批前获取用户的部门信息作为默认值
      */
@@ -123,52 +178,28 @@ public class WeComApprovalService {
             // 获取access token
             String accessToken = qyWechatService.getAccessTokenForApproval();
 
-            // 根据报销类型构造不同的审批请求
-            WeComApprovalRequest approvalRequest;
+            // 根据报销类型按模板填写不同的审批请求
+            byte[] payload;
             if ("客成差旅报销单".equals(formType)) {
-                approvalRequest = buildTravelApprovalRequest(userId, invoices, totalAmount, mediaIds,
-                        formReimbursementReason, templateId, legalEntity,
-                        region, costDepartment, customerName,
-                        unsignedCustomer, travelDays,
-                        travelStartDate, travelEndDate, travelStartPeriod, travelEndPeriod, relatedApprovalNo);
+                ApprovalTemplate template = approvalTemplateService.getTemplate(templateId, TRAVEL_CONTROLS);
+                payload = ApprovalJsonWriter.write(writer -> writeTravelApproval(writer, template, userId, invoices,
+                        totalAmount, mediaIds, formReimbursementReason, legalEntity,
+                        region, costDepartment, customerName, unsignedCustomer,
+                        travelStartDate, travelEndDate, travelStartPeriod, travelEndPeriod, relatedApprovalNo));
             } else {
-                // 日常报销使用原有的构建方法
-                approvalRequest = buildApprovalRequest(userId, invoices, totalAmount, mediaIds,
-                        formType, formReimbursementReason, templateId,
-                        legalEntity, region, costDepartment);
+                ApprovalTemplate template = approvalTemplateService.getTemplate(templateId, DAILY_CONTROLS);
+                payload = ApprovalJsonWriter.write(writer -> writeApproval(writer, template, userId, invoices,
+                        totalAmount, mediaIds, formType, formReimbursementReason,
+                        legalEntity, region, costDepartment));
             }
 
-            // 调试：打印请求数据
-            ObjectMapper mapper = new ObjectMapper();
-            String requestJson = mapper.writeValueAsString(approvalRequest);
-            log.info("企业微信审批请求数据: {}", requestJson);
-
             // 发送请求到企业微信
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/oa/applyevent?access_token=" + accessToken;
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<WeComApprovalRequest> requestEntity = new HttpEntity<>(approvalRequest, headers);
-
-            ResponseEntity<Map> response = restTemplate.postForEntity(url, requestEntity, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    String spNo = (String) responseBody.get("sp_no");
-                    log.info("企业微信审批提交成功, 审批编号: {}", spNo);
-                    return spNo;
-                } else {
-                    String errmsg = (String) responseBody.get("errmsg");
-                    log.error("企业微信审批提交失败, 错误码: {}, 错误信息: {}", errcode, errmsg);
-                    throw new BusinessException("提交审批失败: " + errmsg);
-                }
-            } else {
-                throw new BusinessException("提交审批请求失败: " + response.getStatusCode());
-            }
+            String spNo = weComApiClient.post("oa/applyevent", accessToken, payload, WeComApplyEventResponse.class).spNo();
+            log.info("企业微信审批提交成功, 审批编号: {}", spNo);
+            return spNo;
+        } catch (WeComApiException e) {
+            log.error("企业微信审批提交失败, 错误码: {}, 错误信息: {}", e.getErrcode(), e.getErrmsg());
+            throw new BusinessException(e.getErrorCode(), "提交审批失败: " + e.getErrmsg(), e);
         } catch (BusinessException e) {
             log.error("提交企业微信审批业务异常", e);
             throw e;
@@ -189,9 +220,9 @@ public class WeComApprovalService {
     }
 
     /**
-     * 构造企业微信审批请求对象
+     * 填写日常报销审批请求
      */
-    private WeComApprovalRequest buildApprovalRequest(String userId, List<InvoiceInfo> invoices, String totalAmount, String mediaIds, String formType, String formReimbursementReason, String templateId, String legalEntity, String region, String costDepartment) {
+    private void writeApproval(ApprovalJsonWriter writer, ApprovalTemplate template, String userId, List<InvoiceInfo> invoices, String totalAmount, String mediaIds, String formType, String formReimbursementReason, String legalEntity, String region, String costDepartment) throws IOException {
         // 如果前端没有传入成本部门，使用用户的默认部门
         if (costDepartment == null || costDepartment.trim().isEmpty()) {
             Map<String, Object> userDeptInfo = getUserDepartmentInfo(userId);
@@ -206,41 +237,17 @@ public class WeComApprovalService {
             log.info("使用用户默认区域: {}", region);
         }
 
-        WeComApprovalRequest request = new WeComApprovalRequest();
-
-        // 基本信息
-        request.setCreator_userid(userId);
-        request.setTemplate_id(templateId);
-        request.setUse_template_approver(0); // 不使用模板审批人
-
-        // 审批人设置
-        List<WeComApprovalRequest.Approver> approvers = new ArrayList<>();
-
-        // 直接上级审批人
-        WeComApprovalRequest.Approver approver1 = new WeComApprovalRequest.Approver();
-        approver1.setAttr(2); // 2-直接上级
-        approver1.setUserid(Arrays.asList(userId));
-        approvers.add(approver1);
-
-        // 固定审批人
-        WeComApprovalRequest.Approver approver2 = new WeComApprovalRequest.Approver();
-        approver2.setAttr(1); // 1-固定审批人
-        approver2.setUserid(Arrays.asList("XueQi")); // 固定审批人ID
-        approvers.add(approver2);
-
-        request.setApprover(approvers);
+        // 基本信息和审批人：直接上级 + 固定审批人，申请时通知审批人
+        writer.begin(userId, template, FIXED_APPROVER);
 
-        // 通知人设置
-        request.setNotifyer(Arrays.asList(userId));
-        request.setNotify_type(1); // 1-申请时通知审批人
+        // 使用实际用户姓名
+        String actualUserName = getActualUserName(userId);
 
-        // 构造申请数据
-        request.setApply_data(buildApplyData(userId, invoices, totalAmount, mediaIds, formType, formReimbursementReason, legalEntity, region, costDepartment));
+        // 申请数据
+        writeApplyData(writer, userId, actualUserName, invoices, mediaIds, formType, formReimbursementReason, legalEntity, region, costDepartment);
 
         // 摘要信息
-        request.setSummary_list(buildSummaryList(userId, invoices, totalAmount, legalEntity, region, costDepartment));
-
-        return request;
+        writer.end(buildSummaryList(actualUserName, invoices, totalAmount, legalEntity, region, costDepartment));
     }
 
     private String buildDescriptionValue(String formType, String reason, List<InvoiceInfo> invoices) {
@@ -253,21 +260,10 @@ public class WeComApprovalService {
 
 
     /**
-     * 构造申请数据
+     * 填写申请数据
      */
-    private WeComApprovalRequest.ApplyData buildApplyData(String userId, List<InvoiceInfo> invoices, String totalAmount, String mediaIds, String formType, String formReimbursementReason, String legalEntity, String region, String costDepartment) {
-        WeComApprovalRequest.ApplyData applyData = new WeComApprovalRequest.ApplyData();
-        List<WeComApprovalRequest.Content> contents = new ArrayList<>();
-
+    private void writeApplyData(ApprovalJsonWriter writer, String userId, String actualUserName, List<InvoiceInfo> invoices, String mediaIds, String formType, String formReimbursementReason, String legalEntity, String region, String costDepartment) throws IOException {
         // 报销类型选择器 - 日常报销单
-        WeComApprovalRequest.Content typeSelector = new WeComApprovalRequest.Content();
-        typeSelector.setControl("Selector");
-        typeSelector.setId("item-1503317593875");
-        WeComApprovalRequest.SelectorValue typeValue = new WeComApprovalRequest.SelectorValue();
-        WeComApprovalRequest.Selector typeSelectorObj = new WeComApprovalRequest.Selector();
-        typeSelectorObj.setType("single");
-        WeComApprovalRequest.Option typeOption = new WeComApprovalRequest.Option();
-
         // 根据表单类型设置key和文本
         String typeKey, typeText;
         if ("客成差旅报销单".equals(formType)) {
@@ -277,371 +273,157 @@ public class WeComApprovalService {
             typeKey = "option-127158624"; // 日常报销单
             typeText = "日常报销单";
         }
-        typeOption.setKey(typeKey);
-
-        WeComApprovalRequest.TextValue typeTextValue = new WeComApprovalRequest.TextValue();
-        typeTextValue.setText(typeText);
-        typeTextValue.setLang("zh_CN");
-        typeOption.setValue(Arrays.asList(typeTextValue));
-        typeSelectorObj.setOptions(Arrays.asList(typeOption));
-        typeValue.setSelector(typeSelectorObj);
-        typeSelector.setValue(typeValue);
-        contents.add(typeSelector);
+        writer.selector(DAILY_CATEGORY, typeKey, typeText);
 
         // 公司选择器
-        WeComApprovalRequest.Content companySelector = new WeComApprovalRequest.Content();
-        companySelector.setControl("Selector");
-        companySelector.setId("Selector-1761551540216");
-        WeComApprovalRequest.SelectorValue companyValue = new WeComApprovalRequest.SelectorValue();
-        WeComApprovalRequest.Selector companySelectorObj = new WeComApprovalRequest.Selector();
-        companySelectorObj.setType("single");
-        WeComApprovalRequest.Option companyOption = new WeComApprovalRequest.Option();
-        companyOption.setKey("option-1761551540216");
-        WeComApprovalRequest.TextValue companyText = new WeComApprovalRequest.TextValue();
-        companyText.setText(legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）");
-        companyText.setLang("zh_CN");
-        companyOption.setValue(Arrays.asList(companyText));
-        companySelectorObj.setOptions(Arrays.asList(companyOption));
-        companyValue.setSelector(companySelectorObj);
-        companySelector.setValue(companyValue);
-        contents.add(companySelector);
-
-        // 联系人控件
-        WeComApprovalRequest.Content contact = new WeComApprovalRequest.Content();
-        contact.setControl("Contact");
-        contact.setId("Contact-1761551660569");
-        WeComApprovalRequest.ContactValue contactValue = new WeComApprovalRequest.ContactValue();
-        WeComApprovalRequest.Member member = new WeComApprovalRequest.Member();
-        member.setUserid(userId);
-        // 使用实际用户姓名
-        String actualUserName = getActualUserName(userId); // 获取实际用户姓名
-        member.setName(actualUserName);
-        // 部门模式的Contact控件不需要设置partyid
-        member.setPartyid(null);
-        contactValue.setMembers(Arrays.asList(member));
-        contact.setValue(contactValue);
-        contents.add(contact);
+        writer.selector(DAILY_COMPANY, "option-1761551540216",
+                legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）");
+
+        // 联系人控件（成员模式，不设置partyid）
+        writer.member(DAILY_APPLICANT, userId, actualUserName);
 
         // 日期控件
-        WeComApprovalRequest.Content date = new WeComApprovalRequest.Content();
-        date.setControl("Date");
-        date.setId("Date-1761551710747");
-        WeComApprovalRequest.DateValue dateValue = new WeComApprovalRequest.DateValue();
-        WeComApprovalRequest.Date dateObj = new WeComApprovalRequest.Date();
-        dateObj.setType("day");
-        dateObj.setS_timestamp(String.valueOf(System.currentTimeMillis() / 1000));
-        dateValue.setDate(dateObj);
-        date.setValue(dateValue);
-        contents.add(date);
+        writer.date(DAILY_DATE, String.valueOf(System.currentTimeMillis() / 1000));
 
         // 区域控件（Contact-1763103056039）- 部门模式的Contact控件，用于选择区域
-        WeComApprovalRequest.Content regionContact = new WeComApprovalRequest.Content();
-        regionContact.setControl("Contact");
-        regionContact.setId("Contact-1763103056039");
-        WeComApprovalRequest.ContactValue regionValue = new WeComApprovalRequest.ContactValue();
-
         // 根据区域名称找到对应的区域部门ID
         String regionDepartmentId = findRegionDepartmentId(region);
         if (regionDepartmentId != null && !regionDepartmentId.isEmpty()) {
-            WeComApprovalRequest.Member regionMember = new WeComApprovalRequest.Member();
-            // 对于部门模式的Contact控件，userid 设置为空字符串
-            // regionMember.setUserid("");  // 空字符串
-            // 设置部门ID列表
-            regionMember.setPartyid(Arrays.asList(regionDepartmentId));
-            // 必须设置部门名称，否则详情中显示为空
+            // 部门模式只设置部门ID列表，必须设置部门名称，否则详情中显示为空
             String regionDeptName = getDepartmentNameById(regionDepartmentId);
-            regionMember.setName(regionDeptName);
-            regionValue.setMembers(Arrays.asList(regionMember));
+            writer.department(DAILY_REGION, regionDepartmentId, regionDeptName);
             log.info("设置区域控件，区域: {}, 部门ID: {}, 部门名称: {}", region, regionDepartmentId, regionDeptName);
         } else {
-            regionValue.setMembers(new ArrayList<>());
+            writer.department(DAILY_REGION, null, null);
             log.warn("未找到区域对应的部门ID: {}", region);
         }
-        regionContact.setValue(regionValue);
-        contents.add(regionContact);
 
         // 费用承担部门控件
-        WeComApprovalRequest.Content costDeptContact = new WeComApprovalRequest.Content();
-        costDeptContact.setControl("Contact");
-        costDeptContact.setId("Contact-1763102909388");
-        WeComApprovalRequest.ContactValue costDeptValue = new WeComApprovalRequest.ContactValue();
-
+        String costDeptId = null;
+        String costDeptName = null;
         if (costDepartment != null && !costDepartment.trim().isEmpty()) {
             try {
                 // 验证部门ID格式
                 String deptId = costDepartment.trim();
                 if (isValidDepartmentId(deptId)) {
-                    WeComApprovalRequest.Member costDeptMember = new WeComApprovalRequest.Member();
-
-                    // 对于部门模式的Contact控件，userid 设置为空字符串
-                    // costDeptMember.setUserid("");  // 空字符串
-                    // 设置部门ID列表
-                    costDeptMember.setPartyid(Arrays.asList(deptId));
                     // 必须设置部门名称
-                    String deptName = getDepartmentNameById(deptId);
-                    costDeptMember.setName(deptName);
-
-                    costDeptValue.setMembers(Arrays.asList(costDeptMember));
-
-                    log.info("设置费用承担部门，部门ID: {}", deptId, deptName);
+                    costDeptName = getDepartmentNameById(deptId);
+                    costDeptId = deptId;
+                    log.info("设置费用承担部门，部门ID: {}", deptId, costDeptName);
                 } else {
                     log.warn("无效的部门ID格式: {}", costDepartment);
-                    costDeptValue.setMembers(new ArrayList<>());
                 }
             } catch (Exception e) {
                 log.error("处理部门ID异常: {}", costDepartment, e);
-                costDeptValue.setMembers(new ArrayList<>());
             }
         } else {
             log.warn("费用承担部门为空");
-            costDeptValue.setMembers(new ArrayList<>());
         }
-        costDeptContact.setValue(costDeptValue);
-        contents.add(costDeptContact);
+        writer.department(DAILY_COST_DEPARTMENT, costDeptId, costDeptName);
 
         // 描述文本框
-        WeComApprovalRequest.Content description = new WeComApprovalRequest.Content();
-        description.setControl("Textarea");
-        description.setId("Textarea-1761552419959");
-        WeComApprovalRequest.TextareaValue descValue = new WeComApprovalRequest.TextareaValue();
-
         // 使用用户输入的报销事由，如果没有输入则使用默认文本
         String finalReasonText = (formReimbursementReason != null && !formReimbursementReason.trim().isEmpty()) ? formReimbursementReason : "发票报销申请（" + determineExpenseType(invoices) + "）";
-        descValue.setText(finalReasonText);
-        description.setValue(descValue);
-        contents.add(description);
+        writer.text(DAILY_REASON, finalReasonText);
 
         // 表格控件（发票详情）
-        WeComApprovalRequest.Content table = new WeComApprovalRequest.Content();
-        table.setControl("Table");
-        table.setId("item-1503317853434");
-        WeComApprovalRequest.TableValue tableValue = new WeComApprovalRequest.TableValue();
-        tableValue.setChildren(buildInvoiceTableData(invoices, mediaIds));
-        table.setValue(tableValue);
-        contents.add(table);
-
-        applyData.setContents(contents);
-        return applyData;
+        writer.beginTable(DAILY_DETAILS);
+        writeInvoiceTableData(writer, invoices, mediaIds);
+        writer.endTable();
     }
 
 
 
     /**
-     * 构造客成差旅报销审批请求
+     * 填写客成差旅报销审批请求
      */
-    private WeComApprovalRequest buildTravelApprovalRequest(String userId, List<InvoiceInfo> invoices,
-                                                            String totalAmount, String mediaIds,
-                                                            String formReimbursementReason, String templateId,
-                                                            String legalEntity, String region, String costDepartment,
-                                                            String customerName, String unsignedCustomer,
-                                                            String travelDays, String travelStartDate,
-                                                            String travelEndDate, String travelStartPeriod,
-                                                            String travelEndPeriod, String relatedApprovalNo) {
-        WeComApprovalRequest request = new WeComApprovalRequest();
-
-        // 基本信息
-        request.setCreator_userid(userId);
-        request.setTemplate_id(templateId);
-        request.setUse_template_approver(0);
-
-        // 审批人设置 - 可以根据需要调整
-        List<WeComApprovalRequest.Approver> approvers = new ArrayList<>();
-
-        WeComApprovalRequest.Approver approver1 = new WeComApprovalRequest.Approver();
-        approver1.setAttr(2); // 直接上级
-        approver1.setUserid(Arrays.asList(userId));
-        approvers.add(approver1);
-
-        WeComApprovalRequest.Approver approver2 = new WeComApprovalRequest.Approver();
-        approver2.setAttr(1); // 固定审批人
-        approver2.setUserid(Arrays.asList("XueQi")); // 固定审批人ID
-        approvers.add(approver2);
-
-        request.setApprover(approvers);
-        request.setNotifyer(Arrays.asList(userId));
-        request.setNotify_type(1);
-
-        // 构造申请数据 - 使用客成差旅特有的字段
-        request.setApply_data(buildTravelApplyData(userId, invoices, totalAmount, mediaIds,
+    private void writeTravelApproval(ApprovalJsonWriter writer, ApprovalTemplate template,
+                                     String userId, List<InvoiceInfo> invoices,
+                                     String totalAmount, String mediaIds,
+                                     String formReimbursementReason,
+                                     String legalEntity, String region, String costDepartment,
+                                     String customerName, String unsignedCustomer,
+                                     String travelStartDate, String travelEndDate,
+                                     String travelStartPeriod, String travelEndPeriod,
+                                     String relatedApprovalNo) throws IOException {
+        // 基本信息和审批人：直接上级 + 固定审批人
+        writer.begin(userId, template, FIXED_APPROVER);
+
+        String actualUserName = getActualUserName(userId);
+
+        // 申请数据 - 使用客成差旅特有的字段
+        writeTravelApplyData(writer, userId, actualUserName, invoices, mediaIds,
                 formReimbursementReason, legalEntity, region,
-                costDepartment, customerName, unsignedCustomer, travelDays, travelStartDate, travelEndDate,
-                travelStartPeriod, travelEndPeriod, relatedApprovalNo));
+                costDepartment, customerName, unsignedCustomer, travelStartDate, travelEndDate,
+                travelStartPeriod, travelEndPeriod, relatedApprovalNo);
 
         // 摘要信息
-        request.setSummary_list(buildTravelSummaryList(userId, invoices, totalAmount, legalEntity,
-                region, costDepartment, customerName, travelDays, travelStartDate, travelEndDate,
+        writer.end(buildTravelSummaryList(actualUserName, invoices, totalAmount, legalEntity,
+                region, costDepartment, customerName, travelStartDate, travelEndDate,
                 travelStartPeriod, travelEndPeriod));
-
-        return request;
     }
 
     /**
-     * 构造客成差旅报销申请数据
+     * 填写客成差旅报销申请数据
      */
-    private WeComApprovalRequest.ApplyData buildTravelApplyData(String userId, List<InvoiceInfo> invoices,
-                                                                String totalAmount, String mediaIds,
-                                                                String formReimbursementReason, String legalEntity,
-                                                                String region, String costDepartment,
-                                                                String customerName, String unsignedCustomer,
-                                                                String travelDays, String travelStartDate,
-                                                                String travelEndDate, String travelStartPeriod,
-                                                                String travelEndPeriod, String relatedApprovalNo) {
-        WeComApprovalRequest.ApplyData applyData = new WeComApprovalRequest.ApplyData();
-        List<WeComApprovalRequest.Content> contents = new ArrayList<>();
-
+    private void writeTravelApplyData(ApprovalJsonWriter writer, String userId, String actualUserName,
+                                      List<InvoiceInfo> invoices, String mediaIds,
+                                      String formReimbursementReason, String legalEntity,
+                                      String region, String costDepartment,
+                                      String customerName, String unsignedCustomer,
+                                      String travelStartDate, String travelEndDate,
+                                      String travelStartPeriod, String travelEndPeriod,
+                                      String relatedApprovalNo) throws IOException {
         // 1. 报销类型选择器 - 固定为客成差旅报销
-        WeComApprovalRequest.Content typeSelector = new WeComApprovalRequest.Content();
-        typeSelector.setControl("Selector");
-        typeSelector.setId("item-1503317593875");
-        WeComApprovalRequest.SelectorValue typeValue = new WeComApprovalRequest.SelectorValue();
-        WeComApprovalRequest.Selector typeSelectorObj = new WeComApprovalRequest.Selector();
-        typeSelectorObj.setType("single");
-        WeComApprovalRequest.Option typeOption = new WeComApprovalRequest.Option();
-        typeOption.setKey("option-127158625"); // 客成差旅报销的key
-        WeComApprovalRequest.TextValue typeTextValue = new WeComApprovalRequest.TextValue();
-        typeTextValue.setText("客成差旅报销");
-        typeTextValue.setLang("zh_CN");
-        typeOption.setValue(Arrays.asList(typeTextValue));
-        typeSelectorObj.setOptions(Arrays.asList(typeOption));
-        typeValue.setSelector(typeSelectorObj);
-        typeSelector.setValue(typeValue);
-        contents.add(typeSelector);
+        writer.selector(TRAVEL_CATEGORY, "option-127158625", "客成差旅报销");
 
         // 2. 法人实体选择器
-        WeComApprovalRequest.Content companySelector = new WeComApprovalRequest.Content();
-        companySelector.setControl("Selector");
-        companySelector.setId("Selector-1763545496437");
-        WeComApprovalRequest.SelectorValue companyValue = new WeComApprovalRequest.SelectorValue();
-        WeComApprovalRequest.Selector companySelectorObj = new WeComApprovalRequest.Selector();
-        companySelectorObj.setType("single");
-        WeComApprovalRequest.Option companyOption = new WeComApprovalRequest.Option();
-        companyOption.setKey("option-1763545496437");
-        WeComApprovalRequest.TextValue companyText = new WeComApprovalRequest.TextValue();
-        companyText.setText(legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）");
-        companyText.setLang("zh_CN");
-        companyOption.setValue(Arrays.asList(companyText));
-        companySelectorObj.setOptions(Arrays.asList(companyOption));
-        companyValue.setSelector(companySelectorObj);
-        companySelector.setValue(companyValue);
-        contents.add(companySelector);
+        writer.selector(TRAVEL_COMPANY, "option-1763545496437",
+                legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）");
 
         // 3. 提交人员控件
-        WeComApprovalRequest.Content contact = new WeComApprovalRequest.Content();
-        contact.setControl("Contact");
-        contact.setId("Contact-1761701492179");
-        WeComApprovalRequest.ContactValue contactValue = new WeComApprovalRequest.ContactValue();
-        WeComApprovalRequest.Member member = new WeComApprovalRequest.Member();
-        member.setUserid(userId);
-        // 需要获取实际提交人的姓名，这里需要调用企业微信API获取用户信息
-        String actualUserName = getActualUserName(userId);
-        member.setName(actualUserName);
-        contactValue.setMembers(Arrays.asList(member));
-        contact.setValue(contactValue);
-        contents.add(contact);
+        writer.member(TRAVEL_APPLICANT, userId, actualUserName);
 
         // 4. 报销日期控件
-        WeComApprovalRequest.Content date = new WeComApprovalRequest.Content();
-        date.setControl("Date");
-        date.setId("Date-1761701514091");
-        WeComApprovalRequest.DateValue dateValue = new WeComApprovalRequest.DateValue();
-        WeComApprovalRequest.Date dateObj = new WeComApprovalRequest.Date();
-        dateObj.setType("day");
-        dateObj.setS_timestamp(String.valueOf(System.currentTimeMillis() / 1000));
-        dateValue.setDate(dateObj);
-        date.setValue(dateValue);
-        contents.add(date);
+        writer.date(TRAVEL_DATE, String.valueOf(System.currentTimeMillis() / 1000));
 
         // 5. 区域控件
-        WeComApprovalRequest.Content regionContact = new WeComApprovalRequest.Content();
-        regionContact.setControl("Contact");
-        regionContact.setId("Contact-1763364650385");
-        WeComApprovalRequest.ContactValue regionValue = new WeComApprovalRequest.ContactValue();
-
         String regionDepartmentId = findRegionDepartmentId(region);
         if (regionDepartmentId != null && !regionDepartmentId.isEmpty()) {
-            WeComApprovalRequest.Member regionMember = new WeComApprovalRequest.Member();
-            regionMember.setPartyid(Arrays.asList(regionDepartmentId));
-            String regionDeptName = getDepartmentNameById(regionDepartmentId);
-            regionMember.setName(regionDeptName);
-            regionValue.setMembers(Arrays.asList(regionMember));
+            writer.department(TRAVEL_REGION, regionDepartmentId, getDepartmentNameById(regionDepartmentId));
         } else {
-            regionValue.setMembers(new ArrayList<>());
+            writer.department(TRAVEL_REGION, null, null);
         }
-        regionContact.setValue(regionValue);
-        contents.add(regionContact);
 
         // 6. 费用承担部门控件
-        WeComApprovalRequest.Content costDeptContact = new WeComApprovalRequest.Content();
-        costDeptContact.setControl("Contact");
-        costDeptContact.setId("Contact-1761701600060");
-        WeComApprovalRequest.ContactValue costDeptValue = new WeComApprovalRequest.ContactValue();
-
         if (costDepartment != null && !costDepartment.trim().isEmpty() && isValidDepartmentId(costDepartment)) {
-            WeComApprovalRequest.Member costDeptMember = new WeComApprovalRequest.Member();
-            costDeptMember.setPartyid(Arrays.asList(costDepartment.trim()));
-            String deptName = getDepartmentNameById(costDepartment);
-            costDeptMember.setName(deptName);
-            costDeptValue.setMembers(Arrays.asList(costDeptMember));
+            writer.department(TRAVEL_COST_DEPARTMENT, costDepartment.trim(), getDepartmentNameById(costDepartment));
         } else {
-            costDeptValue.setMembers(new ArrayList<>());
+            writer.department(TRAVEL_COST_DEPARTMENT, null, null);
         }
-        costDeptContact.setValue(costDeptValue);
-        contents.add(costDeptContact);
 
         // 7. 客户名称文本框 - 客成差旅特有字段
         if (customerName != null && !customerName.trim().isEmpty()) {
-            WeComApprovalRequest.Content customerNameInput = new WeComApprovalRequest.Content();
-            customerNameInput.setControl("Text");
-            customerNameInput.setId("Text-1763536985625");
-            WeComApprovalRequest.TextareaValue customerValue = new WeComApprovalRequest.TextareaValue();
-            customerValue.setText(customerName.trim());
-            customerNameInput.setValue(customerValue);
-            contents.add(customerNameInput);
+            writer.text(TRAVEL_CUSTOMER, customerName.trim());
         }
 
         // 8. 未签单客户文本框 - 客成差旅特有字段
         if (unsignedCustomer != null && !unsignedCustomer.trim().isEmpty()) {
-            WeComApprovalRequest.Content unsignedCustomerInput = new WeComApprovalRequest.Content();
-            unsignedCustomerInput.setControl("Text");
-            unsignedCustomerInput.setId("Text-1761702925585");
-            WeComApprovalRequest.TextareaValue unsignedCustomerValue = new WeComApprovalRequest.TextareaValue();
-            unsignedCustomerValue.setText(unsignedCustomer.trim());
-            unsignedCustomerInput.setValue(unsignedCustomerValue);
-            contents.add(unsignedCustomerInput);
+            writer.text(TRAVEL_UNSIGNED_CUSTOMER, unsignedCustomer.trim());
         }
 
-        // 9. 关联申请单控件 - 新增
+        // 9. 关联申请单控件
         if (relatedApprovalNo != null && !relatedApprovalNo.trim().isEmpty()) {
-            WeComApprovalRequest.Content relatedApprovalContent = new WeComApprovalRequest.Content();
-            relatedApprovalContent.setControl("RelatedApproval");
-            relatedApprovalContent.setId("RelatedApproval-1763534776945");
-
-            WeComApprovalRequest.RelatedApprovalValue relatedApprovalValue = new WeComApprovalRequest.RelatedApprovalValue();
-            WeComApprovalRequest.RelatedApproval relatedApproval = new WeComApprovalRequest.RelatedApproval();
-            relatedApproval.setSp_no(relatedApprovalNo.trim());
-            relatedApprovalValue.setRelated_approval(Arrays.asList(relatedApproval));
-
-            relatedApprovalContent.setValue(relatedApprovalValue);
-            contents.add(relatedApprovalContent);
-
+            writer.relatedApproval(TRAVEL_RELATED_APPROVAL, relatedApprovalNo.trim());
             log.info("设置关联审批单，审批编号: {}", relatedApprovalNo);
         }
 
-        // 10. 出差天数日期范围 - 客成差旅特有字段
+        // 10. 出差天数日期范围 - 客成差旅特有字段，类型为半天，支持上午/下午
         if (travelStartDate != null && !travelStartDate.trim().isEmpty() &&
                 travelEndDate != null && !travelEndDate.trim().isEmpty()) {
 
-            WeComApprovalRequest.Content travelDaysRange = new WeComApprovalRequest.Content();
-            travelDaysRange.setControl("DateRange");
-            travelDaysRange.setId("DateRange-1761702971122");
-
-            // 创建 DateRangeValue 对象
-            WeComApprovalRequest.DateRangeValue dateRangeValue = new WeComApprovalRequest.DateRangeValue();
-            // 创建 DateRange 对象并设置属性
-            WeComApprovalRequest.DateRange dateRange = new WeComApprovalRequest.DateRange();
-            dateRange.setType("halfday"); // 设置为半天类型，支持上午/下午
-
             // 转换日期时间为时间戳
+            long startTimestamp, endTimestamp;
             try {
                 DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
@@ -649,8 +431,6 @@ public class WeComApprovalService {
                 LocalDate endDate = LocalDate.parse(travelEndDate, formatter);
 
                 // 根据官方文档，halfday 类型的时间戳只能是 00:00:00 或 12:00:00
-                long startTimestamp, endTimestamp;
-
                 // 开始时间：如果是上午就是 00:00:00，下午就是 12:00:00
                 if ("上午".equals(travelStartPeriod)) {
                     startTimestamp = startDate.atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
@@ -665,68 +445,41 @@ public class WeComApprovalService {
                     endTimestamp = endDate.atTime(12, 0, 0).atZone(ZoneId.systemDefault()).toEpochSecond();
                 }
 
-                // 计算时长（秒）
-                long duration = endTimestamp - startTimestamp;
-
-                // 使用官方文档要求的参数名
-                dateRange.setNew_begin(String.valueOf(startTimestamp));
-                dateRange.setNew_end(String.valueOf(endTimestamp));
-                dateRange.setNew_duration(duration);
-
                 log.info("设置出差日期范围: {} {} 至 {} {}, new_begin: {}, new_end: {}, new_duration: {}秒",
                         travelStartDate, travelStartPeriod, travelEndDate, travelEndPeriod,
-                        startTimestamp, endTimestamp, duration);
+                        startTimestamp, endTimestamp, endTimestamp - startTimestamp);
 
             } catch (Exception e) {
                 log.warn("日期转换失败，使用当前时间作为默认值", e);
-                // 使用当前时间作为默认值
-                long currentTime = System.currentTimeMillis() / 1000;
-                dateRange.setNew_begin(String.valueOf(currentTime - 43200)); // 12小时前
-                dateRange.setNew_end(String.valueOf(currentTime)); // 当前时间
-                dateRange.setNew_duration(43200L); // 12小时
+                // 使用当前时间作为默认值：12小时前至当前时间
+                endTimestamp = System.currentTimeMillis() / 1000;
+                startTimestamp = endTimestamp - 43200;
             }
 
-            // 设置其他必要属性
-            dateRangeValue.setDate_range(dateRange);
-            travelDaysRange.setValue(dateRangeValue);
-            contents.add(travelDaysRange);
-        }else {
+            // 时长（秒）
+            writer.dateRange(TRAVEL_RANGE, String.valueOf(startTimestamp), String.valueOf(endTimestamp),
+                    endTimestamp - startTimestamp);
+        } else {
             log.warn("出差日期信息不完整，跳过设置DateRange控件");
         }
 
         // 11. 报销事由文本框 - （客成差旅专用）
-        WeComApprovalRequest.Content travelReasonInput = new WeComApprovalRequest.Content();
-        travelReasonInput.setControl("Textarea");
-        travelReasonInput.setId("Textarea-1763710203925"); // 使用模板中的控件ID
-        WeComApprovalRequest.TextareaValue travelReasonValue = new WeComApprovalRequest.TextareaValue();
-
         // 使用用户输入的报销事由，如果没有输入则使用默认文本
         String finalTravelReason = (formReimbursementReason != null && !formReimbursementReason.trim().isEmpty())
                 ? formReimbursementReason
                 : "差旅费用报销（" + determineExpenseType(invoices) + "）";
-
-        travelReasonValue.setText(finalTravelReason);
-        travelReasonInput.setValue(travelReasonValue);
-        contents.add(travelReasonInput);
+        writer.text(TRAVEL_REASON, finalTravelReason);
 
         // 12. 表格控件（报销明细）- 使用客成差旅特有的费用类型
-        WeComApprovalRequest.Content table = new WeComApprovalRequest.Content();
-        table.setControl("Table");
-        table.setId("item-1503317853434");
-        WeComApprovalRequest.TableValue tableValue = new WeComApprovalRequest.TableValue();
-        tableValue.setChildren(buildTravelInvoiceTableData(invoices, mediaIds));
-        table.setValue(tableValue);
-        contents.add(table);
-
-        applyData.setContents(contents);
-        return applyData;
+        writer.beginTable(TRAVEL_DETAILS);
+        writeTravelInvoiceTableData(writer, invoices, mediaIds);
+        writer.endTable();
     }
 
     /**
-     * 构造客成差旅报销发票表格数据
+     * 填写客成差旅报销发票明细
      */
-    private List<WeComApprovalRequest.Child> buildTravelInvoiceTableData(List<InvoiceInfo> invoices, String mediaIds) {
-        List<WeComApprovalRequest.Child> children = new ArrayList<>();
+    private void writeTravelInvoiceTableData(ApprovalJsonWriter writer, List<InvoiceInfo> invoices, String mediaIds) throws IOException {
         String[] fileIdArray = parseMediaIds(mediaIds, invoices.size());
 
         // 添加调试日志
@@ -744,53 +497,21 @@ public class WeComApprovalService {
             InvoiceInfo invoice = invoices.get(i);
             String fileId = i < fileIdArray.length ? fileIdArray[i] : null;
 
-            WeComApprovalRequest.Child child = new WeComApprovalRequest.Child();
-            List<WeComApprovalRequest.ListItem> listItems = new ArrayList<>();
-
-            // 1. 费用类型选择器
-            WeComApprovalRequest.ListItem typeItem = new WeComApprovalRequest.ListItem();
-            typeItem.setControl("Selector");
-            typeItem.setId("Selector-1761703042707");
-            WeComApprovalRequest.SelectorValue typeValue = new WeComApprovalRequest.SelectorValue();
-            WeComApprovalRequest.Selector selector = new WeComApprovalRequest.Selector();
-            selector.setType("single");
-            WeComApprovalRequest.Option option = new WeComApprovalRequest.Option();
-
-            // 使用客成差旅专用的费用类型映射方法
-            String expenseTypeKey = mapTravelExpenseTypeToKey(invoice.getReimbursementType(), invoice.getSubReimbursementType());
-            option.setKey(expenseTypeKey);
-
-            WeComApprovalRequest.TextValue textValue = new WeComApprovalRequest.TextValue();
-
-            String displayText = buildExpenseTypeDisplayText(invoice.getReimbursementType(), invoice.getSubReimbursementType());
-            textValue.setText(displayText);
-            textValue.setLang("zh_CN");
-            option.setValue(Arrays.asList(textValue));
-            selector.setOptions(Arrays.asList(option));
-            typeValue.setSelector(selector);
-            typeItem.setValue(typeValue);
-            listItems.add(typeItem);
+            writer.beginRow();
+
+            // 1. 费用类型选择器，使用客成差旅专用的费用类型映射方法
+            writer.selector(TRAVEL_DETAIL_EXPENSE_TYPE,
+                    mapTravelExpenseTypeToKey(invoice.getReimbursementType(), invoice.getSubReimbursementType()),
+                    buildExpenseTypeDisplayText(invoice.getReimbursementType(), invoice.getSubReimbursementType()));
 
             // 2. 金额控件
-            WeComApprovalRequest.ListItem moneyItem = new WeComApprovalRequest.ListItem();
-            moneyItem.setControl("Money");
-            moneyItem.setId("item-1503317989302");
-            WeComApprovalRequest.MoneyValue moneyValue = new WeComApprovalRequest.MoneyValue();
             String amountStr = invoice.getTotalAmount();
             if (amountStr != null) {
                 amountStr = amountStr.replace("元", "").replace(" ", "").trim();
             }
-            moneyValue.setNew_money(amountStr);
-            moneyItem.setValue(moneyValue);
-            listItems.add(moneyItem);
+            writer.money(TRAVEL_DETAIL_AMOUNT, amountStr);
 
             // 3. 日期控件
-            WeComApprovalRequest.ListItem dateItem = new WeComApprovalRequest.ListItem();
-            dateItem.setControl("Date");
-            dateItem.setId("Date-1761703096139");
-            WeComApprovalRequest.DateValue dateValue = new WeComApprovalRequest.DateValue();
-            WeComApprovalRequest.Date date = new WeComApprovalRequest.Date();
-            date.setType("day");
             String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
             if (invoice.getInvoiceDate() != null && !invoice.getInvoiceDate().isEmpty()) {
                 try {
@@ -800,81 +521,39 @@ public class WeComApprovalService {
                     log.warn("解析发票日期失败，使用当前时间: {}", invoice.getInvoiceDate());
                 }
             }
-            date.setS_timestamp(timestamp);
-            dateValue.setDate(date);
-            dateItem.setValue(dateValue);
-            listItems.add(dateItem);
+            writer.date(TRAVEL_DETAIL_DATE, timestamp);
 
             // 4. 文件控件（发票）
-            WeComApprovalRequest.ListItem fileItem = new WeComApprovalRequest.ListItem();
-            fileItem.setControl("File");
-            fileItem.setId("File-1761703116355");
-            WeComApprovalRequest.FileValue fileValue = new WeComApprovalRequest.FileValue();
-            List<WeComApprovalRequest.File> files = new ArrayList<>();
-            if (fileId != null && !fileId.trim().isEmpty()) {
-                WeComApprovalRequest.File file = new WeComApprovalRequest.File();
-                file.setFile_id(fileId.trim());
-                files.add(file);
-            }
-            fileValue.setFiles(files);
-            fileItem.setValue(fileValue);
-            listItems.add(fileItem);
+            writer.file(TRAVEL_DETAIL_INVOICE, fileId != null && !fileId.trim().isEmpty() ? fileId.trim() : null);
 
             // 5. 其他说明文本框
-            WeComApprovalRequest.ListItem descItem = new WeComApprovalRequest.ListItem();
-            descItem.setControl("Textarea");
-            descItem.setId("item-1503318001306");
-            WeComApprovalRequest.TextareaValue descValue = new WeComApprovalRequest.TextareaValue();
             String descText = "发票号码：" + (invoice.getInvoiceNumber() != null ? invoice.getInvoiceNumber() : "") +
                     "，销售方：" + (invoice.getSellerName() != null ? invoice.getSellerName() : "") +
                     (invoice.getRemark() != null && !invoice.getRemark().isEmpty() ? "，备注：" + invoice.getRemark() : "");
-            descValue.setText(descText);
-            descItem.setValue(descValue);
-            listItems.add(descItem);
+            writer.text(TRAVEL_DETAIL_REMARK, descText);
 
             // 6. 消费事由文本框
-            WeComApprovalRequest.ListItem expenseDescItem = new WeComApprovalRequest.ListItem();
-            expenseDescItem.setControl("Textarea");
-            expenseDescItem.setId("Textarea-1761703185541");
-            WeComApprovalRequest.TextareaValue expenseDescValue = new WeComApprovalRequest.TextareaValue();
             String expenseDesc = invoice.getConsumptionReason() != null ? invoice.getConsumptionReason() :
                     (invoice.getReimbursementReason() != null ? invoice.getReimbursementReason() : "差旅费用报销");
-            expenseDescValue.setText(expenseDesc);
-            expenseDescItem.setValue(expenseDescValue);
-            listItems.add(expenseDescItem);
+            writer.text(TRAVEL_DETAIL_PURPOSE, expenseDesc);
 
             // 7. 附件文件控件
-            WeComApprovalRequest.ListItem attachmentFileItem = new WeComApprovalRequest.ListItem();
-            attachmentFileItem.setControl("File");
-            attachmentFileItem.setId("item-1503385054053");
-            WeComApprovalRequest.FileValue attachmentFileValue = new WeComApprovalRequest.FileValue();
-            attachmentFileValue.setFiles(new ArrayList<>());
-            attachmentFileItem.setValue(attachmentFileValue);
-            listItems.add(attachmentFileItem);
-
-            child.setList(listItems);
-            children.add(child);
-        }
+            writer.file(TRAVEL_DETAIL_ATTACHMENT, null);
 
-        return children;
+            writer.endRow();
+        }
     }
 
     /**
      * 构造客成差旅报销摘要信息
      */
-    private List<WeComApprovalRequest.Summary> buildTravelSummaryList(String userId, List<InvoiceInfo> invoices,
-                                                                      String totalAmount, String legalEntity,
-                                                                      String region, String costDepartment,
-                                                                      String customerName, String travelDays,
-                                                                      String travelStartDate, String travelEndDate,
-                                                                      String travelStartPeriod, String travelEndPeriod) {
-        List<WeComApprovalRequest.Summary> summaries = new ArrayList<>();
-
+    private String[] buildTravelSummaryList(String actualUserName, List<InvoiceInfo> invoices,
+                                            String totalAmount, String legalEntity,
+                                            String region, String costDepartment,
+                                            String customerName,
+                                            String travelStartDate, String travelEndDate,
+                                            String travelStartPeriod, String travelEndPeriod) {
         // 第一行摘要：报销类型、申请人、客户信息（合并为一行）
-        WeComApprovalRequest.Summary summary1 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo1 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info1 = new WeComApprovalRequest.SummaryInfo();
-
         String customerInfo = customerName != null && !customerName.trim().isEmpty() ?
                 "客户：" + customerName : "客户：未填写";
 
@@ -886,42 +565,21 @@ public class WeComApprovalService {
 
         // 修正天数计算 - 与DateRange控件保持一致
         String actualTravelDays = calculateActualTravelDays(travelStartDate, travelEndDate, travelStartPeriod, travelEndPeriod);
-//        String actualTravelDays = travelDays; // 直接使用前端计算的天数
         if (actualTravelDays != null && !actualTravelDays.isEmpty()) {
             travelInfo += "，出差天数：" + actualTravelDays + "天";
         }
 
-        // 使用实际用户姓名
-        String actualUserName = getActualUserName(userId); // 获取实际用户姓名
-        info1.setText("客成差旅报销申请 - " + actualUserName + "，" + customerInfo + travelInfo);
-        info1.setLang("zh_CN");
-        summaryInfo1.add(info1);
-        summary1.setSummary_info(summaryInfo1);
-        summaries.add(summary1);
+        String summary1 = "客成差旅报销申请 - " + actualUserName + "，" + customerInfo + travelInfo;
 
         // 第二行摘要：法人实体和部门信息
-        WeComApprovalRequest.Summary summary2 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo2 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info2 = new WeComApprovalRequest.SummaryInfo();
-
         String costDeptName = getDepartmentNameById(costDepartment);
         String regionDeptName = getDepartmentNameById(findRegionDepartmentId(region));
 
-        String entityInfo = "法人实体：" + (legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）") +
+        String summary2 = "法人实体：" + (legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）") +
                 "，区域：" + (regionDeptName != null ? regionDeptName : "未选择") +
                 "，成本部门：" + (costDeptName != null ? costDeptName : "未选择");
 
-        info2.setText(entityInfo);
-        info2.setLang("zh_CN");
-        summaryInfo2.add(info2);
-        summary2.setSummary_info(summaryInfo2);
-        summaries.add(summary2);
-
         // 第三行摘要：总金额和发票数量
-        WeComApprovalRequest.Summary summary3 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo3 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info3 = new WeComApprovalRequest.SummaryInfo();
-
         String displayTotalAmount = totalAmount;
         if (displayTotalAmount != null && !displayTotalAmount.isEmpty()) {
             displayTotalAmount = displayTotalAmount.replace("元", "").trim();
@@ -935,13 +593,9 @@ public class WeComApprovalService {
             }
         }
 
-        info3.setText("总金额：" + displayTotalAmount + "，发票数量：" + invoices.size() + "张");
-        info3.setLang("zh_CN");
-        summaryInfo3.add(info3);
-        summary3.setSummary_info(summaryInfo3);
-        summaries.add(summary3);
+        String summary3 = "总金额：" + displayTotalAmount + "，发票数量：" + invoices.size() + "张";
 
-        return summaries;
+        return new String[]{summary1, summary2, summary3};
     }
 
     /**
@@ -1005,13 +659,9 @@ public class WeComApprovalService {
         }
 
         try {
-            List<Map<String, Object>> departments = departmentService.getDepartmentList();
-            for (Map<String, Object> dept : departments) {
-                Integer id = (Integer) dept.get("id");
-                String name = (String) dept.get("name");
-                if (id != null && departmentId.equals(id.toString())) {
-                    return name != null ? name : "部门" + departmentId;
-                }
+            DepartmentTree.Node dept = departmentService.getDepartmentTree().get(departmentId);
+            if (dept != null) {
+                return dept.name() != null ? dept.name() : "部门" + departmentId;
             }
         } catch (Exception e) {
             log.error("获取部门名称失败", e);
@@ -1065,13 +715,9 @@ public class WeComApprovalService {
      */
     private String findDepartmentIdByName(String departmentName) {
         try {
-            List<Map<String, Object>> departments = departmentService.getDepartmentList();
-            for (Map<String, Object> dept : departments) {
-                String name = (String) dept.get("name");
-                Integer id = (Integer) dept.get("id");
-                if (departmentName.equals(name)) {
-                    return id.toString();
-                }
+            DepartmentTree.Node dept = departmentService.getDepartmentTree().findByName(departmentName);
+            if (dept != null) {
+                return String.valueOf(dept.id());
             }
         } catch (Exception e) {
             log.error("查找部门ID失败", e);
@@ -1098,11 +744,9 @@ public class WeComApprovalService {
     }
 
     /**
-     * 构造发票表格数据
+     * 填写发票明细
      */
-    private List<WeComApprovalRequest.Child> buildInvoiceTableData(List<InvoiceInfo> invoices, String mediaIds) {
-        List<WeComApprovalRequest.Child> children = new ArrayList<>();
-
+    private void writeInvoiceTableData(ApprovalJsonWriter writer, List<InvoiceInfo> invoices, String mediaIds) throws IOException {
         // 解析mediaIds，确保顺序与invoices一致
         String[] fileIdArray = parseMediaIds(mediaIds, invoices.size());
 
@@ -1114,53 +758,21 @@ public class WeComApprovalService {
 
             log.info("处理第 {} 张发票, fileId: {}, 发票项目: {}", i + 1, fileId, invoice.getInvoiceItemName());
 
-            WeComApprovalRequest.Child child = new WeComApprovalRequest.Child();
-            List<WeComApprovalRequest.ListItem> listItems = new ArrayList<>();
-
-            // 1. 费用类型选择器 - item-1503317870534
-            WeComApprovalRequest.ListItem typeItem = new WeComApprovalRequest.ListItem();
-            typeItem.setControl("Selector");
-            typeItem.setId("item-1503317870534");
-            WeComApprovalRequest.SelectorValue typeValue = new WeComApprovalRequest.SelectorValue();
-            WeComApprovalRequest.Selector selector = new WeComApprovalRequest.Selector();
-            selector.setType("single");
-            WeComApprovalRequest.Option option = new WeComApprovalRequest.Option();
-
-            // 根据费用类型映射到模板中的选项key
-            String expenseTypeKey = mapExpenseTypeToKey(invoice.getReimbursementType(), invoice.getSubReimbursementType());
-            option.setKey(expenseTypeKey);
-
-            WeComApprovalRequest.TextValue textValue = new WeComApprovalRequest.TextValue();
-            String displayText = buildExpenseTypeDisplayText(invoice.getReimbursementType(), invoice.getSubReimbursementType());
-            textValue.setText(displayText);
-            textValue.setLang("zh_CN");
-            option.setValue(Arrays.asList(textValue));
-            selector.setOptions(Arrays.asList(option));
-            typeValue.setSelector(selector);
-            typeItem.setValue(typeValue);
-            listItems.add(typeItem);
-
-            // 2. 金额控件 - item-1503317989302
-            WeComApprovalRequest.ListItem moneyItem = new WeComApprovalRequest.ListItem();
-            moneyItem.setControl("Money");
-            moneyItem.setId("item-1503317989302");
-            WeComApprovalRequest.MoneyValue moneyValue = new WeComApprovalRequest.MoneyValue();
-            // 确保金额格式正确，移除可能的"元"字符
+            writer.beginRow();
+
+            // 1. 费用类型选择器 - 根据费用类型映射到模板中的选项key
+            writer.selector(DAILY_DETAIL_EXPENSE_TYPE,
+                    mapExpenseTypeToKey(invoice.getReimbursementType(), invoice.getSubReimbursementType()),
+                    buildExpenseTypeDisplayText(invoice.getReimbursementType(), invoice.getSubReimbursementType()));
+
+            // 2. 金额控件 - 确保金额格式正确，移除可能的"元"字符
             String amountStr = invoice.getTotalAmount();
             if (amountStr != null) {
                 amountStr = amountStr.replace("元", "").replace(" ", "").trim();
             }
-            moneyValue.setNew_money(amountStr);
-            moneyItem.setValue(moneyValue);
-            listItems.add(moneyItem);
-
-            // 3. 日期控件 - item-1503317973968
-            WeComApprovalRequest.ListItem dateItem = new WeComApprovalRequest.ListItem();
-            dateItem.setControl("Date");
-            dateItem.setId("item-1503317973968");
-            WeComApprovalRequest.DateValue dateValue = new WeComApprovalRequest.DateValue();
-            WeComApprovalRequest.Date date = new WeComApprovalRequest.Date();
-            date.setType("day");
+            writer.money(DAILY_DETAIL_AMOUNT, amountStr);
+
+            // 3. 日期控件
             String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
             if (invoice.getInvoiceDate() != null && !invoice.getInvoiceDate().isEmpty()) {
                 try {
@@ -1170,68 +782,34 @@ public class WeComApprovalService {
                     log.warn("解析发票日期失败，使用当前时间: {}", invoice.getInvoiceDate());
                 }
             }
-            date.setS_timestamp(timestamp);
-            dateValue.setDate(date);
-            dateItem.setValue(dateValue);
-            listItems.add(dateItem);
-
-            // 4. 文件控件（发票）- File-1761553598530
-            WeComApprovalRequest.ListItem fileItem = new WeComApprovalRequest.ListItem();
-            fileItem.setControl("File");
-            fileItem.setId("File-1761553598530");
-            WeComApprovalRequest.FileValue fileValue = new WeComApprovalRequest.FileValue();
-
-            List<WeComApprovalRequest.File> files = new ArrayList<>();
+            writer.date(DAILY_DETAIL_DATE, timestamp);
+
+            // 4. 文件控件（发票）
             if (fileId != null && !fileId.trim().isEmpty()) {
-                WeComApprovalRequest.File file = new WeComApprovalRequest.File();
-                file.setFile_id(fileId.trim());
-                files.add(file);
+                writer.file(DAILY_DETAIL_INVOICE, fileId.trim());
                 log.info("为发票 {} 设置文件ID: {}", i + 1, fileId.trim());
             } else {
+                writer.file(DAILY_DETAIL_INVOICE, null);
                 log.warn("发票 {} 没有对应的文件ID", i + 1);
             }
-            fileValue.setFiles(files);
-            fileItem.setValue(fileValue);
-            listItems.add(fileItem);
-
-            // 5. 其他说明文本框 - item-1503318001306
-            WeComApprovalRequest.ListItem descItem = new WeComApprovalRequest.ListItem();
-            descItem.setControl("Textarea");
-            descItem.setId("item-1503318001306");
-            WeComApprovalRequest.TextareaValue descValue = new WeComApprovalRequest.TextareaValue();
+
+            // 5. 其他说明文本框
             String descText = "发票号码：" + (invoice.getInvoiceNumber() != null ? invoice.getInvoiceNumber() : "") +
                     "，销售方：" + (invoice.getSellerName() != null ? invoice.getSellerName() : "") +
                     (invoice.getRemark() != null && !invoice.getRemark().isEmpty() ? "，备注：" + invoice.getRemark() : "");
-            descValue.setText(descText);
-            descItem.setValue(descValue);
-            listItems.add(descItem);
-
-            // 6. 消费事由文本框 - Textarea-1761553740099
-            WeComApprovalRequest.ListItem expenseDescItem = new WeComApprovalRequest.ListItem();
-            expenseDescItem.setControl("Textarea");
-            expenseDescItem.setId("Textarea-1761553740099");
-            WeComApprovalRequest.TextareaValue expenseDescValue = new WeComApprovalRequest.TextareaValue();
+            writer.text(DAILY_DETAIL_REMARK, descText);
+
+            // 6. 消费事由文本框
             String expenseDesc = invoice.getConsumptionReason() != null ? invoice.getConsumptionReason() :
                     (invoice.getReimbursementReason() != null ? invoice.getReimbursementReason() :
                             (invoice.getReimbursementType() != null ? invoice.getReimbursementType() : "日常报销"));
-            expenseDescValue.setText(expenseDesc);
-            expenseDescItem.setValue(expenseDescValue);
-            listItems.add(expenseDescItem);
-
-            // 7. 附件文件控件 - File-1761553796412
-            WeComApprovalRequest.ListItem attachmentFileItem = new WeComApprovalRequest.ListItem();
-            attachmentFileItem.setControl("File");
-            attachmentFileItem.setId("File-1761553796412");
-            WeComApprovalRequest.FileValue attachmentFileValue = new WeComApprovalRequest.FileValue();
-            attachmentFileValue.setFiles(new ArrayList<>()); // 空文件列表
-            attachmentFileItem.setValue(attachmentFileValue);
-            listItems.add(attachmentFileItem);
-
-            child.setList(listItems);
-            children.add(child);
-        }
+            writer.text(DAILY_DETAIL_PURPOSE, expenseDesc);
+
+            // 7. 附件文件控件（空文件列表）
+            writer.file(DAILY_DETAIL_ATTACHMENT, null);
 
-        return children;
+            writer.endRow();
+        }
     }
 
     /**
@@ -1404,56 +982,26 @@ public class WeComApprovalService {
     /**
      * 构造摘要信息
      */
-    private List<WeComApprovalRequest.Summary> buildSummaryList(String userId, List<InvoiceInfo> invoices, String totalAmount, String legalEntity, String region, String costDepartment) {
-        List<WeComApprovalRequest.Summary> summaries = new ArrayList<>();
-
+    private String[] buildSummaryList(String actualUserName, List<InvoiceInfo> invoices, String totalAmount, String legalEntity, String region, String costDepartment) {
         // 第一行摘要：报销类型和申请人
-        WeComApprovalRequest.Summary summary1 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo1 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info1 = new WeComApprovalRequest.SummaryInfo();
-        // 使用实际用户姓名
-        String actualUserName = getActualUserName(userId); // 获取实际用户姓名
-        info1.setText("日常报销申请 - " + actualUserName);
-        info1.setLang("zh_CN");
-        summaryInfo1.add(info1);
-        summary1.setSummary_info(summaryInfo1);
-        summaries.add(summary1);
+        String summary1 = "日常报销申请 - " + actualUserName;
 
         // 第二行摘要：法人实体和区域
-        WeComApprovalRequest.Summary summary2 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo2 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info2 = new WeComApprovalRequest.SummaryInfo();
-
         String costDeptName = getDepartmentNameById(costDepartment);
         String regionDeptName = getDepartmentNameById(findRegionDepartmentId(region));
 
-        String entityInfo = "法人实体：" + (legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）") +
+        String summary2 = "法人实体：" + (legalEntity != null ? legalEntity : "杭州飞致云信息科技有限公司（CODE1）") +
                 "，区域：" + (regionDeptName != null ? regionDeptName : "华南区域") +
                 "，成本部门：" + (costDeptName != null ? costDeptName : "智能体开发");
 
-        info2.setText(entityInfo);
-        info2.setLang("zh_CN");
-        summaryInfo2.add(info2);
-        summary2.setSummary_info(summaryInfo2);
-        summaries.add(summary2);
-
         // 第三行摘要：报销日期范围
-        WeComApprovalRequest.Summary summary3 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo3 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info3 = new WeComApprovalRequest.SummaryInfo();
-        info3.setText("报销日期：" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) +
-                "（含" + LocalDate.now().minusMonths(3).format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) +
-                "至" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) + "期间费用）");
-        info3.setLang("zh_CN");
-        summaryInfo3.add(info3);
-        summary3.setSummary_info(summaryInfo3);
-        summaries.add(summary3);
+        LocalDate today = LocalDate.now();
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        String summary3 = "报销日期：" + today.format(formatter) +
+                "（含" + today.minusMonths(3).format(formatter) +
+                "至" + today.format(formatter) + "期间费用）";
 
         // 第四行摘要：总金额明细
-        WeComApprovalRequest.Summary summary4 = new WeComApprovalRequest.Summary();
-        List<WeComApprovalRequest.SummaryInfo> summaryInfo4 = new ArrayList<>();
-        WeComApprovalRequest.SummaryInfo info4 = new WeComApprovalRequest.SummaryInfo();
-
         // 处理总金额显示，确保格式正确
         String displayTotalAmount = totalAmount;
         if (displayTotalAmount != null && !displayTotalAmount.isEmpty()) {
@@ -1471,13 +1019,9 @@ public class WeComApprovalService {
             }
         }
 
-        info4.setText("总金额：" + displayTotalAmount + calculateExpenseDetails(invoices));
-        info4.setLang("zh_CN");
-        summaryInfo4.add(info4);
-        summary4.setSummary_info(summaryInfo4);
-        summaries.add(summary4);
+        String summary4 = "总金额：" + displayTotalAmount + calculateExpenseDetails(invoices);
 
-        return summaries;
+        return new String[]{summary1, summary2, summary3, summary4};
     }
 
     /**
@@ -1548,21 +1092,10 @@ public class WeComApprovalService {
         try {
             // 调用企业微信API获取用户详情
             String accessToken = qyWechatService.getAccessTokenForApproval();
-            String url = "https://qyapi.weixin.qq.com/cgi-bin/user/get?access_token=" + accessToken + "&userid=" + userId;
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> responseBody = response.getBody();
-                Integer errcode = (Integer) responseBody.get("errcode");
-
-                if (errcode != null && errcode == 0) {
-                    String name = (String) responseBody.get("name");
-                    if (name != null && !name.trim().isEmpty()) {
-                        log.info("获取到用户 {} 的真实姓名: {}", userId, name);
-                        return name;
-                    }
-                }
+            String name = weComApiClient.get("user/get", accessToken, "userid", userId, WeComUser.class).name();
+            if (name != null && !name.trim().isEmpty()) {
+                log.info("获取到用户 {} 的真实姓名: {}", userId, name);
+                return name;
             }
         } catch (Exception e) {
             log.error("获取用户信息失败，使用默认名称", e);
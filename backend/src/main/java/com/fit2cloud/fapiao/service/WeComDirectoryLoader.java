@@ -0,0 +1,145 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.wecom.WeComUser;
+import com.fit2cloud.fapiao.dto.wecom.WeComUserListResponse;
+import com.fit2cloud.fapiao.exception.WeComApiException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通讯录批量加载
+ * 按部门并发拉取成员详情（user/list，不递归子部门），每个部门一次请求，代替逐个成员调用 user/get。
+ * 请求频率由自适应限流控制：不超过企业微信每分钟调用上限，遇到频率限制（45009、45033）时降速退避后重试。
+ * 同一成员属于多个部门时只保留一份（成员详情中已包含其全部部门）。
+ */
+@Service
+@Slf4j
+public class WeComDirectoryLoader {
+
+    // 可重试的错误码：接口调用超过限制、并发调用超过限制、系统繁忙（-1 也用于网络异常）
+    private static final Set<Integer> RETRYABLE_ERRCODES = Set.of(45009, 45033, -1);
+
+    private final WeComApiClient weComApiClient;
+    private final Executor executor;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final int maxRetries;
+
+    private volatile Map<String, Object> lastLoad = Map.of();
+
+    public WeComDirectoryLoader(WeComApiClient weComApiClient,
+                                @Qualifier("userDirectoryLoadExecutor") Executor executor,
+                                @Value("${qywechat.directory.rate-limit.initial-qps:20}") double initialQps,
+                                @Value("${qywechat.directory.rate-limit.max-per-minute:6000}") int maxPerMinute,
+                                @Value("${qywechat.directory.rate-limit.backoff-ms:1000}") long backoffMs,
+                                @Value("${qywechat.directory.max-retries:3}") int maxRetries) {
+        this.weComApiClient = weComApiClient;
+        this.executor = executor;
+        this.rateLimiter = new AdaptiveRateLimiter(initialQps, maxPerMinute, backoffMs);
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 加载结果
+     *
+     * @param users             去重后的成员详情
+     * @param failedDepartments 重试后仍拉取失败的部门ID
+     */
+    public record Result(List<WeComUser> users, List<String> failedDepartments, int requests, long elapsedMs) {
+    }
+
+    /**
+     * 并发拉取指定部门的成员详情，阻塞到全部部门完成
+     */
+    public Result load(String accessToken, Collection<String> departmentIds) {
+        long start = System.currentTimeMillis();
+        Map<String, WeComUser> users = new ConcurrentHashMap<>();
+        Queue<String> failed = new ConcurrentLinkedQueue<>();
+        AtomicInteger requests = new AtomicInteger();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(departmentIds.size());
+        for (String departmentId : departmentIds) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    for (WeComUser user : fetchDepartmentMembers(accessToken, departmentId, requests)) {
+                        if (user.userid() != null) {
+                            users.putIfAbsent(user.userid(), user);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed.add(departmentId);
+                } catch (WeComApiException e) {
+                    log.warn("拉取部门 {} 成员失败, errcode: {}, errmsg: {}", departmentId, e.getErrcode(), e.getErrmsg());
+                    failed.add(departmentId);
+                } catch (Exception e) {
+                    log.warn("拉取部门 {} 成员异常: {}", departmentId, e.getMessage());
+                    failed.add(departmentId);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        Result result = new Result(new ArrayList<>(users.values()), new ArrayList<>(failed),
+                requests.get(), System.currentTimeMillis() - start);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("departments", departmentIds.size());
+        summary.put("failedDepartments", result.failedDepartments().size());
+        summary.put("users", result.users().size());
+        summary.put("requests", result.requests());
+        summary.put("elapsedMs", result.elapsedMs());
+        summary.put("finishedAt", System.currentTimeMillis());
+        lastLoad = summary;
+
+        log.info("通讯录批量加载完成: 部门 {} 个（失败 {} 个），成员 {} 个，请求 {} 次，耗时 {}ms，当前速率 {}/s",
+                departmentIds.size(), result.failedDepartments().size(), result.users().size(),
+                result.requests(), result.elapsedMs(), String.format("%.1f", rateLimiter.currentQps()));
+        return result;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("currentQps", rateLimiter.currentQps());
+        status.put("maxQps", rateLimiter.maxQps());
+        status.put("throttledCount", rateLimiter.throttledCount());
+        status.put("lastLoad", lastLoad);
+        return status;
+    }
+
+    /**
+     * 拉取部门的直属成员详情（user/list，fetch_child=0），触发频率限制时降速重试
+     */
+    private List<WeComUser> fetchDepartmentMembers(String accessToken, String departmentId,
+                                                   AtomicInteger requests) throws InterruptedException {
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("access_token", accessToken);
+        query.put("department_id", departmentId);
+        query.put("fetch_child", 0);
+
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire();
+            requests.incrementAndGet();
+            try {
+                List<WeComUser> members = weComApiClient.get("user/list", query, WeComUserListResponse.class).userlist();
+                rateLimiter.onSuccess();
+                return members != null ? members : List.of();
+            } catch (WeComApiException e) {
+                if (!RETRYABLE_ERRCODES.contains(e.getErrcode()) || attempt >= maxRetries) {
+                    throw e;
+                }
+                rateLimiter.onThrottled();
+                log.info("拉取部门 {} 成员受限，降速后重试（第 {} 次）: errcode={}, 当前速率 {}/s",
+                        departmentId, attempt + 1, e.getErrcode(), String.format("%.1f", rateLimiter.currentQps()));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.fit2cloud.fapiao.service;
+
+import java.util.Map;
+
+/**
+ * Web端登录session存储
+ * 由 qywechat.web-session.store 选择实现：
+ * memory（默认）保存在本机内存，重启后丢失，多实例部署时需要会话保持；
+ * jdbc 保存到数据库，各实例共用，重启不丢失，不再需要会话保持。
+ */
+public interface WebSessionStore {
+
+    /**
+     * Web端session
+     *
+     * @param createTime 创建时间（毫秒时间戳）
+     * @param expireTime 过期时间（毫秒时间戳）
+     */
+    record Session(String sessionKey, String userId, String userName, long createTime, long expireTime) {
+
+        public boolean isExpired(long now) {
+            return now >= expireTime;
+        }
+    }
+
+    /**
+     * 实现名称，与 qywechat.web-session.store 的取值一致
+     */
+    String getName();
+
+    void save(Session session);
+
+    /**
+     * 读取session，不存在或已过期时返回null
+     */
+    Session get(String sessionKey);
+
+    void remove(String sessionKey);
+
+    /**
+     * 立即清理过期的session，返回清理的数量
+     */
+    int cleanupExpired();
+
+    Map<String, Object> getStatus();
+}
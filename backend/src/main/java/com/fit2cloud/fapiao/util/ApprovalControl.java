@@ -0,0 +1,41 @@
+package com.fit2cloud.fapiao.util;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * 审批模板中的一个控件（控件类型 + 控件ID）
+ * 控件类型和ID在创建时预先编码为JSON字符串，填写审批申请时直接写出，不再逐次转义
+ * 控件ID由各表单以常量写死，ApprovalTemplateService 只校验它们是否仍在模板中
+ */
+public final class ApprovalControl {
+
+    private final String control;
+    private final String id;
+
+    final SerializedString encodedControl;
+    final SerializedString encodedId;
+
+    private ApprovalControl(String control, String id) {
+        this.control = control;
+        this.id = id;
+        this.encodedControl = new SerializedString(control);
+        this.encodedId = new SerializedString(id);
+    }
+
+    public static ApprovalControl of(String control, String id) {
+        return new ApprovalControl(control, id);
+    }
+
+    public String getControl() {
+        return control;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return control + "(" + id + ")";
+    }
+}
@@ -0,0 +1,374 @@
+package com.fit2cloud.fapiao.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+
+/**
+ * 企业微信审批申请（oa/applyevent）请求体流式写出
+ * 按模板控件逐个填值，直接写JSON，不再构造 WeComApprovalRequest 对象图；
+ * 字段顺序和null处理与原先 Jackson 序列化 WeComApprovalRequest 的结果逐字节一致。
+ * <p>
+ * 写出顺序：begin → 各控件（表格用 beginTable/beginRow/endRow/endTable 包裹明细控件）→ end(摘要)
+ */
+public final class ApprovalJsonWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final SerializedString CREATOR_USERID = new SerializedString("creator_userid");
+    private static final SerializedString TEMPLATE_ID = new SerializedString("template_id");
+    private static final SerializedString USE_TEMPLATE_APPROVER = new SerializedString("use_template_approver");
+    private static final SerializedString APPROVER = new SerializedString("approver");
+    private static final SerializedString ATTR = new SerializedString("attr");
+    private static final SerializedString USERID = new SerializedString("userid");
+    private static final SerializedString NOTIFYER = new SerializedString("notifyer");
+    private static final SerializedString NOTIFY_TYPE = new SerializedString("notify_type");
+    private static final SerializedString APPLY_DATA = new SerializedString("apply_data");
+    private static final SerializedString CONTENTS = new SerializedString("contents");
+    private static final SerializedString SUMMARY_LIST = new SerializedString("summary_list");
+    private static final SerializedString SUMMARY_INFO = new SerializedString("summary_info");
+    private static final SerializedString CONTROL = new SerializedString("control");
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString VALUE = new SerializedString("value");
+    private static final SerializedString TEXT = new SerializedString("text");
+    private static final SerializedString LANG = new SerializedString("lang");
+    private static final SerializedString SELECTOR = new SerializedString("selector");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString OPTIONS = new SerializedString("options");
+    private static final SerializedString KEY = new SerializedString("key");
+    private static final SerializedString MEMBERS = new SerializedString("members");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString PARTYID = new SerializedString("partyid");
+    private static final SerializedString DATE = new SerializedString("date");
+    private static final SerializedString S_TIMESTAMP = new SerializedString("s_timestamp");
+    private static final SerializedString E_TIMESTAMP = new SerializedString("e_timestamp");
+    private static final SerializedString DATE_RANGE = new SerializedString("date_range");
+    private static final SerializedString NEW_BEGIN = new SerializedString("new_begin");
+    private static final SerializedString NEW_END = new SerializedString("new_end");
+    private static final SerializedString NEW_DURATION = new SerializedString("new_duration");
+    private static final SerializedString S_HALFDAY = new SerializedString("s_halfday");
+    private static final SerializedString E_HALFDAY = new SerializedString("e_halfday");
+    private static final SerializedString OFFICIAL_HOLIDAY = new SerializedString("official_holiday");
+    private static final SerializedString PERDAY_DURATION = new SerializedString("perday_duration");
+    private static final SerializedString NEW_MONEY = new SerializedString("new_money");
+    private static final SerializedString FILES = new SerializedString("files");
+    private static final SerializedString FILE_ID = new SerializedString("file_id");
+    private static final SerializedString RELATED_APPROVAL = new SerializedString("related_approval");
+    private static final SerializedString SP_NO = new SerializedString("sp_no");
+    private static final SerializedString CHILDREN = new SerializedString("children");
+    private static final SerializedString LIST = new SerializedString("list");
+
+    private static final SerializedString ZH_CN = new SerializedString("zh_CN");
+    private static final SerializedString SINGLE = new SerializedString("single");
+    private static final SerializedString DAY = new SerializedString("day");
+    private static final SerializedString HALFDAY = new SerializedString("halfday");
+
+    // 审批人类型：1-固定审批人，2-直接上级
+    private static final int APPROVER_FIXED = 1;
+    private static final int APPROVER_LEADER = 2;
+    // 1-申请时通知审批人
+    private static final int NOTIFY_ON_APPLY = 1;
+    private static final int PERDAY_DURATION_SECONDS = 86400;
+
+    /**
+     * 请求体填写过程
+     */
+    @FunctionalInterface
+    public interface Body {
+        void write(ApprovalJsonWriter writer) throws IOException;
+    }
+
+    private final JsonGenerator gen;
+
+    private ApprovalJsonWriter(JsonGenerator gen) {
+        this.gen = gen;
+    }
+
+    /**
+     * 写出一个审批申请请求体，返回UTF-8编码的JSON
+     */
+    public static byte[] write(Body body) throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder(2048);
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(buffer)) {
+            body.write(new ApprovalJsonWriter(gen));
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * 写出申请人、模板和审批流程，之后开始写控件
+     * 审批流程固定为：直接上级 → 固定审批人，申请时通知审批人
+     */
+    public void begin(String creatorUserId, ApprovalTemplate template, String fixedApprover) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(CREATOR_USERID);
+        gen.writeString(creatorUserId);
+        gen.writeFieldName(TEMPLATE_ID);
+        gen.writeString(template.encodedTemplateId);
+        gen.writeFieldName(USE_TEMPLATE_APPROVER);
+        gen.writeNumber(0);
+
+        gen.writeFieldName(APPROVER);
+        gen.writeStartArray();
+        writeApprover(APPROVER_LEADER, creatorUserId);
+        writeApprover(APPROVER_FIXED, fixedApprover);
+        gen.writeEndArray();
+
+        gen.writeFieldName(NOTIFYER);
+        gen.writeStartArray();
+        gen.writeString(creatorUserId);
+        gen.writeEndArray();
+        gen.writeFieldName(NOTIFY_TYPE);
+        gen.writeNumber(NOTIFY_ON_APPLY);
+
+        gen.writeFieldName(APPLY_DATA);
+        gen.writeStartObject();
+        gen.writeFieldName(CONTENTS);
+        gen.writeStartArray();
+    }
+
+    /**
+     * 结束控件，写出摘要（每个参数为一行摘要）
+     */
+    public void end(String... summaries) throws IOException {
+        gen.writeEndArray();
+        gen.writeEndObject();
+
+        gen.writeFieldName(SUMMARY_LIST);
+        gen.writeStartArray();
+        for (String summary : summaries) {
+            gen.writeStartObject();
+            gen.writeFieldName(SUMMARY_INFO);
+            gen.writeStartArray();
+            writeText(summary);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * 单选控件
+     */
+    public void selector(ApprovalControl control, String key, String text) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(SELECTOR);
+        gen.writeStartObject();
+        gen.writeFieldName(TYPE);
+        gen.writeString(SINGLE);
+        gen.writeFieldName(OPTIONS);
+        gen.writeStartArray();
+        gen.writeStartObject();
+        gen.writeFieldName(KEY);
+        gen.writeString(key);
+        gen.writeFieldName(VALUE);
+        gen.writeStartArray();
+        writeText(text);
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeEndArray();
+        gen.writeEndObject();
+        endControl();
+    }
+
+    /**
+     * 成员模式的联系人控件
+     */
+    public void member(ApprovalControl control, String userId, String name) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(MEMBERS);
+        gen.writeStartArray();
+        gen.writeStartObject();
+        if (userId != null) {
+            gen.writeFieldName(USERID);
+            gen.writeString(userId);
+        }
+        gen.writeFieldName(NAME);
+        gen.writeString(name);
+        gen.writeFieldName(PARTYID);
+        gen.writeNull();
+        gen.writeEndObject();
+        gen.writeEndArray();
+        endControl();
+    }
+
+    /**
+     * 部门模式的联系人控件，departmentId为null时写空成员列表
+     */
+    public void department(ApprovalControl control, String departmentId, String name) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(MEMBERS);
+        gen.writeStartArray();
+        if (departmentId != null) {
+            gen.writeStartObject();
+            gen.writeFieldName(NAME);
+            gen.writeString(name);
+            gen.writeFieldName(PARTYID);
+            gen.writeStartArray();
+            gen.writeString(departmentId);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        endControl();
+    }
+
+    /**
+     * 日期控件（按天）
+     */
+    public void date(ApprovalControl control, String timestamp) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(DATE);
+        gen.writeStartObject();
+        gen.writeFieldName(TYPE);
+        gen.writeString(DAY);
+        gen.writeFieldName(S_TIMESTAMP);
+        gen.writeString(timestamp);
+        gen.writeEndObject();
+        endControl();
+    }
+
+    /**
+     * 时长控件（按半天），时间戳为秒
+     */
+    public void dateRange(ApprovalControl control, String begin, String end, long duration) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(DATE_RANGE);
+        gen.writeStartObject();
+        gen.writeFieldName(TYPE);
+        gen.writeString(HALFDAY);
+        gen.writeFieldName(NEW_BEGIN);
+        gen.writeString(begin);
+        gen.writeFieldName(NEW_END);
+        gen.writeString(end);
+        gen.writeFieldName(NEW_DURATION);
+        gen.writeNumber(duration);
+        gen.writeFieldName(S_TIMESTAMP);
+        gen.writeNull();
+        gen.writeFieldName(E_TIMESTAMP);
+        gen.writeNull();
+        gen.writeFieldName(S_HALFDAY);
+        gen.writeNull();
+        gen.writeFieldName(E_HALFDAY);
+        gen.writeNull();
+        gen.writeFieldName(OFFICIAL_HOLIDAY);
+        gen.writeNumber(0);
+        gen.writeFieldName(PERDAY_DURATION);
+        gen.writeNumber(PERDAY_DURATION_SECONDS);
+        gen.writeEndObject();
+        endControl();
+    }
+
+    /**
+     * 单行/多行文本控件
+     */
+    public void text(ApprovalControl control, String text) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(TEXT);
+        gen.writeString(text);
+        endControl();
+    }
+
+    /**
+     * 金额控件
+     */
+    public void money(ApprovalControl control, String amount) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(NEW_MONEY);
+        gen.writeString(amount);
+        endControl();
+    }
+
+    /**
+     * 附件控件，fileId为null时写空文件列表
+     */
+    public void file(ApprovalControl control, String fileId) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(FILES);
+        gen.writeStartArray();
+        if (fileId != null) {
+            gen.writeStartObject();
+            gen.writeFieldName(FILE_ID);
+            gen.writeString(fileId);
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        endControl();
+    }
+
+    /**
+     * 关联审批单控件
+     */
+    public void relatedApproval(ApprovalControl control, String spNo) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(RELATED_APPROVAL);
+        gen.writeStartArray();
+        gen.writeStartObject();
+        gen.writeFieldName(SP_NO);
+        gen.writeString(spNo);
+        gen.writeEndObject();
+        gen.writeEndArray();
+        endControl();
+    }
+
+    public void beginTable(ApprovalControl control) throws IOException {
+        beginControl(control);
+        gen.writeFieldName(CHILDREN);
+        gen.writeStartArray();
+    }
+
+    public void endTable() throws IOException {
+        gen.writeEndArray();
+        endControl();
+    }
+
+    public void beginRow() throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(LIST);
+        gen.writeStartArray();
+    }
+
+    public void endRow() throws IOException {
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private void beginControl(ApprovalControl control) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(CONTROL);
+        gen.writeString(control.encodedControl);
+        gen.writeFieldName(ID);
+        gen.writeString(control.encodedId);
+        gen.writeFieldName(VALUE);
+        gen.writeStartObject();
+    }
+
+    private void endControl() throws IOException {
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    private void writeApprover(int attr, String userId) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(ATTR);
+        gen.writeNumber(attr);
+        gen.writeFieldName(USERID);
+        gen.writeStartArray();
+        gen.writeString(userId);
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private void writeText(String text) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(TEXT);
+        gen.writeString(text);
+        gen.writeFieldName(LANG);
+        gen.writeString(ZH_CN);
+        gen.writeEndObject();
+    }
+}
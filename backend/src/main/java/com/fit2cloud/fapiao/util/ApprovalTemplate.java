@@ -0,0 +1,53 @@
+package com.fit2cloud.fapiao.util;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.util.List;
+
+/**
+ * 编译后的审批模板：模板ID + 表单用到的控件
+ * 控件已按企业微信返回的模板结构校验过，missingControls 为模板中找不到或类型不一致的控件
+ */
+public final class ApprovalTemplate {
+
+    private final String templateId;
+    private final List<ApprovalControl> controls;
+    private final List<String> missingControls;
+    private final boolean verified;
+    private final long compiledAt;
+
+    final SerializedString encodedTemplateId;
+
+    public ApprovalTemplate(String templateId, List<ApprovalControl> controls,
+                            List<String> missingControls, boolean verified) {
+        this.templateId = templateId;
+        this.controls = List.copyOf(controls);
+        this.missingControls = List.copyOf(missingControls);
+        this.verified = verified;
+        this.compiledAt = System.currentTimeMillis();
+        this.encodedTemplateId = new SerializedString(templateId);
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public List<ApprovalControl> getControls() {
+        return controls;
+    }
+
+    public List<String> getMissingControls() {
+        return missingControls;
+    }
+
+    /**
+     * 是否已用企业微信模板结构校验过（拉取模板失败时为false，按声明的控件提交）
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public long getCompiledAt() {
+        return compiledAt;
+    }
+}
@@ -0,0 +1,32 @@
+package com.fit2cloud.fapiao.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 缓存有效期抖动
+ * 有效期相同、又在同一时刻加载的缓存会在同一个调度周期一起过期、一起刷新；
+ * 每次加载后有效期在基准值上下随机浮动，各缓存的刷新时间自然错开。
+ */
+public final class Jitter {
+
+    // 默认上下浮动10%
+    private static final double DEFAULT_RATIO = 0.1;
+
+    private Jitter() {
+    }
+
+    public static long apply(long baseMs) {
+        return apply(baseMs, DEFAULT_RATIO);
+    }
+
+    /**
+     * 返回 [baseMs * (1 - ratio), baseMs * (1 + ratio)] 内的随机值
+     */
+    public static long apply(long baseMs, double ratio) {
+        if (baseMs <= 0 || ratio <= 0) {
+            return baseMs;
+        }
+        long spread = (long) (baseMs * ratio);
+        return baseMs - spread + ThreadLocalRandom.current().nextLong(2 * spread + 1);
+    }
+}
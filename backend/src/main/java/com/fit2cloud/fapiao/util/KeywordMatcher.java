@@ -0,0 +1,275 @@
+package com.fit2cloud.fapiao.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 多关键词匹配器（Aho-Corasick 自动机）
+ * 发票解析（类别、座位、舱位、酒店品牌）、合规规则的 containsAny 条件、区域部门判断原先各自手写按顺序 contains() 的 if-else，
+ * 现在共用这一个实现：关键词表作为数据声明，优先级语义只在这里实现一次，并与逐个 contains() 的结果对照测试过。
+ * 构建一次后只读、线程安全；扫描次数与关键词数量无关，规则文件中配置较长的关键词列表也不需要逐个比较。
+ * 关键词按添加顺序确定优先级，{@link #findFirst} 返回优先级最高的命中，语义与按顺序 if-else 判断一致；
+ * 重复的关键词（忽略大小写时按小写比较）只保留先添加的。
+ * <p>
+ * 构建时把失配跳转展开为稠密状态转移表，关键词中出现的字符压缩为连续编号，
+ * 扫描时每个字符只需一次查表，不在关键词字符集中的字符直接回到根节点。
+ *
+ * @param <V> 关键词对应的值
+ */
+public final class KeywordMatcher<V> {
+
+    private static final int ROOT = 0;
+
+    private final String[] keywords;
+    private final List<V> values;
+    private final boolean ignoreCase;
+
+    // 字符 -> 字符编号+1（0表示不在关键词字符集中），只覆盖 [minChar, maxChar] 区间
+    private final char minChar;
+    private final char[] symbols;
+    private final int alphabetSize;
+
+    // 状态转移表：delta[state * alphabetSize + symbol]
+    private final int[] delta;
+    // 以该状态结尾的关键词下标，没有则为-1
+    private final int[] output;
+    // 沿失配链最近的有输出状态，没有则为-1
+    private final int[] dictLink;
+    // 该状态及其失配链上优先级最高（下标最小）的关键词，没有则为-1
+    private final int[] bestOutput;
+
+    /**
+     * 命中结果
+     */
+    public record Match<V>(int start, int end, String keyword, V value) {
+    }
+
+    private KeywordMatcher(Map<String, V> keywordValues, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        this.keywords = new String[keywordValues.size()];
+        this.values = new ArrayList<>(keywordValues.size());
+
+        // 1. 字符集压缩
+        TreeSet<Character> alphabet = new TreeSet<>();
+        for (String keyword : keywordValues.keySet()) {
+            for (char c : normalize(keyword).toCharArray()) {
+                alphabet.add(c);
+            }
+        }
+        this.alphabetSize = Math.max(alphabet.size(), 1);
+        this.minChar = alphabet.isEmpty() ? 0 : alphabet.first();
+        this.symbols = new char[alphabet.isEmpty() ? 0 : alphabet.last() - minChar + 1];
+        int symbol = 1;
+        for (char c : alphabet) {
+            symbols[c - minChar] = (char) symbol++;
+        }
+
+        // 2. 构建字典树（未展开的转移记为-1）
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        trie.add(newRow());
+        terminal.add(-1);
+
+        int index = 0;
+        for (Map.Entry<String, V> entry : keywordValues.entrySet()) {
+            String keyword = normalize(entry.getKey());
+            keywords[index] = entry.getKey();
+            values.add(entry.getValue());
+
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                int s = symbolOf(keyword.charAt(i));
+                if (trie.get(state)[s] < 0) {
+                    trie.get(state)[s] = trie.size();
+                    trie.add(newRow());
+                    terminal.add(-1);
+                }
+                state = trie.get(state)[s];
+            }
+            // 重复关键词保留先添加的
+            if (terminal.get(state) < 0) {
+                terminal.set(state, index);
+            }
+            index++;
+        }
+
+        int size = trie.size();
+        delta = new int[size * alphabetSize];
+        output = new int[size];
+        dictLink = new int[size];
+        bestOutput = new int[size];
+        int[] fail = new int[size];
+        for (int state = 0; state < size; state++) {
+            output[state] = terminal.get(state);
+        }
+        Arrays.fill(dictLink, -1);
+
+        // 3. 广度优先计算失配指针，并把失配跳转展开到转移表
+        Deque<Integer> queue = new ArrayDeque<>();
+        bestOutput[ROOT] = -1;
+        for (int s = 0; s < alphabetSize; s++) {
+            int child = trie.get(ROOT)[s];
+            if (child >= 0) {
+                delta[s] = child;
+                fail[child] = ROOT;
+                bestOutput[child] = output[child];
+                queue.add(child);
+            } else {
+                delta[s] = ROOT;
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] row = trie.get(state);
+            for (int s = 0; s < alphabetSize; s++) {
+                int child = row[s];
+                if (child < 0) {
+                    delta[state * alphabetSize + s] = delta[fail[state] * alphabetSize + s];
+                    continue;
+                }
+
+                delta[state * alphabetSize + s] = child;
+                int suffix = delta[fail[state] * alphabetSize + s];
+                fail[child] = suffix;
+                dictLink[child] = output[suffix] >= 0 ? suffix : dictLink[suffix];
+                bestOutput[child] = minIndex(output[child], bestOutput[suffix]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 以关键词本身作为值构建
+     */
+    public static KeywordMatcher<String> of(String... keywords) {
+        return of(Arrays.asList(keywords));
+    }
+
+    public static KeywordMatcher<String> of(List<String> keywords) {
+        Map<String, String> keywordValues = new LinkedHashMap<>();
+        for (String keyword : keywords) {
+            keywordValues.putIfAbsent(keyword, keyword);
+        }
+        return new KeywordMatcher<>(keywordValues, false);
+    }
+
+    /**
+     * 按 Map 的迭代顺序确定优先级构建，建议传入 LinkedHashMap
+     */
+    public static <V> KeywordMatcher<V> of(Map<String, V> keywordValues) {
+        return new KeywordMatcher<>(keywordValues, false);
+    }
+
+    /**
+     * 构建忽略大小写的匹配器
+     */
+    public static KeywordMatcher<String> ignoreCase(String... keywords) {
+        Map<String, String> keywordValues = new LinkedHashMap<>();
+        for (String keyword : keywords) {
+            keywordValues.putIfAbsent(keyword, keyword);
+        }
+        return new KeywordMatcher<>(keywordValues, true);
+    }
+
+    /**
+     * 文本是否包含任一关键词（命中即返回）
+     */
+    public boolean containsAny(CharSequence text) {
+        if (text == null || keywords.length == 0) {
+            return false;
+        }
+
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = next(state, text.charAt(i));
+            if (bestOutput[state] >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 优先级最高的命中关键词对应的值，未命中返回null
+     */
+    public V findFirst(CharSequence text) {
+        if (text == null || keywords.length == 0) {
+            return null;
+        }
+
+        int best = -1;
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length && best != 0; i++) {
+            state = next(state, text.charAt(i));
+            best = minIndex(best, bestOutput[state]);
+        }
+        return best >= 0 ? values.get(best) : null;
+    }
+
+    /**
+     * 找出所有命中（含重叠），按结束位置排序
+     */
+    public List<Match<V>> findAll(CharSequence text) {
+        List<Match<V>> matches = new ArrayList<>();
+        if (text == null || keywords.length == 0) {
+            return matches;
+        }
+
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = next(state, text.charAt(i));
+            for (int hit = output[state] >= 0 ? state : dictLink[state]; hit >= 0; hit = dictLink[hit]) {
+                int keywordIndex = output[hit];
+                String keyword = keywords[keywordIndex];
+                matches.add(new Match<>(i + 1 - keyword.length(), i + 1, keyword, values.get(keywordIndex)));
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return keywords.length;
+    }
+
+    private int next(int state, char c) {
+        if (ignoreCase) {
+            c = Character.toLowerCase(c);
+        }
+        int offset = c - minChar;
+        if (offset < 0 || offset >= symbols.length || symbols[offset] == 0) {
+            return ROOT;
+        }
+        return delta[state * alphabetSize + symbols[offset] - 1];
+    }
+
+    private int symbolOf(char c) {
+        return symbols[c - minChar] - 1;
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private String normalize(String keyword) {
+        return ignoreCase ? keyword.toLowerCase() : keyword;
+    }
+
+    private static int minIndex(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,74 @@
+package com.fit2cloud.fapiao.util;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 汉字拼音首字母
+ * GB2312 一级汉字（B0A1-D7F9）按拼音排序，用汉字的 GB2312 编码与各声母第一个汉字的编码比较得到首字母，不依赖拼音库。
+ * 二级汉字（按部首排序）和 GB2312 以外的字没有首字母，直接跳过；多音字姓氏可能不准确，只用于搜索，不用于展示。
+ */
+public final class PinyinUtil {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    // 每个首字母第一个汉字的 GB2312 编码（啊芭擦搭蛾发噶哈击喀垃妈拿哦啪期然撒塌挖昔压匝），最后一个为一级汉字结束位置
+    private static final int[] BOUNDARY_CODES = {
+            0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC, 0xC2E8,
+            0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9, 0xD4D1, 0xD7FA
+    };
+    private static final String INITIALS = "abcdefghjklmnopqrstwxyz";
+
+    private static final Map<Character, Character> INITIAL_CACHE = new ConcurrentHashMap<>();
+
+    private PinyinUtil() {
+    }
+
+    /**
+     * 取字符串的拼音首字母（小写），英文字母和数字原样保留（转小写），其他字符忽略
+     * 例如 "张三" -> "zs"，"李A" -> "la"
+     */
+    public static String initials(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                if (Character.isLetterOrDigit(c)) {
+                    sb.append(Character.toLowerCase(c));
+                }
+            } else if (isChinese(c)) {
+                char initial = INITIAL_CACHE.computeIfAbsent(c, PinyinUtil::lookupInitial);
+                if (initial != 0) {
+                    sb.append(initial);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    public static boolean isChinese(char c) {
+        return c >= '一' && c <= '龥';
+    }
+
+    private static char lookupInitial(char c) {
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return 0;
+        }
+        int code = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        if (code < BOUNDARY_CODES[0] || code >= BOUNDARY_CODES[BOUNDARY_CODES.length - 1]) {
+            return 0;
+        }
+        for (int i = INITIALS.length() - 1; i >= 0; i--) {
+            if (code >= BOUNDARY_CODES[i]) {
+                return INITIALS.charAt(i);
+            }
+        }
+        return 0;
+    }
+}
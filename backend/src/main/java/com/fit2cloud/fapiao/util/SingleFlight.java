@@ -0,0 +1,69 @@
+package com.fit2cloud.fapiao.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个键的并发调用
+ * 同一时刻同一个键只有一个线程真正执行，其余线程等待并共用它的结果（或异常），
+ * 执行结束后立即移除，下一次调用重新执行。不同的键互不影响。
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, mine);
+        if (existing != null) {
+            shared.incrementAndGet();
+            return await(existing);
+        }
+
+        executions.incrementAndGet();
+        try {
+            V value = call.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    /**
+     * 实际执行的次数
+     */
+    public long executions() {
+        return executions.get();
+    }
+
+    /**
+     * 等待并共用其他线程结果的次数
+     */
+    public long shared() {
+        return shared.get();
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
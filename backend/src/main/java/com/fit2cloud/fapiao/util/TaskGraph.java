@@ -0,0 +1,161 @@
+package com.fit2cloud.fapiao.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 有依赖关系的任务图执行器
+ * 节点只能依赖已添加的节点（保证无环），互不依赖的节点在线程池上并发执行；
+ * 结果按节点添加顺序返回，与执行完成顺序无关。
+ * <p>
+ * 依赖分两种：requires 为强依赖，依赖节点未成功时本节点跳过；
+ * after 为弱依赖，只保证在其后执行，依赖节点失败时本节点仍执行，取到的依赖值为null。
+ *
+ * @param <T> 节点结果类型
+ */
+public final class TaskGraph<T> {
+
+    public enum Status {
+        SUCCESS, FAILED, SKIPPED
+    }
+
+    /**
+     * 节点执行结果，失败时 cause 为节点抛出的异常（执行器异常时为其根因），供调用方区分失败类型
+     */
+    public record NodeResult<T>(String id, Status status, T value, String error, Throwable cause, long elapsedMs) {
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+    }
+
+    /**
+     * 节点任务，参数为依赖节点结果的查询函数（节点ID -> 结果值）
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run(Function<String, T> dependencies) throws Exception;
+    }
+
+    private record Node<T>(String id, List<String> requires, List<String> after, Task<T> task) {
+    }
+
+    private final Map<String, Node<T>> nodes = new LinkedHashMap<>();
+
+    /**
+     * 添加无依赖节点
+     */
+    public TaskGraph<T> add(String id, Task<T> task) {
+        return add(id, List.of(), List.of(), task);
+    }
+
+    /**
+     * 添加节点
+     *
+     * @param requires 强依赖，全部成功才执行
+     * @param after    弱依赖，只约束执行顺序
+     */
+    public TaskGraph<T> add(String id, List<String> requires, List<String> after, Task<T> task) {
+        if (nodes.containsKey(id)) {
+            throw new IllegalArgumentException("节点重复: " + id);
+        }
+        for (String dependency : concat(requires, after)) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("节点 " + id + " 依赖的节点 " + dependency + " 尚未添加");
+            }
+        }
+        nodes.put(id, new Node<>(id, List.copyOf(requires), List.copyOf(after), task));
+        return this;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 执行整个任务图，等待所有节点完成
+     *
+     * @return 节点ID -> 结果，按添加顺序
+     */
+    public Map<String, NodeResult<T>> execute(Executor executor) {
+        // 只在调用线程内读写；各节点只拿到自己依赖节点的不可变副本，线程池上的任务不访问这个表
+        Map<String, CompletableFuture<NodeResult<T>>> futures = new LinkedHashMap<>();
+
+        for (Node<T> node : nodes.values()) {
+            Map<String, CompletableFuture<NodeResult<T>>> dependencies = new HashMap<>();
+            for (String dependency : concat(node.requires(), node.after())) {
+                dependencies.put(dependency, futures.get(dependency));
+            }
+            Map<String, CompletableFuture<NodeResult<T>>> declared = Map.copyOf(dependencies);
+
+            futures.put(node.id(), CompletableFuture.allOf(declared.values().toArray(CompletableFuture[]::new))
+                    .thenApplyAsync(ignored -> run(node, declared), executor));
+        }
+
+        Map<String, NodeResult<T>> results = new LinkedHashMap<>();
+        futures.forEach((id, future) -> {
+            try {
+                results.put(id, future.join());
+            } catch (CompletionException e) {
+                // 线程池拒绝等执行器异常，节点本身的异常已在 run 中处理
+                Throwable cause = rootCause(e);
+                results.put(id, new NodeResult<>(id, Status.FAILED, null, message(cause), cause, 0));
+            }
+        });
+        return results;
+    }
+
+    /**
+     * 执行单个节点，dependencies 只包含该节点声明的依赖（此时均已完成）
+     */
+    private NodeResult<T> run(Node<T> node, Map<String, CompletableFuture<NodeResult<T>>> dependencies) {
+        for (String dependency : node.requires()) {
+            NodeResult<T> result = dependencies.get(dependency).join();
+            if (!result.isSuccess()) {
+                return new NodeResult<>(node.id(), Status.SKIPPED, null,
+                        "依赖节点 " + dependency + " 未成功", null, 0);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            T value = node.task().run(id -> {
+                CompletableFuture<NodeResult<T>> future = dependencies.get(id);
+                if (future == null) {
+                    throw new IllegalStateException("节点 " + node.id() + " 未声明依赖 " + id);
+                }
+                return future.join().value();
+            });
+            return new NodeResult<>(node.id(), Status.SUCCESS, value, null, null, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            Throwable cause = rootCause(e);
+            return new NodeResult<>(node.id(), Status.FAILED, null, message(cause), cause,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static String message(Throwable cause) {
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,127 @@
+package com.fit2cloud.fapiao.util;
+
+import com.fit2cloud.fapiao.exception.BusinessException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * 企业微信回调消息的签名校验与解密（与官方 WXBizMsgCrypt 一致），只接收事件，不做被动加密回复
+ * 签名：sha1(token、timestamp、nonce、密文 按字典序排序后拼接)；
+ * 密文：AES-256-CBC，密钥为 EncodingAESKey 的 Base64 解码，IV 取密钥前16字节，PKCS#7 按32字节补位；
+ * 明文：16字节随机串 + 4字节消息长度（网络字节序） + 消息 + ReceiveId（企业ID）。
+ */
+public final class WeComCallbackCrypto {
+
+    private static final int BLOCK_SIZE = 32;
+
+    private final String token;
+    private final byte[] aesKey;
+    private final String receiveId;
+
+    public WeComCallbackCrypto(String token, String encodingAesKey, String receiveId) {
+        if (encodingAesKey == null || encodingAesKey.length() != 43) {
+            throw new IllegalArgumentException("EncodingAESKey 长度应为43位");
+        }
+        this.token = token;
+        this.aesKey = Base64.getDecoder().decode(encodingAesKey + "=");
+        this.receiveId = receiveId;
+    }
+
+    /**
+     * 校验签名并解密，签名不符或 ReceiveId 不是本企业时抛出异常
+     */
+    public String verifyAndDecrypt(String msgSignature, String timestamp, String nonce, String encrypt) {
+        if (msgSignature == null || encrypt == null) {
+            throw new BusinessException("回调消息缺少签名或密文");
+        }
+        byte[] expected = signature(timestamp, nonce, encrypt).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, msgSignature.getBytes(StandardCharsets.US_ASCII))) {
+            throw new BusinessException("回调消息签名校验失败");
+        }
+        return decrypt(encrypt);
+    }
+
+    public String signature(String timestamp, String nonce, String encrypt) {
+        String[] parts = {token, timestamp != null ? timestamp : "", nonce != null ? nonce : "", encrypt};
+        Arrays.sort(parts);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(String.join("", parts).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            throw new BusinessException("计算回调签名失败", e.getMessage(), e);
+        }
+    }
+
+    public String decrypt(String encrypt) {
+        byte[] plain;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKey, "AES"),
+                    new IvParameterSpec(aesKey, 0, 16));
+            plain = cipher.doFinal(Base64.getDecoder().decode(encrypt));
+        } catch (Exception e) {
+            throw new BusinessException("回调消息解密失败: " + e.getMessage());
+        }
+
+        int pad = plain.length > 0 ? plain[plain.length - 1] & 0xff : 0;
+        if (pad < 1 || pad > BLOCK_SIZE || plain.length - pad < 20) {
+            throw new BusinessException("回调消息补位错误");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(plain, 16, plain.length - pad - 16);
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BusinessException("回调消息长度错误");
+        }
+        String message = new String(plain, 20, length, StandardCharsets.UTF_8);
+        String fromReceiveId = new String(plain, 20 + length, buffer.remaining() - length, StandardCharsets.UTF_8);
+        if (receiveId != null && !receiveId.isEmpty() && !receiveId.equals(fromReceiveId)) {
+            throw new BusinessException("回调消息不属于本企业: " + fromReceiveId);
+        }
+        return message;
+    }
+
+    /**
+     * 解析回调XML，返回根节点下各元素的文本（企业微信的回调消息只有一层）
+     * 禁用 DOCTYPE 和外部实体，避免 XXE
+     */
+    public static Map<String, String> parseXml(String xml) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // 解析错误只通过异常返回，不输出到标准错误
+            builder.setErrorHandler(new DefaultHandler());
+            Document document = builder.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+            Map<String, String> values = new LinkedHashMap<>();
+            NodeList children = document.getDocumentElement().getChildNodes();
+            for (int i = 0; i < children.getLength(); i++) {
+                Node child = children.item(i);
+                if (child instanceof Element) {
+                    values.put(child.getNodeName(), child.getTextContent().trim());
+                }
+            }
+            return values;
+        } catch (Exception e) {
+            throw new BusinessException("回调消息格式错误: " + e.getMessage());
+        }
+    }
+}
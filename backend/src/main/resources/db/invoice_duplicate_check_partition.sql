@@ -0,0 +1,50 @@
+-- 发票查重表按开票日期范围分区（MySQL 8）
+-- 说明：
+-- 1. 分区键必须包含在所有主键/唯一键中，因此主键调整为 (id, invoice_date)，
+--    唯一约束 (invoice_number, invoice_date, user_id) 已包含 invoice_date，无需调整。
+-- 2. 查重查询均带有 invoice_date 条件（等值或热数据窗口下界），可被分区裁剪。
+-- 3. 超出热数据窗口（invoice.duplicate.archive.hot-window-years）的记录由 InvoiceArchiveService
+--    定时分批迁移到 invoice_duplicate_check_archive，旧分区清空后可直接 DROP。
+-- 4. 每年年底前需拆分 p_future 增加新年度分区，示例见文件末尾。
+
+ALTER TABLE invoice_duplicate_check
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, invoice_date);
+
+ALTER TABLE invoice_duplicate_check
+    PARTITION BY RANGE COLUMNS (invoice_date) (
+        PARTITION p_before_2023 VALUES LESS THAN ('2023-01-01'),
+        PARTITION p2023 VALUES LESS THAN ('2024-01-01'),
+        PARTITION p2024 VALUES LESS THAN ('2025-01-01'),
+        PARTITION p2025 VALUES LESS THAN ('2026-01-01'),
+        PARTITION p2026 VALUES LESS THAN ('2027-01-01'),
+        PARTITION p2027 VALUES LESS THAN ('2028-01-01'),
+        PARTITION p_future VALUES LESS THAN (MAXVALUE)
+    );
+
+-- 归档表（JPA ddl-auto 也会自动创建，此处便于DBA手工初始化）
+CREATE TABLE IF NOT EXISTS invoice_duplicate_check_archive (
+    id             BIGINT         NOT NULL,
+    invoice_number VARCHAR(50)    NOT NULL,
+    invoice_date   DATE           NOT NULL,
+    total_amount   DECIMAL(10, 2),
+    seller_name    VARCHAR(200),
+    item_name      VARCHAR(500),
+    user_id        VARCHAR(100)   NOT NULL,
+    submit_time    DATETIME(6)    NOT NULL,
+    status         VARCHAR(20),
+    created_time   DATETIME(6),
+    updated_time   DATETIME(6),
+    archived_time  DATETIME(6),
+    PRIMARY KEY (id),
+    KEY idx_archive_number_date (invoice_number, invoice_date)
+);
+
+-- 新增年度分区示例：
+-- ALTER TABLE invoice_duplicate_check REORGANIZE PARTITION p_future INTO (
+--     PARTITION p2028 VALUES LESS THAN ('2029-01-01'),
+--     PARTITION p_future VALUES LESS THAN (MAXVALUE)
+-- );
+
+-- 归档完成后删除空的旧分区示例：
+-- ALTER TABLE invoice_duplicate_check DROP PARTITION p_before_2023;
@@ -0,0 +1,244 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.wecom.WeComApplyEventResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComUser;
+import com.fit2cloud.fapiao.util.ApprovalControl;
+import com.fit2cloud.fapiao.util.ApprovalTemplate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 审批提交请求体的对照测试
+ * approval-golden 下的文件由改用 ApprovalJsonWriter 之前的实现（WeComApprovalRequest 对象 + ObjectMapper 序列化）
+ * 按同样的输入生成，现在的实现必须逐字节一致（字段顺序、null 字段、转义、DateRange 默认值）。
+ * 日期缺失或无法解析时两边都取当前时间，对照文件中这些时间戳记为 "<now>" 或 "<now-43200>"（按小时取整的偏移），
+ * 摘要里的报销日期记为 <today>、<today-3m>（往前几个月）
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ApprovalPayloadGoldenTest {
+
+    private static final Pattern EPOCH_SECONDS = Pattern.compile("\"(\\d{10})\"");
+
+    private static final Pattern ISO_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    private static final long CLOCK_WINDOW_SECONDS = 3 * 24 * 3600;
+
+    private static final int CLOCK_WINDOW_MONTHS = 6;
+
+    @Mock
+    private QyWechatService qyWechatService;
+
+    @Mock
+    private WeComApiClient weComApiClient;
+
+    @Mock
+    private DepartmentService departmentService;
+
+    @Mock
+    private UserDepartmentRelationService userDepartmentRelationService;
+
+    @Mock
+    private ApprovalTemplateService approvalTemplateService;
+
+    @InjectMocks
+    private WeComApprovalService approvalService;
+
+    @InjectMocks
+    private BusinessTripService businessTripService;
+
+    @InjectMocks
+    private TravelSubsidyService travelSubsidyService;
+
+    /**
+     * 被测的三个服务，用例只调用它们的公开提交方法
+     */
+    record Services(WeComApprovalService approval, BusinessTripService businessTrip, TravelSubsidyService travelSubsidy) {
+    }
+
+    record Case(String name, Consumer<Services> submit) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(approvalService, "dailyTemplateId", "tpl-daily");
+        ReflectionTestUtils.setField(approvalService, "travelTemplateId", "tpl-travel");
+        ReflectionTestUtils.setField(businessTripService, "businessTripTemplateId", "tpl-bt");
+        ReflectionTestUtils.setField(travelSubsidyService, "travelSubsidyTemplateId", "tpl-s");
+        ReflectionTestUtils.setField(travelSubsidyService, "dailySubsidyAmount", 100);
+
+        when(qyWechatService.getAccessTokenForApproval()).thenReturn("tok");
+        when(weComApiClient.get(eq("user/get"), anyString(), eq("userid"), any(), eq(WeComUser.class)))
+                .thenReturn(new WeComUser(0, "ok", "zhangsan", "张三", null, null, null, null, null, null, null));
+        when(weComApiClient.post(eq("oa/applyevent"), anyString(), any(), eq(WeComApplyEventResponse.class)))
+                .thenReturn(new WeComApplyEventResponse(0, "ok", "sp-1"));
+
+        List<Map<String, Object>> departments = new ArrayList<>();
+        departments.add(new HashMap<>(Map.of("id", 3, "name", "华东区域")));
+        departments.add(new HashMap<>(Map.of("id", 7, "name", "智能体\"开发\\")));
+        departments.add(new HashMap<>(Map.of("id", 12, "name", "销售部")));
+        when(departmentService.getDepartmentTree()).thenReturn(DepartmentTree.build(departments));
+        when(userDepartmentRelationService.getDepartmentStructureForUser(anyString()))
+                .thenReturn(new HashMap<>(Map.of("departmentId", "12", "region", "华东区域")));
+
+        when(approvalTemplateService.getTemplate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<ApprovalControl> controls = invocation.getArgument(1);
+            return new ApprovalTemplate(invocation.getArgument(0), controls, List.of(), true);
+        });
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("cases")
+    void payloadMatchesGolden(Case testCase) throws IOException {
+        testCase.submit().accept(new Services(approvalService, businessTripService, travelSubsidyService));
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(weComApiClient).post(eq("oa/applyevent"), eq("tok"), payload.capture(), eq(WeComApplyEventResponse.class));
+        String actual = new String((byte[]) payload.getValue(), StandardCharsets.UTF_8);
+        actual = markClockTimestamps(actual, System.currentTimeMillis() / 1000);
+        assertEquals(golden(testCase.name()), markClockDates(actual, LocalDate.now()));
+    }
+
+    /**
+     * 把接近当前时间的时间戳替换为相对当前时间的占位符
+     */
+    private static String markClockTimestamps(String json, long now) {
+        Matcher matcher = EPOCH_SECONDS.matcher(json);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            long offset = Long.parseLong(matcher.group(1)) - now;
+            String replacement = matcher.group();
+            if (Math.abs(offset) < CLOCK_WINDOW_SECONDS) {
+                long hours = Math.round(offset / 3600.0);
+                replacement = hours == 0 ? "\"<now>\"" : String.format("\"<now%+d>\"", hours * 3600);
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * 把当天及往前几个月的同一天替换为占位符
+     */
+    private static String markClockDates(String json, LocalDate today) {
+        Map<String, String> marks = new HashMap<>();
+        for (int months = CLOCK_WINDOW_MONTHS; months > 0; months--) {
+            marks.put(today.minusMonths(months).toString(), "<today-" + months + "m>");
+        }
+        marks.put(today.toString(), "<today>");
+        return ISO_DATE.matcher(json).replaceAll(match -> Matcher.quoteReplacement(
+                marks.getOrDefault(match.group(), match.group())));
+    }
+
+    static Stream<Case> cases() {
+        List<InvoiceInfo> invoices = List.of(
+                invoice("交通费", null, "12.50元", "2025-11-03", "0001", "滴滴\"出行\"", "备注\n换行\t\\", null),
+                invoice("福利费", "旅游费", " 1 000 ", "bad-date", null, null, "", "团建😀"),
+                invoice(null, null, null, null, "0003", "卖方", null, null),
+                invoice("办公费", null, "3.3", "2025-01-01", "\u0001ctl", "<s>&", "x", "reason"));
+        List<InvoiceInfo> single = invoices.subList(0, 1);
+
+        return Stream.of(
+                new Case("daily-full", s -> s.approval().submitApproval("zhangsan", invoices, "12.5元", "m1,m2, ,m4",
+                        "日常报销单", "买水", "某公司", "华东区域", "7",
+                        null, null, null, null, null, null, null, null)),
+                new Case("daily-single-invoice", s -> s.approval().submitApproval("zhangsan", single, "12.5元", "m1",
+                        "日常报销单", "买水", "某公司", "华东区域", "7",
+                        null, null, null, null, null, null, null, null)),
+                new Case("daily-user-defaults", s -> s.approval().submitApproval("lisi", invoices, "abc", null,
+                        "日常报销单", "", null, null, null,
+                        null, null, null, null, null, null, null, null)),
+                new Case("daily-unknown-region", s -> s.approval().submitApproval("wangwu", invoices, "0", "m1",
+                        "日常报销单", null, null, "不存在区域", "x1",
+                        null, null, null, null, null, null, null, null)),
+                new Case("daily-escaping", s -> s.approval().submitApproval("u\"q", single, "99", "",
+                        "日常报销单", " ", "A", "销售部", "12",
+                        null, null, null, null, null, null, null, null)),
+                new Case("travel-full", s -> s.approval().submitApproval("zhangsan", invoices, "100元", "m1,m2",
+                        "客成差旅报销单", "出差", "公司", "华东区域", "7",
+                        "客户A", "未签B", "2", "2025-11-03", "2025-11-04", "上午", "下午", "sp001")),
+                new Case("travel-empty", s -> s.approval().submitApproval("lisi", invoices, "1", null,
+                        "客成差旅报销单", null, null, null, null,
+                        null, null, null, null, null, null, null, null)),
+                new Case("travel-bad-dates", s -> s.approval().submitApproval("w", invoices, "1", "m",
+                        "客成差旅报销单", " ", "x", "销售部", "bad",
+                        " ", " ", "1", "2025-13-01", "2025-11-04", "下午", "上午", " ")),
+                new Case("travel-missing-end", s -> s.approval().submitApproval("w", single, "1", "m",
+                        "客成差旅报销单", "r", "x", "智能体开发", "12",
+                        "c", null, "1", "2025-11-03", "", "下午", "上午", "sp")),
+                new Case("trip-full", s -> s.businessTrip().submitBusinessTripApproval("u1",
+                        "去客户现场支持部署并进行培训以及验收工作的出差", "客户A", "2025-11-03T16:00:00.000Z", "3",
+                        "2025-11-03", "2025-11-05", "上午", "下午", "2.5")),
+                new Case("trip-empty", s -> s.businessTrip().submitBusinessTripApproval("u2",
+                        null, null, null, null, null, null, null, null, null)),
+                new Case("trip-bad-values", s -> s.businessTrip().submitBusinessTripApproval("u3",
+                        "短", " ", "2025-11-03", "abc", "2025-11-03", "bad", "下午", "上午", "")),
+                new Case("trip-half-day", s -> s.businessTrip().submitBusinessTripApproval("u4",
+                        "r", "c", "bad", "99", "2025-11-03", "2025-11-03", "上午", "上午", "0.5")),
+                new Case("subsidy-full", s -> s.travelSubsidy().submitTravelSubsidyApproval("u1", "王五", "出差",
+                        "2025-11-03", "3", "2025-11-03", "2025-11-05", "上午", "下午", "2.5", "sp1")),
+                new Case("subsidy-empty", s -> s.travelSubsidy().submitTravelSubsidyApproval("u2", null, null,
+                        null, null, null, null, null, null, null, null)),
+                new Case("subsidy-bad-values", s -> s.travelSubsidy().submitTravelSubsidyApproval("u3", "n", "r",
+                        "bad", "x", "2025-11-03", "bad", "下午", "上午", "1", " "))
+        );
+    }
+
+    private static InvoiceInfo invoice(String type, String subType, String amount, String date, String number,
+                                       String seller, String remark, String reason) {
+        InvoiceInfo invoice = new InvoiceInfo();
+        invoice.setReimbursementType(type);
+        invoice.setSubReimbursementType(subType);
+        invoice.setTotalAmount(amount);
+        invoice.setInvoiceDate(date);
+        invoice.setInvoiceNumber(number);
+        invoice.setSellerName(seller);
+        invoice.setRemark(remark);
+        invoice.setConsumptionReason(reason);
+        return invoice;
+    }
+
+    private static String golden(String name) throws IOException {
+        try (InputStream in = ApprovalPayloadGoldenTest.class.getResourceAsStream("/approval-golden/" + name + ".json")) {
+            assertNotNull(in, "缺少对照文件 " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
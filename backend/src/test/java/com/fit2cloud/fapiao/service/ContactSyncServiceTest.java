@@ -0,0 +1,213 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.controller.WeComCallbackController;
+import com.fit2cloud.fapiao.util.WeComCallbackCrypto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 通讯录变更回调端到端测试
+ * 按企业微信 WXBizMsgCrypt 的方式加密、签名回调XML，经回调接口入队，再批量应用到用户目录
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ContactSyncServiceTest {
+
+    private static final String TOKEN = "callback-token";
+    private static final String AES_KEY = "abcdefghijklmnopqrstuvwxyz0123456789ABCDEFG";
+    private static final String CORP_ID = "ww-corp";
+
+    @Mock
+    private AccessTokenService accessTokenService;
+
+    @Mock
+    private WeComApiClient weComApiClient;
+
+    @Mock
+    private DepartmentService departmentService;
+
+    @Mock
+    private UserDepartmentRelationService userDepartmentRelationService;
+
+    @Mock
+    private WeComDirectoryLoader weComDirectoryLoader;
+
+    @Mock
+    private UserDirectorySnapshotStore snapshotStore;
+
+    @InjectMocks
+    private UserInfoService userInfoService;
+
+    private WeComCallbackCrypto crypto;
+    private ContactSyncService contactSyncService;
+    private WeComCallbackController controller;
+
+    @BeforeEach
+    void setUp() {
+        when(departmentService.getDepartmentTree()).thenReturn(DepartmentTree.build(List.of(
+                Map.of("id", 1, "name", "总部", "parentid", 0),
+                Map.of("id", 2, "name", "研发部", "parentid", 1),
+                Map.of("id", 3, "name", "销售部", "parentid", 1))));
+
+        long now = System.currentTimeMillis();
+        ReflectionTestUtils.setField(userInfoService, "directory", UserDirectory.builder()
+                .add(user("zhangsan", "张三", "2", now))
+                .add(user("lisi", "李四", "3", now))
+                .add(user("wangwu", "王五", "3", now))
+                .build(now));
+
+        crypto = new WeComCallbackCrypto(TOKEN, AES_KEY, CORP_ID);
+        contactSyncService = new ContactSyncService(userInfoService, departmentService,
+                TOKEN, AES_KEY, CORP_ID, 100, 500, 24);
+        controller = new WeComCallbackController(contactSyncService);
+    }
+
+    @Test
+    void renameAndDeleteAreAppliedToDirectory() {
+        assertEquals("success", post(contactEvent("update_user", "zhangsan",
+                "<NewUserID><![CDATA[zhangsan2]]></NewUserID><Name><![CDATA[张三丰]]></Name>")));
+        assertEquals("success", post(contactEvent("delete_user", "lisi", "")));
+
+        contactSyncService.applyPendingEvents();
+
+        UserDirectory directory = directory();
+        assertNull(directory.get("zhangsan"));
+        assertNull(directory.get("lisi"));
+        UserDirectory.User renamed = directory.get("zhangsan2");
+        assertNotNull(renamed);
+        assertEquals("张三丰", renamed.name());
+        assertEquals(List.of("2"), renamed.departmentIds());
+        assertEquals(List.of("研发部"), renamed.departmentNames());
+        assertNotNull(directory.get("wangwu"));
+        verify(userDepartmentRelationService).applyUserChanges(
+                Map.of("zhangsan2", List.of("2")), Set.of("zhangsan", "lisi"));
+        assertEquals(2L, contactSyncService.getStatus().get("applied"));
+    }
+
+    /**
+     * 数值字段格式错误时跳过该字段，回调仍返回 success，其余字段照常应用
+     */
+    @Test
+    void malformedNumbersAreSkipped() {
+        assertEquals("success", post(contactEvent("update_user", "wangwu",
+                "<Name><![CDATA[王五五]]></Name><Department><![CDATA[2,abc]]></Department>"
+                        + "<MainDepartment>x</MainDepartment><Status>1a</Status>",
+                "not-a-number")));
+        assertEquals("success", post(contactEvent("update_user", "lisi",
+                "<Department><![CDATA[abc]]></Department><Position><![CDATA[经理]]></Position>")));
+
+        contactSyncService.applyPendingEvents();
+
+        UserDirectory.User wangwu = directory().get("wangwu");
+        assertEquals("王五五", wangwu.name());
+        assertEquals(List.of("2"), wangwu.departmentIds());
+        assertEquals(1, wangwu.status());
+        assertEquals(3, wangwu.mainDepartment());
+
+        // 部门ID全部无效时按部门未变化处理
+        UserDirectory.User lisi = directory().get("lisi");
+        assertEquals("经理", lisi.position());
+        assertEquals(List.of("3"), lisi.departmentIds());
+    }
+
+    @Test
+    void invalidSignatureIsRejected() {
+        String encrypt = encrypt(contactEvent("delete_user", "lisi", ""));
+        ResponseEntity<String> response = controller.receiveContactEvent("0".repeat(40), "1700000000", "nonce",
+                envelope(encrypt));
+
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+        contactSyncService.applyPendingEvents();
+        assertNotNull(directory().get("lisi"));
+        assertEquals(1L, contactSyncService.getStatus().get("rejected"));
+    }
+
+    private String post(String message) {
+        String timestamp = "1700000000";
+        String nonce = "nonce-" + message.hashCode();
+        String encrypt = encrypt(message);
+        ResponseEntity<String> response = controller.receiveContactEvent(
+                crypto.signature(timestamp, nonce, encrypt), timestamp, nonce, envelope(encrypt));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody();
+    }
+
+    private UserDirectory directory() {
+        return (UserDirectory) ReflectionTestUtils.getField(userInfoService, "directory");
+    }
+
+    private static UserDirectory.User user(String userId, String name, String departmentId, long loadedAt) {
+        return new UserDirectory.User(userId, name, "工程师", null, null, null, 1, Integer.valueOf(departmentId),
+                List.of(departmentId), List.of(), List.of(), loadedAt);
+    }
+
+    private static String contactEvent(String changeType, String userId, String fields) {
+        return contactEvent(changeType, userId, fields, "1700000000");
+    }
+
+    private static String contactEvent(String changeType, String userId, String fields, String createTime) {
+        return "<xml><ToUserName><![CDATA[" + CORP_ID + "]]></ToUserName>"
+                + "<FromUserName><![CDATA[sys]]></FromUserName>"
+                + "<CreateTime>" + createTime + "</CreateTime>"
+                + "<MsgType><![CDATA[event]]></MsgType><Event><![CDATA[change_contact]]></Event>"
+                + "<ChangeType>" + changeType + "</ChangeType>"
+                + "<UserID><![CDATA[" + userId + "]]></UserID>" + fields + "</xml>";
+    }
+
+    private static String envelope(String encrypt) {
+        return "<xml><ToUserName><![CDATA[" + CORP_ID + "]]></ToUserName>"
+                + "<Encrypt><![CDATA[" + encrypt + "]]></Encrypt><AgentID><![CDATA[1000002]]></AgentID></xml>";
+    }
+
+    /**
+     * 与 WXBizMsgCrypt.encrypt 相同：16字节随机串 + 消息长度 + 消息 + ReceiveId，PKCS#7 按32字节补位后 AES-CBC 加密
+     */
+    private static String encrypt(String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        byte[] receiveId = CORP_ID.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        plain.writeBytes("0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+        plain.writeBytes(ByteBuffer.allocate(4).putInt(text.length).array());
+        plain.writeBytes(text);
+        plain.writeBytes(receiveId);
+        int pad = 32 - plain.size() % 32;
+        for (int i = 0; i < pad; i++) {
+            plain.write(pad);
+        }
+
+        try {
+            byte[] key = Base64.getDecoder().decode(AES_KEY + "=");
+            Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(key, 0, 16));
+            return Base64.getEncoder().encodeToString(cipher.doFinal(plain.toByteArray()));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.entity.InvoiceDuplicateCheck;
+import com.fit2cloud.fapiao.repository.InvoiceDuplicateCheckArchiveRepository;
+import com.fit2cloud.fapiao.repository.InvoiceDuplicateCheckRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 近似查重索引与数据库的一致性：只收录已提交事务的记录，重建期间新增的记录不丢失、计数准确
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class InvoiceNearDuplicateIndexTest {
+
+    private static final LocalDate INVOICE_DATE = LocalDate.now().minusDays(10);
+
+    @Mock
+    private InvoiceDuplicateCheckRepository duplicateCheckRepository;
+
+    @Mock
+    private InvoiceDuplicateCheckArchiveRepository archiveRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private InvoiceNearDuplicateIndex index;
+    private InvoiceDuplicateCheckService duplicateCheckService;
+
+    @BeforeEach
+    void setUp() {
+        index = new InvoiceNearDuplicateIndex(duplicateCheckRepository, entityManager);
+        ReflectionTestUtils.setField(index, "nearDuplicateEnabled", true);
+        ReflectionTestUtils.setField(index, "similarityThreshold", 0.75);
+        ReflectionTestUtils.setField(index, "maxEditDistance", 2);
+        ReflectionTestUtils.setField(index, "hotWindowYears", 3);
+
+        duplicateCheckService = new InvoiceDuplicateCheckService(duplicateCheckRepository, archiveRepository, index);
+        ReflectionTestUtils.setField(duplicateCheckService, "duplicateCheckEnabled", true);
+        when(duplicateCheckRepository.findByInvoiceNumberAndInvoiceDate(any(), any())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void submissionIsIndexedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        duplicateCheckService.recordInvoiceSubmission(invoice("12345678"), "zhangsan");
+
+        assertNull(findNear("12345679"));
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        InvoiceNearDuplicateIndex.NearDuplicateMatch match = findNear("12345679");
+        assertNotNull(match);
+        assertEquals("12345678", match.invoiceNumber());
+        assertEquals(1L, index.getIndexStatus().get("entryCount"));
+    }
+
+    @Test
+    void rolledBackSubmissionIsNotIndexed() {
+        TransactionSynchronizationManager.initSynchronization();
+        duplicateCheckService.recordInvoiceSubmission(invoice("12345678"), "zhangsan");
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertNull(findNear("12345679"));
+        assertEquals(0L, index.getIndexStatus().get("entryCount"));
+    }
+
+    /**
+     * 重建扫描过程中提交的记录同时写入新索引，替换后的条目数按新索引计算
+     */
+    @Test
+    void rebuildCountsEntriesAddedDuringScan() {
+        InvoiceDuplicateCheck scanned = record("11110000");
+        InvoiceDuplicateCheck addedDuringScan = record("22220000");
+        when(duplicateCheckRepository.streamAllActive(any())).thenReturn(Stream.of(scanned).peek(r -> index.add(addedDuringScan)));
+
+        index.rebuild();
+
+        assertEquals(2L, index.getIndexStatus().get("entryCount"));
+        assertNotNull(findNear("22220001"));
+        assertNotNull(findNear("11110001"));
+    }
+
+    private InvoiceNearDuplicateIndex.NearDuplicateMatch findNear(String invoiceNumber) {
+        return index.findBestMatch(invoiceNumber, "杭州某某科技有限公司", new BigDecimal("100.00"), INVOICE_DATE, "技术服务费");
+    }
+
+    private static void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private static InvoiceInfo invoice(String invoiceNumber) {
+        InvoiceInfo invoice = new InvoiceInfo();
+        invoice.setInvoiceNumber(invoiceNumber);
+        invoice.setInvoiceDate(INVOICE_DATE.toString());
+        invoice.setTotalAmount("100.00");
+        invoice.setSellerName("杭州某某科技有限公司");
+        invoice.setInvoiceItemName("技术服务费");
+        return invoice;
+    }
+
+    private static InvoiceDuplicateCheck record(String invoiceNumber) {
+        InvoiceDuplicateCheck record = new InvoiceDuplicateCheck();
+        record.setInvoiceNumber(invoiceNumber);
+        record.setInvoiceDate(INVOICE_DATE);
+        record.setTotalAmount(new BigDecimal("100.00"));
+        record.setSellerName("杭州某某科技有限公司");
+        record.setItemName("技术服务费");
+        record.setUserId("lisi");
+        return record;
+    }
+}
@@ -0,0 +1,123 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fit2cloud.fapiao.dto.response.BatchValidationResult;
+import com.fit2cloud.fapiao.dto.response.InvoiceInfo;
+import com.fit2cloud.fapiao.dto.response.InvoiceValidationResult;
+import com.fit2cloud.fapiao.dto.response.RuleViolation;
+import com.fit2cloud.fapiao.dto.response.ValidationResult;
+import com.fit2cloud.fapiao.dto.response.VerificationResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * 延迟真伪验证：后台验证结果回填时保留识别阶段已有的违规
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RuleValidationServiceTest {
+
+    @Mock
+    private UserInfoService userInfoService;
+
+    @Mock
+    private InvoiceVerificationService verificationService;
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private ComplianceRuleEngine complianceRuleEngine;
+
+    @InjectMocks
+    private RuleValidationService ruleValidationService;
+
+    @BeforeEach
+    void setUp() {
+        Executor direct = Runnable::run;
+        ReflectionTestUtils.setField(ruleValidationService, "validationExecutor", direct);
+        ReflectionTestUtils.setField(ruleValidationService, "verificationEnabled", true);
+    }
+
+    /**
+     * 第二张发票批内重复、查重异常，后台验证又不通过：回填后三类违规都在
+     */
+    @Test
+    void failedVerificationKeepsDuplicateViolations() {
+        List<InvoiceInfo> invoices = List.of(invoice("11110001"), invoice("11110001"));
+        when(complianceRuleEngine.evaluateBatch(anyList(), anyString())).thenReturn(Map.of(1, new ArrayList<>(List.of(
+                new RuleViolation("batch_duplicate", "发票重复", "与第1张发票重复", RuleViolation.Severity.ERROR)))));
+        when(verificationService.verifyInvoice(any())).thenReturn(VerificationResult.failed("发票不存在"));
+
+        BatchValidationResult batch = ruleValidationService.validateInvoices(invoices, "日常费用报销单", invoice -> {
+            throw new IllegalStateException("查重服务不可用");
+        }, true);
+
+        ValidationResult pending = batch.getResults().get(1).getValidationResult();
+        assertEquals(VerificationResult.STATUS_PENDING, pending.getVerificationResult().getStatus());
+        List<String> pendingFields = fields(pending);
+        assertTrue(pendingFields.containsAll(List.of("duplicate_check", "batch_duplicate")), pendingFields.toString());
+
+        DeferredVerificationService deferred = new DeferredVerificationService(ruleValidationService, verificationService);
+        String token = deferred.start(batch);
+        @SuppressWarnings("unchecked")
+        List<InvoiceValidationResult> completed = (List<InvoiceValidationResult>) deferred.poll(token).get("results");
+
+        ValidationResult verified = completed.stream()
+                .filter(result -> result.getInvoiceIndex() == 1)
+                .findFirst().orElseThrow().getValidationResult();
+        List<String> expected = new ArrayList<>(pendingFields);
+        expected.add("invoice_verification");
+        assertEquals(expected, fields(verified));
+        assertFalse(verified.isValid());
+        assertEquals(VerificationResult.STATUS_FAILED, verified.getVerificationResult().getStatus());
+        assertEquals(RuleViolation.Severity.ERROR, verified.getViolations().get(verified.getViolations().size() - 1).getSeverity());
+    }
+
+    @Test
+    void passedVerificationKeepsPendingResultValidity() {
+        ValidationResult pending = new ValidationResult(true, new ArrayList<>());
+        pending.setVerificationResult(VerificationResult.pending("真伪验证进行中"));
+
+        ValidationResult verified = ruleValidationService.applyVerificationResult(invoice("22220002"),
+                VerificationResult.success("验证通过"), pending);
+
+        assertTrue(verified.isValid());
+        assertTrue(verified.getViolations().isEmpty());
+        assertEquals(VerificationResult.STATUS_SUCCESS, verified.getVerificationResult().getStatus());
+    }
+
+    private static List<String> fields(ValidationResult result) {
+        return result.getViolations().stream().map(RuleViolation::getField).toList();
+    }
+
+    private static InvoiceInfo invoice(String invoiceNumber) {
+        InvoiceInfo invoice = new InvoiceInfo();
+        invoice.setInvoiceNumber(invoiceNumber);
+        invoice.setInvoiceDate("2025-06-01");
+        invoice.setTotalAmount("100.00");
+        invoice.setBuyerName("杭州飞致云信息科技有限公司");
+        invoice.setSellerName("杭州某某科技有限公司");
+        return invoice;
+    }
+}
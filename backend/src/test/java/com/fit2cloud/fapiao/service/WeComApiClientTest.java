@@ -0,0 +1,179 @@
+package com.fit2cloud.fapiao.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fit2cloud.fapiao.dto.wecom.WeComDepartmentListResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComSessionResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComTicketResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComTokenResponse;
+import com.fit2cloud.fapiao.dto.wecom.WeComUser;
+import com.fit2cloud.fapiao.dto.wecom.WeComUserListResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class WeComApiClientTest {
+
+    @Test
+    void responsesLoggedAtDebugDoNotContainCredentials() {
+        RestTemplate restTemplate = new RestTemplate();
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo("https://qyapi.weixin.qq.com/cgi-bin/gettoken?corpid=ww1&corpsecret=s1"))
+                .andRespond(withSuccess("{\"errcode\":0,\"errmsg\":\"ok\",\"access_token\":\"TOKEN-abc\",\"expires_in\":7200}",
+                        MediaType.APPLICATION_JSON));
+        server.expect(requestTo("https://qyapi.weixin.qq.com/cgi-bin/get_jsapi_ticket?access_token=TOKEN-abc"))
+                .andRespond(withSuccess("{\"errcode\":0,\"errmsg\":\"ok\",\"ticket\":\"TICKET-xyz\",\"expires_in\":7200}",
+                        MediaType.APPLICATION_JSON));
+
+        WeComApiClient client = new WeComApiClient(restTemplate);
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("corpid", "ww1");
+        query.put("corpsecret", "s1");
+        WeComTokenResponse token = client.get("gettoken", query, WeComTokenResponse.class);
+        WeComTicketResponse ticket = client.get("get_jsapi_ticket", Map.of("access_token", token.accessToken()),
+                WeComTicketResponse.class);
+        server.verify();
+
+        assertEquals("TOKEN-abc", token.accessToken());
+        assertEquals(7200, token.expiresIn());
+        assertEquals("TICKET-xyz", ticket.ticket());
+        assertFalse(token.toString().contains("TOKEN-abc"), token.toString());
+        assertFalse(ticket.toString().contains("TICKET-xyz"), ticket.toString());
+
+        WeComSessionResponse session = new WeComSessionResponse(0, "ok", "ww1", "zhangsan", "SESSION-key", "USER-ticket", 7200);
+        assertFalse(session.toString().contains("SESSION-key"), session.toString());
+        assertFalse(session.toString().contains("USER-ticket"), session.toString());
+        assertTrue(session.toString().contains("zhangsan"), session.toString());
+    }
+
+    /**
+     * 按记录类型解析与解析为 Map 的对比（3000 个成员、1500 个部门，字段齐全）
+     * 计时只输出不断言；分配量在同一线程内统计，结果稳定，作为断言依据
+     */
+    @Test
+    void typedParsingAllocatesLessThanMap() throws Exception {
+        byte[] users = userList(3000).getBytes(StandardCharsets.UTF_8);
+        byte[] departments = departmentList(1500).getBytes(StandardCharsets.UTF_8);
+
+        // 与 WeComApiClient 相同的配置；Map 一侧为改动前 RestTemplate 使用的 ObjectMapper
+        ObjectMapper shared = JsonMapper.builder().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).build();
+        ObjectMapper previous = Jackson2ObjectMapperBuilder.json().build();
+        ObjectReader userReader = shared.readerFor(WeComUserListResponse.class);
+        ObjectReader departmentReader = shared.readerFor(WeComDepartmentListResponse.class);
+
+        Measurement userMap = measure("user/list Map", () -> {
+            Map<?, ?> body = previous.readValue(new ByteArrayInputStream(users), Map.class);
+            return ((List<?>) body.get("userlist")).size();
+        });
+        Measurement userTyped = measure("user/list typed", () -> {
+            WeComUserListResponse body = userReader.readValue(new ByteArrayInputStream(users));
+            return body.userlist().size();
+        });
+        Measurement departmentMap = measure("department/list Map", () -> {
+            Map<?, ?> body = previous.readValue(new ByteArrayInputStream(departments), Map.class);
+            return ((List<?>) body.get("department")).size();
+        });
+        Measurement departmentTyped = measure("department/list typed", () -> {
+            WeComDepartmentListResponse body = departmentReader.readValue(new ByteArrayInputStream(departments));
+            return body.department().size();
+        });
+
+        assertEquals(3000, userTyped.result());
+        assertEquals(1500, departmentTyped.result());
+        assertTrue(userTyped.bytesPerOp() * 4 < userMap.bytesPerOp(), userTyped + " vs " + userMap);
+        assertTrue(departmentTyped.bytesPerOp() < departmentMap.bytesPerOp(), departmentTyped + " vs " + departmentMap);
+
+        WeComUserListResponse parsed = userReader.readValue(new ByteArrayInputStream(users));
+        WeComUser first = parsed.userlist().get(0);
+        assertEquals("user0", first.userid());
+        assertEquals(List.of(2, 60), first.department());
+        assertEquals(2, first.mainDepartment());
+    }
+
+    private interface Operation {
+        int run() throws Exception;
+    }
+
+    private record Measurement(String name, int result, long bytesPerOp, double millisPerOp) {
+        @Override
+        public String toString() {
+            return String.format("%s: %.2f ms/op, %d KB/op", name, millisPerOp, bytesPerOp / 1024);
+        }
+    }
+
+    private static Measurement measure(String name, Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int result = 0;
+        for (int i = 0; i < 20; i++) {
+            result = operation.run();
+        }
+        int iterations = 30;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result = operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        Measurement measurement = new Measurement(name, result, allocated / iterations, elapsed / 1e6 / iterations);
+        System.out.println(measurement);
+        return measurement;
+    }
+
+    /**
+     * user/list 响应，成员字段与企业微信文档中的完整示例一致（大部分字段业务不使用）
+     */
+    private static String userList(int count) {
+        StringBuilder json = new StringBuilder("{\"errcode\":0,\"errmsg\":\"ok\",\"userlist\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"userid\":\"user").append(i).append("\",\"name\":\"张三").append(i)
+                    .append("\",\"department\":[").append(i % 50 + 2).append(',').append(i % 7 + 60)
+                    .append("],\"order\":[0,0],\"position\":\"工程师\",\"mobile\":\"1380000").append(i)
+                    .append("\",\"gender\":\"1\",\"email\":\"u").append(i).append("@example.com\",\"biz_mail\":\"u").append(i)
+                    .append("@corp.com\",\"is_leader_in_dept\":[0,0],\"direct_leader\":[\"lead\"],")
+                    .append("\"avatar\":\"https://wework.qpic.cn/wwpic/").append(i).append("/0\",")
+                    .append("\"thumb_avatar\":\"https://wework.qpic.cn/wwpic/").append(i).append("/100\",")
+                    .append("\"telephone\":\"020-123456\",\"alias\":\"jackzhang\",\"status\":1,")
+                    .append("\"address\":\"广州市海珠区新港中路\",\"english_name\":\"jack\",\"main_department\":").append(i % 50 + 2)
+                    .append(",\"extattr\":{\"attrs\":[{\"type\":0,\"name\":\"文本名称\",\"text\":{\"value\":\"文本\"}},")
+                    .append("{\"type\":1,\"name\":\"网页名称\",\"web\":{\"url\":\"http://www.test.com\",\"title\":\"标题\"}}]},")
+                    .append("\"qr_code\":\"https://open.work.weixin.qq.com/wwopen/userQRCode?vcode=xxx\",")
+                    .append("\"external_position\":\"产品经理\",\"external_profile\":{\"external_corp_name\":\"企业简称\",")
+                    .append("\"external_attr\":[{\"type\":0,\"name\":\"文本名称\",\"text\":{\"value\":\"文本\"}}]}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String departmentList(int count) {
+        StringBuilder json = new StringBuilder("{\"errcode\":0,\"errmsg\":\"ok\",\"department\":[");
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"name\":\"华南区域研发部").append(i)
+                    .append("\",\"name_en\":\"RDGZ\",\"department_leader\":[\"zhangsan\",\"lisi\"],\"parentid\":")
+                    .append(i == 1 ? 0 : i / 4 + 1).append(",\"order\":").append(100000000 - i).append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
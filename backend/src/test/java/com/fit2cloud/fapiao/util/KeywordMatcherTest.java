@@ -0,0 +1,115 @@
+package com.fit2cloud.fapiao.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 与被替换的写法（按顺序逐个 contains() 的 if-else）对照
+ */
+class KeywordMatcherTest {
+
+    @Test
+    void findFirstKeepsIfElseOrder() {
+        KeywordMatcher<String> seats = KeywordMatcher.of(keywordMap("一等座", "一等", "二等座", "二等", "商务座", "商务"));
+        assertEquals("一等", seats.findFirst("G1234 二等座 一等"));
+        assertEquals("二等座", seats.findFirst("G1234 二等座"));
+        assertNull(seats.findFirst("无座"));
+        assertNull(seats.findFirst(null));
+
+        KeywordMatcher<String> regions = KeywordMatcher.of("区域", "区", "大区");
+        assertEquals("区", regions.findFirst("华东大区"));
+        assertTrue(regions.containsAny("华东大区"));
+        assertFalse(regions.containsAny("研发部"));
+    }
+
+    @Test
+    void ignoreCaseMatchesAnyCase() {
+        KeywordMatcher<String> brands = KeywordMatcher.ignoreCase("Hilton", "IBIS");
+        assertEquals("IBIS", brands.findFirst("宜必思 ibis 酒店"));
+        assertEquals("Hilton", brands.findFirst("HILTON ibis"));
+        assertNull(brands.findFirst("如家"));
+    }
+
+    /**
+     * 小字符集上随机生成关键词和文本，制造大量前缀、后缀重叠，结果必须与逐个 contains() 一致
+     */
+    @Test
+    void matchesNaiveContainsOnRandomInput() {
+        Random random = new Random(20251103L);
+        String alphabet = "abc区域大";
+        for (int round = 0; round < 500; round++) {
+            boolean ignoreCase = round % 2 == 1;
+            List<String> keywords = new ArrayList<>();
+            for (int i = 1 + random.nextInt(12); i > 0; i--) {
+                keywords.add(randomText(random, alphabet, 1 + random.nextInt(4), ignoreCase));
+            }
+            KeywordMatcher<String> matcher = ignoreCase
+                    ? KeywordMatcher.ignoreCase(keywords.toArray(String[]::new))
+                    : KeywordMatcher.of(keywords);
+
+            for (int t = 0; t < 20; t++) {
+                String text = randomText(random, alphabet, random.nextInt(30), ignoreCase);
+                String normalized = ignoreCase ? text.toLowerCase() : text;
+
+                String expectedFirst = null;
+                List<int[]> expectedAll = new ArrayList<>();
+                // 忽略大小写后相同的关键词只保留先添加的，与构建时一致
+                Map<String, String> distinct = new LinkedHashMap<>();
+                for (String keyword : keywords) {
+                    distinct.putIfAbsent(ignoreCase ? keyword.toLowerCase() : keyword, keyword);
+                }
+                for (Map.Entry<String, String> entry : distinct.entrySet()) {
+                    String k = entry.getKey();
+                    String keyword = entry.getValue();
+                    if (expectedFirst == null && normalized.contains(k)) {
+                        expectedFirst = keyword;
+                    }
+                    for (int from = normalized.indexOf(k); from >= 0; from = normalized.indexOf(k, from + 1)) {
+                        expectedAll.add(new int[]{from, from + k.length()});
+                    }
+                }
+
+                String context = "keywords=" + keywords + ", text=" + text;
+                assertEquals(expectedFirst, matcher.findFirst(text), context);
+                assertEquals(expectedFirst != null, matcher.containsAny(text), context);
+                assertEquals(sorted(expectedAll), sorted(matcher.findAll(text).stream()
+                        .map(match -> new int[]{match.start(), match.end()}).toList()), context);
+            }
+        }
+    }
+
+    private static Map<String, String> keywordMap(String... keywords) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String keyword : keywords) {
+            map.put(keyword, keyword);
+        }
+        return map;
+    }
+
+    private static String randomText(Random random, String alphabet, int length, boolean mixedCase) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            text.append(mixedCase && random.nextBoolean() ? Character.toUpperCase(c) : c);
+        }
+        return text.toString();
+    }
+
+    private static List<String> sorted(List<int[]> ranges) {
+        return ranges.stream()
+                .sorted(Comparator.<int[]>comparingInt(r -> r[1]).thenComparingInt(r -> r[0]))
+                .map(r -> r[0] + "-" + r[1])
+                .toList();
+    }
+}
@@ -0,0 +1,86 @@
+package com.fit2cloud.fapiao.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 任务图在线程池上执行：依赖值传递、强依赖失败跳过、弱依赖失败仍执行、未声明的依赖不可读取
+ */
+class TaskGraphTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 出差申请 -> 出差补贴 + 多组报销申请，与提交报销时的图结构相同；重复执行，确认依赖值稳定传递
+     */
+    @Test
+    void dependentNodesSeeDependencyValues() {
+        for (int round = 0; round < 200; round++) {
+            TaskGraph<String> graph = new TaskGraph<>();
+            graph.add("trip", dependencies -> "sp-trip");
+            graph.add("subsidy", List.of("trip"), List.of(), dependencies -> dependencies.apply("trip") + "/subsidy");
+            for (int i = 1; i <= 6; i++) {
+                String group = "group-" + i;
+                graph.add(group, List.of(), List.of("trip"), dependencies -> dependencies.apply("trip") + "/" + group);
+            }
+
+            Map<String, TaskGraph.NodeResult<String>> results = graph.execute(executor);
+
+            assertEquals(List.of("trip", "subsidy", "group-1", "group-2", "group-3", "group-4", "group-5", "group-6"),
+                    List.copyOf(results.keySet()));
+            assertEquals("sp-trip/subsidy", results.get("subsidy").value());
+            for (int i = 1; i <= 6; i++) {
+                assertEquals("sp-trip/group-" + i, results.get("group-" + i).value());
+            }
+        }
+    }
+
+    @Test
+    void failedDependencySkipsRequiresAndRunsAfter() {
+        TaskGraph<String> graph = new TaskGraph<>();
+        graph.add("trip", dependencies -> {
+            throw new IllegalStateException("提交失败");
+        });
+        graph.add("subsidy", List.of("trip"), List.of(), dependencies -> "subsidy");
+        graph.add("group-1", List.of(), List.of("trip"), dependencies -> "group-1:" + dependencies.apply("trip"));
+
+        Map<String, TaskGraph.NodeResult<String>> results = graph.execute(executor);
+
+        assertEquals(TaskGraph.Status.FAILED, results.get("trip").status());
+        assertEquals("提交失败", results.get("trip").error());
+        assertEquals(TaskGraph.Status.SKIPPED, results.get("subsidy").status());
+        assertNull(results.get("subsidy").value());
+        assertEquals("group-1:null", results.get("group-1").value());
+    }
+
+    @Test
+    void undeclaredDependencyCannotBeRead() {
+        TaskGraph<String> graph = new TaskGraph<>();
+        graph.add("trip", dependencies -> "sp-trip");
+        graph.add("group-1", dependencies -> dependencies.apply("trip"));
+
+        Map<String, TaskGraph.NodeResult<String>> results = graph.execute(executor);
+
+        assertEquals(TaskGraph.Status.FAILED, results.get("group-1").status());
+        assertEquals("节点 group-1 未声明依赖 trip", results.get("group-1").error());
+    }
+}
@@ -50,6 +50,7 @@ export interface FileUploadResponse {
         invoiceIndex?: number
       }>
     }
+    verificationToken?: string // 后台真伪验证令牌（延迟验证模式）
   }
   message?: string
 }
@@ -90,6 +91,7 @@ export * from './auth'
 export * from './department'
 export * from './reimbursement'
 export * from './upload'
+export * from './verification'
 
 // 重新导出类型
 export * from './types'
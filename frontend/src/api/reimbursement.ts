@@ -1,5 +1,5 @@
 import request from '@/utils/request'
-import type { ApiResponse, ReimbursementSubmitData } from '@/api'
+import type { ApiResponse, ReimbursementSubmitData, ReimbursementSubmitResult } from '@/api'
 
 // 提交报销申请
 export const submitReimbursement = async (
@@ -13,6 +13,22 @@ export const submitReimbursement = async (
   })
 }
 
+// 查询报销提交进度
+export const getSubmission = async (
+  submissionId: string,
+  userId: string
+): Promise<ApiResponse<ReimbursementSubmitResult>> => {
+  return request.get(`/reimbursement/submissions/${submissionId}`, { params: { userId } })
+}
+
+// 重新提交失败的审批
+export const retrySubmission = async (
+  submissionId: string,
+  userId: string
+): Promise<ApiResponse<ReimbursementSubmitResult>> => {
+  return request.post(`/reimbursement/submissions/${submissionId}/retry`, null, { params: { userId } })
+}
+
 // 获取报销记录
 export const getReimbursementList = async (params?: {
   userId?: string
@@ -107,4 +107,12 @@ export interface ReimbursementSubmitData {
   travelEndPeriod?: string
   travelDays?: string
   submitTravelSubsidy?: boolean // 出差补贴申请单开关
-}
\ No newline at end of file
+}
+// 报销提交进度（审批在后台提交）
+export interface ReimbursementSubmitResult {
+  submissionId: string
+  status: 'PROCESSING' | 'COMPLETED' | 'PARTIAL_FAILED' | 'FAILED'
+  success: boolean
+  approvalIds: string[]
+  failures: string[]
+}
@@ -0,0 +1,22 @@
+import request from '@/utils/request'
+import type { ApiResponse, ValidationResult } from '@/api'
+
+// 后台真伪验证进度
+export interface VerificationProgress {
+  token: string
+  total: number
+  completed: number
+  finished: boolean
+  results: Array<{
+    invoiceIndex?: number
+    invoice?: { invoiceNumber?: string }
+    validationResult: ValidationResult
+  }>
+}
+
+// 轮询后台真伪验证进度（延迟验证模式下识别接口返回 verificationToken）
+export const getVerificationProgress = async (
+  token: string
+): Promise<ApiResponse<VerificationProgress>> => {
+  return request.get(`/verification/${token}`)
+}